@@ -0,0 +1,206 @@
+package es.ucm.fdi.lps.p3;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Represents an autosave service that keeps a save of a game session (see
+ * GameSave) in a file. At every turn boundary the engine hands it the game,
+ * and it only takes a snapshot of the game (in constant time, see
+ * GameSnapshot); the snapshot is written in a background thread while the
+ * game goes on. If the game hands new snapshots faster than they are written,
+ * only the newest one is written. Each save replaces the file atomically, so
+ * the file always holds a complete save.
+ */
+public class Autosave {
+
+	/**
+	 * The save file
+	 */
+	private final File file;
+
+	/**
+	 * The executor of the writes, and the one created by this service (null if
+	 * it was given)
+	 */
+	private final Executor executor;
+	private final ExecutorService ownExecutor;
+
+	/**
+	 * The newest snapshot not written yet (null if there is none)
+	 */
+	private final AtomicReference<GameSnapshot> pending = new AtomicReference<GameSnapshot>();
+
+	/**
+	 * The number of writes requested and the number of them finished
+	 */
+	private final AtomicLong requested = new AtomicLong();
+	private long finished;
+
+	private final Runnable writer = new Runnable() {
+		public void run() {
+			write();
+		}
+	};
+
+	/**
+	 * Constructs an autosave service that writes in its own background thread.
+	 * 
+	 * @param file
+	 *            The save file.
+	 * @throws IllegalArgumentException
+	 *             The argument 'file' cannot be null.
+	 */
+	public Autosave(final File file) {
+		if (file == null)
+			throw new IllegalArgumentException();
+		this.file = file;
+		ownExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "Autosave " + file.getName());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		executor = ownExecutor;
+	}
+
+	/**
+	 * Constructs an autosave service that writes with a given executor, which
+	 * can be shared by the services of many sessions.
+	 * 
+	 * @param file
+	 *            The save file.
+	 * @param executor
+	 *            The executor of the writes.
+	 * @throws IllegalArgumentException
+	 *             The arguments cannot be null.
+	 */
+	public Autosave(File file, Executor executor) {
+		if ((file == null) || (executor == null))
+			throw new IllegalArgumentException();
+		this.file = file;
+		this.executor = executor;
+		ownExecutor = null;
+	}
+
+	/**
+	 * Saves the current state of a game in the background. It must be called
+	 * at a turn boundary from the thread that plays the game; it only takes a
+	 * snapshot of the game.
+	 * 
+	 * @param game
+	 *            The game, loaded with a world.
+	 * @throws IllegalArgumentException
+	 *             The argument 'game' cannot be null and the game must have a
+	 *             world.
+	 */
+	public void save(Game game) {
+		if (pending.getAndSet(GameSave.snapshot(game)) == null) {
+			requested.incrementAndGet();
+			executor.execute(writer);
+		}
+	}
+
+	/**
+	 * Writes the newest snapshot, if it has not been written yet. The writes
+	 * are serialized, so an older snapshot never replaces a newer one.
+	 */
+	private synchronized void write() {
+		try {
+			GameSnapshot snapshot = pending.getAndSet(null);
+			if (snapshot != null)
+				write(snapshot);
+		} catch (IOException e) {
+			System.err.println("Warning: " + file + " not saved: " + e);
+		} finally {
+			finished++;
+			notifyAll();
+		}
+	}
+
+	private void write(GameSnapshot snapshot) throws IOException {
+		File temporary = new File(file.getPath() + ".tmp");
+		FileOutputStream out = new FileOutputStream(temporary);
+		try {
+			snapshot.write(out);
+			out.getChannel().force(false);
+		} finally {
+			out.close();
+		}
+		Files.move(temporary.toPath(), file.toPath(),
+				StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Waits until the saves requested so far are written.
+	 * 
+	 * @throws InterruptedException
+	 *             The thread is interrupted while waiting.
+	 */
+	public synchronized void flush() throws InterruptedException {
+		long target = requested.get();
+		while (finished < target)
+			wait();
+	}
+
+	/**
+	 * Writes the saves requested so far and stops the background thread of
+	 * this service, if it has its own one.
+	 * 
+	 * @throws InterruptedException
+	 *             The thread is interrupted while waiting.
+	 */
+	public void close() throws InterruptedException {
+		flush();
+		if (ownExecutor != null)
+			ownExecutor.shutdown();
+	}
+
+	/**
+	 * Restores the state of a game from the save file, if it exists.
+	 * 
+	 * @param game
+	 *            The game, loaded with a world.
+	 * @return true if the game was restored; false if there is no save file.
+	 * @throws IOException
+	 *             The save file cannot be read, or it is not valid or it does
+	 *             not belong to the game.
+	 * @throws IllegalArgumentException
+	 *             The argument 'game' cannot be null and the game must have a
+	 *             world.
+	 */
+	public boolean restore(Game game) throws IOException {
+		if (!file.exists())
+			return false;
+		InputStream in = new FileInputStream(file);
+		try {
+			GameSave.restore(game, in);
+		} finally {
+			in.close();
+		}
+		return true;
+	}
+
+	/**
+	 * Returns a String representation for this object: Autosave[file]. This is
+	 * useful for debugging purposes.
+	 * 
+	 * @see Object#toString()
+	 */
+	public String toString() {
+		return this.getClass().getSimpleName() + "[" + file + "]";
+	}
+}
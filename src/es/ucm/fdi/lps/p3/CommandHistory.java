@@ -0,0 +1,253 @@
+package es.ucm.fdi.lps.p3;
+
+import es.ucm.fdi.lps.p3.command.Command;
+import es.ucm.fdi.lps.p3.exception.NoExecutedCommandsException;
+
+/**
+ * Represents the history of the commands executed in a game, from the oldest
+ * to the newest, for undoing them. The history is a ring buffer: adding a
+ * command and removing the oldest or the newest one take constant time. The
+ * history can be limited by a number of commands and by an approximate number
+ * of bytes retained by them (see Command#getRetainedSize()); when a new
+ * command exceeds a limit, the oldest commands are discarded.
+ */
+public class CommandHistory {
+
+	/**
+	 * Initial length of the buffer of an unlimited or large history
+	 */
+	private static final int INITIAL_LENGTH = 8;
+
+	/**
+	 * The commands (the oldest is at 'head') and their retained sizes
+	 */
+	private Command[] commands;
+	private int[] sizes;
+	private int head;
+	private int count;
+
+	/**
+	 * The approximate number of bytes retained by the commands
+	 */
+	private long retainedSize;
+
+	/**
+	 * The maximum number of commands and of retained bytes (0 if there is no
+	 * byte budget)
+	 */
+	private int capacity;
+	private long budget;
+
+	/**
+	 * Constructs an empty history without limits.
+	 */
+	public CommandHistory() {
+		this(Integer.MAX_VALUE, 0);
+	}
+
+	/**
+	 * Constructs an empty history with some limits.
+	 * 
+	 * @param capacity
+	 *            The maximum number of commands.
+	 * @param budget
+	 *            The maximum number of bytes retained by the commands (0 if
+	 *            there is no byte budget).
+	 * @throws IllegalArgumentException
+	 *             The arguments 'capacity' and 'budget' cannot be negative.
+	 */
+	public CommandHistory(int capacity, long budget) {
+		if ((capacity < 0) || (budget < 0))
+			throw new IllegalArgumentException();
+		this.capacity = capacity;
+		this.budget = budget;
+		commands = new Command[Math.min(capacity, INITIAL_LENGTH)];
+		sizes = new int[commands.length];
+	}
+
+	/**
+	 * Changes the limits of the history, discarding the oldest commands if they
+	 * exceed the new limits.
+	 * 
+	 * @param capacity
+	 *            The maximum number of commands.
+	 * @param budget
+	 *            The maximum number of bytes retained by the commands (0 if
+	 *            there is no byte budget).
+	 * @throws IllegalArgumentException
+	 *             The arguments 'capacity' and 'budget' cannot be negative.
+	 */
+	public void setLimits(int capacity, long budget) {
+		if ((capacity < 0) || (budget < 0))
+			throw new IllegalArgumentException();
+		this.capacity = capacity;
+		this.budget = budget;
+		while (count > capacity)
+			removeOldest();
+		trim();
+		if (commands.length > capacity)
+			resize(capacity);
+	}
+
+	/**
+	 * Gets the maximum number of commands of the history.
+	 * 
+	 * @return The maximum number of commands.
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Gets the maximum number of bytes retained by the commands of the
+	 * history.
+	 * 
+	 * @return The maximum number of bytes, or 0 if there is no byte budget.
+	 */
+	public long getBudget() {
+		return budget;
+	}
+
+	/**
+	 * Adds a command as the newest one, discarding the oldest commands if the
+	 * history exceeds its limits. The newest command is kept even if it
+	 * exceeds the byte budget by itself.
+	 * 
+	 * @param command
+	 *            The command.
+	 * @throws IllegalArgumentException
+	 *             The argument 'command' cannot be null.
+	 */
+	public void add(Command command) {
+		if (command == null)
+			throw new IllegalArgumentException();
+		if (capacity == 0)
+			return;
+		if (count == capacity)
+			removeOldest();
+		else if (count == commands.length)
+			resize((int) Math.min((long) commands.length * 2, capacity));
+		int size = command.getRetainedSize();
+		int tail = index(count);
+		commands[tail] = command;
+		sizes[tail] = size;
+		count++;
+		retainedSize += size;
+		trim();
+	}
+
+	/**
+	 * Removes the newest command.
+	 * 
+	 * @return The command.
+	 * @throws NoExecutedCommandsException
+	 *             The history is empty.
+	 */
+	public Command removeNewest() {
+		if (count == 0)
+			throw new NoExecutedCommandsException(
+					"Error: NoExecutedCommandsException");
+		int tail = index(count - 1);
+		Command command = commands[tail];
+		commands[tail] = null;
+		retainedSize -= sizes[tail];
+		count--;
+		return command;
+	}
+
+	/**
+	 * Removes the oldest command.
+	 * 
+	 * @return The command.
+	 * @throws NoExecutedCommandsException
+	 *             The history is empty.
+	 */
+	public Command removeOldest() {
+		if (count == 0)
+			throw new NoExecutedCommandsException(
+					"Error: NoExecutedCommandsException");
+		Command command = commands[head];
+		commands[head] = null;
+		retainedSize -= sizes[head];
+		head = index(1);
+		count--;
+		return command;
+	}
+
+	/**
+	 * Removes all the commands.
+	 */
+	public void clear() {
+		while (count > 0)
+			removeNewest();
+		head = 0;
+	}
+
+	/**
+	 * Gets the number of commands of the history.
+	 * 
+	 * @return The number of commands.
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * Checks whether the history is empty.
+	 * 
+	 * @return true if there are no commands; false otherwise.
+	 */
+	public boolean isEmpty() {
+		return count == 0;
+	}
+
+	/**
+	 * Gets the approximate number of bytes retained by the commands of the
+	 * history.
+	 * 
+	 * @return The number of bytes.
+	 */
+	public long getRetainedSize() {
+		return retainedSize;
+	}
+
+	/**
+	 * Discards the oldest commands (but not the newest one) while the byte
+	 * budget is exceeded.
+	 */
+	private void trim() {
+		if (budget == 0)
+			return;
+		while ((retainedSize > budget) && (count > 1))
+			removeOldest();
+	}
+
+	private int index(int i) {
+		int index = head + i;
+		return (index < commands.length) ? index : index - commands.length;
+	}
+
+	private void resize(int length) {
+		Command[] newCommands = new Command[length];
+		int[] newSizes = new int[length];
+		for (int i = 0; i < count; i++) {
+			newCommands[i] = commands[index(i)];
+			newSizes[i] = sizes[index(i)];
+		}
+		commands = newCommands;
+		sizes = newSizes;
+		head = 0;
+	}
+
+	/**
+	 * Returns a String representation for this object:
+	 * CommandHistory[size/capacity, retained bytes]. This is useful for
+	 * debugging purposes.
+	 * 
+	 * @see Object#toString()
+	 */
+	public String toString() {
+		return this.getClass().getSimpleName() + "[" + count + "/" + capacity
+				+ ", " + retainedSize + "]";
+	}
+}
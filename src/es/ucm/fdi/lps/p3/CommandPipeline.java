@@ -0,0 +1,420 @@
+package es.ucm.fdi.lps.p3;
+
+import java.nio.charset.Charset;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import es.ucm.fdi.lps.p3.command.ParsedCommand;
+
+/**
+ * Represents a pipeline that plays the turns of many game sessions in three
+ * stages, each one with its own threads: decoding the text line of a turn and
+ * parsing it; executing the parsed command on the game of the session (the
+ * only stage that changes the game), which also renders the text of the
+ * turn; and encoding that text into bytes and handing them to the session.
+ * So the turns of different sessions are played in parallel, and a session
+ * can be parsing a line while its previous turn is executed.
+ * <p>
+ * Every session has a lane in every stage: a lock-free queue of its tasks,
+ * that are run in order and one at a time by the threads of the stage. So
+ * the turns of a session go through every stage strictly in order, and its
+ * game is only changed by a thread at a time. The number of turns of a
+ * session in the pipeline is bounded.
+ * <p>
+ * A turn whose command fails to be parsed or executed is not lost: the
+ * session gets the message of a failed turn (see Engine#MESSAGE_TURNFAILED)
+ * as its output, and the failure is reported to the receiver of the output.
+ */
+public class CommandPipeline {
+
+	/**
+	 * Default maximum number of turns of a session in the pipeline
+	 */
+	public static final int DEFAULT_MAX_PENDING = 64;
+
+	/**
+	 * Maximum number of tasks of a lane run in a row, before letting the
+	 * other lanes of the stage run
+	 */
+	private static final int LANE_BATCH_SIZE = 16;
+
+	/**
+	 * The charset of the lines and of the output (the same one of the output
+	 * of the engines)
+	 */
+	private static final Charset CHARSET = Charset.defaultCharset();
+
+	/**
+	 * Represents the receiver of the output of a session.
+	 */
+	public interface Output {
+
+		/**
+		 * Receives the output of a turn of the session (or of the beginning
+		 * of its game), in the order of the turns. It is called by a thread
+		 * of the encoding stage, once the turn has left the pipeline (so the
+		 * session can take another turn).
+		 * 
+		 * @param output
+		 *            The bytes of the output.
+		 * @param gameOver
+		 *            Whether the game has ended with the turn (the next
+		 *            turns are not played).
+		 */
+		void write(byte[] output, boolean gameOver);
+
+		/**
+		 * Tells that a turn of the session could not be played, because
+		 * parsing or executing its command failed (its output is the message
+		 * of a failed turn), or that this receiver failed. It is called by a
+		 * thread of the pipeline.
+		 * 
+		 * @param failure
+		 *            The failure.
+		 */
+		void failed(RuntimeException failure);
+
+		/**
+		 * Tells that the session has been closed, after the output of all
+		 * its turns. The pipeline does not use its engine any more.
+		 */
+		void closed();
+	}
+
+	/**
+	 * Represents the lane of a session in a stage: its tasks are run in order
+	 * and one at a time by the threads of the stage. The lane is only handed
+	 * to the stage while it has tasks.
+	 */
+	private static final class Lane implements Runnable {
+		private final Executor executor;
+		private final Output output;
+		private final Queue<Runnable> tasks;
+		private final AtomicInteger size = new AtomicInteger();
+
+		Lane(Executor executor, Output output) {
+			this.executor = executor;
+			this.output = output;
+			tasks = new ConcurrentLinkedQueue<Runnable>();
+		}
+
+		void execute(Runnable task) {
+			tasks.add(task);
+			if (size.getAndIncrement() == 0)
+				executor.execute(this);
+		}
+
+		public void run() {
+			for (int i = 0; i < LANE_BATCH_SIZE; i++) {
+				try {
+					tasks.poll().run();
+				} catch (RuntimeException e) {
+					failed(e);
+				}
+				if (size.decrementAndGet() == 0)
+					return;
+			}
+			executor.execute(this);
+		}
+
+		/**
+		 * Reports the failure of a task (the tasks of the turns only fail if
+		 * the receiver of the output fails), so the lane goes on.
+		 */
+		private void failed(RuntimeException failure) {
+			try {
+				output.failed(failure);
+			} catch (RuntimeException e) {
+			}
+		}
+	}
+
+	/**
+	 * Represents a session of the pipeline: an engine playing its game, and
+	 * the receiver of its output. The turns are submitted to the session (and
+	 * the session is closed) by a thread at a time.
+	 */
+	public final class Session {
+		private final Engine engine;
+		private final Output output;
+		private final Lane decoding;
+		private final Lane playing;
+		private final Lane encoding;
+		private final AtomicInteger pending = new AtomicInteger();
+		private final AtomicBoolean closed = new AtomicBoolean();
+
+		/**
+		 * Whether the game has ended (only used by the playing stage)
+		 */
+		private boolean ended;
+
+		private Session(Engine engine, Output output) {
+			this.engine = engine;
+			this.output = output;
+			decoding = new Lane(decoders, output);
+			playing = new Lane(players, output);
+			encoding = new Lane(encoders, output);
+		}
+
+		private void begin() {
+			pending.incrementAndGet();
+			playing.execute(new Runnable() {
+				public void run() {
+					TurnResult result = engine.start();
+					ended = result.isGameOver();
+					encode(result, null);
+				}
+			});
+		}
+
+		/**
+		 * Submits the line of a turn of the session. The line is decoded and
+		 * parsed, and then its command is executed, after the turns submitted
+		 * before.
+		 * 
+		 * @param line
+		 *            The bytes of the line, without the line separator.
+		 * @return true if the turn was submitted; false if the session is
+		 *         closed or it has the maximum number of turns in the
+		 *         pipeline.
+		 * @throws IllegalArgumentException
+		 *             The argument 'line' cannot be null.
+		 */
+		public boolean submit(final byte[] line) {
+			if (line == null)
+				throw new IllegalArgumentException();
+			if (closed.get())
+				return false;
+			if (pending.incrementAndGet() > maxPending) {
+				pending.decrementAndGet();
+				return false;
+			}
+			decoding.execute(new Runnable() {
+				public void run() {
+					ParsedCommand parsedCommand = null;
+					RuntimeException failure = null;
+					try {
+						parsedCommand = engine.parse(new String(line, CHARSET));
+					} catch (RuntimeException e) {
+						failure = e;
+					}
+					final ParsedCommand parsed = parsedCommand;
+					final RuntimeException parseFailure = failure;
+					playing.execute(new Runnable() {
+						public void run() {
+							play(parsed, parseFailure);
+						}
+					});
+				}
+			});
+			return true;
+		}
+
+		/**
+		 * Executes the command of a turn, or gives the result of a failed
+		 * turn if parsing or executing the command failed.
+		 */
+		private void play(ParsedCommand parsedCommand,
+				RuntimeException failure) {
+			if (ended) {
+				pending.decrementAndGet();
+				return;
+			}
+			TurnResult result = null;
+			if (failure == null) {
+				try {
+					result = engine.execute(parsedCommand);
+				} catch (RuntimeException e) {
+					failure = e;
+				}
+			}
+			if (failure != null) {
+				failedTurns.incrementAndGet();
+				result = engine.fail();
+			}
+			ended = result.isGameOver();
+			encode(result, failure);
+		}
+
+		private void encode(final TurnResult result,
+				final RuntimeException failure) {
+			encoding.execute(new Runnable() {
+				public void run() {
+					byte[] bytes = result.getOutput().getBytes(CHARSET);
+					// The turn leaves the pipeline before its output is
+					// written, so the receiver can submit another turn
+					pending.decrementAndGet();
+					if (failure != null)
+						output.failed(failure);
+					output.write(bytes, result.isGameOver());
+				}
+			});
+		}
+
+		/**
+		 * Closes the session: no more turns can be submitted, and the output
+		 * is told when the turns already submitted have gone through the
+		 * pipeline.
+		 */
+		public void close() {
+			if (!closed.compareAndSet(false, true))
+				return;
+			decoding.execute(new Runnable() {
+				public void run() {
+					playing.execute(new Runnable() {
+						public void run() {
+							encoding.execute(new Runnable() {
+								public void run() {
+									output.closed();
+								}
+							});
+						}
+					});
+				}
+			});
+		}
+
+		/**
+		 * Gets the engine of the session.
+		 * 
+		 * @return The engine.
+		 */
+		public Engine getEngine() {
+			return engine;
+		}
+
+		/**
+		 * Gets the number of turns of the session in the pipeline.
+		 * 
+		 * @return The number of turns.
+		 */
+		public int getNumberOfPendingTurns() {
+			return pending.get();
+		}
+	}
+
+	private final Executor decoders;
+	private final Executor players;
+	private final Executor encoders;
+	private final int maxPending;
+	private final AtomicInteger failedTurns = new AtomicInteger();
+
+	/**
+	 * The pools created by this pipeline (null if the executors were given)
+	 */
+	private final ForkJoinPool[] pools;
+
+	/**
+	 * Constructs a pipeline with a pool of threads for every stage, as many as
+	 * processors, and the default maximum number of turns of a session.
+	 */
+	public CommandPipeline() {
+		this(new ForkJoinPool[] { newPool(), newPool(), newPool() });
+	}
+
+	private CommandPipeline(ForkJoinPool[] pools) {
+		this.decoders = pools[0];
+		this.players = pools[1];
+		this.encoders = pools[2];
+		this.maxPending = DEFAULT_MAX_PENDING;
+		this.pools = pools;
+	}
+
+	/**
+	 * Constructs a pipeline with the threads of its stages.
+	 * 
+	 * @param decoders
+	 *            The executor of the decoding and parsing stage.
+	 * @param players
+	 *            The executor of the executing stage.
+	 * @param encoders
+	 *            The executor of the encoding stage.
+	 * @param maxPending
+	 *            The maximum number of turns of a session in the pipeline.
+	 * @throws IllegalArgumentException
+	 *             The executors cannot be null and 'maxPending' must be
+	 *             positive.
+	 */
+	public CommandPipeline(Executor decoders, Executor players,
+			Executor encoders, int maxPending) {
+		if ((decoders == null) || (players == null) || (encoders == null)
+				|| (maxPending <= 0))
+			throw new IllegalArgumentException();
+		this.decoders = decoders;
+		this.players = players;
+		this.encoders = encoders;
+		this.maxPending = maxPending;
+		this.pools = null;
+	}
+
+	private static ForkJoinPool newPool() {
+		return new ForkJoinPool(Runtime.getRuntime().availableProcessors(),
+				ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+	}
+
+	/**
+	 * Opens a session with an engine, that begins its game in the pipeline
+	 * (see Engine#start()). The engine cannot be used by anyone else until
+	 * the session is closed.
+	 * 
+	 * @param engine
+	 *            The engine.
+	 * @param output
+	 *            The receiver of the output of the session.
+	 * @return The session.
+	 * @throws IllegalArgumentException
+	 *             The arguments cannot be null.
+	 */
+	public Session open(Engine engine, Output output) {
+		if ((engine == null) || (output == null))
+			throw new IllegalArgumentException();
+		Session session = new Session(engine, output);
+		session.begin();
+		return session;
+	}
+
+	/**
+	 * Gets the maximum number of turns of a session in the pipeline.
+	 * 
+	 * @return The maximum number of turns.
+	 */
+	public int getMaxPending() {
+		return maxPending;
+	}
+
+	/**
+	 * Gets the number of turns of all the sessions that could not be played,
+	 * because parsing or executing their command failed.
+	 * 
+	 * @return The number of failed turns.
+	 */
+	public int getNumberOfFailedTurns() {
+		return failedTurns.get();
+	}
+
+	/**
+	 * Shuts down the threads created by this pipeline (if any), so its
+	 * sessions cannot be played any more.
+	 */
+	public void shutdown() {
+		if (pools == null)
+			return;
+		for (ForkJoinPool pool : pools)
+			pool.shutdown();
+	}
+
+	/**
+	 * Returns a String representation for this object:
+	 * CommandPipeline[maximum pending turns]. This is useful for debugging
+	 * purposes.
+	 * 
+	 * @see Object#toString()
+	 */
+	public String toString() {
+		return this.getClass().getSimpleName() + "[" + maxPending + "]";
+	}
+}
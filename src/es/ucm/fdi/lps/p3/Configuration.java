@@ -0,0 +1,302 @@
+package es.ucm.fdi.lps.p3;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+
+import es.ucm.fdi.lps.p3.exception.InvalidConfigurationException;
+
+/**
+ * Represents a compiled game configuration: an immutable snapshot of the
+ * properties of a configuration file, with their names resolved ignoring case
+ * once. The engine and the commands get each of their properties with a single
+ * lookup, so one configuration can be shared by every engine and every command
+ * prototype instead of scanning all the properties for each of them.
+ * <p>
+ * A configuration can be layered on a base configuration, holding only the
+ * properties that it overrides (for instance, a few messages of a session) and
+ * falling through to the base for the rest. The base is never copied or
+ * changed, so many layers can share it.
+ * <p>
+ * The kind of a property is given by the beginning of its name: the values of
+ * the flags ("flag.") are booleans, the values of the limits ("limit.") are
+ * integers and the values of the keywords ("keyword.") are words that the
+ * player can type. A configuration can be validated before using it, so that
+ * a wrong value does not fail in the middle of a game.
+ */
+public class Configuration {
+
+	/**
+	 * The values of the properties defined by this configuration, by name in
+	 * lower case
+	 */
+	private final Map<String, String> values;
+
+	/**
+	 * The configuration with the properties not defined by this one (null if
+	 * there is none)
+	 */
+	private final Configuration base;
+
+	/**
+	 * The number of properties, including those of the base
+	 */
+	private final int size;
+
+	/**
+	 * Constructs a configuration from some properties. Later changes to the
+	 * properties do not change the configuration.
+	 * 
+	 * @param properties
+	 *            The properties.
+	 * @throws IllegalArgumentException
+	 *             The argument 'properties' cannot be null.
+	 */
+	public Configuration(Properties properties) {
+		if (properties == null)
+			throw new IllegalArgumentException();
+		values = compile(properties);
+		base = null;
+		size = values.size();
+	}
+
+	/**
+	 * Constructs a configuration layered on a base configuration: the given
+	 * properties override those of the base, and the other properties are
+	 * taken from the base. Only the overriding properties are stored in the
+	 * new configuration.
+	 * 
+	 * @param base
+	 *            The base configuration.
+	 * @param overrides
+	 *            The overriding properties.
+	 * @throws IllegalArgumentException
+	 *             The arguments 'base' and 'overrides' cannot be null.
+	 */
+	public Configuration(Configuration base, Properties overrides) {
+		if ((base == null) || (overrides == null))
+			throw new IllegalArgumentException();
+		values = compile(overrides);
+		this.base = base;
+		size = layeredSize(base, values);
+	}
+
+	private Configuration(Map<String, String> values, Configuration base) {
+		this.values = values;
+		this.base = base;
+		size = layeredSize(base, values);
+	}
+
+	private static int layeredSize(Configuration base,
+			Map<String, String> values) {
+		int overridden = 0;
+		for (String key : values.keySet()) {
+			if (base.contains(key))
+				overridden++;
+		}
+		return base.size() + values.size() - overridden;
+	}
+
+	private static Map<String, String> compile(Properties properties) {
+		if (properties.isEmpty())
+			return Collections.emptyMap();
+		Map<String, String> values = new HashMap<String, String>();
+		for (Enumeration<Object> e = properties.keys(); e.hasMoreElements();) {
+			String name = e.nextElement().toString();
+			values.put(normalize(name), properties.getProperty(name));
+		}
+		return Collections.unmodifiableMap(values);
+	}
+
+	/**
+	 * Loads a configuration from an input stream with the format of a
+	 * properties file.
+	 * 
+	 * @param in
+	 *            The input stream.
+	 * @return The configuration.
+	 * @throws IOException
+	 *             The configuration cannot be read.
+	 * @throws IllegalArgumentException
+	 *             The argument 'in' cannot be null.
+	 */
+	public static Configuration load(InputStream in) throws IOException {
+		if (in == null)
+			throw new IllegalArgumentException();
+		Properties properties = new Properties();
+		properties.load(in);
+		return new Configuration(properties);
+	}
+
+	private static String normalize(String name) {
+		return name.toLowerCase(Locale.ENGLISH);
+	}
+
+	/**
+	 * Gets the configuration layer that defines a property.
+	 */
+	private Configuration layerOf(String key) {
+		for (Configuration layer = this; layer != null; layer = layer.base) {
+			if (layer.values.containsKey(key))
+				return layer;
+		}
+		return null;
+	}
+
+	/**
+	 * Gets the base configuration of this one.
+	 * 
+	 * @return The base configuration, or null if this configuration is not
+	 *         layered on another one.
+	 */
+	public Configuration getBase() {
+		return base;
+	}
+
+	/**
+	 * Layers the properties defined by this configuration on another base
+	 * configuration (for instance, the reloaded version of its base). The
+	 * properties are not copied, and those of the current base are not kept.
+	 * 
+	 * @param base
+	 *            The new base configuration.
+	 * @return The configuration layered on the new base.
+	 * @throws IllegalArgumentException
+	 *             The argument 'base' cannot be null.
+	 */
+	public Configuration rebase(Configuration base) {
+		if (base == null)
+			throw new IllegalArgumentException();
+		return new Configuration(values, base);
+	}
+
+	/**
+	 * Checks whether a property is defined (its name is compared ignoring
+	 * case).
+	 * 
+	 * @param name
+	 *            The name of the property.
+	 * @return true if the property is defined; false otherwise.
+	 */
+	public boolean contains(String name) {
+		return layerOf(normalize(name)) != null;
+	}
+
+	/**
+	 * Gets the value of a text property (a message or a keyword).
+	 * 
+	 * @param name
+	 *            The name of the property.
+	 * @param defaultValue
+	 *            The value if the property is not defined.
+	 * @return The value.
+	 */
+	public String getString(String name, String defaultValue) {
+		String key = normalize(name);
+		Configuration layer = layerOf(key);
+		if (layer == null)
+			return defaultValue;
+		return layer.values.get(key);
+	}
+
+	/**
+	 * Gets the value of a boolean property (a flag).
+	 * 
+	 * @param name
+	 *            The name of the property.
+	 * @param defaultValue
+	 *            The value if the property is not defined.
+	 * @return The value (true only if the property is "true", ignoring case).
+	 */
+	public boolean getBoolean(String name, boolean defaultValue) {
+		String key = normalize(name);
+		Configuration layer = layerOf(key);
+		if (layer == null)
+			return defaultValue;
+		return Boolean.parseBoolean(layer.values.get(key));
+	}
+
+	/**
+	 * Gets the value of an integer property (a limit).
+	 * 
+	 * @param name
+	 *            The name of the property.
+	 * @param defaultValue
+	 *            The value if the property is not defined.
+	 * @return The value.
+	 * @throws NumberFormatException
+	 *             The property is not an integer.
+	 */
+	public int getInt(String name, int defaultValue) {
+		String key = normalize(name);
+		Configuration layer = layerOf(key);
+		if (layer == null)
+			return defaultValue;
+		return Integer.parseInt(layer.values.get(key));
+	}
+
+	/**
+	 * Checks that the values of the flags, the limits and the keywords of this
+	 * configuration (including those taken from its base) are valid: the flags
+	 * are "true" or "false" (ignoring case), the limits are integers and the
+	 * keywords are not blank.
+	 * 
+	 * @throws InvalidConfigurationException
+	 *             Some property has an invalid value.
+	 */
+	public void validate() throws InvalidConfigurationException {
+		for (Configuration layer = this; layer != null; layer = layer.base) {
+			for (Map.Entry<String, String> e : layer.values.entrySet()) {
+				if (layerOf(e.getKey()) == layer)
+					validate(e.getKey(), e.getValue());
+			}
+		}
+	}
+
+	private static void validate(String key, String value)
+			throws InvalidConfigurationException {
+		if (value == null)
+			throw new InvalidConfigurationException("No value for " + key);
+		if (key.startsWith("flag.")) {
+			if (!value.equalsIgnoreCase("true")
+					&& !value.equalsIgnoreCase("false"))
+				throw new InvalidConfigurationException("Invalid flag " + key
+						+ " = " + value);
+		} else if (key.startsWith("limit.")) {
+			try {
+				Integer.parseInt(value);
+			} catch (NumberFormatException e) {
+				throw new InvalidConfigurationException("Invalid limit " + key
+						+ " = " + value);
+			}
+		} else if (key.startsWith("keyword.")) {
+			if (value.trim().length() == 0)
+				throw new InvalidConfigurationException("Blank keyword " + key);
+		}
+	}
+
+	/**
+	 * Gets the number of properties of the configuration, including those
+	 * taken from its base.
+	 * 
+	 * @return The number of properties.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns a String representation for this object: Configuration[size].
+	 * This is useful for debugging purposes.
+	 * 
+	 * @see Object#toString()
+	 */
+	public String toString() {
+		return this.getClass().getSimpleName() + "[" + size() + "]";
+	}
+}
@@ -0,0 +1,217 @@
+package es.ucm.fdi.lps.p3;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import es.ucm.fdi.lps.p3.exception.InvalidConfigurationException;
+
+/**
+ * Represents a watcher of a configuration file that reloads it into some
+ * running engines when the file changes, without restarting their games. The
+ * file is checked periodically; each new version is loaded and validated, and
+ * only if it is valid it is handed to the engines, which apply it between two
+ * turns. An invalid version is reported and ignored, so the engines keep
+ * their current configuration.
+ */
+public class ConfigurationWatcher {
+
+	/**
+	 * Default time between two checks of the file, in milliseconds
+	 */
+	public static final long DEFAULT_PERIOD = 1000;
+
+	/**
+	 * The configuration file
+	 */
+	private final File file;
+
+	/**
+	 * The engines that receive the reloaded configurations
+	 */
+	private final List<Engine> engines = new CopyOnWriteArrayList<Engine>();
+
+	/**
+	 * The last configuration loaded (null if none has been loaded yet)
+	 */
+	private volatile Configuration configuration;
+
+	/**
+	 * The modification time and the length of the file when it was last
+	 * checked
+	 */
+	private long lastModified, length;
+
+	/**
+	 * The thread that checks the file (null if it is not started)
+	 */
+	private ScheduledExecutorService checker;
+
+	/**
+	 * Constructs a watcher of a configuration file. The current version of the
+	 * file is considered already loaded, so only later changes are reloaded.
+	 * 
+	 * @param file
+	 *            The configuration file.
+	 * @throws IllegalArgumentException
+	 *             The argument 'file' cannot be null.
+	 */
+	public ConfigurationWatcher(File file) {
+		if (file == null)
+			throw new IllegalArgumentException();
+		this.file = file;
+		lastModified = file.lastModified();
+		length = file.length();
+	}
+
+	/**
+	 * Adds an engine that receives the configurations reloaded from now on.
+	 * 
+	 * @param engine
+	 *            The engine.
+	 * @throws IllegalArgumentException
+	 *             The argument 'engine' cannot be null.
+	 */
+	public void addEngine(Engine engine) {
+		if (engine == null)
+			throw new IllegalArgumentException();
+		engines.add(engine);
+	}
+
+	/**
+	 * Removes an engine, so it does not receive more configurations.
+	 * 
+	 * @param engine
+	 *            The engine.
+	 */
+	public void removeEngine(Engine engine) {
+		engines.remove(engine);
+	}
+
+	/**
+	 * Gets the last configuration loaded by this watcher.
+	 * 
+	 * @return The configuration, or null if none has been loaded yet.
+	 */
+	public Configuration getConfiguration() {
+		return configuration;
+	}
+
+	/**
+	 * Loads and validates the configuration file, handing it to the engines if
+	 * it is valid. If the file cannot be read or it is not valid, a warning is
+	 * reported and the engines keep their configuration. The keywords shared
+	 * by several commands are reported too, once for every version loaded.
+	 * 
+	 * @return true if the configuration was reloaded; false otherwise.
+	 */
+	public synchronized boolean reload() {
+		Configuration config;
+		try {
+			InputStream in = new FileInputStream(file);
+			try {
+				config = Configuration.load(in);
+			} finally {
+				in.close();
+			}
+			config.validate();
+		} catch (IOException e) {
+			System.err.println("Warning: " + file + " not reloaded: " + e);
+			return false;
+		} catch (InvalidConfigurationException e) {
+			System.err.println("Warning: " + file + " not reloaded: "
+					+ e.getMessage());
+			return false;
+		}
+
+		for (String collision : new Parser(config).getKeywordCollisions())
+			System.err.println("Warning: " + file + ": " + collision);
+		configuration = config;
+		for (Engine engine : engines)
+			engine.reloadConfiguration(config);
+		return true;
+	}
+
+	/**
+	 * Reloads the configuration file if it has changed since it was last
+	 * checked.
+	 * 
+	 * @return true if the configuration was reloaded; false otherwise.
+	 */
+	public synchronized boolean reloadIfChanged() {
+		long modified = file.lastModified();
+		long size = file.length();
+		if ((modified == lastModified) && (size == length))
+			return false;
+		lastModified = modified;
+		length = size;
+		return reload();
+	}
+
+	/**
+	 * Starts checking the configuration file periodically (with the default
+	 * period) in a background thread. It does nothing if it is already
+	 * started.
+	 */
+	public void start() {
+		start(DEFAULT_PERIOD);
+	}
+
+	/**
+	 * Starts checking the configuration file periodically in a background
+	 * thread. It does nothing if it is already started.
+	 * 
+	 * @param period
+	 *            The time between two checks, in milliseconds.
+	 * @throws IllegalArgumentException
+	 *             The argument 'period' must be positive.
+	 */
+	public synchronized void start(long period) {
+		if (period <= 0)
+			throw new IllegalArgumentException();
+		if (checker != null)
+			return;
+		checker = Executors
+				.newSingleThreadScheduledExecutor(new ThreadFactory() {
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "ConfigurationWatcher "
+								+ file.getName());
+						t.setDaemon(true);
+						return t;
+					}
+				});
+		checker.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				reloadIfChanged();
+			}
+		}, period, period, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stops checking the configuration file. It does nothing if it is not
+	 * started.
+	 */
+	public synchronized void stop() {
+		if (checker == null)
+			return;
+		checker.shutdownNow();
+		checker = null;
+	}
+
+	/**
+	 * Returns a String representation for this object:
+	 * ConfigurationWatcher[file]. This is useful for debugging purposes.
+	 * 
+	 * @see Object#toString()
+	 */
+	public String toString() {
+		return this.getClass().getSimpleName() + "[" + file + "]";
+	}
+}
@@ -1,12 +1,16 @@
 package es.ucm.fdi.lps.p3;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintStream;
-import java.util.Enumeration;
 import java.util.Properties;
+import java.util.Scanner;
+import java.util.concurrent.atomic.AtomicReference;
 
 import es.ucm.fdi.lps.p3.command.Command;
+import es.ucm.fdi.lps.p3.command.ParsedCommand;
+import es.ucm.fdi.lps.p3.exception.NoNextCommandException;
 
 /**
  * Represents the game engine that controls the execution of the game since the
@@ -90,6 +94,17 @@ public class Engine {
 	public static final String MESSAGE_GAMEOVER = "message.gameOver";
 	public String msgGameOver;
 
+	/**
+	 * Message of a turn that could not be played because of an internal error
+	 * (the name of the property).
+	 * <ul>
+	 * <li>This property is called "message.turnFailed" and its default value
+	 * is "Error: the command could not be played.".</li>
+	 * </ul>
+	 */
+	public static final String MESSAGE_TURNFAILED = "message.turnFailed";
+	public String msgTurnFailed;
+
 	/**
 	 * Flag for showing engine information (the name of the property).
 	 * <ul>
@@ -152,6 +167,17 @@ public class Engine {
 	public static final String LIMIT_COMMANDHISTORYSIZE = "limit.commandHistorySize";
 	public int limitCommandHistorySize;
 
+	/**
+	 * Limit of the memory retained by the command history for the undo
+	 * command, in bytes (the name of the property).
+	 * <ul>
+	 * <li>This property is called "limit.commandHistoryBytes" and its default
+	 * value is "0" (no limit).</li>
+	 * </ul>
+	 */
+	public static final String LIMIT_COMMANDHISTORYBYTES = "limit.commandHistoryBytes";
+	public int limitCommandHistoryBytes;
+
 	/**
 	 * A reference to the game that created the Interpreter
 	 */
@@ -174,8 +200,36 @@ public class Engine {
 	 */
 	private PrintStream ps;
 
-	private Parser parser;
+	/**
+	 * The parser of the lines of the engine, and whether it is shared with
+	 * other engines (then the engine does not change it)
+	 */
+	private volatile Parser parser;
+	private boolean parserShared;
+
 	private InputStream input;
+	private Scanner reader;
+
+	/**
+	 * The last configuration set (null if there is none), whose layer is
+	 * kept when the configuration is reloaded
+	 */
+	private Configuration configuration;
+
+	/**
+	 * The configuration to apply before the next turn (null if there is none)
+	 */
+	private final AtomicReference<Configuration> pendingConfiguration = new AtomicReference<Configuration>();
+
+	/**
+	 * The journal of the turns played (null if they are not recorded)
+	 */
+	private Journal journal;
+
+	/**
+	 * The autosave service of the game (null if it is not saved)
+	 */
+	private Autosave autosave;
 
 	/**
 	 * Constructs the game engine using a given game. Default configuration,
@@ -192,7 +246,7 @@ public class Engine {
 		this.game = game;
 		setInput(System.in);
 		setOutput(System.out);
-		parser = new Parser(this.input, this.game);
+		parser = new Parser();
 		setDefaultConfiguration();
 	}
 
@@ -210,16 +264,16 @@ public class Engine {
 	 *             The arguments 'game' and 'config' cannot be null.
 	 */
 	public Engine(Game game, Properties config) {
-		if (config == null) {
+		if ((game == null) || (config == null)) {
 			throw new IllegalArgumentException();
 		}
 		this.game = game;
 		this.config = config;
 		setInput(System.in);
 		setOutput(System.out);
+		parser = new Parser();
 		setDefaultConfiguration();
 		setConfig(this.config);
-		parser = new Parser(this.input, this.game, this.config);
 	}
 
 	/**
@@ -234,14 +288,14 @@ public class Engine {
 	 *             The arguments 'game' and 'input' cannot be null.
 	 */
 	public Engine(Game game, InputStream input) {
-		if (input == null) {
+		if ((game == null) || (input == null)) {
 			throw new IllegalArgumentException();
 		}
 		this.game = game;
 		setInput(input);
 		setOutput(System.out);
 		setDefaultConfiguration();
-		parser = new Parser(this.input, this.game);
+		parser = new Parser();
 	}
 
 	/**
@@ -256,14 +310,14 @@ public class Engine {
 	 *             The arguments 'game' and 'output' cannot be null.
 	 */
 	public Engine(Game game, OutputStream output) {
-		if (output == null) {
+		if ((game == null) || (output == null)) {
 			throw new IllegalArgumentException();
 		}
 		this.game = game;
 		setInput(System.in);
 		setOutput(output);
 		setDefaultConfiguration();
-		parser = new Parser(this.input, this.game);
+		parser = new Parser();
 	}
 
 	/**
@@ -280,13 +334,13 @@ public class Engine {
 	 *             The arguments 'game', 'input' and 'output' cannot be null.
 	 */
 	public Engine(Game game, InputStream input, OutputStream output) {
-		if ((input == null) || (output == null))
+		if ((game == null) || (input == null) || (output == null))
 			throw new IllegalArgumentException();
 		this.game = game;
 		setInput(input);
 		setOutput(output);
 		setDefaultConfiguration();
-		parser = new Parser(this.input, this.game);
+		parser = new Parser();
 	}
 
 	/**
@@ -303,16 +357,16 @@ public class Engine {
 	 *             The arguments 'game', 'config' and 'input' cannot be null.
 	 */
 	public Engine(Game game, Properties config, InputStream input) {
-		if (input == null) {
+		if ((game == null) || (input == null)) {
 			throw new IllegalArgumentException();
 		}
 		this.game = game;
 		this.config = config;
 		setInput(input);
 		setOutput(System.out);
+		parser = new Parser();
 		setDefaultConfiguration();
 		setConfig(this.config);
-		parser = new Parser(this.input, this.game, this.config);
 	}
 
 	/**
@@ -329,16 +383,16 @@ public class Engine {
 	 *             The arguments 'game', 'config' and 'output' cannot be null.
 	 */
 	public Engine(Game game, Properties config, OutputStream output) {
-		if (output == null) {
+		if ((game == null) || (output == null)) {
 			throw new IllegalArgumentException();
 		}
 		this.game = game;
 		this.config = config;
 		setInput(System.in);
 		setOutput(output);
+		parser = new Parser();
 		setDefaultConfiguration();
 		setConfig(this.config);
-		parser = new Parser(this.input, this.game, this.config);
 	}
 
 	/**
@@ -359,15 +413,53 @@ public class Engine {
 	 */
 	public Engine(Game game, Properties config, InputStream input,
 			OutputStream output) {
-		if ((input == null) || (output == null))
+		if ((game == null) || (input == null) || (output == null))
 			throw new IllegalArgumentException();
 		this.game = game;
 		this.config = config;
 		setInput(input);
 		setOutput(output);
+		parser = new Parser();
 		setDefaultConfiguration();
 		setConfig(this.config);
-		parser = new Parser(this.input, this.game, this.config);
+	}
+
+	/**
+	 * Constructs the game engine using a given game, a parser shared with
+	 * other engines (for instance, the engines of a pool of sessions, see
+	 * SessionPool), a given input stream and a given output stream, so the
+	 * engine does not build command prototypes of its own. The engine takes
+	 * the configuration of the parser, and it does not change the parser: if
+	 * another configuration is set or reloaded, the engine builds a parser of
+	 * its own with it.
+	 * 
+	 * @param game
+	 *            The game.
+	 * @param parser
+	 *            The shared parser (without input nor game, see
+	 *            Parser(Configuration)).
+	 * @param input
+	 *            The input.
+	 * @param output
+	 *            The output.
+	 * @throws IllegalArgumentException
+	 *             The arguments 'game', 'parser', 'input' and 'output' cannot
+	 *             be null.
+	 */
+	public Engine(Game game, Parser parser, InputStream input,
+			OutputStream output) {
+		if ((game == null) || (parser == null) || (input == null)
+				|| (output == null))
+			throw new IllegalArgumentException();
+		this.game = game;
+		setInput(input);
+		setOutput(output);
+		this.parser = parser;
+		parserShared = true;
+		setDefaultConfiguration();
+		configuration = parser.getConfiguration();
+		if (configuration != null)
+			configure(configuration);
 	}
 
 	private void setDefaultConfiguration() {
@@ -378,6 +470,7 @@ public class Engine {
 		msgLocationWithoutItems = "This location has no items.";
 		msgPlayerScore = "Player score: ";
 		msgGameOver = "GAME OVER";
+		msgTurnFailed = "Error: the command could not be played.";
 
 		flagShowEngineInfo = true;
 		flagShowGameInfo = true;
@@ -386,6 +479,7 @@ public class Engine {
 		flagShowItemValues = true;
 
 		limitCommandHistorySize = 1;
+		limitCommandHistoryBytes = 0;
 	}
 
 	/**
@@ -401,44 +495,156 @@ public class Engine {
 		if (config == null) {
 			throw new IllegalArgumentException();
 		}
+		setConfiguration(new Configuration(config));
+	}
 
-		for (Enumeration<Object> e = config.keys(); e.hasMoreElements();) {
-			Object obj = e.nextElement();
-			if (obj.toString().equalsIgnoreCase(MESSAGE_PROMPT))
-				msgPrompt = config.getProperty(obj.toString());
-			else if (obj.toString().equalsIgnoreCase(MESSAGE_UNKNOWNCOMMAND))
-				msgUnknownCommand = config.getProperty(obj.toString());
-			else if (obj.toString().equalsIgnoreCase(MESSAGE_ENGINEHELP))
-				msgEngineHelp = config.getProperty(obj.toString());
-			else if (obj.toString().equalsIgnoreCase(MESSAGE_LOCATIONWITHITEMS))
-				msgLocationWithItems = config.getProperty(obj.toString());
-			else if (obj.toString().equalsIgnoreCase(
-					MESSAGE_LOCATIONWITHOUTITEMS))
-				msgLocationWithoutItems = config.getProperty(obj.toString());
-			else if (obj.toString().equalsIgnoreCase(MESSAGE_PLAYERSCORE))
-				msgPlayerScore = config.getProperty(obj.toString());
-			else if (obj.toString().equalsIgnoreCase(MESSAGE_GAMEOVER))
-				msgGameOver = config.getProperty(obj.toString());
-			else if (obj.toString().equalsIgnoreCase(FLAG_SHOWENGINEINFO))
-				flagShowEngineInfo = Boolean.parseBoolean(config
-						.getProperty(obj.toString()));
-			else if (obj.toString().equalsIgnoreCase(FLAG_SHOWGAMEINFO))
-				flagShowGameInfo = Boolean.parseBoolean(config.getProperty(obj
-						.toString()));
-			else if (obj.toString().equalsIgnoreCase(
-					FLAG_AUTODESCRIBEFIRSTLOCATION))
-				flagAutodescribeFirstLocation = Boolean.parseBoolean(config
-						.getProperty(obj.toString()));
-			else if (obj.toString().equalsIgnoreCase(FLAG_SHOWLOCATIONITEMS))
-				flagShowLocationItems = Boolean.parseBoolean(config
-						.getProperty(obj.toString()));
-			else if (obj.toString().equalsIgnoreCase(FLAG_SHOWITEMVALUES))
-				flagShowItemValues = Boolean.parseBoolean(config
-						.getProperty(obj.toString()));
-			else if (obj.toString().equalsIgnoreCase(LIMIT_COMMANDHISTORYSIZE))
-				limitCommandHistorySize = Integer.parseInt(config
-						.getProperty(obj.toString()));
+	/**
+	 * Sets a new configuration. Properties that are not overridden maintain
+	 * their previous values. The configuration is also set for the commands.
+	 * 
+	 * @param config
+	 *            The compiled configuration (it can be shared with
+	 *            other engines).
+	 * @throws IllegalArgumentException
+	 *             The argument 'config' cannot be null.
+	 */
+	public void setConfiguration(Configuration config) {
+		if (config == null) {
+			throw new IllegalArgumentException();
+		}
+		configure(config);
+		if (!parserShared)
+			parser.setConfiguration(config);
+		else if (parser.getConfiguration() != config) {
+			parser = new Parser(config);
+			parserShared = false;
 		}
+		configuration = config;
+	}
+
+	/**
+	 * Reloads the configuration of a running engine: it replaces the current
+	 * configuration before the next turn (properties that are not defined in
+	 * the new configuration take their default values again), so the command
+	 * being executed finishes with the previous one. If the configuration
+	 * set was layered on a base (for instance, the overrides of a session),
+	 * only that base is replaced, and the properties of the layer are kept.
+	 * It can be called from any thread; if it is called again before the
+	 * next turn, only the last configuration is applied.
+	 * 
+	 * @param config
+	 *            The compiled configuration (it should have been validated).
+	 * @throws IllegalArgumentException
+	 *             The argument 'config' cannot be null.
+	 */
+	public void reloadConfiguration(Configuration config) {
+		if (config == null) {
+			throw new IllegalArgumentException();
+		}
+		pendingConfiguration.set(config);
+	}
+
+	/**
+	 * Applies the reloaded configuration, if any. The command history is
+	 * shortened if its new limits are lower.
+	 */
+	private void applyPendingConfiguration() {
+		Configuration config = pendingConfiguration.getAndSet(null);
+		if (config == null)
+			return;
+		if ((configuration != null) && (configuration.getBase() != null))
+			config = configuration.rebase(config);
+		configuration = config;
+		setDefaultConfiguration();
+		configure(config);
+		if (!parserShared)
+			parser.resetConfiguration(config);
+		else {
+			parser = new Parser(config);
+			parserShared = false;
+		}
+		limitCommandHistory();
+	}
+
+	/**
+	 * Sets the journal that records the turns played from now on, so the game
+	 * can be recovered after a restart.
+	 * 
+	 * @param journal
+	 *            The journal, or null for not recording the turns.
+	 */
+	public void setJournal(Journal journal) {
+		this.journal = journal;
+	}
+
+	/**
+	 * Sets the autosave service that saves the game after every turn from now
+	 * on (in the background, so the turns do not wait for it).
+	 * 
+	 * @param autosave
+	 *            The autosave service, or null for not saving the game.
+	 */
+	public void setAutosave(Autosave autosave) {
+		this.autosave = autosave;
+	}
+
+	/**
+	 * Gets the game of the engine.
+	 * 
+	 * @return The game.
+	 */
+	public Game getGame() {
+		return game;
+	}
+
+	/**
+	 * Puts the engine back to the beginning of its game (see Game#reset()),
+	 * so it can begin it again for a new player. The journal and the autosave
+	 * service are unset, since they belong to the previous player (the
+	 * journal stops recording the changes made to the game).
+	 * 
+	 * @throws IllegalStateException
+	 *             The game has no world.
+	 */
+	public void reset() {
+		if (journal != null)
+			game.removeListener(journal);
+		game.reset();
+		journal = null;
+		autosave = null;
+	}
+
+	private void limitCommandHistory() {
+		game.setCommandHistoryLimits(Math.max(limitCommandHistorySize, 0),
+				Math.max(limitCommandHistoryBytes, 0));
+	}
+
+	private void configure(Configuration config) {
+		msgPrompt = config.getString(MESSAGE_PROMPT, msgPrompt);
+		msgUnknownCommand = config.getString(MESSAGE_UNKNOWNCOMMAND,
+				msgUnknownCommand);
+		msgEngineHelp = config.getString(MESSAGE_ENGINEHELP, msgEngineHelp);
+		msgLocationWithItems = config.getString(MESSAGE_LOCATIONWITHITEMS,
+				msgLocationWithItems);
+		msgLocationWithoutItems = config.getString(MESSAGE_LOCATIONWITHOUTITEMS,
+				msgLocationWithoutItems);
+		msgPlayerScore = config.getString(MESSAGE_PLAYERSCORE, msgPlayerScore);
+		msgGameOver = config.getString(MESSAGE_GAMEOVER, msgGameOver);
+		msgTurnFailed = config.getString(MESSAGE_TURNFAILED, msgTurnFailed);
+		flagShowEngineInfo = config.getBoolean(FLAG_SHOWENGINEINFO,
+				flagShowEngineInfo);
+		flagShowGameInfo = config.getBoolean(FLAG_SHOWGAMEINFO,
+				flagShowGameInfo);
+		flagAutodescribeFirstLocation = config.getBoolean(
+				FLAG_AUTODESCRIBEFIRSTLOCATION, flagAutodescribeFirstLocation);
+		flagShowLocationItems = config.getBoolean(FLAG_SHOWLOCATIONITEMS,
+				flagShowLocationItems);
+		flagShowItemValues = config.getBoolean(FLAG_SHOWITEMVALUES,
+				flagShowItemValues);
+		limitCommandHistorySize = config.getInt(LIMIT_COMMANDHISTORYSIZE,
+				limitCommandHistorySize);
+		limitCommandHistoryBytes = config.getInt(LIMIT_COMMANDHISTORYBYTES,
+				limitCommandHistoryBytes);
 	}
 
 	/**
@@ -455,6 +661,7 @@ public class Engine {
 					"Error: IllegalArgumentException");
 		}
 		this.input = input;
+		reader = new Scanner(input);
 	}
 
 	/**
@@ -474,16 +681,33 @@ public class Engine {
 	}
 
 
-	private void printEvents() {
+	private void printEvents(StringBuilder out) {
 		if (flagShowItemValues) {
-			ps.println(LINE_SEPARATOR + msgPlayerScore
+			println(out, LINE_SEPARATOR + msgPlayerScore
 					+ game.reportInventoryValue() + LINE_SEPARATOR
 					+ msgGameOver);
 		} else {
-			ps.println(msgGameOver);
+			println(out, msgGameOver);
+		}
+	}
+
+	private void println(StringBuilder out, String text) {
+		out.append(text).append(LINE_SEPARATOR);
+	}
+
+	/**
+	 * Records a turn in the journal. If the journal fails, it is reported and
+	 * the game goes on without recording the turns.
+	 */
+	private void recordTurn(Command command) {
+		try {
+			journal.commitTurn(command);
+		} catch (IOException e) {
+			System.err.println("Warning: journal disabled: " + e);
+			journal = null;
 		}
 	}
-	
+
 	/**
 	 * Runs the main loop of the game execution. Firstly (before entering into
 	 * the loop) the description of the engine and the description of the game
@@ -494,70 +718,210 @@ public class Engine {
 	 * <ol type=1 start=1>
 	 * <li>Parsing the input (i.e. identifying a valid next command),</li>
 	 * <li>Trying to execute the next command (recording it if it was executed
-	 * successfully) and</li>
+	 * successfully, recording the turn in the journal and saving the game,
+	 * if they are set) and</li>
 	 * <li>Reporting the result of the command (and the events that have ocurred
 	 * in the game after the command execution) to the output stream.</li>
 	 * </ol>
 	 * At the end of the game the player score can be shown (depending on the
-	 * configuration).
+	 * configuration). A configuration reloaded during the game is applied at
+	 * the beginning of the next repetition. The game can also be played
+	 * without this loop, line by line (see begin() and play(String)), or
+	 * without any I/O (see start() and step(String)).
 	 */
 	public void run() {
-		Command command = null;
-		boolean executed = false;
+		begin();
+		while (!game.isEnded())
+			play(nextLine());
+	}
+
+	/**
+	 * Reads the next line of the input.
+	 */
+	private String nextLine() {
+		if (!reader.hasNext())
+			throw new NoNextCommandException("Error: NoNextCommandException");
+		return reader.nextLine();
+	}
+
+	/**
+	 * Begins the game without reading any input, for playing it line by line
+	 * (see play(String)): the descriptions of the engine, the game and the
+	 * initial location are shown as in run(), followed by the prompt.
+	 */
+	public void begin() {
+		ps.print(start().getOutput());
+	}
+
+	/**
+	 * Plays a turn of a game begun with begin(): the line is parsed as a
+	 * command, which is executed and reported to the output stream as in
+	 * run(), followed by the prompt if the game has not ended. It does not
+	 * read any input, so the lines can come from anywhere (for instance, from
+	 * a network connection).
+	 * 
+	 * @param line
+	 *            The text line of the command.
+	 * @return true if the game goes on; false if it has ended.
+	 * @throws IllegalArgumentException
+	 *             The argument 'line' cannot be null.
+	 */
+	public boolean play(String line) {
+		TurnResult result = step(line);
+		ps.print(result.getOutput());
+		return !result.isGameOver();
+	}
+
+	/**
+	 * Begins the game without any I/O, for playing it with step(String): it
+	 * returns the descriptions of the engine, the game and the initial
+	 * location that run() shows, followed by the prompt. A configuration
+	 * reloaded before the game begins is applied first.
+	 * 
+	 * @return The result of the beginning of the game.
+	 */
+	public TurnResult start() {
+		applyPendingConfiguration();
 		game.clearExecutedCommands();
+		limitCommandHistory();
 		game.clearEvents();
 
+		StringBuilder out = new StringBuilder();
 		if (flagShowEngineInfo) {
-			ps.println(engineInfo);
-			ps.println();
+			println(out, engineInfo);
+			println(out, "");
 		}
 
 		if (flagShowGameInfo) {
-			ps.println(game.reportInformation());
-			ps.println();
+			println(out, game.reportInformation());
+			println(out, "");
 		}
 
 		if (flagAutodescribeFirstLocation) {
-			ps.println(game.reportLocationName());
-			ps.println(game.reportLocationDescription());
-			ps.println();
+			println(out, game.reportLocationName());
+			println(out, game.reportLocationDescription());
+			println(out, "");
 		}
 
 		if ((game.reportAllLocationItems().isEmpty())
 				&& (flagShowLocationItems)) {
-			ps.println(msgLocationWithoutItems);
-			ps.println();
+			println(out, msgLocationWithoutItems);
+			println(out, "");
 		} else if ((!game.reportAllLocationItems().isEmpty())
 				&& (flagShowLocationItems)) {
-			ps.println(msgLocationWithItems
+			println(out, msgLocationWithItems
 					+ game.setToString(game.reportAllLocationItems(),
 							flagShowItemValues));
-			ps.println();
+			println(out, "");
 		}
+		prompt(out);
+		return new TurnResult(out.toString(), null, null, false, game
+				.isEnded());
+	}
 
-		while (!game.isEnded()) {
-			ps.println(msgPrompt);
-			command = parser.parseNextCommand();
-
-			if (command != null) {
-				executed = command.execute();
-				if (executed) {
-					if (game.getNumberOfExecutedCommands() < limitCommandHistorySize) {
-						game.addExecutedCommand(command);
-					} else {
-						game.removeOldestExecutedCommand();
-						game.addExecutedCommand(command);
-					}
-				}
-				if (command.hasResult())
-					ps.println(command.getResult());
-				if (game.hasEvents()){
-					ps.println(game.reportEvents());
-					printEvents();
-				}
-			} else
-				ps.println(msgUnknownCommand + LINE_SEPARATOR);
+	/**
+	 * Plays a turn of a game begun with start(), without any I/O: the line is
+	 * parsed as a command, which is executed and recorded as in run(). Many
+	 * engines can be driven this way from a single thread, each of them with
+	 * its own game.
+	 * 
+	 * @param line
+	 *            The text line of the command.
+	 * @return The result of the turn, with the text that run() would show
+	 *         (followed by the prompt if the game has not ended).
+	 * @throws IllegalArgumentException
+	 *             The argument 'line' cannot be null.
+	 */
+	public TurnResult step(String line) {
+		if (line == null) {
+			throw new IllegalArgumentException();
 		}
+		if (game.isEnded())
+			return new TurnResult("", null, null, false, true);
+		return execute(parser.parse(line));
+	}
+
+	/**
+	 * Parses the text line of a turn, without changing the game, so it can
+	 * be done by another thread while the previous turn is executed (see
+	 * CommandPipeline).
+	 * 
+	 * @param line
+	 *            The text line of the command.
+	 * @return The parsed invocation, or null if the line is not a valid
+	 *         command.
+	 */
+	ParsedCommand parse(String line) {
+		return parser.parse(line);
+	}
+
+	/**
+	 * Plays a turn of a game begun with start() with a line already parsed
+	 * (see step(String)).
+	 * 
+	 * @param parsedCommand
+	 *            The parsed invocation, or null if the line was not a valid
+	 *            command.
+	 * @return The result of the turn.
+	 */
+	TurnResult execute(ParsedCommand parsedCommand) {
+		if (game.isEnded())
+			return new TurnResult("", null, null, false, true);
+
+		StringBuilder out = new StringBuilder();
+		String result;
+		String events = null;
+		boolean executed = false;
+		if (parsedCommand != null) {
+			Command command = parsedCommand.newCommand(game);
+			executed = command.execute();
+			if (executed)
+				game.addExecutedCommand(command);
+			if (journal != null)
+				recordTurn(command);
+			if (autosave != null)
+				autosave.save(game);
+			result = command.hasResult() ? command.getResult() : null;
+			if (result != null)
+				println(out, result);
+			if (game.hasEvents()){
+				events = game.reportEvents();
+				println(out, events);
+				printEvents(out);
+			}
+		} else {
+			result = msgUnknownCommand;
+			println(out, msgUnknownCommand + LINE_SEPARATOR);
+		}
+		prompt(out);
+		return new TurnResult(out.toString(), result, events, executed, game
+				.isEnded());
+	}
+
+	/**
+	 * Gives the result of a turn that could not be played because parsing or
+	 * executing its command failed (see CommandPipeline): the message of a
+	 * failed turn and the prompt.
+	 * 
+	 * @return The result of the turn.
+	 */
+	TurnResult fail() {
+		StringBuilder out = new StringBuilder();
+		println(out, msgTurnFailed + LINE_SEPARATOR);
+		prompt(out);
+		return new TurnResult(out.toString(), msgTurnFailed, null, false,
+				game.isEnded());
+	}
+
+	/**
+	 * Shows the prompt for the next turn, if the game has not ended, after
+	 * applying the configuration reloaded during the last turn.
+	 */
+	private void prompt(StringBuilder out) {
+		if (game.isEnded())
+			return;
+		applyPendingConfiguration();
+		println(out, msgPrompt);
 	}
 }
 
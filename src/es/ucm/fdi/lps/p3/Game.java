@@ -1,17 +1,21 @@
 package es.ucm.fdi.lps.p3;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.Reader;
-import java.io.StreamTokenizer;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.EnumMap;
-import java.util.Hashtable;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.RecursiveAction;
 
 import es.ucm.fdi.lps.p3.command.Command;
 import es.ucm.fdi.lps.p3.exception.InvalidGameDefinitionException;
@@ -25,6 +29,11 @@ import es.ucm.fdi.lps.p3.exception.NoGameEventsException;
  * Represents the state of all the elements of the game (locations, items,
  * player inventory, etc.), and relevant constants for the game (the available
  * movement directions, the keywords for a game textual definition, etc.).
+ * <p>
+ * When the game has a world, its locations are not changed while it is
+ * played: they keep their items as they were loaded, and the game only
+ * records the items moved since then and the player inventory. So several
+ * games can share the same world (see GameTemplate#newGame()).
  */
 public class Game {
 
@@ -34,6 +43,11 @@ public class Game {
 	private static final String LINE_SEPARATOR = System
 			.getProperty("line.separator");
 
+	/**
+	 * Number of locations linked by each task when loading in parallel
+	 */
+	private static final int LINK_BATCH_SIZE = 4096;
+
 	/**
 	 * Game title
 	 */
@@ -54,6 +68,53 @@ public class Game {
 	 */
 	private Location currentLocation;
 
+	/**
+	 * The location of the player at the beginning of the game (null if the
+	 * game has no world)
+	 */
+	private Location initialLocation;
+
+	/**
+	 * The id of the player location in the world of the game, or World.NONE
+	 * if the game has no world or the player location is not part of it
+	 */
+	private int currentLocationId = World.NONE;
+
+	/**
+	 * The world of the game (its locations with dense ids and their
+	 * connections), or null if the locations are linked to each other
+	 */
+	private World world;
+
+	/**
+	 * The items of the world of the game by id, in the order of their
+	 * locations when the world was set (empty if the game has no world)
+	 */
+	private Item[] worldItems = new Item[0];
+
+	/**
+	 * The ids of the locations where the items of the world were when the
+	 * world was set, by the id of the item
+	 */
+	private int[] worldItemHomes = new int[0];
+
+	/**
+	 * The ids of the locations where the items of the world that have been
+	 * moved are now (or World.NONE for the player inventory), by the id of
+	 * the item. The other items are where they were when the world was set.
+	 * The places are immutable, so they are shared with the snapshots as they
+	 * are, and moving an item only copies the path to its place.
+	 */
+	private ItemPlaces movedItems = new ItemPlaces(0);
+
+	/**
+	 * The items of the world that have been moved to a location, in the order
+	 * they were moved there and indexed by name, by the id of the location
+	 * (only for the locations that have such items), so the items of a
+	 * location are found without walking all the moved items
+	 */
+	private Map<Integer, ItemRepository> movedInItems = new HashMap<Integer, ItemRepository>();
+
 	/**
 	 * Player inventory
 	 */
@@ -62,7 +123,17 @@ public class Game {
 	/**
 	 * Successfully executed command history
 	 */
-	protected Vector<Command> commandHistory;
+	protected CommandHistory commandHistory;
+
+	/**
+	 * The turns played, with the changes made by each of them
+	 */
+	private Timeline timeline = new Timeline();
+
+	/**
+	 * The observers of the changes made to the game (null if there is none)
+	 */
+	private List<GameListener> listeners;
 
 	/**
 	 * Vector with all gameEvent messages.
@@ -79,13 +150,22 @@ public class Game {
 	 */
 	private boolean eventFlag;
 
+	/**
+	 * Locations of the game indexed by their id, in definition order
+	 */
 	private Map<String, Location> locations;
 
+	/**
+	 * Connections of every location (direction and id of the connected
+	 * location) indexed by location id, as they appear in the definition
+	 */
 	private Map<String, EnumMap<Direction, String>> connections;
 
-	private EnumMap<Direction, String> tempDirection;
-
-	private String locationID;
+	/**
+	 * Ids of the locations that were defined more than once (each definition
+	 * overrides the previous one), in definition order
+	 */
+	private List<String> duplicateLocationIDs;
 
 	/**
 	 * Represents all the possible directions for the connections between
@@ -233,22 +313,70 @@ public class Game {
 	 *             The game definition is invalid so a new game cannot be
 	 *             created with it. Additional information is provided about the
 	 *             error found in the definition and its position (e.g.
-	 *             "Error in Token[location], line 14: First-level structures should be locations."
-	 *             ).
+	 *             "Error in line: 14, column: 1 in definitions game
+	 *             Second token after *game* must be *location*").
 	 */
 	public Game(InputStream gameDefinition)
 			throws InvalidGameDefinitionException {
-		if (gameDefinition == null)
+		this(gameDefinition, Charset.defaultCharset());
+	}
+
+	/**
+	 * Constructs a game, based on a textual definition of it written in a given
+	 * charset. The definition follows the same rules of
+	 * {@link #Game(InputStream)}.
+	 * 
+	 * @param gameDefinition
+	 *            The game definition.
+	 * @param charset
+	 *            The charset of the game definition.
+	 * @throws IllegalArgumentException
+	 *             The arguments 'gameDefinition' and 'charset' cannot be null.
+	 * @throws InvalidGameDefinitionException
+	 *             The game definition is invalid so a new game cannot be
+	 *             created with it. The exception reports the line and column
+	 *             of the error found in the definition.
+	 */
+	public Game(InputStream gameDefinition, Charset charset)
+			throws InvalidGameDefinitionException {
+		this(gameDefinition, charset, false);
+	}
+
+	/**
+	 * Constructs a game, based on a textual definition of it written in a given
+	 * charset, optionally splitting the definition at its top-level 'location'
+	 * keywords and parsing its parts in parallel. The resulting game is the
+	 * same one in both cases (the first location of the definition is the
+	 * initial location), but parallel loading only pays off for big
+	 * definitions.
+	 * 
+	 * @param gameDefinition
+	 *            The game definition.
+	 * @param charset
+	 *            The charset of the game definition.
+	 * @param parallel
+	 *            Whether the definition is parsed in parallel.
+	 * @throws IllegalArgumentException
+	 *             The arguments 'gameDefinition' and 'charset' cannot be null.
+	 * @throws InvalidGameDefinitionException
+	 *             The game definition is invalid so a new game cannot be
+	 *             created with it. The exception reports the line and column
+	 *             of the error found in the definition.
+	 */
+	public Game(InputStream gameDefinition, Charset charset, boolean parallel)
+			throws InvalidGameDefinitionException {
+		if ((gameDefinition == null) || (charset == null))
 			throw new IllegalArgumentException(
 					"Error: IllegalArgumentException");
 
-		locations = new Hashtable<String, Location>();
-		connections = new Hashtable<String, EnumMap<Direction, String>>();
-		commandHistory = new Vector<Command>();
+		locations = new LinkedHashMap<String, Location>();
+		connections = new LinkedHashMap<String, EnumMap<Direction, String>>();
+		duplicateLocationIDs = new ArrayList<String>();
+		commandHistory = new CommandHistory();
 		playerInventory = new ItemRepository();
 		gameEvents = new Vector<String>();
 
-		createGameDefinition(gameDefinition);
+		createGameDefinition(gameDefinition, charset, parallel);
 	}
 
 	/**
@@ -277,180 +405,441 @@ public class Game {
 		this.description = description;
 		this.currentLocation = initialLocation;
 
-		locations = new Hashtable<String, Location>();
-		connections = new Hashtable<String, EnumMap<Direction, String>>();
-		commandHistory = new Vector<Command>();
+		locations = new LinkedHashMap<String, Location>();
+		connections = new LinkedHashMap<String, EnumMap<Direction, String>>();
+		duplicateLocationIDs = new ArrayList<String>();
+		commandHistory = new CommandHistory();
 		playerInventory = new ItemRepository();
 		gameEvents = new Vector<String>();
 	}
 
-	private void createGameDefinition(InputStream gameDefinition)
-			throws InvalidGameDefinitionException {
-		Reader r = new BufferedReader(new InputStreamReader(gameDefinition));
-		StreamTokenizer st = new StreamTokenizer(r);
-		boolean firstLineParsed = false;
-		st.commentChar(35);
-		st.quoteChar(34);
+	/**
+	 * Constructs a game that shares the world of a template with the other
+	 * games of the same template. The game begins with the player in the
+	 * initial location of the template and the items where they were loaded,
+	 * and it only takes memory for the items moved and the player inventory.
+	 * 
+	 * @param template
+	 *            The template.
+	 * @throws IllegalArgumentException
+	 *             The argument 'template' cannot be null.
+	 */
+	Game(GameTemplate template) {
+		if (template == null)
+			throw new IllegalArgumentException();
+		title = template.getTitle();
+		author = template.getAuthor();
+		description = template.getDescription();
+
+		locations = template.getLocations();
+		connections = template.getConnections();
+		duplicateLocationIDs = template.getDuplicateLocationIDs();
+		commandHistory = new CommandHistory();
+		playerInventory = new ItemRepository();
+		gameEvents = new Vector<String>();
 
-		try {
-			st.nextToken();
-
-			if (st.ttype == StreamTokenizer.TT_EOF)
-				throw new InvalidGameDefinitionException(
-						"Error in definitions game. Empty file");
-
-			while (st.ttype != StreamTokenizer.TT_EOF) {
-				if (st.ttype == StreamTokenizer.TT_WORD) {
-					if ((!firstLineParsed) && !(st.sval.equals("game"))) {
-						throw new InvalidGameDefinitionException(
-								"Error in line: " + st.lineno()
-										+ " in definitions game"
-										+ LINE_SEPARATOR
-										+ "First token must be *game*");
-					}
+		world = template.getWorld();
+		worldItems = template.getWorldItems();
+		worldItemHomes = template.getWorldItemHomes();
+		movedItems = new ItemPlaces(worldItems.length);
+		currentLocation = template.getInitialLocation();
+		initialLocation = currentLocation;
+		updateCurrentLocationId();
+	}
 
-					if (st.sval.equals("game") && (!firstLineParsed)) {
-						createDescription(st);
-						firstLineParsed = true;
-					} else if (st.sval.equals("location")) {
-						createLocation(st);
-					} else
-						throw new InvalidGameDefinitionException(
-								"Error in line: "
-										+ st.lineno()
-										+ " in definitions game"
-										+ LINE_SEPARATOR
-										+ "Second token after *game* must be *location*");
-				} else
-					throw new InvalidGameDefinitionException("Error in line: "
-							+ st.lineno() + " in definitions game"
-							+ LINE_SEPARATOR + "Not a word");
+	private void createGameDefinition(InputStream gameDefinition,
+			Charset charset, boolean parallel)
+			throws InvalidGameDefinitionException {
+		ByteBuffer buf;
+		try {
+			try {
+				buf = GameLexer.read(gameDefinition);
+			} finally {
+				gameDefinition.close();
 			}
-			linkLocations();
-			r.close();
 		} catch (IOException e) {
-			throw new InvalidGameDefinitionException("Error in line: "
-					+ st.lineno() + " in definitions game");
-		} catch (NullPointerException e) {
-			throw new InvalidGameDefinitionException("Error in line: "
-					+ st.lineno() + " in definitions game");
+			throw new InvalidGameDefinitionException(
+					"Error in definitions game. Cannot be read");
 		}
+
+		List<GameDefinitionParser> parts;
+		if (parallel) {
+			parts = GameDefinitionParser.parseInParallel(buf, charset);
+		} else {
+			GameDefinitionParser parser = new GameDefinitionParser(
+					new GameLexer(buf, charset));
+			parser.parse();
+			parts = new ArrayList<GameDefinitionParser>();
+			parts.add(parser);
+		}
+
+		title = parts.get(0).getTitle();
+		author = parts.get(0).getAuthor();
+		description = parts.get(0).getDescription();
+		for (GameDefinitionParser part : parts) {
+			for (int i = 0; i < part.getIds().size(); i++) {
+				// Agregar localizacin inicial
+				if (currentLocation == null)
+					currentLocation = part.getLocations().get(i);
+				addLocation(part.getIds().get(i), part.getLocations().get(i),
+						part.getConnections().get(i));
+			}
+		}
+
+		linkLocations(parallel);
+	}
+
+	/**
+	 * Adds a location of the game definition, with the ids of its connected
+	 * locations.
+	 * 
+	 * @param id
+	 *            The location id.
+	 * @param location
+	 *            The location.
+	 * @param connectedLocationIDs
+	 *            The ids of the connected locations.
+	 */
+	void addLocation(String id, Location location,
+			EnumMap<Direction, String> connectedLocationIDs) {
+		if (locations.containsKey(id))
+			duplicateLocationIDs.add(id);
+		connections.put(id, connectedLocationIDs);
+		locations.put(id, location);
 	}
 
-	private void createDescription(StreamTokenizer st) throws IOException {
+	/**
+	 * Sets the locations of the game, with the ids of their connected
+	 * locations, at once instead of adding them one by one (see GameImage).
+	 * 
+	 * @param locations
+	 *            The locations, indexed by their id.
+	 * @param connections
+	 *            The ids of the connected locations of every location, indexed
+	 *            by its id.
+	 */
+	void setLocations(Map<String, Location> locations,
+			Map<String, EnumMap<Direction, String>> connections) {
+		this.locations = locations;
+		this.connections = connections;
+	}
 
-		st.nextToken();
-		title = st.sval;
-		st.nextToken();
-		author = st.sval;
-		st.nextToken();
-		description = st.sval;
-		st.nextToken();
+	/**
+	 * Gets the locations of the game indexed by their id, in definition order.
+	 * 
+	 * @return The locations.
+	 */
+	Map<String, Location> getLocations() {
+		return locations;
+	}
 
+	/**
+	 * Gets the ids of the connected locations of every location, indexed by
+	 * location id.
+	 * 
+	 * @return The connections.
+	 */
+	Map<String, EnumMap<Direction, String>> getConnections() {
+		return connections;
 	}
 
-	private Location readLocation(StreamTokenizer st) throws IOException {
+	/**
+	 * Gets the ids of the locations that were defined more than once, in
+	 * definition order.
+	 * 
+	 * @return The ids.
+	 */
+	List<String> getDuplicateLocationIDs() {
+		return duplicateLocationIDs;
+	}
 
-		st.nextToken();
-		locationID = st.sval;
-		st.nextToken();
-		String locationName = st.sval;
-		st.nextToken();
-		String locationDescription = st.sval;
+	/**
+	 * Gets the title of the game.
+	 * 
+	 * @return The title.
+	 */
+	String getTitle() {
+		return title;
+	}
 
-		st.nextToken();
-		if (st.ttype == StreamTokenizer.TT_NUMBER) {
-			int threshold = (int) st.nval;
-			st.nextToken();
-			String endMsg = st.sval;
-			st.nextToken();
-			Location tempLocation = new Location(locationName,
-					locationDescription, threshold, endMsg);
-			// Agregar localizacin inicial
-			if (currentLocation == null)
-				currentLocation = tempLocation;
-			return tempLocation;
-		} else {
-			Location tempLocation = new Location(locationName,
-					locationDescription);
-			// Agregar localizacin inicial
-			if (currentLocation == null)
-				currentLocation = tempLocation;
-			return tempLocation;
-		}
+	/**
+	 * Gets the author of the game.
+	 * 
+	 * @return The author.
+	 */
+	String getAuthor() {
+		return author;
 	}
 
-	private void readItems(StreamTokenizer st, Location tempLocation)
-			throws IOException {
+	/**
+	 * Gets the description of the game.
+	 * 
+	 * @return The description.
+	 */
+	String getDescription() {
+		return description;
+	}
 
-		if (st.sval.equals("item")) {
-			while (st.sval.equals("item")) {
-				st.nextToken();
-				String itemName = st.sval;
-				st.nextToken();
-				String itemDescription = st.sval;
-				st.nextToken();
-				int itemValue = (int) st.nval;
-				st.nextToken();
+	/**
+	 * Gets the player location.
+	 * 
+	 * @return The location.
+	 */
+	Location getCurrentLocation() {
+		return currentLocation;
+	}
 
-				tempLocation.addItem(new Item(itemName, itemDescription,
-						itemValue));
+	/**
+	 * Sets the world of the game, made of the locations of the game. The
+	 * player stays in the same location.
+	 * 
+	 * @param world
+	 *            The world.
+	 */
+	void setWorld(World world) {
+		this.world = world;
+		initialLocation = currentLocation;
+		updateCurrentLocationId();
+
+		List<Item> items = new ArrayList<Item>();
+		List<Integer> homes = new ArrayList<Integer>();
+		for (int i = 0; i < world.size(); i++) {
+			for (Item item : world.getLocation(i).getAllItems()) {
+				items.add(item);
+				homes.add(i);
 			}
 		}
+		worldItems = items.toArray(new Item[items.size()]);
+		worldItemHomes = new int[worldItems.length];
+		for (int i = 0; i < worldItems.length; i++) {
+			worldItems[i].setWorldId(i);
+			worldItemHomes[i] = homes.get(i);
+		}
+		movedItems = new ItemPlaces(worldItems.length);
+		movedInItems.clear();
 	}
 
-	private void readConnections(StreamTokenizer st) throws IOException {
-		while (!st.sval.equals("location")) {
-			String shortDirection = st.sval;
-			st.nextToken();
-			String connectedLocationID = st.sval;
-			for (Direction dir : Direction.values()) {
-				if (dir.getKeyword().equals(shortDirection)) {
-					tempDirection.put(dir, connectedLocationID);
-					break;
-				}
-			}
-			if (st.nextToken() == StreamTokenizer.TT_EOF) {
-				break;
+	/**
+	 * Gets the world of the game.
+	 * 
+	 * @return The world, or null if the locations are linked to each other.
+	 */
+	World getWorld() {
+		return world;
+	}
+
+	/**
+	 * Gets an item of the world of the game.
+	 * 
+	 * @param id
+	 *            The id of the item.
+	 * @return The item.
+	 * @throws IndexOutOfBoundsException
+	 *             There is no item with that id.
+	 */
+	Item getWorldItem(int id) {
+		return worldItems[id];
+	}
+
+	/**
+	 * Gets the items of the world of the game, by id.
+	 * 
+	 * @return The items; the array cannot be changed.
+	 */
+	Item[] getWorldItems() {
+		return worldItems;
+	}
+
+	/**
+	 * Gets the ids of the locations where the items of the world of the game
+	 * were when the game was loaded, by the id of the item.
+	 * 
+	 * @return The ids; the array cannot be changed.
+	 */
+	int[] getWorldItemHomes() {
+		return worldItemHomes;
+	}
+
+	/**
+	 * Gets the items of the player inventory.
+	 * 
+	 * @return The set of items.
+	 */
+	Set<Item> getInventoryItems() {
+		return playerInventory.getAllItems();
+	}
+
+	/**
+	 * Gets the id of the location where an item of the world of the game was
+	 * when the game was loaded.
+	 * 
+	 * @param id
+	 *            The id of the item.
+	 * @return The id of the location.
+	 * @throws IndexOutOfBoundsException
+	 *             There is no item with that id.
+	 */
+	int getWorldItemHome(int id) {
+		return worldItemHomes[id];
+	}
+
+	/**
+	 * Takes a point-in-time view of the state of the game in its world: the
+	 * location of the player and the places of the items. It takes constant
+	 * time, since the places of the moved items are immutable and they are
+	 * shared with the snapshot as they are.
+	 * 
+	 * @return The snapshot.
+	 */
+	GameSnapshot snapshot() {
+		return new GameSnapshot(world.size(), currentLocationId,
+				worldItemHomes, movedItems);
+	}
+
+	private void setWorldItemPlace(Item item, int place) {
+		int previous = movedItems.get(item.getWorldId());
+		movedItems = movedItems.set(item.getWorldId(), place);
+		if ((previous != ItemPlaces.UNMOVED) && (previous != World.NONE)) {
+			ItemRepository movedIn = movedInItems.get(previous);
+			movedIn.removeItem(item);
+			if (movedIn.isEmpty())
+				movedInItems.remove(previous);
+		}
+		// An item moved again goes after the other items of its location
+		if (place != World.NONE) {
+			ItemRepository movedIn = movedInItems.get(place);
+			if (movedIn == null) {
+				movedIn = new ItemRepository();
+				movedInItems.put(place, movedIn);
 			}
+			movedIn.addItem(item);
 		}
 	}
 
-	private void createLocation(StreamTokenizer st) throws IOException {
-		tempDirection = new EnumMap<Direction, String>(Direction.class);
+	/**
+	 * Checks whether an item and a location are part of the world of the
+	 * game, so the place of the item is recorded by the game instead of by
+	 * the location.
+	 */
+	private boolean isInWorld(Item item, Location location) {
+		int id = item.getWorldId();
+		return (world != null) && (location.getWorld() == world)
+				&& (id != World.NONE) && (id < worldItems.length)
+				&& (worldItems[id] == item);
+	}
+
+	private boolean hasItem(Location location, Item item) {
+		if (!isInWorld(item, location))
+			return location.hasItem(item);
+		int place = movedItems.get(item.getWorldId());
+		if (place == ItemPlaces.UNMOVED)
+			return location.hasItem(item);
+		return (place == location.getWorldId());
+	}
+
+	/**
+	 * Gets the items of a location (or only those with a common name, if the
+	 * name is not null): the items loaded there that have not been moved,
+	 * followed by the items moved there. It takes time in proportion to the
+	 * items found, not to the items moved in the whole world.
+	 */
+	private Set<Item> getItems(Location location, String name) {
+		Set<Item> loaded = (name == null) ? location.getAllItems() : location
+				.getItems(name);
+		if ((world == null) || (location.getWorld() != world)
+				|| movedItems.isEmpty())
+			return loaded;
+
+		ItemRepository movedIn = movedInItems.get(location.getWorldId());
+		Set<Item> arrived;
+		if (movedIn == null)
+			arrived = Collections.emptySet();
+		else
+			arrived = (name == null) ? movedIn.getAllItems() : movedIn
+					.getItems(name);
+		boolean left = false;
+		for (Item item : loaded) {
+			if (movedItems.get(item.getWorldId()) != ItemPlaces.UNMOVED) {
+				left = true;
+				break;
+			}
+		}
+		if (!left && arrived.isEmpty())
+			return loaded;
 
-		Location tempLocation = readLocation(st);
-		readItems(st, tempLocation);
-		readConnections(st);
+		Set<Item> items = new LinkedHashSet<Item>();
+		for (Item item : loaded) {
+			if (movedItems.get(item.getWorldId()) == ItemPlaces.UNMOVED)
+				items.add(item);
+		}
+		items.addAll(arrived);
+		return Collections.unmodifiableSet(items);
+	}
 
-		connections.put(locationID, tempDirection);
-		locations.put(locationID, tempLocation);
+	/**
+	 * Gets the number of items of the world of the game.
+	 * 
+	 * @return The number of items.
+	 */
+	int getNumberOfWorldItems() {
+		return worldItems.length;
 	}
 
-	private void linkLocations() {
-		Location connectedLocation;
-		String connectedLocationName;
-		tempDirection = new EnumMap<Direction, String>(Direction.class);
+	private void updateCurrentLocationId() {
+		if ((currentLocation != null) && (currentLocation.getWorld() == world))
+			currentLocationId = currentLocation.getWorldId();
+		else
+			currentLocationId = World.NONE;
+	}
 
-		for (String name : locations.keySet()) {
-			tempDirection = connections.get(name);
+	private void linkLocations(boolean parallel) {
+		final Location[] table = locations.values().toArray(
+				new Location[locations.size()]);
+		final String[] ids = locations.keySet().toArray(
+				new String[locations.size()]);
+		final Map<String, Integer> worldIds = new HashMap<String, Integer>(
+				ids.length * 2);
+		for (int i = 0; i < ids.length; i++)
+			worldIds.put(ids[i], i);
+		final World linked = new World(table);
+
+		class LinkTask extends RecursiveAction {
+			private static final long serialVersionUID = 1L;
+			private final int from, to;
+
+			LinkTask(int from, int to) {
+				this.from = from;
+				this.to = to;
+			}
 
-			for (Direction dir : Direction.values()) {
-				if (tempDirection.containsKey(dir)) {
-					connectedLocationName = tempDirection.get(dir);
-					if (locations.containsKey(connectedLocationName)) {
-						connectedLocation = locations
-								.get(connectedLocationName);
-						locations.get(name).setConnection(dir,
-								connectedLocation);
+			protected void compute() {
+				if (to - from > LINK_BATCH_SIZE) {
+					int middle = (from + to) >>> 1;
+					invokeAll(new LinkTask(from, middle), new LinkTask(middle,
+							to));
+					return;
+				}
+				for (int i = from; i < to; i++) {
+					for (Map.Entry<Direction, String> e : connections.get(
+							ids[i]).entrySet()) {
+						Integer connection = worldIds.get(e.getValue());
+						if (connection != null)
+							linked.setConnection(i, e.getKey(), connection);
 					}
 				}
 			}
 		}
+		if (parallel)
+			GameDefinitionParser.getPool().invoke(new LinkTask(0, ids.length));
+		else
+			new LinkTask(0, ids.length).compute();
+		setWorld(linked);
 	}
 
 	/**
-	 * Adds an executed command to the command history.
+	 * Adds an executed command to the command history. The changes made to the
+	 * game since the previous executed command become a new turn of the game,
+	 * and the turns older than the commands kept in the history are discarded.
 	 * 
 	 * @param command
 	 *            The executed command.
@@ -460,14 +849,18 @@ public class Game {
 	public void addExecutedCommand(Command command) {
 		if (command == null)
 			throw new IllegalArgumentException();
+		timeline.commit();
 		commandHistory.add(command);
+		timeline.trim(commandHistory.size());
 	}
 
 	/**
-	 * Clears the history of executed commands.
+	 * Clears the history of executed commands (the turns played so far cannot
+	 * be undone any more).
 	 */
 	public void clearExecutedCommands() {
 		commandHistory.clear();
+		timeline.trim(0);
 	}
 
 	/**
@@ -488,12 +881,7 @@ public class Game {
 	 *             newest executed command cannot be removed.
 	 */
 	public Command removeNewestExecutedCommand() {
-		if (commandHistory.isEmpty())
-			throw new NoExecutedCommandsException(
-					"Error: NoExecutedCommandsException");
-		Command temp = commandHistory.lastElement();
-		commandHistory.remove(commandHistory.lastElement());
-		return temp;
+		return commandHistory.removeNewest();
 	}
 
 	/**
@@ -505,12 +893,306 @@ public class Game {
 	 *             oldest executed command cannot be removed.
 	 */
 	public Command removeOldestExecutedCommand() {
-		if (commandHistory.isEmpty())
-			throw new NoExecutedCommandsException(
-					"Error: NoExecutedCommandsException");
-		Command temp = commandHistory.firstElement();
-		commandHistory.remove(commandHistory.firstElement());
-		return temp;
+		Command command = commandHistory.removeOldest();
+		timeline.trim(commandHistory.size());
+		return command;
+	}
+
+	/**
+	 * Limits the command history: when a new executed command exceeds a limit,
+	 * the oldest executed commands are discarded (the newest one is always
+	 * kept, unless the maximum number of commands is 0).
+	 * 
+	 * @param size
+	 *            The maximum number of executed commands.
+	 * @param bytes
+	 *            The maximum number of bytes retained by the executed
+	 *            commands (0 if there is no byte limit).
+	 * @throws IllegalArgumentException
+	 *             The arguments 'size' and 'bytes' cannot be negative.
+	 */
+	public void setCommandHistoryLimits(int size, long bytes) {
+		commandHistory.setLimits(size, bytes);
+		timeline.trim(commandHistory.size());
+	}
+
+	/**
+	 * Gets the current turn of the game. It can be kept for going back to it
+	 * later.
+	 * 
+	 * @return The turn.
+	 */
+	public Timeline.Turn getCurrentTurn() {
+		return timeline.getCurrentTurn();
+	}
+
+	/**
+	 * Undoes the last turn of the game, restoring the player location, the
+	 * player inventory and the items of the locations as they were before it.
+	 * If some changes have been made since the last executed command, only
+	 * those changes are undone.
+	 * 
+	 * @return true if something was undone; false if the game is at its
+	 *         beginning, or at the oldest turn kept.
+	 */
+	public boolean undoTurn() {
+		if (timeline.hasPendingChanges()) {
+			for (Timeline.Change change : timeline.takePendingChanges())
+				revert(change);
+			return true;
+		}
+		if (timeline.undoEmptyTurn())
+			return true;
+		Timeline.Turn turn = timeline.getCurrentTurn();
+		Timeline.Turn previous = Timeline.getPrevious(turn);
+		if (previous == null)
+			return false;
+		revert(turn);
+		timeline.setCurrentTurn(previous);
+		return true;
+	}
+
+	/**
+	 * Redoes the last undone turn of the game (the changes made since the last
+	 * executed command are undone first).
+	 * 
+	 * @return true if a turn was redone; false if there is no undone turn.
+	 */
+	public boolean redoTurn() {
+		undoPendingChanges();
+		Timeline.Turn next = Timeline.getNext(timeline.getCurrentTurn());
+		if (next == null)
+			return false;
+		apply(next);
+		timeline.setCurrentTurn(next);
+		return true;
+	}
+
+	/**
+	 * Takes the game to a turn kept before (earlier or in another branch of
+	 * the game), undoing and redoing the turns between the current turn and
+	 * that one. The changes made since the last executed command are undone
+	 * first.
+	 * 
+	 * @param turn
+	 *            The turn.
+	 * @throws IllegalArgumentException
+	 *             The argument 'turn' cannot be null and it must be a turn of
+	 *             this game that has not been discarded.
+	 */
+	public void goToTurn(Timeline.Turn turn) {
+		if (!timeline.contains(turn))
+			throw new IllegalArgumentException();
+		undoPendingChanges();
+
+		Timeline.Turn from = timeline.getCurrentTurn();
+		List<Timeline.Turn> forward = new ArrayList<Timeline.Turn>();
+		while (from.getNumber() > turn.getNumber())
+			from = undo(from);
+		while (turn.getNumber() > from.getNumber()) {
+			forward.add(turn);
+			turn = Timeline.getPrevious(turn);
+		}
+		while (from != turn) {
+			from = undo(from);
+			forward.add(turn);
+			turn = Timeline.getPrevious(turn);
+		}
+		for (int i = forward.size() - 1; i >= 0; i--) {
+			apply(forward.get(i));
+			timeline.setCurrentTurn(forward.get(i));
+		}
+	}
+
+	private Timeline.Turn undo(Timeline.Turn turn) {
+		Timeline.Turn previous = Timeline.getPrevious(turn);
+		revert(turn);
+		timeline.setCurrentTurn(previous);
+		return previous;
+	}
+
+	private void undoPendingChanges() {
+		if (timeline.hasPendingChanges())
+			undoTurn();
+	}
+
+	private void apply(Timeline.Turn turn) {
+		for (Timeline.Change change : Timeline.getChanges(turn)) {
+			if (change.item == null)
+				setCurrentLocation(change.destination);
+			else if (change.taken)
+				take(change.item, change.location);
+			else
+				drop(change.item, change.location);
+		}
+	}
+
+	private void revert(Timeline.Turn turn) {
+		Timeline.Change[] changes = Timeline.getChanges(turn);
+		for (int i = changes.length - 1; i >= 0; i--)
+			revert(changes[i]);
+	}
+
+	private void revert(Timeline.Change change) {
+		if (change.item == null)
+			setCurrentLocation(change.location);
+		else if (change.taken)
+			drop(change.item, change.location);
+		else
+			take(change.item, change.location);
+	}
+
+	/**
+	 * Moves an item from a location to the player inventory, telling the
+	 * listeners.
+	 */
+	void take(Item item, Location location) {
+		if (isInWorld(item, location)) {
+			if (!hasItem(location, item))
+				throw new ItemNotInRepositoryException(
+						"Error: ItemNotInRepositoryException");
+			playerInventory.addItem(item);
+			setWorldItemPlace(item, World.NONE);
+		} else {
+			playerInventory.addItem(item);
+			location.removeItem(item);
+		}
+		if (listeners != null) {
+			for (GameListener listener : listeners)
+				listener.itemTaken(item, location);
+		}
+	}
+
+	/**
+	 * Moves an item from the player inventory to a location, telling the
+	 * listeners.
+	 */
+	void drop(Item item, Location location) {
+		if (isInWorld(item, location)) {
+			if (hasItem(location, item))
+				throw new ItemAlreadyInRepositoryException(
+						"Error: ItemAlreadyInRepositoryException");
+			playerInventory.removeItem(item);
+			setWorldItemPlace(item, location.getWorldId());
+		} else {
+			location.addItem(item);
+			playerInventory.removeItem(item);
+		}
+		if (listeners != null) {
+			for (GameListener listener : listeners)
+				listener.itemDropped(item, location);
+		}
+	}
+
+	/**
+	 * Moves the player to a location, telling the listeners.
+	 */
+	void setCurrentLocation(Location location) {
+		Location origin = currentLocation;
+		currentLocation = location;
+		updateCurrentLocationId();
+		if (listeners != null) {
+			for (GameListener listener : listeners)
+				listener.playerMoved(origin, location);
+		}
+	}
+
+	/**
+	 * Restores the state of the game in its world: the location of the player
+	 * and the items of every location and of the player inventory, without
+	 * telling the listeners. The items of a location that were loaded there
+	 * keep their order, before the other ones. The executed commands and the
+	 * turns played before are forgotten, since they cannot be undone from the
+	 * new state.
+	 * 
+	 * @param location
+	 *            The location of the player.
+	 * @param locationItems
+	 *            The items of every location, by the id of the location.
+	 * @param inventory
+	 *            The items of the player inventory.
+	 */
+	void restore(Location location, List<List<Item>> locationItems,
+			List<Item> inventory) {
+		clearItems();
+		for (int i = 0; i < world.size(); i++) {
+			for (Item item : locationItems.get(i)) {
+				if (worldItemHomes[item.getWorldId()] != i)
+					setWorldItemPlace(item, i);
+			}
+		}
+		for (Item item : inventory) {
+			playerInventory.addItem(item);
+			setWorldItemPlace(item, World.NONE);
+		}
+		currentLocation = location;
+		updateCurrentLocationId();
+		commandHistory.clear();
+		timeline = new Timeline();
+	}
+
+	/**
+	 * Puts the game back to its beginning, without telling the listeners: the
+	 * player in the initial location, the items where they were loaded and
+	 * an empty inventory. The executed commands, the turns played and the
+	 * events are forgotten and the game is not ended any more. It takes time
+	 * in proportion to the items moved, not to the size of the world, so a
+	 * game can be reused for a new player instead of loading it again.
+	 * 
+	 * @throws IllegalStateException
+	 *             The game has no world, so the places where its items were
+	 *             loaded are not known.
+	 */
+	public void reset() {
+		if (world == null)
+			throw new IllegalStateException();
+		clearItems();
+		currentLocation = initialLocation;
+		updateCurrentLocationId();
+		commandHistory.clear();
+		timeline = new Timeline();
+		gameEvents.clear();
+		eventFlag = false;
+		quitFlag = false;
+	}
+
+	/**
+	 * Puts the items of the world back where they were loaded, leaving the
+	 * player inventory empty.
+	 */
+	private void clearItems() {
+		for (Item item : new ArrayList<Item>(playerInventory.getAllItems()))
+			playerInventory.removeItem(item);
+		movedItems = new ItemPlaces(worldItems.length);
+		movedInItems.clear();
+	}
+
+	/**
+	 * Adds a listener that is told about the changes made to the game from now
+	 * on.
+	 * 
+	 * @param listener
+	 *            The listener.
+	 * @throws IllegalArgumentException
+	 *             The argument 'listener' cannot be null.
+	 */
+	public void addListener(GameListener listener) {
+		if (listener == null)
+			throw new IllegalArgumentException();
+		if (listeners == null)
+			listeners = new ArrayList<GameListener>(1);
+		listeners.add(listener);
+	}
+
+	/**
+	 * Removes a listener, so it is not told about more changes.
+	 * 
+	 * @param listener
+	 *            The listener.
+	 */
+	public void removeListener(GameListener listener) {
+		if (listeners != null)
+			listeners.remove(listener);
 	}
 
 	/**
@@ -546,6 +1228,8 @@ public class Game {
 	public boolean hasConnectedLocation(Direction direction) {
 		if (direction == null)
 			throw new IllegalArgumentException();
+		if (currentLocationId != World.NONE)
+			return (world.getConnection(currentLocationId, direction) != World.NONE);
 		return currentLocation.hasConnectedLocation(direction);
 	}
 
@@ -566,20 +1250,30 @@ public class Game {
 		if (direction == null)
 			throw new IllegalArgumentException();
 
-		if (currentLocation.hasConnectedLocation(direction)) {
-			currentLocation = currentLocation.getConnectedLocation(direction);
-			if (currentLocation.hasExitThreshold()) {
-				if (playerInventory.getTotalValue() >= currentLocation
-						.getExitThreshold()) {
-					this.eventFlag = true;
-					gameEvents.add(currentLocation.getExitMessage());
-					end();
-				}
-			}
-			return true;
+		Location origin = currentLocation;
+		if (currentLocationId != World.NONE) {
+			int connection = world.getConnection(currentLocationId, direction);
+			if (connection == World.NONE)
+				throw new NoConnectedLocationException(
+						"Error: NoConnectedLocationException");
+			setCurrentLocation(world.getLocation(connection));
+		} else if (currentLocation.hasConnectedLocation(direction)) {
+			setCurrentLocation(currentLocation.getConnectedLocation(direction));
 		} else
 			throw new NoConnectedLocationException(
 					"Error: NoConnectedLocationException");
+		timeline.recordMovement(origin, currentLocation);
+
+		currentLocation.prefetchConnectedLocations();
+		if (currentLocation.hasExitThreshold()) {
+			if (playerInventory.getTotalValue() >= currentLocation
+					.getExitThreshold()) {
+				this.eventFlag = true;
+				gameEvents.add(currentLocation.getExitMessage());
+				end();
+			}
+		}
+		return true;
 	}
 
 	/**
@@ -648,7 +1342,7 @@ public class Game {
 	 * @return The set of items.
 	 */
 	public Set<Item> reportAllLocationItems() {
-		return currentLocation.getAllItems();
+		return getItems(currentLocation, null);
 	}
 
 	/**
@@ -669,9 +1363,9 @@ public class Game {
 			throw new IllegalArgumentException();
 
 		if (!playerInventory.hasItem(item)) {
-			if (currentLocation.hasItem(item)) {
-				playerInventory.addItem(item);
-				currentLocation.removeItem(item);
+			if (hasItem(currentLocation, item)) {
+				take(item, currentLocation);
+				timeline.recordItem(item, currentLocation, true);
 				return true;
 			} else
 				throw new ItemNotInRepositoryException(
@@ -699,9 +1393,9 @@ public class Game {
 			throw new IllegalArgumentException();
 
 		if (playerInventory.hasItem(item)) {
-			if (!currentLocation.hasItem(item)) {
-				currentLocation.addItem(item);
-				playerInventory.removeItem(item);
+			if (!hasItem(currentLocation, item)) {
+				drop(item, currentLocation);
+				timeline.recordItem(item, currentLocation, false);
 				return true;
 			} else
 				throw new ItemAlreadyInRepositoryException(
@@ -742,7 +1436,7 @@ public class Game {
 			throw new IllegalArgumentException(
 					"Error: IllegalArgumentException");
 		}
-		return currentLocation.hasItem(item);
+		return hasItem(currentLocation, item);
 	}
 
 	/**
@@ -781,7 +1475,7 @@ public class Game {
 	public Set<Item> getItemsFromLocation(String name) {
 		if (name == null)
 			throw new IllegalArgumentException();
-		return currentLocation.getItems(name);
+		return getItems(currentLocation, name);
 	}
 
 	/**
@@ -0,0 +1,90 @@
+package es.ucm.fdi.lps.p3;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import es.ucm.fdi.lps.p3.exception.InvalidGameDefinitionException;
+
+/**
+ * The game compiler (gamec), that turns a textual game definition into a game
+ * image that can be loaded without parsing it again.
+ * 
+ * @see GameImage
+ */
+public class GameCompiler {
+
+	private GameCompiler() {
+	}
+
+	/**
+	 * Compiles a textual game definition into a game image.
+	 * 
+	 * @param gameDefinition
+	 *            The game definition file.
+	 * @param image
+	 *            The game image file.
+	 * @throws IllegalArgumentException
+	 *             The arguments 'gameDefinition' and 'image' cannot be null.
+	 * @throws IOException
+	 *             The files cannot be read or written.
+	 * @throws InvalidGameDefinitionException
+	 *             The game definition is invalid.
+	 */
+	public static void compile(File gameDefinition, File image)
+			throws IOException, InvalidGameDefinitionException {
+		if ((gameDefinition == null) || (image == null))
+			throw new IllegalArgumentException();
+
+		Game game;
+		FileInputStream in = new FileInputStream(gameDefinition);
+		try {
+			game = new Game(in);
+		} finally {
+			in.close();
+		}
+
+		FileOutputStream out = new FileOutputStream(image);
+		try {
+			GameImage.write(game, out);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Main method. Usage: gamec gameFilePath [imageFilePath]. <br>
+	 * (when no image file path is given, the game file path with the
+	 * extension changed to .gamec is used)
+	 * 
+	 * @param args
+	 *            Execution arguments read from console.
+	 * @throws IllegalArgumentException
+	 *             The argument 'args' cannot be null.
+	 */
+	public static void main(String[] args) {
+		if ((args.length < 1) || (args.length > 2))
+			throw new IllegalArgumentException("Error: Wrong arguments number");
+
+		File gameDefinition = new File(args[0]);
+		File image;
+		if (args.length == 2)
+			image = new File(args[1]);
+		else {
+			String path = args[0];
+			int dot = path.lastIndexOf('.');
+			if (dot > path.lastIndexOf(File.separatorChar))
+				path = path.substring(0, dot);
+			image = new File(path + GameImage.FILE_EXTENSION);
+		}
+
+		try {
+			compile(gameDefinition, image);
+		} catch (IOException e) {
+			e.printStackTrace();
+		} catch (InvalidGameDefinitionException e) {
+			e.printStackTrace();
+		}
+	}
+}
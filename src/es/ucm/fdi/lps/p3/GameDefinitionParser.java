@@ -0,0 +1,367 @@
+package es.ucm.fdi.lps.p3;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import es.ucm.fdi.lps.p3.Game.Direction;
+import es.ucm.fdi.lps.p3.exception.InvalidGameDefinitionException;
+
+/**
+ * Parses a textual game definition (see {@link Game#Game(java.io.InputStream)})
+ * into its header and the list of its locations, with the ids of their
+ * connected locations, in definition order. Location blocks do not depend on
+ * each other until they are linked, so a big definition can be split at its
+ * top-level 'location' keywords and its parts parsed in parallel.
+ */
+class GameDefinitionParser {
+
+	/**
+	 * Minimum size of each part of a definition parsed in parallel
+	 */
+	static final int MIN_PART_SIZE = 256 * 1024;
+
+	/**
+	 * Keywords of the game definition
+	 */
+	private static final byte[] KEYWORD_GAME = ascii("game"),
+			KEYWORD_LOCATION = ascii("location"), KEYWORD_ITEM = ascii("item");
+
+	/**
+	 * All the directions, and their keywords in the game definition
+	 */
+	private static final Direction[] DIRECTIONS = Direction.values();
+	private static final byte[][] DIRECTION_KEYWORDS = new byte[DIRECTIONS.length][];
+	static {
+		for (Direction dir : DIRECTIONS)
+			DIRECTION_KEYWORDS[dir.ordinal()] = ascii(dir.getKeyword());
+	}
+
+	/**
+	 * Pool for the parallel work on games (loading and validating them)
+	 */
+	private static ForkJoinPool pool;
+
+	private final GameLexer lexer;
+
+	/**
+	 * Shared instances of the location ids and item names
+	 */
+	private final Map<String, String> names;
+
+	private String title, author, description;
+
+	/**
+	 * The ids of the locations, the locations and the ids of their connected
+	 * locations, in definition order
+	 */
+	private final List<String> ids;
+	private final List<Location> locations;
+	private final List<EnumMap<Direction, String>> connections;
+
+	/**
+	 * Constructs a parser for the definition read by a lexer.
+	 * 
+	 * @param lexer
+	 *            The lexer.
+	 */
+	GameDefinitionParser(GameLexer lexer) {
+		this.lexer = lexer;
+		names = new HashMap<String, String>();
+		ids = new ArrayList<String>();
+		locations = new ArrayList<Location>();
+		connections = new ArrayList<EnumMap<Direction, String>>();
+	}
+
+	/**
+	 * Parses a whole definition.
+	 * 
+	 * @throws InvalidGameDefinitionException
+	 *             The definition is invalid.
+	 */
+	void parse() throws InvalidGameDefinitionException {
+		parseHeader();
+		parseLocations();
+	}
+
+	/**
+	 * Parses the 'game' keyword plus the title, the author and the
+	 * description, leaving the lexer at the first location.
+	 * 
+	 * @throws InvalidGameDefinitionException
+	 *             The header is invalid.
+	 */
+	void parseHeader() throws InvalidGameDefinitionException {
+		if (lexer.next() == GameLexer.EOF)
+			throw lexer.error("Empty file");
+		if (!lexer.isWord(KEYWORD_GAME))
+			throw lexer.error("First token must be *game*");
+		title = lexer.nextString();
+		author = lexer.nextString();
+		description = lexer.nextString();
+		lexer.next();
+	}
+
+	/**
+	 * Parses location blocks from the current token to the end of the
+	 * definition.
+	 * 
+	 * @throws InvalidGameDefinitionException
+	 *             A location block is invalid.
+	 */
+	void parseLocations() throws InvalidGameDefinitionException {
+		while (lexer.type() != GameLexer.EOF) {
+			if (!lexer.isWord(KEYWORD_LOCATION))
+				throw lexer.error("Second token after *game* must be *location*");
+			readLocation();
+		}
+	}
+
+	private void readLocation() throws InvalidGameDefinitionException {
+		String id = intern(lexer.nextString());
+		String locationName = lexer.nextString();
+		String locationDescription = lexer.nextString();
+
+		Location location;
+		if (lexer.next() == GameLexer.NUMBER) {
+			int threshold = lexer.intValue();
+			String endMsg = lexer.nextString();
+			lexer.next();
+			location = new Location(locationName, locationDescription,
+					threshold, endMsg);
+		} else
+			location = new Location(locationName, locationDescription);
+
+		while (lexer.isWord(KEYWORD_ITEM)) {
+			String itemName = intern(lexer.nextString());
+			String itemDescription = lexer.nextString();
+			int itemValue = lexer.nextInt();
+			lexer.next();
+
+			location.addItem(new Item(itemName, itemDescription, itemValue));
+		}
+
+		EnumMap<Direction, String> connectedLocationIDs = new EnumMap<Direction, String>(
+				Direction.class);
+		while ((lexer.type() != GameLexer.EOF)
+				&& !lexer.isWord(KEYWORD_LOCATION)) {
+			Direction direction = null;
+			for (Direction dir : DIRECTIONS) {
+				if (lexer.isWord(DIRECTION_KEYWORDS[dir.ordinal()])) {
+					direction = dir;
+					break;
+				}
+			}
+			if (direction == null)
+				throw lexer.error("A direction or *location* was expected");
+			connectedLocationIDs.put(direction, intern(lexer.nextString()));
+			lexer.next();
+		}
+
+		ids.add(id);
+		locations.add(location);
+		connections.add(connectedLocationIDs);
+	}
+
+	private String intern(String name) {
+		String shared = names.get(name);
+		if (shared == null) {
+			names.put(name, name);
+			shared = name;
+		}
+		return shared;
+	}
+
+	private static byte[] ascii(String keyword) {
+		byte[] bytes = new byte[keyword.length()];
+		for (int i = 0; i < bytes.length; i++)
+			bytes[i] = (byte) keyword.charAt(i);
+		return bytes;
+	}
+
+	/**
+	 * Gets the title of the game.
+	 * 
+	 * @return The title, or null if the header has not been parsed.
+	 */
+	String getTitle() {
+		return title;
+	}
+
+	/**
+	 * Gets the author of the game.
+	 * 
+	 * @return The author, or null if the header has not been parsed.
+	 */
+	String getAuthor() {
+		return author;
+	}
+
+	/**
+	 * Gets the description of the game.
+	 * 
+	 * @return The description, or null if the header has not been parsed.
+	 */
+	String getDescription() {
+		return description;
+	}
+
+	/**
+	 * Gets the ids of the parsed locations, in definition order.
+	 * 
+	 * @return The ids.
+	 */
+	List<String> getIds() {
+		return ids;
+	}
+
+	/**
+	 * Gets the parsed locations, in definition order.
+	 * 
+	 * @return The locations.
+	 */
+	List<Location> getLocations() {
+		return locations;
+	}
+
+	/**
+	 * Gets the ids of the connected locations of the parsed locations, in
+	 * definition order.
+	 * 
+	 * @return The connections.
+	 */
+	List<EnumMap<Direction, String>> getConnections() {
+		return connections;
+	}
+
+	/**
+	 * Parses a definition, splitting it into parts at top-level 'location'
+	 * keywords and parsing the parts in parallel. The header is parsed by the
+	 * first parser of the result. If the definition is invalid, it is parsed
+	 * again sequentially so that the error reported is the same one.
+	 * 
+	 * @param buf
+	 *            The definition.
+	 * @param charset
+	 *            The charset of the definition.
+	 * @return The parsers of the parts, in definition order.
+	 * @throws InvalidGameDefinitionException
+	 *             The definition is invalid.
+	 */
+	static List<GameDefinitionParser> parseInParallel(ByteBuffer buf,
+			Charset charset) throws InvalidGameDefinitionException {
+		GameDefinitionParser header = new GameDefinitionParser(new GameLexer(
+				buf, charset));
+		if (!GameLexer.isAsciiCompatible(charset)
+				|| (buf.remaining() < 2 * MIN_PART_SIZE))
+			return parseSequentially(header);
+		header.parseHeader();
+
+		ForkJoinPool pool = getPool();
+		int first = buf.position() + header.lexer.position();
+		int parts = Math.max(1, Math.min(4 * pool.getParallelism(),
+				(buf.limit() - first) / MIN_PART_SIZE));
+		List<Integer> bounds = new ArrayList<Integer>();
+		bounds.add(first);
+		for (int i = 1; i < parts; i++) {
+			int bound = GameLexer.findLineStartingWith(buf, first
+					+ (int) ((long) (buf.limit() - first) * i / parts),
+					KEYWORD_LOCATION);
+			if (bound > bounds.get(bounds.size() - 1))
+				bounds.add(bound);
+		}
+		bounds.add(buf.limit());
+
+		List<GameDefinitionParser> result = new ArrayList<GameDefinitionParser>();
+		result.add(header);
+		try {
+			result.addAll(pool.submit(
+					new PartTask(buf, charset, bounds, 0, bounds.size() - 1))
+					.get());
+		} catch (ExecutionException e) {
+			// Any error is reported by the sequential parser
+			return parseSequentially(new GameDefinitionParser(new GameLexer(
+					buf, charset)));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return parseSequentially(new GameDefinitionParser(new GameLexer(
+					buf, charset)));
+		}
+		return result;
+	}
+
+	private static List<GameDefinitionParser> parseSequentially(
+			GameDefinitionParser parser) throws InvalidGameDefinitionException {
+		parser.parse();
+		List<GameDefinitionParser> result = new ArrayList<GameDefinitionParser>();
+		result.add(parser);
+		return result;
+	}
+
+	/**
+	 * Gets the pool used for loading and validating games in parallel.
+	 * 
+	 * @return The pool.
+	 */
+	static synchronized ForkJoinPool getPool() {
+		if (pool == null)
+			pool = new ForkJoinPool();
+		return pool;
+	}
+
+	/**
+	 * Parses a range of parts of a definition, splitting it in halves
+	 */
+	@SuppressWarnings("serial")
+	private static class PartTask extends
+			RecursiveTask<List<GameDefinitionParser>> {
+
+		private final ByteBuffer buf;
+		private final Charset charset;
+		private final List<Integer> bounds;
+		private final int from, to;
+
+		PartTask(ByteBuffer buf, Charset charset, List<Integer> bounds,
+				int from, int to) {
+			this.buf = buf;
+			this.charset = charset;
+			this.bounds = bounds;
+			this.from = from;
+			this.to = to;
+		}
+
+		protected List<GameDefinitionParser> compute() {
+			if (to - from > 1) {
+				int middle = (from + to) >>> 1;
+				PartTask right = new PartTask(buf, charset, bounds, middle, to);
+				right.fork();
+				List<GameDefinitionParser> result = new PartTask(buf, charset,
+						bounds, from, middle).compute();
+				result.addAll(right.join());
+				return result;
+			}
+
+			ByteBuffer part = buf.duplicate();
+			part.limit(bounds.get(to));
+			part.position(bounds.get(from));
+			GameDefinitionParser parser = new GameDefinitionParser(
+					new GameLexer(part, charset, true));
+			try {
+				parser.lexer.next();
+				parser.parseLocations();
+			} catch (InvalidGameDefinitionException e) {
+				throw new IllegalStateException();
+			}
+			List<GameDefinitionParser> result = new ArrayList<GameDefinitionParser>();
+			result.add(parser);
+			return result;
+		}
+	}
+}
@@ -0,0 +1,541 @@
+package es.ucm.fdi.lps.p3;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import es.ucm.fdi.lps.p3.Game.Direction;
+import es.ucm.fdi.lps.p3.exception.InvalidGameDefinitionException;
+
+/**
+ * Represents the compiled (binary) form of a game definition, that can be
+ * loaded without parsing the textual definition again. An image consists on
+ * (all the numbers are big-endian 32-bit integers):
+ * <ul>
+ * <li>The magic number 'P3GC' and the version of the format.</li>
+ * <li>A string table: the number of strings, the offset of every string (plus
+ * the end offset of the last one) and the UTF-8 bytes of all the strings.</li>
+ * <li>The string indexes of the title, the author and the description of the
+ * game.</li>
+ * <li>A dense location table: the number of locations plus, for every location,
+ * the string indexes of its id, name and description, its exit threshold, the
+ * string index of its exit message (-1 if it has no exit threshold), and the
+ * index and number of its items in the item table. The first location is the
+ * initial one.</li>
+ * <li>An adjacency table with an entry per location and direction (in
+ * Direction order) holding the index of the connected location, or -1.</li>
+ * <li>An item table: the number of items plus, for every item, the string
+ * indexes of its name and description and its value.</li>
+ * </ul>
+ */
+public class GameImage {
+
+	/**
+	 * Usual extension of the game image files
+	 */
+	public static final String FILE_EXTENSION = ".gamec";
+
+	/**
+	 * Magic number of a game image ('P3GC')
+	 */
+	static final int MAGIC = 0x50334743;
+
+	/**
+	 * Version of the image format
+	 */
+	static final int VERSION = 1;
+
+	/**
+	 * Number of integers of every entry of the location table
+	 */
+	static final int LOCATION_ENTRY_SIZE = 7;
+
+	/**
+	 * Number of integers of every entry of the item table
+	 */
+	static final int ITEM_ENTRY_SIZE = 3;
+
+	/**
+	 * Value of the empty entries of the image tables
+	 */
+	static final int NONE = -1;
+
+	/**
+	 * Charset of the string table
+	 */
+	static final Charset CHARSET = Charset.forName("UTF-8");
+
+	private GameImage() {
+	}
+
+	/**
+	 * Represents a read-only view of the locations of a loaded image (or of
+	 * their connections) indexed by their id, in the order of the location
+	 * table. The ids stay encoded in the image until the view is iterated or
+	 * looked up by id.
+	 */
+	private abstract static class LocationView<V> extends
+			AbstractMap<String, V> {
+		final TextStore strings;
+		final int[] ids;
+		final World world;
+
+		/**
+		 * The location of every id (null until the first lookup)
+		 */
+		private volatile Map<String, Integer> index;
+
+		LocationView(TextStore strings, int[] ids, World world) {
+			this.strings = strings;
+			this.ids = ids;
+			this.world = world;
+		}
+
+		/**
+		 * Gets the value of a location.
+		 */
+		abstract V get(int location);
+
+		public int size() {
+			return ids.length;
+		}
+
+		public boolean containsKey(Object key) {
+			return getIndex().containsKey(key);
+		}
+
+		public V get(Object key) {
+			Integer location = getIndex().get(key);
+			return (location == null) ? null : get(location);
+		}
+
+		private Map<String, Integer> getIndex() {
+			Map<String, Integer> index = this.index;
+			if (index == null) {
+				index = new HashMap<String, Integer>(ids.length * 2);
+				for (int i = 0; i < ids.length; i++)
+					index.put(strings.get(ids[i]), i);
+				this.index = index;
+			}
+			return index;
+		}
+
+		public Set<Map.Entry<String, V>> entrySet() {
+			return new AbstractSet<Map.Entry<String, V>>() {
+				public int size() {
+					return ids.length;
+				}
+
+				public Iterator<Map.Entry<String, V>> iterator() {
+					return new Cursor<Map.Entry<String, V>>(ids.length) {
+						Map.Entry<String, V> get(int location) {
+							return new AbstractMap.SimpleImmutableEntry<String, V>(
+									strings.get(ids[location]),
+									LocationView.this.get(location));
+						}
+					};
+				}
+			};
+		}
+
+		/**
+		 * Gets the values without decoding the ids.
+		 */
+		public Collection<V> values() {
+			return new AbstractCollection<V>() {
+				public int size() {
+					return ids.length;
+				}
+
+				public Iterator<V> iterator() {
+					return new Cursor<V>(ids.length) {
+						V get(int location) {
+							return LocationView.this.get(location);
+						}
+					};
+				}
+			};
+		}
+	}
+
+	/**
+	 * Represents a read-only iterator over the locations of an image.
+	 */
+	private abstract static class Cursor<E> implements Iterator<E> {
+		private final int size;
+		private int next;
+
+		Cursor(int size) {
+			this.size = size;
+		}
+
+		abstract E get(int location);
+
+		public boolean hasNext() {
+			return next < size;
+		}
+
+		public E next() {
+			if (!hasNext())
+				throw new NoSuchElementException();
+			return get(next++);
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	/**
+	 * Writes the image of a game, just as it was defined (the player location
+	 * is written as the initial location). Connections to locations that do
+	 * not exist are left out.
+	 * 
+	 * @param game
+	 *            The game.
+	 * @param out
+	 *            The output stream.
+	 * @throws IllegalArgumentException
+	 *             The arguments 'game' and 'out' cannot be null.
+	 * @throws IOException
+	 *             The image cannot be written.
+	 */
+	public static void write(Game game, OutputStream out) throws IOException {
+		if ((game == null) || (out == null))
+			throw new IllegalArgumentException();
+
+		Map<String, Integer> strings = new LinkedHashMap<String, Integer>();
+		List<String> ids = new ArrayList<String>();
+		List<Location> table = new ArrayList<Location>();
+		Map<String, Integer> indexes = new LinkedHashMap<String, Integer>();
+
+		Location initial = game.getCurrentLocation();
+		for (Map.Entry<String, Location> e : game.getLocations().entrySet()) {
+			if (e.getValue() == initial) {
+				ids.add(0, e.getKey());
+				table.add(0, e.getValue());
+			} else {
+				ids.add(e.getKey());
+				table.add(e.getValue());
+			}
+		}
+		for (int i = 0; i < ids.size(); i++)
+			indexes.put(ids.get(i), i);
+
+		int[] header = new int[] { intern(strings, game.getTitle()),
+				intern(strings, game.getAuthor()),
+				intern(strings, game.getDescription()) };
+
+		List<Item> items = new ArrayList<Item>();
+		int[] locationEntries = new int[table.size() * LOCATION_ENTRY_SIZE];
+		for (int i = 0; i < table.size(); i++) {
+			Location location = table.get(i);
+			int entry = i * LOCATION_ENTRY_SIZE;
+			locationEntries[entry] = intern(strings, ids.get(i));
+			locationEntries[entry + 1] = intern(strings, location.getName());
+			locationEntries[entry + 2] = intern(strings,
+					location.getDescription());
+			if (location.hasExitThreshold()) {
+				locationEntries[entry + 3] = location.getExitThreshold();
+				locationEntries[entry + 4] = intern(strings,
+						location.getExitMessage());
+			} else {
+				locationEntries[entry + 3] = 0;
+				locationEntries[entry + 4] = NONE;
+			}
+			locationEntries[entry + 5] = items.size();
+			locationEntries[entry + 6] = location.getAllItems().size();
+			items.addAll(location.getAllItems());
+		}
+
+		Direction[] directions = Direction.values();
+		int[] adjacency = new int[table.size() * directions.length];
+		for (int i = 0; i < table.size(); i++) {
+			EnumMap<Direction, String> connected = game.getConnections().get(
+					ids.get(i));
+			for (Direction dir : directions) {
+				Integer index = null;
+				if (connected != null)
+					index = indexes.get(connected.get(dir));
+				adjacency[i * directions.length + dir.ordinal()] = (index == null) ? NONE
+						: index;
+			}
+		}
+
+		int[] itemEntries = new int[items.size() * ITEM_ENTRY_SIZE];
+		for (int i = 0; i < items.size(); i++) {
+			Item item = items.get(i);
+			itemEntries[i * ITEM_ENTRY_SIZE] = intern(strings, item.getName());
+			itemEntries[i * ITEM_ENTRY_SIZE + 1] = intern(strings,
+					item.getDescription());
+			itemEntries[i * ITEM_ENTRY_SIZE + 2] = item.getValue();
+		}
+
+		DataOutputStream data = new DataOutputStream(new BufferedOutputStream(
+				out));
+		data.writeInt(MAGIC);
+		data.writeInt(VERSION);
+
+		byte[][] encoded = new byte[strings.size()][];
+		int offset = 0;
+		data.writeInt(strings.size());
+		int i = 0;
+		for (String s : strings.keySet()) {
+			encoded[i] = s.getBytes(CHARSET);
+			data.writeInt(offset);
+			offset += encoded[i].length;
+			i++;
+		}
+		data.writeInt(offset);
+		for (byte[] bytes : encoded)
+			data.write(bytes);
+
+		writeInts(data, header);
+		data.writeInt(table.size());
+		writeInts(data, locationEntries);
+		writeInts(data, adjacency);
+		data.writeInt(items.size());
+		writeInts(data, itemEntries);
+		data.flush();
+	}
+
+	/**
+	 * Loads a game from an image file, mapping it into memory. The texts of
+	 * the game (the ids, names, descriptions and exit messages of the
+	 * locations and the names and descriptions of the items) are decoded from
+	 * the mapped image when they are needed, keeping only the most recently
+	 * used ones.
+	 * 
+	 * @param file
+	 *            The image file.
+	 * @return The game.
+	 * @throws IllegalArgumentException
+	 *             The argument 'file' cannot be null.
+	 * @throws IOException
+	 *             The image file cannot be read.
+	 * @throws InvalidGameDefinitionException
+	 *             The file is not a valid game image.
+	 */
+	public static Game load(File file) throws IOException,
+			InvalidGameDefinitionException {
+		return load(file, TextStore.DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Loads a game from an image file, mapping it into memory and keeping a
+	 * given number of decoded texts.
+	 * 
+	 * @param file
+	 *            The image file.
+	 * @param cachedStrings
+	 *            The maximum number of decoded strings kept in memory.
+	 * @return The game.
+	 * @throws IllegalArgumentException
+	 *             The argument 'file' cannot be null and the argument
+	 *             'cachedStrings' cannot be negative.
+	 * @throws IOException
+	 *             The image file cannot be read.
+	 * @throws InvalidGameDefinitionException
+	 *             The file is not a valid game image.
+	 */
+	public static Game load(File file, int cachedStrings) throws IOException,
+			InvalidGameDefinitionException {
+		if ((file == null) || (cachedStrings < 0))
+			throw new IllegalArgumentException();
+
+		FileInputStream in = new FileInputStream(file);
+		try {
+			FileChannel channel = in.getChannel();
+			return load(channel.map(FileChannel.MapMode.READ_ONLY, 0,
+					channel.size()), cachedStrings);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Loads a game from an image already in memory.
+	 * 
+	 * @param image
+	 *            The image.
+	 * @return The game.
+	 * @throws IllegalArgumentException
+	 *             The argument 'image' cannot be null.
+	 * @throws InvalidGameDefinitionException
+	 *             The buffer does not contain a valid game image.
+	 */
+	public static Game load(ByteBuffer image)
+			throws InvalidGameDefinitionException {
+		return load(image, TextStore.DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Loads a game from an image already in memory, keeping a given number of
+	 * decoded texts. The texts stay encoded in the image until they are
+	 * needed, so the image must not be changed while the game is used.
+	 * 
+	 * @param image
+	 *            The image.
+	 * @param cachedStrings
+	 *            The maximum number of decoded strings kept in memory.
+	 * @return The game.
+	 * @throws IllegalArgumentException
+	 *             The argument 'image' cannot be null and the argument
+	 *             'cachedStrings' cannot be negative.
+	 * @throws InvalidGameDefinitionException
+	 *             The buffer does not contain a valid game image.
+	 */
+	public static Game load(ByteBuffer image, int cachedStrings)
+			throws InvalidGameDefinitionException {
+		if ((image == null) || (cachedStrings < 0))
+			throw new IllegalArgumentException();
+
+		try {
+			ByteBuffer buf = image.duplicate();
+			if ((buf.getInt() != MAGIC) || (buf.getInt() != VERSION))
+				throw new InvalidGameDefinitionException(
+						"Error in game image: Unknown format or version");
+
+			TextStore strings = TextStore.read(buf, CHARSET, cachedStrings);
+
+			String title = strings.decode(buf.getInt());
+			String author = strings.decode(buf.getInt());
+			String description = strings.decode(buf.getInt());
+
+			int locationCount = buf.getInt();
+			if (locationCount < 1)
+				throw new InvalidGameDefinitionException(
+						"Error in game image: No locations");
+			int[] locationEntries = readInts(buf, locationCount
+					* LOCATION_ENTRY_SIZE);
+			Direction[] directions = Direction.values();
+			int[] adjacency = readInts(buf, locationCount * directions.length);
+			int itemCount = buf.getInt();
+			int[] itemEntries = readInts(buf, itemCount * ITEM_ENTRY_SIZE);
+
+			int[] ids = new int[locationCount];
+			Location[] table = new Location[locationCount];
+			for (int i = 0; i < locationCount; i++) {
+				int entry = i * LOCATION_ENTRY_SIZE;
+				ids[i] = locationEntries[entry];
+				if ((ids[i] < 0) || (ids[i] >= strings.size()))
+					throw new IndexOutOfBoundsException();
+				if (locationEntries[entry + 4] == NONE)
+					table[i] = new Location(strings,
+							locationEntries[entry + 1],
+							locationEntries[entry + 2]);
+				else
+					table[i] = new Location(strings,
+							locationEntries[entry + 1],
+							locationEntries[entry + 2],
+							locationEntries[entry + 3],
+							locationEntries[entry + 4]);
+
+				int first = locationEntries[entry + 5];
+				for (int j = first; j < first + locationEntries[entry + 6]; j++)
+					table[i].addItem(new Item(strings, itemEntries[j
+							* ITEM_ENTRY_SIZE], itemEntries[j * ITEM_ENTRY_SIZE
+							+ 1], itemEntries[j * ITEM_ENTRY_SIZE + 2]));
+			}
+
+			// The adjacency table of the image is the one of the world
+			final World world = new World(table, adjacency);
+			Game game = new Game(title, author, description, table[0]);
+			game.setLocations(new LocationView<Location>(strings, ids, world) {
+				Location get(int location) {
+					return world.getLocation(location);
+				}
+			}, new LocationView<EnumMap<Direction, String>>(strings, ids,
+					world) {
+				EnumMap<Direction, String> get(int location) {
+					EnumMap<Direction, String> connected = new EnumMap<Direction, String>(
+							Direction.class);
+					for (Direction dir : Direction.values()) {
+						int index = world.getConnection(location, dir);
+						if (index != NONE)
+							connected.put(dir, strings.get(ids[index]));
+					}
+					return connected;
+				}
+			});
+			game.setWorld(world);
+			return game;
+		} catch (BufferUnderflowException e) {
+			throw new InvalidGameDefinitionException(
+					"Error in game image: Unexpected end of image");
+		} catch (IndexOutOfBoundsException e) {
+			throw new InvalidGameDefinitionException(
+					"Error in game image: Invalid reference");
+		} catch (IllegalArgumentException e) {
+			throw new InvalidGameDefinitionException(
+					"Error in game image: Invalid entry");
+		}
+	}
+
+	/**
+	 * Checks whether a file is a game image (it starts with the magic number
+	 * of the format).
+	 * 
+	 * @param file
+	 *            The file.
+	 * @return true if the file is a game image; false otherwise.
+	 * @throws IOException
+	 *             The file cannot be read.
+	 */
+	public static boolean isImage(File file) throws IOException {
+		FileInputStream in = new FileInputStream(file);
+		try {
+			ByteBuffer magic = ByteBuffer.allocate(4);
+			FileChannel channel = in.getChannel();
+			while (magic.hasRemaining() && (channel.read(magic) >= 0))
+				;
+			return !magic.hasRemaining() && (magic.getInt(0) == MAGIC);
+		} finally {
+			in.close();
+		}
+	}
+
+	static int[] readInts(ByteBuffer buf, int count) {
+		if ((count < 0) || (count > buf.remaining() / 4))
+			throw new BufferUnderflowException();
+		int[] ints = new int[count];
+		buf.asIntBuffer().get(ints);
+		buf.position(buf.position() + count * 4);
+		return ints;
+	}
+
+	private static void writeInts(DataOutputStream data, int[] ints)
+			throws IOException {
+		for (int i : ints)
+			data.writeInt(i);
+	}
+
+	private static int intern(Map<String, Integer> strings, String s) {
+		Integer index = strings.get(s);
+		if (index == null) {
+			index = strings.size();
+			strings.put(s, index);
+		}
+		return index;
+	}
+}
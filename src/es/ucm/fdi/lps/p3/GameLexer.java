@@ -0,0 +1,522 @@
+package es.ucm.fdi.lps.p3;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import es.ucm.fdi.lps.p3.exception.InvalidGameDefinitionException;
+
+/**
+ * Splits a textual game definition into tokens: words, numbers, quoted strings
+ * and single characters. Whitespace and comments (from '#' to the end of the
+ * line) are skipped. The lexer works directly on the bytes of the definition:
+ * a token is just a slice of the buffer, and it is only decoded into a String
+ * when the parser asks for its text. Numbers are parsed straight into ints.
+ */
+class GameLexer {
+
+	/**
+	 * Token type at the end of the definition
+	 */
+	static final int EOF = -1;
+
+	/**
+	 * Token type of a word (a letter followed by letters, digits, '.' or '-')
+	 */
+	static final int WORD = -2;
+
+	/**
+	 * Token type of a number (an optional '-' followed by digits)
+	 */
+	static final int NUMBER = -3;
+
+	/**
+	 * Token type of a string between double or single quotes
+	 */
+	static final int QUOTED = -4;
+
+	private static final String LINE_SEPARATOR = System
+			.getProperty("line.separator");
+
+	/**
+	 * Characters that must have their ASCII encoding in the charset of the
+	 * definition for the lexer to work on its bytes
+	 */
+	private static final String SYNTAX_CHARS = "\t\n\r #\"'\\-.0123456789"
+			+ "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+
+	/**
+	 * The definition
+	 */
+	private final ByteBuffer buf;
+
+	/**
+	 * The charset of the definition
+	 */
+	private final Charset charset;
+
+	/**
+	 * Buffer for copying the tokens of definitions not backed by an array
+	 */
+	private byte[] scratch;
+
+	/**
+	 * The current position in the definition
+	 */
+	private int pos;
+
+	/**
+	 * The current line and the position where it starts
+	 */
+	private int line, lineStart;
+
+	/**
+	 * The type of the current token
+	 */
+	private int type;
+
+	/**
+	 * The position and the length of the current token (without quotes)
+	 */
+	private int start, length;
+
+	/**
+	 * The line and column of the current token
+	 */
+	private int tokenLine, tokenColumn;
+
+	/**
+	 * Whether the current quoted string has escape sequences
+	 */
+	private boolean escaped;
+
+	/**
+	 * Whether errors are just signalled, because the definition may be read
+	 * from a wrong position
+	 */
+	private final boolean speculative;
+
+	/**
+	 * Constructs a lexer for a game definition.
+	 * 
+	 * @param buf
+	 *            The definition, from its position to its limit.
+	 * @param charset
+	 *            The charset of the definition.
+	 * @throws IllegalArgumentException
+	 *             The arguments 'buf' and 'charset' cannot be null.
+	 */
+	GameLexer(ByteBuffer buf, Charset charset) {
+		this(buf, charset, false);
+	}
+
+	/**
+	 * Constructs a lexer for a game definition, or for a part of it. A
+	 * speculative lexer does not build an exception for the errors found in
+	 * the definition, but it throws an IllegalStateException instead.
+	 * 
+	 * @param buf
+	 *            The definition, from its position to its limit.
+	 * @param charset
+	 *            The charset of the definition.
+	 * @param speculative
+	 *            Whether the lexer is speculative.
+	 * @throws IllegalArgumentException
+	 *             The arguments 'buf' and 'charset' cannot be null.
+	 */
+	GameLexer(ByteBuffer buf, Charset charset, boolean speculative) {
+		if ((buf == null) || (charset == null))
+			throw new IllegalArgumentException();
+
+		if (!isAsciiCompatible(charset)) {
+			// Word boundaries cannot be found on the bytes (e.g. UTF-16)
+			Charset utf8 = Charset.forName("UTF-8");
+			buf = utf8.encode(charset.decode(buf));
+			charset = utf8;
+		}
+		this.buf = buf.slice();
+		this.charset = charset;
+		this.line = 1;
+		this.type = EOF;
+		this.speculative = speculative;
+	}
+
+	/**
+	 * Reads a whole game definition. Definitions read from a file are mapped
+	 * into memory instead of being copied.
+	 * 
+	 * @param in
+	 *            The definition.
+	 * @return The bytes of the definition.
+	 * @throws IOException
+	 *             The definition cannot be read.
+	 */
+	static ByteBuffer read(InputStream in) throws IOException {
+		if (in instanceof FileInputStream) {
+			FileChannel channel = ((FileInputStream) in).getChannel();
+			long position = channel.position();
+			return channel.map(FileChannel.MapMode.READ_ONLY, position,
+					channel.size() - position);
+		}
+
+		byte[] bytes = new byte[8192];
+		int count = 0;
+		int n;
+		while ((n = in.read(bytes, count, bytes.length - count)) != -1) {
+			count += n;
+			if (count == bytes.length)
+				bytes = Arrays.copyOf(bytes, bytes.length * 2);
+		}
+		return ByteBuffer.wrap(bytes, 0, count);
+	}
+
+	/**
+	 * Finds the first line, starting at a given position or after it, whose
+	 * first token is a given word. Tokens never span more than one line, so
+	 * the lexer can start at that line.
+	 * 
+	 * @param buf
+	 *            The definition.
+	 * @param from
+	 *            The position.
+	 * @param keyword
+	 *            The ASCII bytes of the word.
+	 * @return The position of the line, or the limit of the buffer if there is
+	 *         no such line.
+	 */
+	static int findLineStartingWith(ByteBuffer buf, int from, byte[] keyword) {
+		int limit = buf.limit();
+		int pos = from;
+		if ((pos > buf.position()) && (buf.get(pos - 1) != '\n')
+				&& (buf.get(pos - 1) != '\r'))
+			pos = skipLine(buf, pos, limit);
+		while (pos < limit) {
+			int i = pos;
+			while ((i < limit) && ((buf.get(i) == ' ') || (buf.get(i) == '\t')))
+				i++;
+			int j = 0;
+			while ((j < keyword.length) && (i + j < limit)
+					&& (buf.get(i + j) == keyword[j]))
+				j++;
+			if ((j == keyword.length)
+					&& ((i + j == limit) || !isWordPart(buf.get(i + j) & 0xFF)))
+				return pos;
+			pos = skipLine(buf, i, limit);
+		}
+		return limit;
+	}
+
+	private static int skipLine(ByteBuffer buf, int pos, int limit) {
+		while ((pos < limit) && (buf.get(pos) != '\n')
+				&& (buf.get(pos) != '\r'))
+			pos++;
+		return pos + 1;
+	}
+
+	/**
+	 * Checks whether the syntax characters of the definition have the same
+	 * bytes in a charset as in ASCII, so that the lexer can work on the bytes
+	 * of a definition written in that charset.
+	 * 
+	 * @param charset
+	 *            The charset.
+	 * @return true if the charset is compatible with ASCII; false otherwise.
+	 */
+	static boolean isAsciiCompatible(Charset charset) {
+		if (!charset.canEncode())
+			return false;
+		byte[] encoded = SYNTAX_CHARS.getBytes(charset);
+		if (encoded.length != SYNTAX_CHARS.length())
+			return false;
+		for (int i = 0; i < encoded.length; i++) {
+			if (encoded[i] != SYNTAX_CHARS.charAt(i))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Reads the next token.
+	 * 
+	 * @return The type of the token: EOF, WORD, NUMBER, QUOTED or the
+	 *         character itself.
+	 */
+	int next() {
+		int limit = buf.limit();
+		int c = skipBlanks(limit);
+
+		tokenLine = line;
+		tokenColumn = pos - lineStart + 1;
+		start = pos;
+		escaped = false;
+
+		if (c == -1) {
+			length = 0;
+			return type = EOF;
+		}
+		if (isWordStart(c)) {
+			pos++;
+			while ((pos < limit) && isWordPart(buf.get(pos) & 0xFF))
+				pos++;
+			length = pos - start;
+			return type = WORD;
+		}
+		if (isDigit(c)
+				|| ((c == '-') && (pos + 1 < limit) && isDigit(buf.get(pos + 1)))) {
+			pos++;
+			while ((pos < limit)
+					&& (isDigit(buf.get(pos)) || (buf.get(pos) == '.')))
+				pos++;
+			length = pos - start;
+			return type = NUMBER;
+		}
+		if ((c == '"') || (c == '\'')) {
+			start = ++pos;
+			while (pos < limit) {
+				int d = buf.get(pos);
+				if ((d == c) || (d == '\n') || (d == '\r'))
+					break;
+				if ((d == '\\') && (pos + 1 < limit)) {
+					escaped = true;
+					pos++;
+				}
+				pos++;
+			}
+			length = pos - start;
+			if ((pos < limit) && (buf.get(pos) == c))
+				pos++;
+			return type = QUOTED;
+		}
+		pos++;
+		length = 1;
+		return type = c;
+	}
+
+	private int skipBlanks(int limit) {
+		while (pos < limit) {
+			int c = buf.get(pos) & 0xFF;
+			if (c == '#') {
+				while ((pos < limit) && (buf.get(pos) != '\n')
+						&& (buf.get(pos) != '\r'))
+					pos++;
+			} else if (c == '\n') {
+				newLine(pos + 1);
+			} else if (c == '\r') {
+				if ((pos + 1 < limit) && (buf.get(pos + 1) == '\n'))
+					pos++;
+				newLine(pos + 1);
+			} else if (c <= ' ') {
+				pos++;
+			} else
+				return c;
+		}
+		return -1;
+	}
+
+	private void newLine(int position) {
+		pos = position;
+		line++;
+		lineStart = position;
+	}
+
+	private static boolean isWordStart(int c) {
+		return ((c >= 'a') && (c <= 'z')) || ((c >= 'A') && (c <= 'Z'))
+				|| (c >= 128);
+	}
+
+	private static boolean isWordPart(int c) {
+		return isWordStart(c) || isDigit(c) || (c == '.') || (c == '-');
+	}
+
+	private static boolean isDigit(int c) {
+		return (c >= '0') && (c <= '9');
+	}
+
+	/**
+	 * Gets the position where the current token starts.
+	 * 
+	 * @return The position, relative to the position of the definition.
+	 */
+	int position() {
+		return (type == QUOTED) ? start - 1 : start;
+	}
+
+	/**
+	 * Gets the type of the current token.
+	 * 
+	 * @return The type.
+	 */
+	int type() {
+		return type;
+	}
+
+	/**
+	 * Checks whether the current token is a given word, without decoding it.
+	 * 
+	 * @param keyword
+	 *            The ASCII bytes of the word.
+	 * @return true if the current token is that word; false otherwise.
+	 */
+	boolean isWord(byte[] keyword) {
+		if ((type != WORD) || (length != keyword.length))
+			return false;
+		for (int i = 0; i < length; i++) {
+			if (buf.get(start + i) != keyword[i])
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Decodes the text of the current token. Escape sequences of quoted
+	 * strings are replaced by the characters they represent.
+	 * 
+	 * @return The text.
+	 */
+	String text() {
+		String s;
+		if (buf.hasArray()) {
+			s = new String(buf.array(), buf.arrayOffset() + start, length,
+					charset);
+		} else {
+			if ((scratch == null) || (scratch.length < length))
+				scratch = new byte[Math.max(length, 256)];
+			for (int i = 0; i < length; i++)
+				scratch[i] = buf.get(start + i);
+			s = new String(scratch, 0, length, charset);
+		}
+		return escaped ? unescape(s) : s;
+	}
+
+	/**
+	 * Gets the value of the current token, which must be a number. The
+	 * decimal part of the number is ignored.
+	 * 
+	 * @return The value.
+	 */
+	int intValue() {
+		int i = start;
+		int end = start + length;
+		boolean negative = (buf.get(i) == '-');
+		if (negative)
+			i++;
+		long value = 0;
+		while ((i < end) && isDigit(buf.get(i))) {
+			if (value <= Integer.MAX_VALUE)
+				value = value * 10 + (buf.get(i) - '0');
+			i++;
+		}
+		if (negative)
+			value = -value;
+		return (int) Math.max(Integer.MIN_VALUE,
+				Math.min(Integer.MAX_VALUE, value));
+	}
+
+	/**
+	 * Reads the next token, which must be a word or a quoted string, and
+	 * decodes its text.
+	 * 
+	 * @return The text.
+	 * @throws InvalidGameDefinitionException
+	 *             The next token is not a word or a quoted string.
+	 */
+	String nextString() throws InvalidGameDefinitionException {
+		next();
+		if ((type != WORD) && (type != QUOTED))
+			throw error("A string was expected");
+		return text();
+	}
+
+	/**
+	 * Reads the next token, which must be a number, and gets its value.
+	 * 
+	 * @return The value.
+	 * @throws InvalidGameDefinitionException
+	 *             The next token is not a number.
+	 */
+	int nextInt() throws InvalidGameDefinitionException {
+		if (next() != NUMBER)
+			throw error("A number was expected");
+		return intValue();
+	}
+
+	/**
+	 * Builds an exception for an error found at the current token.
+	 * 
+	 * @param message
+	 *            The explanation of the error.
+	 * @return The exception.
+	 * @throws IllegalStateException
+	 *             The lexer is speculative.
+	 */
+	InvalidGameDefinitionException error(String message) {
+		if (speculative)
+			throw new IllegalStateException();
+		return new InvalidGameDefinitionException("Error in line: "
+				+ tokenLine + ", column: " + tokenColumn
+				+ " in definitions game" + LINE_SEPARATOR + message,
+				tokenLine, tokenColumn);
+	}
+
+	private static String unescape(String s) {
+		StringBuilder sb = new StringBuilder(s.length());
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if ((c != '\\') || (i + 1 == s.length())) {
+				sb.append(c);
+				continue;
+			}
+			c = s.charAt(++i);
+			switch (c) {
+			case 'a':
+				sb.append((char) 7);
+				break;
+			case 'b':
+				sb.append('\b');
+				break;
+			case 'f':
+				sb.append('\f');
+				break;
+			case 'n':
+				sb.append('\n');
+				break;
+			case 'r':
+				sb.append('\r');
+				break;
+			case 't':
+				sb.append('\t');
+				break;
+			case 'v':
+				sb.append((char) 0x0B);
+				break;
+			default:
+				if ((c >= '0') && (c <= '7')) {
+					int value = c - '0';
+					int digits = (c <= '3') ? 2 : 1;
+					while ((digits-- > 0) && (i + 1 < s.length())
+							&& (s.charAt(i + 1) >= '0')
+							&& (s.charAt(i + 1) <= '7'))
+						value = value * 8 + (s.charAt(++i) - '0');
+					sb.append((char) value);
+				} else
+					sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Returns a String representation for this object: GameLexer[line,
+	 * column]. This is useful for debugging purposes.
+	 * 
+	 * @see Object#toString()
+	 */
+	public String toString() {
+		return this.getClass().getSimpleName() + "[" + tokenLine + ", "
+				+ tokenColumn + "]";
+	}
+}
@@ -0,0 +1,42 @@
+package es.ucm.fdi.lps.p3;
+
+/**
+ * Represents an observer of the changes made to the state of a game: the items
+ * moved between the locations and the player inventory and the movements of
+ * the player. It is told about every change, whether it was made by a command
+ * or by undoing or redoing a turn of the game.
+ */
+public interface GameListener {
+
+	/**
+	 * Tells that an item has been moved from a location to the player
+	 * inventory.
+	 * 
+	 * @param item
+	 *            The item.
+	 * @param location
+	 *            The location.
+	 */
+	void itemTaken(Item item, Location location);
+
+	/**
+	 * Tells that an item has been moved from the player inventory to a
+	 * location.
+	 * 
+	 * @param item
+	 *            The item.
+	 * @param location
+	 *            The location.
+	 */
+	void itemDropped(Item item, Location location);
+
+	/**
+	 * Tells that the player has been moved to another location.
+	 * 
+	 * @param origin
+	 *            The previous location of the player.
+	 * @param destination
+	 *            The new location of the player.
+	 */
+	void playerMoved(Location origin, Location destination);
+}
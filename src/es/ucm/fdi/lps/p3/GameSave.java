@@ -0,0 +1,203 @@
+package es.ucm.fdi.lps.p3;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Represents the saved state of a game, recorded as the differences from the
+ * world of the game as it was loaded (from its definition or from its image),
+ * so a save only takes some bytes per item moved. The locations and the items
+ * are identified by their ids in the world, which do not change between two
+ * loads of the same game. A save consists on (all the numbers are big-endian
+ * 32-bit integers):
+ * <ul>
+ * <li>The magic number 'P3SV' and the version of the format.</li>
+ * <li>The number of locations and items of the world, for checking that the
+ * save belongs to the game.</li>
+ * <li>The id of the location of the player.</li>
+ * <li>The number of items in the player inventory plus their ids.</li>
+ * <li>The number of the other items that are not in the location where they
+ * were loaded plus, for every one of them, its id and the id of its current
+ * location.</li>
+ * </ul>
+ * A game is restored by loading it again (usually from its image) and
+ * applying the differences. The items that were moved are placed after the
+ * items that were not, the items of the inventory are kept in the order of
+ * their ids, and the undo history is not saved.
+ */
+public class GameSave {
+
+	/**
+	 * Magic number of a save ('P3SV')
+	 */
+	static final int MAGIC = 0x50335356;
+
+	/**
+	 * Version of the save format
+	 */
+	static final int VERSION = 1;
+
+	/**
+	 * Writes the state of a game, as the differences from its world as it was
+	 * loaded.
+	 * 
+	 * @param game
+	 *            The game, loaded with a world.
+	 * @param out
+	 *            The output stream.
+	 * @throws IllegalArgumentException
+	 *             The arguments 'game' and 'out' cannot be null and the game
+	 *             must have a world.
+	 * @throws IOException
+	 *             The save cannot be written.
+	 */
+	public static void save(Game game, OutputStream out) throws IOException {
+		if (out == null)
+			throw new IllegalArgumentException();
+		write(snapshot(game), out);
+	}
+
+	/**
+	 * Takes a point-in-time view of the state of a game, in constant time, for
+	 * saving it later (maybe from another thread).
+	 * 
+	 * @param game
+	 *            The game, loaded with a world.
+	 * @return The snapshot.
+	 * @throws IllegalArgumentException
+	 *             The argument 'game' cannot be null and the game must have a
+	 *             world.
+	 */
+	public static GameSnapshot snapshot(Game game) {
+		if ((game == null) || (game.getWorld() == null))
+			throw new IllegalArgumentException();
+		return game.snapshot();
+	}
+
+	static void write(GameSnapshot snapshot, OutputStream out)
+			throws IOException {
+		if (out == null)
+			throw new IllegalArgumentException();
+
+		int itemCount = snapshot.getNumberOfItems();
+		int inventoryCount = 0, movedCount = 0;
+		for (int i = 0; i < itemCount; i++) {
+			int place = snapshot.getPlace(i);
+			if (place == World.NONE)
+				inventoryCount++;
+			else if (place != snapshot.getHome(i))
+				movedCount++;
+		}
+
+		DataOutputStream data = new DataOutputStream(new BufferedOutputStream(
+				out));
+		data.writeInt(MAGIC);
+		data.writeInt(VERSION);
+		data.writeInt(snapshot.getNumberOfLocations());
+		data.writeInt(itemCount);
+		data.writeInt(snapshot.getLocation());
+		data.writeInt(inventoryCount);
+		for (int i = 0; i < itemCount; i++) {
+			if (snapshot.getPlace(i) == World.NONE)
+				data.writeInt(i);
+		}
+		data.writeInt(movedCount);
+		for (int i = 0; i < itemCount; i++) {
+			int place = snapshot.getPlace(i);
+			if ((place != World.NONE) && (place != snapshot.getHome(i))) {
+				data.writeInt(i);
+				data.writeInt(place);
+			}
+		}
+		data.flush();
+	}
+
+	/**
+	 * Restores the state of a game from a save of the same game. The
+	 * executed commands and the turns played before are forgotten.
+	 * 
+	 * @param game
+	 *            The game, loaded with a world (usually just loaded).
+	 * @param in
+	 *            The input stream.
+	 * @throws IllegalArgumentException
+	 *             The arguments 'game' and 'in' cannot be null and the game
+	 *             must have a world.
+	 * @throws IOException
+	 *             The save cannot be read, or it is not valid or it does not
+	 *             belong to the game (in that case the game is not changed).
+	 */
+	public static void restore(Game game, InputStream in) throws IOException {
+		if ((game == null) || (in == null) || (game.getWorld() == null))
+			throw new IllegalArgumentException();
+
+		World world = game.getWorld();
+		int itemCount = game.getNumberOfWorldItems();
+		DataInputStream data = new DataInputStream(in);
+		if ((data.readInt() != MAGIC) || (data.readInt() != VERSION))
+			throw new IOException(
+					"Error in saved game: Unknown format or version");
+		if ((data.readInt() != world.size())
+				|| (data.readInt() != itemCount))
+			throw new IOException("Error in saved game: Another game");
+
+		Location location = world.getLocation(readId(data, world.size()));
+
+		// The location of every item (-1 for the player inventory)
+		int[] places = new int[itemCount];
+		boolean[] placed = new boolean[itemCount];
+		List<Item> inventory = new ArrayList<Item>();
+		int inventoryCount = data.readInt();
+		for (int i = 0; i < inventoryCount; i++) {
+			int id = readItemId(data, placed);
+			places[id] = World.NONE;
+			inventory.add(game.getWorldItem(id));
+		}
+		int movedCount = data.readInt();
+		for (int i = 0; i < movedCount; i++) {
+			int id = readItemId(data, placed);
+			places[id] = readId(data, world.size());
+		}
+		for (int i = 0; i < itemCount; i++) {
+			if (!placed[i])
+				places[i] = game.getWorldItemHome(i);
+		}
+
+		List<List<Item>> locationItems = new ArrayList<List<Item>>(world
+				.size());
+		for (int i = 0; i < world.size(); i++)
+			locationItems.add(new ArrayList<Item>());
+		for (int i = 0; i < itemCount; i++) {
+			if (!placed[i])
+				locationItems.get(places[i]).add(game.getWorldItem(i));
+		}
+		for (int i = 0; i < itemCount; i++) {
+			if (placed[i] && (places[i] != World.NONE))
+				locationItems.get(places[i]).add(game.getWorldItem(i));
+		}
+		game.restore(location, locationItems, inventory);
+	}
+
+	private static int readId(DataInputStream data, int count)
+			throws IOException {
+		int id = data.readInt();
+		if ((id < 0) || (id >= count))
+			throw new IOException("Error in saved game: Wrong id " + id);
+		return id;
+	}
+
+	private static int readItemId(DataInputStream data, boolean[] placed)
+			throws IOException {
+		int id = readId(data, placed.length);
+		if (placed[id])
+			throw new IOException("Error in saved game: Repeated item " + id);
+		placed[id] = true;
+		return id;
+	}
+}
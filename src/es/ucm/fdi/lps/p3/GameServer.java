@@ -0,0 +1,656 @@
+package es.ucm.fdi.lps.p3;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import es.ucm.fdi.lps.p3.exception.InvalidGameDefinitionException;
+
+/**
+ * Represents a server that lets many players play a game at the same time
+ * through TCP connections, using a line-based protocol: every line sent by a
+ * player is played as a command, and the output of the engine (the result of
+ * the command, the events and the prompt) is sent back. Each connection has
+ * its own session: a game of a template shared by all the sessions (see
+ * GameTemplate) and an engine that plays it line by line (see
+ * Engine#play(String)). When the game of a session ends, its connection is
+ * closed and the session is kept for another connection (see SessionPool).
+ * <p>
+ * The connections are served by a small number of selector threads with
+ * non-blocking I/O, so an idle session does not hold a thread. A session only
+ * holds a buffer for its input while a line is incomplete, and its output is
+ * kept while the player does not read it; meanwhile, its input is not read.
+ * <p>
+ * The turns can also be played in a command pipeline (see
+ * setPipeline(CommandPipeline)) instead of the selector threads, so that
+ * these threads only read and write the connections, and the turns of the
+ * sessions are parsed, executed and encoded by the threads of the pipeline.
+ * When a session has as many turns in the pipeline as it allows, its input is
+ * not read until one of them is done.
+ */
+public class GameServer {
+
+	/**
+	 * Default number of selector threads
+	 */
+	public static final int DEFAULT_SELECTORS = Math.max(1, Math.min(4,
+			Runtime.getRuntime().availableProcessors()));
+
+	/**
+	 * Maximum length of a line sent by a player, in bytes (a longer line
+	 * closes the connection)
+	 */
+	public static final int MAX_LINE_LENGTH = 1024;
+
+	/**
+	 * Size of the read buffer shared by the sessions of a selector thread
+	 */
+	private static final int READ_BUFFER_SIZE = 8192;
+
+	/**
+	 * The charset of the lines sent by the players (the same one of the
+	 * output of the engines)
+	 */
+	private static final Charset CHARSET = Charset.defaultCharset();
+
+	/**
+	 * The game image and the configuration of the sessions (null for the
+	 * default one)
+	 */
+	private final ByteBuffer image;
+	private final Configuration configuration;
+
+	/**
+	 * The ready sessions of the game, made from the template loaded from the
+	 * image when the server is started
+	 */
+	private SessionPool pool;
+
+	/**
+	 * The pipeline that plays the turns (null if they are played by the
+	 * selector threads)
+	 */
+	private CommandPipeline pipeline;
+
+	/**
+	 * The watcher that reloads the configuration of the sessions (null if it
+	 * is not reloaded)
+	 */
+	private ConfigurationWatcher watcher;
+
+	private ServerSocketChannel serverChannel;
+	private SelectorLoop[] loops;
+	private int nextLoop;
+	private final AtomicInteger sessions = new AtomicInteger();
+
+	/**
+	 * Represents the session of a connection.
+	 */
+	private static final class Session {
+		final SocketChannel channel;
+		final Engine engine;
+		final ByteArrayOutputStream output;
+
+		/**
+		 * The bytes of the incomplete line (null if there is none)
+		 */
+		byte[] line;
+		int lineLength;
+
+		/**
+		 * The output not written yet (null if there is none)
+		 */
+		ByteBuffer pending;
+
+		/**
+		 * Whether the connection is closed once the output is written
+		 */
+		boolean closing;
+
+		/**
+		 * The session of the pipeline that plays the turns (null if there is
+		 * no pipeline)
+		 */
+		CommandPipeline.Session turns;
+
+		/**
+		 * The output of the pipeline not sent yet, and whether the game has
+		 * ended
+		 */
+		final Queue<byte[]> outbox = new ConcurrentLinkedQueue<byte[]>();
+		volatile boolean ended;
+
+		/**
+		 * The line not taken by the pipeline yet, and the input read after
+		 * it (null if the pipeline has taken all the lines)
+		 */
+		byte[] blocked;
+		ByteBuffer unread;
+
+		Session(SocketChannel channel, Engine engine,
+				ByteArrayOutputStream output) {
+			this.channel = channel;
+			this.engine = engine;
+			this.output = output;
+		}
+	}
+
+	/**
+	 * Represents a selector thread, that serves some connections.
+	 */
+	private final class SelectorLoop implements Runnable {
+		final Selector selector;
+		final Thread thread;
+		final Queue<SocketChannel> accepted = new ConcurrentLinkedQueue<SocketChannel>();
+		final Queue<SelectionKey> ready = new ConcurrentLinkedQueue<SelectionKey>();
+		final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+		volatile boolean running = true;
+
+		SelectorLoop(int number) throws IOException {
+			selector = Selector.open();
+			thread = new Thread(this, "GameServer " + number);
+		}
+
+		void add(SocketChannel channel) {
+			accepted.add(channel);
+			selector.wakeup();
+		}
+
+		/**
+		 * Tells that the pipeline has output for the session of a key.
+		 */
+		void ready(SelectionKey key) {
+			ready.add(key);
+			selector.wakeup();
+		}
+
+		public void run() {
+			try {
+				while (running) {
+					selector.select();
+					SocketChannel channel;
+					while ((channel = accepted.poll()) != null)
+						open(channel);
+					SelectionKey readyKey;
+					while ((readyKey = ready.poll()) != null)
+						send(readyKey);
+					for (SelectionKey key : selector.selectedKeys())
+						handle(key);
+					selector.selectedKeys().clear();
+				}
+			} catch (IOException e) {
+				System.err.println("Warning: " + thread.getName()
+						+ " stopped: " + e);
+			} catch (ClosedSelectorException e) {
+			} finally {
+				closeAll();
+			}
+		}
+
+		private void handle(SelectionKey key) {
+			if (!key.isValid())
+				return;
+			if (key.isAcceptable()) {
+				accept();
+				return;
+			}
+			Session session = (Session) key.attachment();
+			try {
+				if (key.isReadable())
+					read(key, session);
+				if (key.isValid() && key.isWritable())
+					write(key, session);
+			} catch (IOException e) {
+				close(key);
+			} catch (RuntimeException e) {
+				System.err.println("Warning: session closed: " + e);
+				close(key);
+			}
+		}
+
+		/**
+		 * Sends the output of the pipeline for the session of a key, and
+		 * resumes its input if it was waiting for the pipeline.
+		 */
+		private void send(SelectionKey key) {
+			Session session = (Session) key.attachment();
+			if (!key.isValid() || (session == null))
+				return;
+			try {
+				if ((session.blocked != null) && !resume(key, session))
+					return;
+				flush(key, session);
+			} catch (IOException e) {
+				close(key);
+			}
+		}
+
+		/**
+		 * Submits the line that the pipeline did not take, and then the
+		 * input read after it, if the game has not ended.
+		 * 
+		 * @return Whether the connection is still open.
+		 */
+		private boolean resume(SelectionKey key, Session session) {
+			if (session.ended) {
+				session.blocked = null;
+				session.unread = null;
+				return true;
+			}
+			if (!session.turns.submit(session.blocked))
+				return true;
+			ByteBuffer unread = session.unread;
+			session.blocked = null;
+			session.unread = null;
+			return consume(key, session, unread);
+		}
+
+		private void open(SocketChannel channel) {
+			try {
+				ByteArrayOutputStream output = new ByteArrayOutputStream();
+				Engine engine = pool.acquire();
+				engine.setOutput(output);
+				Session session = new Session(channel, engine, output);
+				SelectionKey key = channel.register(selector,
+						SelectionKey.OP_READ, session);
+				sessions.incrementAndGet();
+				if (pipeline != null)
+					session.turns = pipeline.open(engine, new Output(key,
+							session));
+				else {
+					engine.begin();
+					flush(key, session);
+				}
+			} catch (IOException e) {
+				closeQuietly(channel);
+			}
+		}
+
+		/**
+		 * Reads the available input, playing every complete line.
+		 */
+		private void read(SelectionKey key, Session session)
+				throws IOException {
+			if (session.blocked != null)
+				return;
+			readBuffer.clear();
+			int n = session.channel.read(readBuffer);
+			if (n < 0) {
+				close(key);
+				return;
+			}
+			readBuffer.flip();
+			if (consume(key, session, readBuffer))
+				flush(key, session);
+		}
+
+		/**
+		 * Plays (or submits to the pipeline) every complete line of some
+		 * input, keeping the incomplete one. If the pipeline does not take a
+		 * line, the line and the rest of the input are kept until it does.
+		 * 
+		 * @return Whether the connection is still open.
+		 */
+		private boolean consume(SelectionKey key, Session session,
+				ByteBuffer input) {
+			while (input.hasRemaining() && !session.closing) {
+				byte b = input.get();
+				if (b == '\n') {
+					int length = session.lineLength;
+					if ((length > 0) && (session.line[length - 1] == '\r'))
+						length--;
+					byte[] bytes = (length == 0) ? new byte[0] : Arrays
+							.copyOf(session.line, length);
+					session.line = null;
+					session.lineLength = 0;
+					if (session.turns != null) {
+						if (!session.turns.submit(bytes)) {
+							session.blocked = bytes;
+							session.unread = ByteBuffer.allocate(input
+									.remaining());
+							session.unread.put(input).flip();
+							return true;
+						}
+					} else if (!session.engine.play(new String(bytes,
+							CHARSET)))
+						session.closing = true;
+				} else {
+					if (session.line == null)
+						session.line = new byte[64];
+					else if (session.lineLength == session.line.length) {
+						if (session.lineLength == MAX_LINE_LENGTH) {
+							close(key);
+							return false;
+						}
+						byte[] line = new byte[Math.min(
+								session.line.length * 2, MAX_LINE_LENGTH)];
+						System.arraycopy(session.line, 0, line, 0,
+								session.lineLength);
+						session.line = line;
+					}
+					session.line[session.lineLength++] = b;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Sends the output of the engine (or of the pipeline), waiting for
+		 * the connection to be writable (and not reading more input) if it
+		 * cannot be sent at once. The input is not read either while the
+		 * pipeline does not take it.
+		 */
+		private void flush(SelectionKey key, Session session)
+				throws IOException {
+			if (session.output.size() > 0) {
+				append(session, session.output.toByteArray());
+				session.output.reset();
+			}
+			if (session.turns != null) {
+				if (session.ended)
+					session.closing = true;
+				byte[] bytes;
+				while ((bytes = session.outbox.poll()) != null)
+					append(session, bytes);
+			}
+			write(key, session);
+		}
+
+		private void append(Session session, byte[] bytes) {
+			if (session.pending == null)
+				session.pending = ByteBuffer.wrap(bytes);
+			else {
+				ByteBuffer pending = ByteBuffer.allocate(session.pending
+						.remaining()
+						+ bytes.length);
+				pending.put(session.pending).put(bytes).flip();
+				session.pending = pending;
+			}
+		}
+
+		private void write(SelectionKey key, Session session)
+				throws IOException {
+			if (session.pending != null) {
+				session.channel.write(session.pending);
+				if (session.pending.hasRemaining()) {
+					key.interestOps(SelectionKey.OP_WRITE);
+					return;
+				}
+				session.pending = null;
+			}
+			if (session.closing)
+				close(key);
+			else
+				key.interestOps((session.blocked != null) ? 0
+						: SelectionKey.OP_READ);
+		}
+
+		private void close(SelectionKey key) {
+			Session session = (Session) key.attachment();
+			key.attach(null);
+			key.cancel();
+			closeQuietly((SocketChannel) key.channel());
+			if (session != null) {
+				sessions.decrementAndGet();
+				if (session.turns != null)
+					session.turns.close();
+				else
+					pool.release(session.engine);
+			}
+		}
+
+		/**
+		 * Represents the receiver of the output of the pipeline for a
+		 * session, that hands it to this selector thread.
+		 */
+		private final class Output implements CommandPipeline.Output {
+			private final SelectionKey key;
+			private final Session session;
+
+			Output(SelectionKey key, Session session) {
+				this.key = key;
+				this.session = session;
+			}
+
+			public void write(byte[] output, boolean gameOver) {
+				session.outbox.add(output);
+				if (gameOver)
+					session.ended = true;
+				ready(key);
+			}
+
+			public void failed(RuntimeException failure) {
+				System.err.println("Warning: turn not played: " + failure);
+			}
+
+			public void closed() {
+				pool.release(session.engine);
+			}
+		}
+
+		private void closeAll() {
+			SocketChannel channel;
+			while ((channel = accepted.poll()) != null)
+				closeQuietly(channel);
+			try {
+				for (SelectionKey key : selector.keys()) {
+					if (key.channel() instanceof SocketChannel)
+						close(key);
+				}
+				selector.close();
+			} catch (IOException e) {
+			} catch (ClosedSelectorException e) {
+			}
+		}
+	}
+
+	/**
+	 * Constructs a server of a game.
+	 * 
+	 * @param image
+	 *            The game image (see GameImage); it is not copied, so it
+	 *            cannot be changed afterwards.
+	 * @param configuration
+	 *            The configuration of the engines, or null for the default
+	 *            one.
+	 * @throws IllegalArgumentException
+	 *             The argument 'image' cannot be null.
+	 */
+	public GameServer(ByteBuffer image, Configuration configuration) {
+		if (image == null)
+			throw new IllegalArgumentException();
+		this.image = image.asReadOnlyBuffer();
+		this.configuration = configuration;
+	}
+
+	/**
+	 * Sets the pipeline that plays the turns of the sessions, instead of the
+	 * selector threads. The server does not shut it down when it is stopped.
+	 * 
+	 * @param pipeline
+	 *            The pipeline, or null to play the turns in the selector
+	 *            threads.
+	 * @throws IllegalStateException
+	 *             The server is already started.
+	 */
+	public synchronized void setPipeline(CommandPipeline pipeline) {
+		if (serverChannel != null)
+			throw new IllegalStateException();
+		this.pipeline = pipeline;
+	}
+
+	/**
+	 * Sets the watcher that reloads the configuration of the sessions (see
+	 * SessionPool#setConfigurationWatcher(ConfigurationWatcher)). The server
+	 * does not start or stop it.
+	 * 
+	 * @param watcher
+	 *            The watcher, or null if the configuration is not reloaded.
+	 * @throws IllegalStateException
+	 *             The server is already started.
+	 */
+	public synchronized void setConfigurationWatcher(
+			ConfigurationWatcher watcher) {
+		if (serverChannel != null)
+			throw new IllegalStateException();
+		this.watcher = watcher;
+	}
+
+	/**
+	 * Starts accepting connections on an address, with the default number of
+	 * selector threads.
+	 * 
+	 * @param address
+	 *            The address (its port can be 0 for any free port).
+	 * @throws IOException
+	 *             The server cannot be bound to the address, or the game image
+	 *             is not valid.
+	 * @throws IllegalArgumentException
+	 *             The argument 'address' cannot be null.
+	 * @throws IllegalStateException
+	 *             The server is already started.
+	 */
+	public void start(InetSocketAddress address) throws IOException {
+		start(address, DEFAULT_SELECTORS);
+	}
+
+	/**
+	 * Starts accepting connections on an address.
+	 * 
+	 * @param address
+	 *            The address (its port can be 0 for any free port).
+	 * @param selectors
+	 *            The number of selector threads.
+	 * @throws IOException
+	 *             The server cannot be bound to the address, or the game image
+	 *             is not valid.
+	 * @throws IllegalArgumentException
+	 *             The argument 'address' cannot be null and 'selectors' must
+	 *             be positive.
+	 * @throws IllegalStateException
+	 *             The server is already started.
+	 */
+	public synchronized void start(InetSocketAddress address, int selectors)
+			throws IOException {
+		if ((address == null) || (selectors <= 0))
+			throw new IllegalArgumentException();
+		if (serverChannel != null)
+			throw new IllegalStateException();
+		if (pool == null) {
+			try {
+				pool = new SessionPool(GameTemplate.load(image), configuration);
+			} catch (InvalidGameDefinitionException e) {
+				throw new IOException(e.getMessage());
+			}
+		}
+		pool.setConfigurationWatcher(watcher);
+
+		serverChannel = ServerSocketChannel.open();
+		try {
+			serverChannel.socket().setReuseAddress(true);
+			serverChannel.socket().bind(address, 1024);
+			serverChannel.configureBlocking(false);
+			loops = new SelectorLoop[selectors];
+			for (int i = 0; i < selectors; i++)
+				loops[i] = new SelectorLoop(i);
+			serverChannel.register(loops[0].selector, SelectionKey.OP_ACCEPT);
+		} catch (IOException e) {
+			serverChannel.close();
+			serverChannel = null;
+			throw e;
+		}
+		for (SelectorLoop loop : loops)
+			loop.thread.start();
+	}
+
+	/**
+	 * Accepts the pending connections, handing them to the selector threads
+	 * in turn.
+	 */
+	private void accept() {
+		try {
+			SocketChannel channel;
+			while ((channel = serverChannel.accept()) != null) {
+				channel.configureBlocking(false);
+				channel.socket().setTcpNoDelay(true);
+				loops[nextLoop].add(channel);
+				nextLoop = (nextLoop + 1) % loops.length;
+			}
+		} catch (IOException e) {
+			System.err.println("Warning: connection not accepted: " + e);
+		}
+	}
+
+	/**
+	 * Gets the address where the server accepts connections.
+	 * 
+	 * @return The address, or null if the server is not started.
+	 */
+	public synchronized InetSocketAddress getAddress() {
+		if (serverChannel == null)
+			return null;
+		return (InetSocketAddress) serverChannel.socket()
+				.getLocalSocketAddress();
+	}
+
+	/**
+	 * Gets the number of open sessions.
+	 * 
+	 * @return The number of sessions.
+	 */
+	public int getNumberOfSessions() {
+		return sessions.get();
+	}
+
+	/**
+	 * Stops accepting connections and closes all the sessions. It does
+	 * nothing if the server is not started.
+	 * 
+	 * @throws InterruptedException
+	 *             The thread is interrupted while waiting for the selector
+	 *             threads.
+	 */
+	public synchronized void stop() throws InterruptedException {
+		if (serverChannel == null)
+			return;
+		closeQuietly(serverChannel);
+		for (SelectorLoop loop : loops) {
+			loop.running = false;
+			loop.selector.wakeup();
+		}
+		for (SelectorLoop loop : loops)
+			loop.thread.join();
+		serverChannel = null;
+		loops = null;
+	}
+
+	private static void closeQuietly(Closeable closeable) {
+		try {
+			closeable.close();
+		} catch (IOException e) {
+		}
+	}
+
+	/**
+	 * Returns a String representation for this object: GameServer[address,
+	 * sessions]. This is useful for debugging purposes.
+	 * 
+	 * @see Object#toString()
+	 */
+	public String toString() {
+		return this.getClass().getSimpleName() + "[" + getAddress() + ", "
+				+ sessions.get() + "]";
+	}
+}
@@ -0,0 +1,88 @@
+package es.ucm.fdi.lps.p3;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Represents a point-in-time view of the state of a game in its world: the
+ * location of the player and the places of the items (a location or the player
+ * inventory). A snapshot is immutable and it is taken in constant time at a
+ * turn boundary, because it shares the places of the moved items with its game
+ * (they are immutable too, see ItemPlaces), so it can be saved from another
+ * thread while the game goes on.
+ */
+public final class GameSnapshot {
+
+	private final int numberOfLocations;
+	private final int location;
+	private final int[] homes;
+	private final ItemPlaces moved;
+
+	/**
+	 * Constructs a snapshot. The array is not copied, so it cannot be changed
+	 * afterwards.
+	 */
+	GameSnapshot(int numberOfLocations, int location, int[] homes,
+			ItemPlaces moved) {
+		this.numberOfLocations = numberOfLocations;
+		this.location = location;
+		this.homes = homes;
+		this.moved = moved;
+	}
+
+	int getNumberOfLocations() {
+		return numberOfLocations;
+	}
+
+	int getNumberOfItems() {
+		return homes.length;
+	}
+
+	/**
+	 * Gets the id of the location of the player.
+	 */
+	int getLocation() {
+		return location;
+	}
+
+	/**
+	 * Gets the id of the location where an item is, or World.NONE if it is in
+	 * the player inventory.
+	 */
+	int getPlace(int item) {
+		int place = moved.get(item);
+		return (place == ItemPlaces.UNMOVED) ? homes[item] : place;
+	}
+
+	/**
+	 * Gets the id of the location where an item was when the game was loaded.
+	 */
+	int getHome(int item) {
+		return homes[item];
+	}
+
+	/**
+	 * Writes this snapshot as a save of its game (see GameSave).
+	 * 
+	 * @param out
+	 *            The output stream.
+	 * @throws IllegalArgumentException
+	 *             The argument 'out' cannot be null.
+	 * @throws IOException
+	 *             The save cannot be written.
+	 */
+	public void write(OutputStream out) throws IOException {
+		GameSave.write(this, out);
+	}
+
+	/**
+	 * Returns a String representation for this object: GameSnapshot[location,
+	 * items]. This is useful for debugging purposes.
+	 * 
+	 * @see Object#toString()
+	 */
+	public String toString() {
+		return this.getClass().getSimpleName() + "[" + location + ", "
+				+ homes.length + "]";
+	}
+}
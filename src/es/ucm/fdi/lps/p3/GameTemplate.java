@@ -0,0 +1,161 @@
+package es.ucm.fdi.lps.p3;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import es.ucm.fdi.lps.p3.Game.Direction;
+import es.ucm.fdi.lps.p3.exception.InvalidGameDefinitionException;
+
+/**
+ * Represents the world of a game as it was loaded (its locations, their
+ * connections and the items of every location), shared by all the games
+ * constructed from it (see newGame()). The template is loaded
+ * once per game definition and it is never changed, so its games can be
+ * played at the same time from different threads: each game only keeps the
+ * items moved and the player inventory, and reads everything else from the
+ * template.
+ */
+public final class GameTemplate {
+
+	private final String title;
+	private final String author;
+	private final String description;
+
+	private final Map<String, Location> locations;
+	private final Map<String, EnumMap<Direction, String>> connections;
+	private final List<String> duplicateLocationIDs;
+
+	private final World world;
+	private final Item[] worldItems;
+	private final int[] worldItemHomes;
+	private final Location initialLocation;
+
+	/**
+	 * Constructs a template with the world of a game. The game keeps its
+	 * world, so both of them can be used, but the locations of the world
+	 * cannot be changed from then on.
+	 * 
+	 * @param game
+	 *            The game, loaded with a world (from its definition or from
+	 *            its image).
+	 * @throws IllegalArgumentException
+	 *             The argument 'game' cannot be null, the game must have a
+	 *             world and the player must be in a location of that world.
+	 */
+	public GameTemplate(Game game) {
+		if ((game == null) || (game.getWorld() == null)
+				|| (game.getCurrentLocation().getWorld() != game.getWorld()))
+			throw new IllegalArgumentException();
+
+		title = game.getTitle();
+		author = game.getAuthor();
+		description = game.getDescription();
+		locations = Collections.unmodifiableMap(game.getLocations());
+		connections = Collections.unmodifiableMap(game.getConnections());
+		duplicateLocationIDs = Collections.unmodifiableList(game
+				.getDuplicateLocationIDs());
+		world = game.getWorld();
+		worldItems = game.getWorldItems();
+		worldItemHomes = game.getWorldItemHomes();
+		initialLocation = game.getCurrentLocation();
+	}
+
+	/**
+	 * Loads a template from a game definition (see Game#Game(InputStream)).
+	 * 
+	 * @param gameDefinition
+	 *            The game definition.
+	 * @return The template.
+	 * @throws IllegalArgumentException
+	 *             The argument 'gameDefinition' cannot be null.
+	 * @throws InvalidGameDefinitionException
+	 *             The game definition is invalid.
+	 */
+	public static GameTemplate load(InputStream gameDefinition)
+			throws InvalidGameDefinitionException {
+		return new GameTemplate(new Game(gameDefinition));
+	}
+
+	/**
+	 * Loads a template from a game image (see GameImage#load(ByteBuffer)).
+	 * 
+	 * @param image
+	 *            The buffer with the image; it is not copied, so it cannot be
+	 *            changed afterwards.
+	 * @return The template.
+	 * @throws IllegalArgumentException
+	 *             The argument 'image' cannot be null.
+	 * @throws InvalidGameDefinitionException
+	 *             The buffer does not contain a valid game image.
+	 */
+	public static GameTemplate load(ByteBuffer image)
+			throws InvalidGameDefinitionException {
+		return new GameTemplate(GameImage.load(image));
+	}
+
+	/**
+	 * Constructs a new game of this template, that begins with the player in
+	 * the initial location and the items where they were loaded. The game
+	 * only takes memory for the items moved and the player inventory.
+	 * 
+	 * @return The game.
+	 */
+	public Game newGame() {
+		return new Game(this);
+	}
+
+	String getTitle() {
+		return title;
+	}
+
+	String getAuthor() {
+		return author;
+	}
+
+	String getDescription() {
+		return description;
+	}
+
+	Map<String, Location> getLocations() {
+		return locations;
+	}
+
+	Map<String, EnumMap<Direction, String>> getConnections() {
+		return connections;
+	}
+
+	List<String> getDuplicateLocationIDs() {
+		return duplicateLocationIDs;
+	}
+
+	World getWorld() {
+		return world;
+	}
+
+	Item[] getWorldItems() {
+		return worldItems;
+	}
+
+	int[] getWorldItemHomes() {
+		return worldItemHomes;
+	}
+
+	Location getInitialLocation() {
+		return initialLocation;
+	}
+
+	/**
+	 * Returns a String representation for this object: GameTemplate[title,
+	 * locations, items]. This is useful for debugging purposes.
+	 * 
+	 * @see Object#toString()
+	 */
+	public String toString() {
+		return this.getClass().getSimpleName() + "[" + title + ", "
+				+ world.size() + ", " + worldItems.length + "]";
+	}
+}
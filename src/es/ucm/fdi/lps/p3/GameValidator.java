@@ -0,0 +1,695 @@
+package es.ucm.fdi.lps.p3;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+import es.ucm.fdi.lps.p3.Game.Direction;
+import es.ucm.fdi.lps.p3.exception.InvalidGameDefinitionException;
+
+/**
+ * Checks the world of a loaded game, looking for the problems that loading it
+ * silently tolerates: connections to locations that do not exist, locations
+ * defined more than once, connections with no way back, locations that cannot
+ * be reached from the initial one and exit thresholds that cannot be reached
+ * with the items of the game. It also computes the strongly connected
+ * components of the world. The passes over the locations run in parallel.
+ */
+public class GameValidator {
+
+	/**
+	 * Number of locations checked by each task
+	 */
+	private static final int BATCH_SIZE = 4096;
+
+	private static final Direction[] DIRECTIONS = Direction.values();
+
+	private final Game game;
+
+	/**
+	 * The locations of the game with their ids and the ids of their connected
+	 * locations, by index (in definition order)
+	 */
+	private final String[] ids;
+	private final Location[] locations;
+	private final EnumMap<Direction, String>[] connections;
+
+	/**
+	 * The index of every location id
+	 */
+	private final Map<String, Integer> indexes;
+
+	/**
+	 * The index of the connected location of every location in every direction
+	 * (-1 if there is none), by location index and direction ordinal
+	 */
+	private final int[] adjacency;
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private GameValidator(Game game) {
+		this.game = game;
+		int count = game.getLocations().size();
+		ids = game.getLocations().keySet().toArray(new String[count]);
+		locations = game.getLocations().values().toArray(new Location[count]);
+		connections = new EnumMap[count];
+		indexes = new HashMap<String, Integer>(count * 2);
+		for (int i = 0; i < count; i++) {
+			connections[i] = game.getConnections().get(ids[i]);
+			indexes.put(ids[i], i);
+		}
+		adjacency = new int[count * DIRECTIONS.length];
+	}
+
+	/**
+	 * Validates the world of a game.
+	 * 
+	 * @param game
+	 *            The game.
+	 * @return The report of the validation.
+	 * @throws IllegalArgumentException
+	 *             The argument 'game' cannot be null.
+	 */
+	public static Report validate(Game game) {
+		if (game == null)
+			throw new IllegalArgumentException();
+		return new GameValidator(game).validate();
+	}
+
+	private Report validate() {
+		Report report = new Report(game.getTitle(), ids.length);
+		report.duplicateIds.addAll(game.getDuplicateLocationIDs());
+
+		LinkTask links = new LinkTask(0, ids.length);
+		GameDefinitionParser.getPool().invoke(links);
+		report.danglingLinks.addAll(links.dangling);
+		report.asymmetricExits.addAll(links.asymmetric);
+
+		int start = -1;
+		for (int i = 0; (i < locations.length) && (start == -1); i++) {
+			if (locations[i] == game.getCurrentLocation())
+				start = i;
+		}
+
+		final int initial = start;
+		final boolean[] reachable = new boolean[ids.length];
+		final RecursiveAction reachability = new RecursiveAction() {
+			private static final long serialVersionUID = 1L;
+
+			protected void compute() {
+				markReachable(initial, reachable);
+			}
+		};
+		final RecursiveTask<List<int[]>> components = new RecursiveTask<List<int[]>>() {
+			private static final long serialVersionUID = 1L;
+
+			protected List<int[]> compute() {
+				return findComponents();
+			}
+		};
+		GameDefinitionParser.getPool().invoke(new RecursiveAction() {
+			private static final long serialVersionUID = 1L;
+
+			protected void compute() {
+				ForkJoinTask.invokeAll(reachability, components);
+			}
+		});
+
+		for (int[] component : components.join()) {
+			List<String> members = new ArrayList<String>(component.length);
+			for (int i : component)
+				members.add(ids[i]);
+			report.components.add(members);
+		}
+
+		ValueTask value = new ValueTask(reachable, 0, ids.length);
+		long maxValue = GameDefinitionParser.getPool().invoke(value);
+		for (int i = 0; i < ids.length; i++) {
+			if (!reachable[i])
+				report.unreachable.add(ids[i]);
+			if (locations[i].hasExitThreshold()) {
+				int threshold = locations[i].getExitThreshold();
+				report.exits.add(new Exit(ids[i], threshold, reachable[i],
+						maxValue, reachable[i] && (threshold <= maxValue)));
+			}
+		}
+		return report;
+	}
+
+	/**
+	 * Resolves the connections of a range of locations, looking for dangling
+	 * links and asymmetric exits
+	 */
+	@SuppressWarnings("serial")
+	private class LinkTask extends RecursiveAction {
+
+		private final int from, to;
+		private List<Link> dangling, asymmetric;
+
+		LinkTask(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		protected void compute() {
+			if (to - from > BATCH_SIZE) {
+				int middle = (from + to) >>> 1;
+				LinkTask left = new LinkTask(from, middle);
+				LinkTask right = new LinkTask(middle, to);
+				invokeAll(left, right);
+				dangling = left.dangling;
+				dangling.addAll(right.dangling);
+				asymmetric = left.asymmetric;
+				asymmetric.addAll(right.asymmetric);
+				return;
+			}
+
+			dangling = new ArrayList<Link>();
+			asymmetric = new ArrayList<Link>();
+			for (int i = from; i < to; i++) {
+				Arrays.fill(adjacency, i * DIRECTIONS.length, (i + 1)
+						* DIRECTIONS.length, -1);
+				for (Map.Entry<Direction, String> e : connections[i].entrySet()) {
+					Direction dir = e.getKey();
+					Integer target = indexes.get(e.getValue());
+					if (target == null) {
+						dangling.add(new Link(ids[i], dir, e.getValue()));
+						continue;
+					}
+					adjacency[i * DIRECTIONS.length + dir.ordinal()] = target;
+					if (!ids[i].equals(connections[target].get(dir
+							.getOppositeDirection())))
+						asymmetric.add(new Link(ids[i], dir, e.getValue()));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds up the positive values of the items of a range of locations that
+	 * can be reached
+	 */
+	@SuppressWarnings("serial")
+	private class ValueTask extends RecursiveTask<Long> {
+
+		private final boolean[] reachable;
+		private final int from, to;
+
+		ValueTask(boolean[] reachable, int from, int to) {
+			this.reachable = reachable;
+			this.from = from;
+			this.to = to;
+		}
+
+		protected Long compute() {
+			if (to - from > BATCH_SIZE) {
+				int middle = (from + to) >>> 1;
+				ValueTask right = new ValueTask(reachable, middle, to);
+				right.fork();
+				long left = new ValueTask(reachable, from, middle).compute();
+				return left + right.join();
+			}
+
+			long value = 0;
+			for (int i = from; i < to; i++) {
+				if (reachable[i]) {
+					for (Item item : locations[i].getAllItems()) {
+						if (item.getValue() > 0)
+							value += item.getValue();
+					}
+				}
+			}
+			return value;
+		}
+	}
+
+	private void markReachable(int start, boolean[] reachable) {
+		if (start == -1)
+			return;
+		int[] queue = new int[ids.length];
+		int head = 0, tail = 0;
+		queue[tail++] = start;
+		reachable[start] = true;
+		while (head < tail) {
+			int v = queue[head++];
+			for (int d = 0; d < DIRECTIONS.length; d++) {
+				int w = adjacency[v * DIRECTIONS.length + d];
+				if ((w != -1) && !reachable[w]) {
+					reachable[w] = true;
+					queue[tail++] = w;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Finds the strongly connected components (Tarjan's algorithm, without
+	 * recursion so that big worlds do not overflow the stack).
+	 */
+	private List<int[]> findComponents() {
+		int n = ids.length;
+		int[] index = new int[n];
+		int[] low = new int[n];
+		boolean[] onStack = new boolean[n];
+		int[] stack = new int[n];
+		int[] callStack = new int[n];
+		int[] nextEdge = new int[n];
+		Arrays.fill(index, -1);
+		int counter = 0, sp = 0;
+		List<int[]> components = new ArrayList<int[]>();
+
+		for (int s = 0; s < n; s++) {
+			if (index[s] != -1)
+				continue;
+			int csp = 0;
+			index[s] = low[s] = counter++;
+			stack[sp++] = s;
+			onStack[s] = true;
+			callStack[csp] = s;
+			nextEdge[csp++] = 0;
+
+			while (csp > 0) {
+				int v = callStack[csp - 1];
+				if (nextEdge[csp - 1] < DIRECTIONS.length) {
+					int w = adjacency[v * DIRECTIONS.length
+							+ nextEdge[csp - 1]++];
+					if (w == -1)
+						continue;
+					if (index[w] == -1) {
+						index[w] = low[w] = counter++;
+						stack[sp++] = w;
+						onStack[w] = true;
+						callStack[csp] = w;
+						nextEdge[csp++] = 0;
+					} else if (onStack[w])
+						low[v] = Math.min(low[v], index[w]);
+					continue;
+				}
+
+				csp--;
+				if (csp > 0) {
+					int u = callStack[csp - 1];
+					low[u] = Math.min(low[u], low[v]);
+				}
+				if (low[v] == index[v]) {
+					int size = 0;
+					while (stack[sp - 1 - size] != v)
+						size++;
+					size++;
+					int[] component = new int[size];
+					for (int i = 0; i < size; i++) {
+						int w = stack[--sp];
+						onStack[w] = false;
+						component[size - 1 - i] = w;
+					}
+					components.add(component);
+				}
+			}
+		}
+		return components;
+	}
+
+	/**
+	 * Represents a connection of the world: the id of a location, a direction
+	 * and the id of the connected location.
+	 */
+	public static class Link {
+
+		private final String from;
+		private final Direction direction;
+		private final String to;
+
+		Link(String from, Direction direction, String to) {
+			this.from = from;
+			this.direction = direction;
+			this.to = to;
+		}
+
+		/**
+		 * Gets the id of the location where the connection starts.
+		 * 
+		 * @return The id.
+		 */
+		public String getFrom() {
+			return from;
+		}
+
+		/**
+		 * Gets the direction of the connection.
+		 * 
+		 * @return The direction.
+		 */
+		public Direction getDirection() {
+			return direction;
+		}
+
+		/**
+		 * Gets the id of the connected location.
+		 * 
+		 * @return The id.
+		 */
+		public String getTo() {
+			return to;
+		}
+
+		/**
+		 * Returns a String representation for this object: Link[from
+		 * direction to]. This is useful for debugging purposes.
+		 * 
+		 * @see Object#toString()
+		 */
+		public String toString() {
+			return this.getClass().getSimpleName() + "[" + from + " "
+					+ direction.getKeyword() + " " + to + "]";
+		}
+	}
+
+	/**
+	 * Represents the check of an exit location: whether it can be reached
+	 * from the initial location and whether its threshold can be reached with
+	 * the items of the locations that can be reached.
+	 */
+	public static class Exit {
+
+		private final String id;
+		private final int threshold;
+		private final boolean reachable;
+		private final long maxValue;
+		private final boolean satisfiable;
+
+		Exit(String id, int threshold, boolean reachable, long maxValue,
+				boolean satisfiable) {
+			this.id = id;
+			this.threshold = threshold;
+			this.reachable = reachable;
+			this.maxValue = maxValue;
+			this.satisfiable = satisfiable;
+		}
+
+		/**
+		 * Gets the id of the exit location.
+		 * 
+		 * @return The id.
+		 */
+		public String getId() {
+			return id;
+		}
+
+		/**
+		 * Gets the exit threshold of the location.
+		 * 
+		 * @return The threshold.
+		 */
+		public int getThreshold() {
+			return threshold;
+		}
+
+		/**
+		 * Checks whether the exit location can be reached from the initial
+		 * location.
+		 * 
+		 * @return true if it can be reached; false otherwise.
+		 */
+		public boolean isReachable() {
+			return reachable;
+		}
+
+		/**
+		 * Gets the maximum value the player inventory can have: the sum of the
+		 * positive values of the items of the locations that can be reached.
+		 * 
+		 * @return The value.
+		 */
+		public long getMaxValue() {
+			return maxValue;
+		}
+
+		/**
+		 * Checks whether the player can reach the exit location with enough
+		 * inventory value to end the game there.
+		 * 
+		 * @return true if the exit threshold can be satisfied; false otherwise.
+		 */
+		public boolean isSatisfiable() {
+			return satisfiable;
+		}
+
+		/**
+		 * Returns a String representation for this object: Exit[id]. This is
+		 * useful for debugging purposes.
+		 * 
+		 * @see Object#toString()
+		 */
+		public String toString() {
+			return this.getClass().getSimpleName() + "[" + id + "]";
+		}
+	}
+
+	/**
+	 * Represents the report of the validation of a game, that can be written
+	 * as a JSON document.
+	 */
+	public static class Report {
+
+		private final String title;
+		private final int locationCount;
+		private final List<String> duplicateIds = new ArrayList<String>();
+		private final List<Link> danglingLinks = new ArrayList<Link>();
+		private final List<Link> asymmetricExits = new ArrayList<Link>();
+		private final List<String> unreachable = new ArrayList<String>();
+		private final List<List<String>> components = new ArrayList<List<String>>();
+		private final List<Exit> exits = new ArrayList<Exit>();
+
+		Report(String title, int locationCount) {
+			this.title = title;
+			this.locationCount = locationCount;
+		}
+
+		/**
+		 * Checks whether the world has no errors: no duplicate ids, no
+		 * dangling links, no unreachable locations and no exit threshold that
+		 * cannot be satisfied. Asymmetric exits are not errors (they may be
+		 * one-way passages).
+		 * 
+		 * @return true if the world is valid; false otherwise.
+		 */
+		public boolean isValid() {
+			if (!duplicateIds.isEmpty() || !danglingLinks.isEmpty()
+					|| !unreachable.isEmpty())
+				return false;
+			for (Exit exit : exits) {
+				if (!exit.isSatisfiable())
+					return false;
+			}
+			return true;
+		}
+
+		/**
+		 * Gets the ids of the locations defined more than once.
+		 * 
+		 * @return The ids, in definition order.
+		 */
+		public List<String> getDuplicateIds() {
+			return Collections.unmodifiableList(duplicateIds);
+		}
+
+		/**
+		 * Gets the connections to locations that do not exist.
+		 * 
+		 * @return The connections.
+		 */
+		public List<Link> getDanglingLinks() {
+			return Collections.unmodifiableList(danglingLinks);
+		}
+
+		/**
+		 * Gets the connections whose connected location does not lead back in
+		 * the opposite direction.
+		 * 
+		 * @return The connections.
+		 */
+		public List<Link> getAsymmetricExits() {
+			return Collections.unmodifiableList(asymmetricExits);
+		}
+
+		/**
+		 * Gets the ids of the locations that cannot be reached from the
+		 * initial location.
+		 * 
+		 * @return The ids, in definition order.
+		 */
+		public List<String> getUnreachable() {
+			return Collections.unmodifiableList(unreachable);
+		}
+
+		/**
+		 * Gets the strongly connected components of the world (sets of
+		 * locations from where the player can go to each other), in reverse
+		 * topological order.
+		 * 
+		 * @return The ids of the locations of every component.
+		 */
+		public List<List<String>> getComponents() {
+			return Collections.unmodifiableList(components);
+		}
+
+		/**
+		 * Gets the checks of the exit locations.
+		 * 
+		 * @return The checks, in definition order.
+		 */
+		public List<Exit> getExits() {
+			return Collections.unmodifiableList(exits);
+		}
+
+		/**
+		 * Writes the report as a JSON document.
+		 * 
+		 * @param out
+		 *            The writer.
+		 * @throws IllegalArgumentException
+		 *             The argument 'out' cannot be null.
+		 * @throws IOException
+		 *             The report cannot be written.
+		 */
+		public void write(Writer out) throws IOException {
+			if (out == null)
+				throw new IllegalArgumentException();
+
+			out.write("{\n  \"title\": " + quote(title));
+			out.write(",\n  \"locations\": " + locationCount);
+			out.write(",\n  \"valid\": " + isValid());
+			out.write(",\n  \"duplicateIds\": ");
+			writeIds(out, duplicateIds);
+			out.write(",\n  \"danglingLinks\": ");
+			writeLinks(out, danglingLinks);
+			out.write(",\n  \"asymmetricExits\": ");
+			writeLinks(out, asymmetricExits);
+			out.write(",\n  \"unreachable\": ");
+			writeIds(out, unreachable);
+			out.write(",\n  \"components\": [");
+			for (int i = 0; i < components.size(); i++) {
+				out.write((i == 0) ? "\n    " : ",\n    ");
+				writeIds(out, components.get(i));
+			}
+			out.write(components.isEmpty() ? "]" : "\n  ]");
+			out.write(",\n  \"exits\": [");
+			for (int i = 0; i < exits.size(); i++) {
+				Exit exit = exits.get(i);
+				out.write((i == 0) ? "\n    " : ",\n    ");
+				out.write("{\"id\": " + quote(exit.getId()) + ", \"threshold\": "
+						+ exit.getThreshold() + ", \"reachable\": "
+						+ exit.isReachable() + ", \"maxValue\": "
+						+ exit.getMaxValue() + ", \"satisfiable\": "
+						+ exit.isSatisfiable() + "}");
+			}
+			out.write(exits.isEmpty() ? "]" : "\n  ]");
+			out.write("\n}\n");
+			out.flush();
+		}
+
+		private static void writeIds(Writer out, List<String> ids)
+				throws IOException {
+			out.write("[");
+			for (int i = 0; i < ids.size(); i++) {
+				if (i > 0)
+					out.write(", ");
+				out.write(quote(ids.get(i)));
+			}
+			out.write("]");
+		}
+
+		private static void writeLinks(Writer out, List<Link> links)
+				throws IOException {
+			out.write("[");
+			for (int i = 0; i < links.size(); i++) {
+				Link link = links.get(i);
+				out.write((i == 0) ? "\n    " : ",\n    ");
+				out.write("{\"from\": " + quote(link.getFrom())
+						+ ", \"direction\": "
+						+ quote(link.getDirection().getKeyword()) + ", \"to\": "
+						+ quote(link.getTo()) + "}");
+			}
+			out.write(links.isEmpty() ? "]" : "\n  ]");
+		}
+
+		private static String quote(String s) {
+			if (s == null)
+				return "null";
+			StringBuilder sb = new StringBuilder(s.length() + 2);
+			sb.append('"');
+			for (int i = 0; i < s.length(); i++) {
+				char c = s.charAt(i);
+				if ((c == '"') || (c == '\\'))
+					sb.append('\\').append(c);
+				else if (c < ' ')
+					sb.append(String.format("\\u%04x", (int) c));
+				else
+					sb.append(c);
+			}
+			return sb.append('"').toString();
+		}
+
+		/**
+		 * Returns a String representation for this object: Report[valid].
+		 * This is useful for debugging purposes.
+		 * 
+		 * @see Object#toString()
+		 */
+		public String toString() {
+			return this.getClass().getSimpleName() + "[" + isValid() + "]";
+		}
+	}
+
+	/**
+	 * Main method. Usage: gamevalidator gameFilePath <br>
+	 * (the game file can be a textual game definition or a game image). The
+	 * report is written to the standard output, and the exit status is 1 if
+	 * the world is not valid.
+	 * 
+	 * @param args
+	 *            Execution arguments read from console.
+	 * @throws IllegalArgumentException
+	 *             The argument 'args' cannot be null.
+	 */
+	public static void main(String[] args) {
+		if (args.length != 1)
+			throw new IllegalArgumentException("Error: Wrong arguments number");
+
+		File file = new File(args[0]);
+		try {
+			Game game;
+			if (GameImage.isImage(file))
+				game = GameImage.load(file);
+			else {
+				FileInputStream in = new FileInputStream(file);
+				try {
+					game = new Game(in, Charset.defaultCharset(), true);
+				} finally {
+					in.close();
+				}
+			}
+
+			Report report = validate(game);
+			report.write(new OutputStreamWriter(System.out));
+			if (!report.isValid())
+				System.exit(1);
+		} catch (IOException e) {
+			e.printStackTrace();
+		} catch (InvalidGameDefinitionException e) {
+			e.printStackTrace();
+		}
+	}
+}
@@ -21,6 +21,24 @@ public class Item {
 	 */
 	private int value;
 
+	/**
+	 * The id of the item in the world of its game (its position among the
+	 * items of the world when the game was loaded), or World.NONE if the item
+	 * is not part of a world
+	 */
+	private int worldId = World.NONE;
+
+	/**
+	 * The game image text holding the name and the description of the item,
+	 * or null if they are kept in memory
+	 */
+	private TextStore text;
+
+	/**
+	 * The indexes of the name and the description in the game image text
+	 */
+	private int nameIndex, descriptionIndex;
+
 	/**
 	 * Constructs an item using a given name, a given description and a given
 	 * value.
@@ -42,12 +60,43 @@ public class Item {
 		this.value = value;
 	}
 
+	/**
+	 * Constructs an item whose name and description are read from the text of
+	 * a game image when they are needed, with a given value.
+	 * 
+	 * @param text
+	 *            The game image text.
+	 * @param nameIndex
+	 *            The index of the name in the text.
+	 * @param descriptionIndex
+	 *            The index of the description in the text.
+	 * @param value
+	 *            The value.
+	 * @throws IllegalArgumentException
+	 *             The argument 'text' cannot be null.
+	 * @throws IndexOutOfBoundsException
+	 *             The indexes are not in the text.
+	 */
+	Item(TextStore text, int nameIndex, int descriptionIndex, int value) {
+		if (text == null)
+			throw new IllegalArgumentException();
+		if ((nameIndex < 0) || (nameIndex >= text.size())
+				|| (descriptionIndex < 0) || (descriptionIndex >= text.size()))
+			throw new IndexOutOfBoundsException();
+		this.text = text;
+		this.nameIndex = nameIndex;
+		this.descriptionIndex = descriptionIndex;
+		this.value = value;
+	}
+
 	/**
 	 * Returns the description.
 	 * 
 	 * @return The description.
 	 */
 	public String getDescription() {
+		if (text != null)
+			return text.get(descriptionIndex);
 		return description;
 	}
 
@@ -57,6 +106,8 @@ public class Item {
 	 * @return The name.
 	 */
 	public String getName() {
+		if (text != null)
+			return text.get(nameIndex);
 		return name;
 	}
 
@@ -69,6 +120,19 @@ public class Item {
 		return value;
 	}
 
+	/**
+	 * Gets the id of this item in the world of its game.
+	 * 
+	 * @return The id, or World.NONE if the item is not part of a world.
+	 */
+	int getWorldId() {
+		return worldId;
+	}
+
+	void setWorldId(int worldId) {
+		this.worldId = worldId;
+	}
+
 	/**
 	 * Returns a String representation for this object: Item[]. This is useful
 	 * for debugging purposes.
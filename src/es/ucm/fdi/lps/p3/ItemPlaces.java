@@ -0,0 +1,136 @@
+package es.ucm.fdi.lps.p3;
+
+import java.util.Arrays;
+
+/**
+ * Represents the places of the moved items of a world, by the id of the item
+ * (from 0 to the number of items - 1). It is immutable: it is kept in a trie
+ * of nodes of 32 entries, and changing the place of an item copies only the
+ * nodes on the path to that item, sharing the others with the places it
+ * comes from. So the places can be handed to a snapshot as they are (see
+ * GameSnapshot), and moving an item afterwards takes the same time whatever
+ * the number of items of the world or the items moved.
+ */
+final class ItemPlaces {
+
+	/**
+	 * Place of an item that has not been moved
+	 */
+	static final int UNMOVED = Integer.MIN_VALUE;
+
+	private static final int BITS = 5;
+	private static final int WIDTH = 1 << BITS;
+	private static final int MASK = WIDTH - 1;
+
+	/**
+	 * The number of bits of the item id below the root node
+	 */
+	private final int shift;
+
+	/**
+	 * The root node: an array of nodes, or an array of places if it is a
+	 * leaf (null if no item below it has been moved)
+	 */
+	private final Object root;
+
+	/**
+	 * The number of items moved
+	 */
+	private final int size;
+
+	/**
+	 * Constructs the places of the items of a world where no item has been
+	 * moved.
+	 * 
+	 * @param numberOfItems
+	 *            The number of items of the world.
+	 */
+	ItemPlaces(int numberOfItems) {
+		int levels = 0;
+		while (((numberOfItems - 1) >>> levels) >= WIDTH)
+			levels += BITS;
+		shift = levels;
+		root = null;
+		size = 0;
+	}
+
+	private ItemPlaces(int shift, Object root, int size) {
+		this.shift = shift;
+		this.root = root;
+		this.size = size;
+	}
+
+	/**
+	 * Gets the place of an item.
+	 * 
+	 * @param id
+	 *            The id of the item.
+	 * @return The id of the location, World.NONE for the player inventory or
+	 *         UNMOVED if the item has not been moved.
+	 */
+	int get(int id) {
+		Object node = root;
+		for (int level = shift; (node != null) && (level > 0); level -= BITS)
+			node = ((Object[]) node)[(id >>> level) & MASK];
+		return (node == null) ? UNMOVED : ((int[]) node)[id & MASK];
+	}
+
+	/**
+	 * Gets the places with the place of an item changed. These places are
+	 * not changed.
+	 * 
+	 * @param id
+	 *            The id of the item.
+	 * @param place
+	 *            The id of the location, World.NONE for the player inventory
+	 *            or UNMOVED to put it back where it was loaded.
+	 * @return The new places.
+	 */
+	ItemPlaces set(int id, int place) {
+		int previous = get(id);
+		if (previous == place)
+			return this;
+		int moved = size;
+		if (previous == UNMOVED)
+			moved++;
+		else if (place == UNMOVED)
+			moved--;
+		return new ItemPlaces(shift, set(root, shift, id, place), moved);
+	}
+
+	private static Object set(Object node, int level, int id, int place) {
+		if (level == 0) {
+			int[] leaf;
+			if (node == null) {
+				leaf = new int[WIDTH];
+				Arrays.fill(leaf, UNMOVED);
+			} else
+				leaf = ((int[]) node).clone();
+			leaf[id & MASK] = place;
+			return leaf;
+		}
+		Object[] inner = (node == null) ? new Object[WIDTH]
+				: ((Object[]) node).clone();
+		int i = (id >>> level) & MASK;
+		inner[i] = set(inner[i], level - BITS, id, place);
+		return inner;
+	}
+
+	/**
+	 * Checks whether no item has been moved.
+	 * 
+	 * @return true if no item has been moved; false otherwise.
+	 */
+	boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Gets the number of items moved.
+	 * 
+	 * @return The number of items.
+	 */
+	int size() {
+		return size;
+	}
+}
@@ -1,7 +1,9 @@
 package es.ucm.fdi.lps.p3;
 
-import java.util.Iterator;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Set;
 
 import es.ucm.fdi.lps.p3.exception.ItemAlreadyInRepositoryException;
@@ -11,6 +13,10 @@ import es.ucm.fdi.lps.p3.exception.ItemNotInRepositoryException;
  * Represents a repository of items, as the player inventory or the contents of
  * a location. Important: The repository must not contain repetitions, and items
  * must be stored in the same order in which they were added to the repository.
+ * Items are also indexed by name, so looking them up by name does not depend
+ * on the size of the repository. The index is only built on the first lookup,
+ * so the names of the items are not needed until then (see
+ * GameImage#load(ByteBuffer)).
  */
 public class ItemRepository {
 
@@ -19,6 +25,21 @@ public class ItemRepository {
 	 */
 	private Set<Item> items;
 
+	/**
+	 * The items contained in the repository, grouped by name. Each bucket
+	 * keeps the items in the same order in which they were added. It is only
+	 * created when the items are looked up by name for the first time, and it
+	 * is published at once, as the repositories of the locations of a world
+	 * are read by the games sharing it (see GameTemplate).
+	 */
+	private volatile Map<String, Set<Item>> itemsByName;
+
+	/**
+	 * The total value of the items contained in the repository, kept up to
+	 * date as items are added and removed
+	 */
+	private int totalValue;
+
 	/**
 	 * Constructs a new, empty repository of items.
 	 */
@@ -43,10 +64,25 @@ public class ItemRepository {
 			throw new ItemAlreadyInRepositoryException(
 					"Error: ItemAlreadyInRepositoryException");
 		items.add(item);
+		if (itemsByName != null)
+			index(itemsByName, item);
+
+		totalValue += item.getValue();
+	}
+
+	private static void index(Map<String, Set<Item>> itemsByName, Item item) {
+		Set<Item> bucket = itemsByName.get(item.getName());
+		if (bucket == null) {
+			bucket = new LinkedHashSet<Item>();
+			itemsByName.put(item.getName(), bucket);
+		}
+		bucket.add(item);
 	}
 
 	/**
-	 * Gets items by name from the repository.
+	 * Gets items by name from the repository, in the same order in which they
+	 * were added. The returned set is a read-only view of the repository, not
+	 * a copy.
 	 * 
 	 * @param name
 	 *            The name.
@@ -58,26 +94,28 @@ public class ItemRepository {
 		if (name == null)
 			throw new IllegalArgumentException();
 
-		Set<Item> set = new LinkedHashSet<Item>();
-		Iterator<Item> itr = items.iterator();
-		Item it;
-
-		while (itr.hasNext()) {
-			it = itr.next();
-			if (it.getName().equals(name)) {
-				set.add(it);
-			}
+		Map<String, Set<Item>> index = itemsByName;
+		if (index == null) {
+			index = new HashMap<String, Set<Item>>();
+			for (Item item : items)
+				index(index, item);
+			itemsByName = index;
 		}
-		return set;
+		Set<Item> bucket = index.get(name);
+		if (bucket == null)
+			return Collections.emptySet();
+		return Collections.unmodifiableSet(bucket);
 	}
 
 	/**
-	 * Gets all items from the repository.
+	 * Gets all items from the repository, in the same order in which they were
+	 * added. The returned set is a read-only view of the repository, not a
+	 * copy.
 	 * 
 	 * @return The set of items.
 	 */
 	public Set<Item> getAllItems() {
-		return items;
+		return Collections.unmodifiableSet(items);
 	}
 
 	/**
@@ -86,13 +124,6 @@ public class ItemRepository {
 	 * @return The value.
 	 */
 	public int getTotalValue() {
-		int totalValue = 0;
-
-		Iterator<Item> itr = items.iterator();
-		while (itr.hasNext()) {
-			totalValue += itr.next().getValue();
-		}
-
 		return totalValue;
 	}
 
@@ -113,6 +144,15 @@ public class ItemRepository {
 			throw new ItemNotInRepositoryException(
 					"Error: ItemNotInRepositoryException");
 		items.remove(item);
+
+		if (itemsByName != null) {
+			Set<Item> bucket = itemsByName.get(item.getName());
+			bucket.remove(item);
+			if (bucket.isEmpty())
+				itemsByName.remove(item.getName());
+		}
+
+		totalValue -= item.getValue();
 	}
 
 	/**
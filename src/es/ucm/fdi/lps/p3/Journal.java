@@ -0,0 +1,302 @@
+package es.ucm.fdi.lps.p3;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import es.ucm.fdi.lps.p3.command.Command;
+import es.ucm.fdi.lps.p3.command.ParsedCommand;
+
+/**
+ * Represents the journal of a game session: a record of every turn played in
+ * the game, appended to a journal log that may be shared with other sessions
+ * (see JournalLog). The record of a turn holds the verb and the argument of
+ * the command and the changes that it made to the game, identified by the
+ * ids of the items and locations of the world of the game. Every some turns,
+ * a snapshot of the whole state of the game is recorded instead, so the older
+ * records can be discarded when the log is compacted.
+ * <p>
+ * After a restart, the game loaded again from its definition is brought back
+ * to its last recorded state by replaying the journal (see recover(File,
+ * String, Game)). The undo history is not recorded, so it starts empty.
+ */
+public class Journal implements GameListener {
+
+	/**
+	 * Default number of turns between two snapshots
+	 */
+	public static final int DEFAULT_SNAPSHOT_INTERVAL = 100;
+
+	/**
+	 * Kinds of the changes of a turn
+	 */
+	private static final byte TAKE = 1;
+	private static final byte DROP = 2;
+	private static final byte MOVE = 3;
+
+	private final JournalLog log;
+	private final String session;
+	private final Game game;
+	private final int snapshotInterval;
+
+	/**
+	 * The changes made since the last turn was recorded
+	 */
+	private final ByteArrayOutputStream changes = new ByteArrayOutputStream();
+	private final DataOutputStream changesOut = new DataOutputStream(changes);
+	private int numberOfChanges;
+
+	/**
+	 * The number of turns recorded since the last snapshot
+	 */
+	private int turns;
+
+	/**
+	 * Constructs the journal of a game session (with the default number of
+	 * turns between two snapshots) and starts recording the changes made to
+	 * the game.
+	 * 
+	 * @param log
+	 *            The journal log.
+	 * @param session
+	 *            The name of the session.
+	 * @param game
+	 *            The game, loaded with a world.
+	 * @throws IllegalArgumentException
+	 *             The arguments cannot be null and the game must have a world.
+	 */
+	public Journal(JournalLog log, String session, Game game) {
+		this(log, session, game, DEFAULT_SNAPSHOT_INTERVAL);
+	}
+
+	/**
+	 * Constructs the journal of a game session and starts recording the
+	 * changes made to the game.
+	 * 
+	 * @param log
+	 *            The journal log.
+	 * @param session
+	 *            The name of the session.
+	 * @param game
+	 *            The game, loaded with a world.
+	 * @param snapshotInterval
+	 *            The number of turns between two snapshots.
+	 * @throws IllegalArgumentException
+	 *             The arguments cannot be null, the game must have a world and
+	 *             'snapshotInterval' must be positive.
+	 */
+	public Journal(JournalLog log, String session, Game game,
+			int snapshotInterval) {
+		if ((log == null) || (session == null) || (game == null)
+				|| (game.getWorld() == null) || (snapshotInterval <= 0))
+			throw new IllegalArgumentException();
+		this.log = log;
+		this.session = session;
+		this.game = game;
+		this.snapshotInterval = snapshotInterval;
+		game.addListener(this);
+	}
+
+	/**
+	 * Records a turn: a command and the changes made to the game since the
+	 * last turn was recorded. Every some turns, a snapshot of the game is
+	 * recorded instead. The record is appended to the log without waiting for
+	 * it to be written.
+	 * 
+	 * @param command
+	 *            The command of the turn.
+	 * @throws IOException
+	 *             The journal log is closed or it has failed.
+	 * @throws IllegalArgumentException
+	 *             The argument 'command' cannot be null.
+	 */
+	public void commitTurn(Command command) throws IOException {
+		if (command == null)
+			throw new IllegalArgumentException();
+		if (++turns >= snapshotInterval) {
+			snapshot();
+			return;
+		}
+
+		String verb = command.toString();
+		String argument = "";
+		ParsedCommand invocation = command.getInvocation();
+		if (invocation != null) {
+			verb = invocation.getPrototype().toString();
+			if (invocation.getDirection() != null)
+				argument = invocation.getDirection().getKeyword();
+			else if (invocation.getItemName() != null)
+				argument = invocation.getItemName();
+		}
+
+		ByteArrayOutputStream record = new ByteArrayOutputStream(64 + changes
+				.size());
+		DataOutputStream out = header(record, JournalLog.TURN);
+		out.writeUTF(verb);
+		out.writeUTF(argument);
+		out.writeInt(numberOfChanges);
+		changes.writeTo(out);
+		out.flush();
+		clearChanges();
+		log.append(record.toByteArray());
+	}
+
+	/**
+	 * Records a snapshot of the whole state of the game (see GameSave), which
+	 * replaces the changes recorded before it.
+	 * 
+	 * @throws IOException
+	 *             The journal log is closed or it has failed.
+	 */
+	public void snapshot() throws IOException {
+		ByteArrayOutputStream record = new ByteArrayOutputStream();
+		DataOutputStream out = header(record, JournalLog.SNAPSHOT);
+		GameSave.save(game, out);
+		clearChanges();
+		turns = 0;
+		log.append(record.toByteArray());
+	}
+
+	/**
+	 * Stops recording the changes made to the game and records the end of the
+	 * session, so its records can be discarded when the log is compacted.
+	 * 
+	 * @throws IOException
+	 *             The journal log is closed or it has failed.
+	 */
+	public void close() throws IOException {
+		game.removeListener(this);
+		ByteArrayOutputStream record = new ByteArrayOutputStream();
+		header(record, JournalLog.CLOSE).flush();
+		log.append(record.toByteArray());
+	}
+
+	public void itemTaken(Item item, Location location) {
+		writeChange(TAKE, item.getWorldId(), location.getWorldId());
+	}
+
+	public void itemDropped(Item item, Location location) {
+		writeChange(DROP, item.getWorldId(), location.getWorldId());
+	}
+
+	public void playerMoved(Location origin, Location destination) {
+		writeChange(MOVE, World.NONE, destination.getWorldId());
+	}
+
+	private void writeChange(byte kind, int item, int location) {
+		try {
+			changesOut.writeByte(kind);
+			changesOut.writeInt(item);
+			changesOut.writeInt(location);
+			numberOfChanges++;
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private void clearChanges() {
+		changes.reset();
+		numberOfChanges = 0;
+	}
+
+	private DataOutputStream header(ByteArrayOutputStream record, byte type)
+			throws IOException {
+		DataOutputStream out = new DataOutputStream(record);
+		out.writeUTF(session);
+		out.writeByte(type);
+		return out;
+	}
+
+	/**
+	 * Brings a game session back to its last recorded state, by replaying its
+	 * journal onto the game loaded again from its definition: the last
+	 * snapshot of the session is restored and the turns recorded after it are
+	 * played again. If the session was closed, the game is left as it is.
+	 * 
+	 * @param file
+	 *            The journal log file.
+	 * @param session
+	 *            The name of the session.
+	 * @param game
+	 *            The game, loaded with the same world as the session.
+	 * @return The number of turns played again (not counting the snapshot).
+	 * @throws IOException
+	 *             The journal log file cannot be read or it does not match the
+	 *             world of the game.
+	 * @throws IllegalArgumentException
+	 *             The arguments cannot be null and the game must have a world.
+	 */
+	public static int recover(File file, String session, Game game)
+			throws IOException {
+		if ((file == null) || (session == null) || (game == null)
+				|| (game.getWorld() == null))
+			throw new IllegalArgumentException();
+		if (!file.exists())
+			return 0;
+
+		List<DataInputStream> records = new ArrayList<DataInputStream>();
+		boolean snapshot = false;
+		for (byte[] record : JournalLog.read(file)) {
+			DataInputStream in = JournalLog.open(record);
+			if (!in.readUTF().equals(session))
+				continue;
+			byte type = in.readByte();
+			if (type != JournalLog.TURN) {
+				records.clear();
+				snapshot = (type == JournalLog.SNAPSHOT);
+			}
+			if (type != JournalLog.CLOSE)
+				records.add(in);
+		}
+
+		int turns = 0;
+		try {
+			for (DataInputStream in : records) {
+				if (snapshot) {
+					GameSave.restore(game, in);
+					snapshot = false;
+				} else {
+					replay(in, game);
+					turns++;
+				}
+			}
+		} catch (RuntimeException e) {
+			throw new IOException("Journal does not match the game: " + e);
+		}
+		return turns;
+	}
+
+	private static void replay(DataInputStream in, Game game)
+			throws IOException {
+		World world = game.getWorld();
+		in.readUTF();
+		in.readUTF();
+		int numberOfChanges = in.readInt();
+		for (int i = 0; i < numberOfChanges; i++) {
+			byte kind = in.readByte();
+			int item = in.readInt();
+			Location location = world.getLocation(in.readInt());
+			if (kind == TAKE)
+				game.take(game.getWorldItem(item), location);
+			else if (kind == DROP)
+				game.drop(game.getWorldItem(item), location);
+			else
+				game.setCurrentLocation(location);
+		}
+	}
+
+	/**
+	 * Returns a String representation for this object: Journal[session,
+	 * log]. This is useful for debugging purposes.
+	 * 
+	 * @see Object#toString()
+	 */
+	public String toString() {
+		return this.getClass().getSimpleName() + "[" + session + ", " + log
+				+ "]";
+	}
+}
@@ -0,0 +1,374 @@
+package es.ucm.fdi.lps.p3;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Represents an append-only log file shared by the journals of many game
+ * sessions (see Journal). The records appended by every session are written
+ * by a single background thread in batches, and each batch is made durable
+ * with a single sync of the file, so the cost of the sync is shared by all the
+ * records of the batch (group commit). Appending a record does not wait for
+ * it to be written; sync() waits until the records appended so far are
+ * durable.
+ * <p>
+ * Each record is framed with its length and a checksum, so a record torn by a
+ * crash is detected and discarded when the log is read. When the log grows
+ * beyond a size, it is compacted: the records of the sessions that have been
+ * closed are discarded, and so are the records of the other sessions that are
+ * older than their last snapshot. The log is not compacted again until it
+ * doubles the size left by the last compaction, so the records still needed
+ * are not rewritten after every batch.
+ */
+public class JournalLog {
+
+	/**
+	 * Default size of the log that triggers its compaction, in bytes
+	 */
+	public static final long DEFAULT_COMPACTION_SIZE = 4 * 1024 * 1024;
+
+	/**
+	 * Types of the records: a turn of a session, a snapshot of the state of a
+	 * session and the end of a session
+	 */
+	static final byte TURN = 1;
+	static final byte SNAPSHOT = 2;
+	static final byte CLOSE = 3;
+
+	/**
+	 * Size of the frame of a record (its length and its checksum)
+	 */
+	private static final int FRAME_SIZE = 8;
+
+	private final File file;
+	private final long compactionSize;
+	private FileChannel channel;
+
+	/**
+	 * The size of the log after the last compaction (0 if it has not been
+	 * compacted), and the number of compactions
+	 */
+	private long compactedSize;
+	private int compactions;
+
+	/**
+	 * The framed records appended and not written yet
+	 */
+	private List<ByteBuffer> pending = new ArrayList<ByteBuffer>();
+
+	/**
+	 * The number of records appended and the number of them that are
+	 * durable
+	 */
+	private long appended, durable;
+
+	/**
+	 * The error that stopped the writer (null if there is none)
+	 */
+	private IOException failure;
+
+	private boolean closed;
+	private final Thread writer;
+
+	/**
+	 * Opens a log file for appending records, creating it if it does not
+	 * exist. A torn record at the end of the file is discarded.
+	 * 
+	 * @param file
+	 *            The log file.
+	 * @throws IOException
+	 *             The log file cannot be opened.
+	 * @throws IllegalArgumentException
+	 *             The argument 'file' cannot be null.
+	 */
+	public JournalLog(File file) throws IOException {
+		this(file, DEFAULT_COMPACTION_SIZE);
+	}
+
+	/**
+	 * Opens a log file for appending records, creating it if it does not
+	 * exist. A torn record at the end of the file is discarded.
+	 * 
+	 * @param file
+	 *            The log file.
+	 * @param compactionSize
+	 *            The size of the log that triggers its compaction, in bytes.
+	 * @throws IOException
+	 *             The log file cannot be opened.
+	 * @throws IllegalArgumentException
+	 *             The argument 'file' cannot be null and 'compactionSize' must
+	 *             be positive.
+	 */
+	public JournalLog(File file, long compactionSize) throws IOException {
+		if ((file == null) || (compactionSize <= 0))
+			throw new IllegalArgumentException();
+		this.file = file;
+		this.compactionSize = compactionSize;
+		long length = file.exists() ? validLength(file) : 0;
+		channel = new RandomAccessFile(file, "rw").getChannel();
+		channel.truncate(length);
+		channel.position(length);
+
+		writer = new Thread(new Runnable() {
+			public void run() {
+				write();
+			}
+		}, "JournalLog " + file.getName());
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * Appends a record to the log, without waiting for it to be written.
+	 * 
+	 * @param record
+	 *            The record.
+	 * @throws IOException
+	 *             The log is closed or it has failed.
+	 */
+	synchronized void append(byte[] record) throws IOException {
+		if (failure != null)
+			throw failure;
+		if (closed)
+			throw new IOException("Journal log closed");
+		pending.add(frame(record));
+		appended++;
+		notifyAll();
+	}
+
+	/**
+	 * Waits until the records appended so far are durable.
+	 * 
+	 * @throws IOException
+	 *             The records cannot be written or the thread is interrupted.
+	 */
+	public synchronized void sync() throws IOException {
+		long target = appended;
+		try {
+			while ((durable < target) && (failure == null))
+				wait();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		}
+		if (failure != null)
+			throw failure;
+	}
+
+	/**
+	 * Closes the log, after writing the records appended so far.
+	 * 
+	 * @throws IOException
+	 *             The records cannot be written or the log cannot be closed.
+	 */
+	public void close() throws IOException {
+		synchronized (this) {
+			if (closed)
+				return;
+			closed = true;
+			notifyAll();
+		}
+		try {
+			writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		} finally {
+			channel.close();
+		}
+		if (failure != null)
+			throw failure;
+	}
+
+	/**
+	 * Writes the batches of pending records until the log is closed.
+	 */
+	private void write() {
+		while (true) {
+			List<ByteBuffer> batch;
+			long target;
+			synchronized (this) {
+				try {
+					while (pending.isEmpty() && !closed)
+						wait();
+				} catch (InterruptedException e) {
+					return;
+				}
+				if (pending.isEmpty())
+					return;
+				batch = pending;
+				pending = new ArrayList<ByteBuffer>();
+				target = appended;
+			}
+
+			try {
+				ByteBuffer[] buffers = batch.toArray(new ByteBuffer[batch
+						.size()]);
+				while (buffers[buffers.length - 1].hasRemaining())
+					channel.write(buffers);
+				channel.force(false);
+				synchronized (this) {
+					durable = target;
+					notifyAll();
+				}
+				if (channel.size() > Math.max(compactionSize,
+						2 * compactedSize))
+					compact();
+			} catch (IOException e) {
+				synchronized (this) {
+					failure = e;
+					notifyAll();
+				}
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Rewrites the log with the records that are still needed for recovering
+	 * the sessions, replacing the log file atomically.
+	 */
+	private void compact() throws IOException {
+		List<byte[]> records = read(file);
+		Map<String, Integer> firstNeeded = new HashMap<String, Integer>();
+		for (int i = 0; i < records.size(); i++) {
+			DataInputStream in = open(records.get(i));
+			String session = in.readUTF();
+			byte type = in.readByte();
+			if (type == CLOSE) {
+				firstNeeded.remove(session);
+			} else if ((type == SNAPSHOT)
+					|| !firstNeeded.containsKey(session)) {
+				firstNeeded.put(session, i);
+			}
+		}
+
+		File compacted = new File(file.getPath() + ".tmp");
+		FileChannel out = new RandomAccessFile(compacted, "rw").getChannel();
+		try {
+			out.truncate(0);
+			for (int i = 0; i < records.size(); i++) {
+				DataInputStream in = open(records.get(i));
+				Integer first = firstNeeded.get(in.readUTF());
+				if ((first != null) && (i >= first)) {
+					ByteBuffer buffer = frame(records.get(i));
+					while (buffer.hasRemaining())
+						out.write(buffer);
+				}
+			}
+			out.force(false);
+		} finally {
+			out.close();
+		}
+		channel.close();
+		Files.move(compacted.toPath(), file.toPath(),
+				StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+		channel = new RandomAccessFile(file, "rw").getChannel();
+		channel.position(channel.size());
+		compactedSize = channel.size();
+		synchronized (this) {
+			compactions++;
+		}
+	}
+
+	private static ByteBuffer frame(byte[] record) {
+		CRC32 crc = new CRC32();
+		crc.update(record);
+		ByteBuffer buffer = ByteBuffer.allocate(FRAME_SIZE + record.length);
+		buffer.putInt(record.length);
+		buffer.putInt((int) crc.getValue());
+		buffer.put(record);
+		buffer.flip();
+		return buffer;
+	}
+
+	static DataInputStream open(byte[] record) {
+		return new DataInputStream(new ByteArrayInputStream(record));
+	}
+
+	/**
+	 * Reads the records of a log file, up to the first torn record.
+	 * 
+	 * @param file
+	 *            The log file.
+	 * @return The records.
+	 * @throws IOException
+	 *             The log file cannot be read.
+	 */
+	static List<byte[]> read(File file) throws IOException {
+		List<byte[]> records = new ArrayList<byte[]>();
+		scan(file, records);
+		return records;
+	}
+
+	private static long validLength(File file) throws IOException {
+		return scan(file, null);
+	}
+
+	/**
+	 * Reads the records of a log file up to the first torn record, returning
+	 * the length of the valid part of the file.
+	 */
+	private static long scan(File file, List<byte[]> records)
+			throws IOException {
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+		try {
+			long length = in.length();
+			long position = 0;
+			CRC32 crc = new CRC32();
+			while (length - position >= FRAME_SIZE) {
+				in.seek(position);
+				int size = in.readInt();
+				int checksum = in.readInt();
+				if ((size < 0) || (size > length - position - FRAME_SIZE))
+					break;
+				byte[] record = new byte[size];
+				in.readFully(record);
+				crc.reset();
+				crc.update(record);
+				if ((int) crc.getValue() != checksum)
+					break;
+				if (records != null)
+					records.add(record);
+				position += FRAME_SIZE + size;
+			}
+			return position;
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Gets the number of times that the log has been compacted since it was
+	 * opened.
+	 * 
+	 * @return The number of compactions.
+	 */
+	public synchronized int getNumberOfCompactions() {
+		return compactions;
+	}
+
+	/**
+	 * Returns a String representation for this object: JournalLog[file]. This
+	 * is useful for debugging purposes.
+	 * 
+	 * @see Object#toString()
+	 */
+	public String toString() {
+		return this.getClass().getSimpleName() + "[" + file + "]";
+	}
+}
@@ -42,17 +42,37 @@ public class Location {
 	private boolean exitThresholdFlag;
 
 	/**
-	 * Adjacent locations. It there will be a room in every direction. If
+	 * Adjacent locations, when the location is not part of a world. If
 	 * locations.get(X) == null then there is not any adjacent room in direction
-	 * X
+	 * X. It is only created when the first connection is set.
 	 */
 	private Map<Direction, Location> locations;
 
+	/**
+	 * The world of the location (where its connections are kept) and its id in
+	 * that world, or null and World.NONE if the location is not part of a
+	 * world
+	 */
+	private World world;
+	private int worldId = World.NONE;
+
 	/**
 	 * The items contained in the location
 	 */
 	private ItemRepository items;
 
+	/**
+	 * The game image text holding the name, the description and the exit
+	 * message of the location, or null if they are kept in memory
+	 */
+	private TextStore text;
+
+	/**
+	 * The indexes of the name, the description and the exit message in the
+	 * game image text
+	 */
+	private int nameIndex, descriptionIndex, exitMessageIndex;
+
 	/**
 	 * Constructs a location with a given name and a given description. By
 	 * default, it is not an exit location (it has no exit threshold nor exit
@@ -73,7 +93,6 @@ public class Location {
 		this.description = description;
 		this.exitThresholdFlag = false;
 
-		locations = new EnumMap<Direction, Location>(Direction.class);
 		items = new ItemRepository();
 	}
 
@@ -104,6 +123,68 @@ public class Location {
 		this.exitMessage = exitMessage;
 	}
 
+	/**
+	 * Constructs a location whose name and description are read from the text
+	 * of a game image when they are needed. By default, it is not an exit
+	 * location (it has no exit threshold nor exit message).
+	 * 
+	 * @param text
+	 *            The game image text.
+	 * @param nameIndex
+	 *            The index of the name in the text.
+	 * @param descriptionIndex
+	 *            The index of the description in the text.
+	 * @throws IllegalArgumentException
+	 *             The argument 'text' cannot be null.
+	 * @throws IndexOutOfBoundsException
+	 *             The indexes are not in the text.
+	 */
+	Location(TextStore text, int nameIndex, int descriptionIndex) {
+		if (text == null)
+			throw new IllegalArgumentException();
+		if ((nameIndex < 0) || (nameIndex >= text.size())
+				|| (descriptionIndex < 0) || (descriptionIndex >= text.size()))
+			throw new IndexOutOfBoundsException();
+
+		this.text = text;
+		this.nameIndex = nameIndex;
+		this.descriptionIndex = descriptionIndex;
+		this.exitThresholdFlag = false;
+
+		items = new ItemRepository();
+	}
+
+	/**
+	 * Constructs a location whose name, description and exit message are read
+	 * from the text of a game image when they are needed, with a given exit
+	 * threshold.
+	 * 
+	 * @param text
+	 *            The game image text.
+	 * @param nameIndex
+	 *            The index of the name in the text.
+	 * @param descriptionIndex
+	 *            The index of the description in the text.
+	 * @param exitThreshold
+	 *            The exit threshold of the location
+	 * @param exitMessageIndex
+	 *            The index of the exit message in the text.
+	 * @throws IllegalArgumentException
+	 *             The argument 'text' cannot be null.
+	 * @throws IndexOutOfBoundsException
+	 *             The indexes are not in the text.
+	 */
+	Location(TextStore text, int nameIndex, int descriptionIndex,
+			int exitThreshold, int exitMessageIndex) {
+		this(text, nameIndex, descriptionIndex);
+		if ((exitMessageIndex < 0) || (exitMessageIndex >= text.size()))
+			throw new IndexOutOfBoundsException();
+
+		this.exitThreshold = exitThreshold;
+		this.exitThresholdFlag = true;
+		this.exitMessageIndex = exitMessageIndex;
+	}
+
 	/**
 	 * Adds an item to this location.
 	 * 
@@ -151,6 +232,8 @@ public class Location {
 	 * @return The name.
 	 */
 	public String getName() {
+		if (text != null)
+			return text.get(nameIndex);
 		return name;
 	}
 	
@@ -161,9 +244,28 @@ public class Location {
 	 * @return location The description.
 	 */
 	public String getDescription() {
+		if (text != null)
+			return text.get(descriptionIndex);
 		return description;
 	}
 
+	/**
+	 * Starts decoding in the background the names and descriptions of the
+	 * locations connected to this one, so that they are ready when the player
+	 * moves. It does nothing for locations which are kept in memory.
+	 */
+	void prefetchConnectedLocations() {
+		for (Direction direction : Direction.values()) {
+			if (hasConnectedLocation(direction)) {
+				Location location = getConnectedLocation(direction);
+				if (location.text != null) {
+					location.text.prefetch(location.nameIndex);
+					location.text.prefetch(location.descriptionIndex);
+				}
+			}
+		}
+	}
+
 	/**
 	 * Checks whether there is a connected location in a given direction.
 	 * 
@@ -177,7 +279,9 @@ public class Location {
 	public boolean hasConnectedLocation(Direction direction) {
 		if (direction == null)
 			throw new IllegalArgumentException();
-		return (locations.get(direction) != null);
+		if (world != null)
+			return (world.getConnection(worldId, direction) != World.NONE);
+		return (locations != null) && (locations.get(direction) != null);
 	}
 
 	/**
@@ -217,6 +321,8 @@ public class Location {
 		if (!exitThresholdFlag)
 			throw new NoExitThresholdException(
 					"Error: NoExitThresholdException");
+		if (text != null)
+			return text.get(exitMessageIndex);
 		return exitMessage;
 	}
 
@@ -235,7 +341,14 @@ public class Location {
 	public Location getConnectedLocation(Direction direction) {
 		if (direction == null)
 			throw new IllegalArgumentException();
-		if (locations.get(direction) == null)
+		if (world != null) {
+			int connection = world.getConnection(worldId, direction);
+			if (connection == World.NONE)
+				throw new NoConnectedLocationException(
+						"Error: NoConnectedLocationException");
+			return world.getLocation(connection);
+		}
+		if ((locations == null) || (locations.get(direction) == null))
 			throw new NoConnectedLocationException(
 					"Error: NoConnectedLocationException");
 		return locations.get(direction);
@@ -277,14 +390,57 @@ public class Location {
 	 * @param location
 	 *            The other location.
 	 * @throws IllegalArgumentException
-	 *             The arguments 'direction' and 'location' cannot be null.
+	 *             The arguments 'direction' and 'location' cannot be null, and
+	 *             if this location is part of a world, the other location
+	 *             must be part of the same world.
 	 */
 	public void setConnection(Direction direction, Location location) {
 		if ((direction == null) || (location == null))
 			throw new IllegalArgumentException();
+		if (world != null) {
+			if (location.world != world)
+				throw new IllegalArgumentException();
+			world.setConnection(worldId, direction, location.worldId);
+			return;
+		}
+		if (locations == null)
+			locations = new EnumMap<Direction, Location>(Direction.class);
 		locations.put(direction, location);
 	}
 
+	/**
+	 * Makes this location part of a world, where its connections are kept from
+	 * now on (the connections set before are discarded).
+	 * 
+	 * @param world
+	 *            The world.
+	 * @param id
+	 *            The id of the location in the world.
+	 */
+	void setWorld(World world, int id) {
+		this.world = world;
+		this.worldId = id;
+		this.locations = null;
+	}
+
+	/**
+	 * Gets the world this location is part of.
+	 * 
+	 * @return The world, or null if the location is not part of a world.
+	 */
+	World getWorld() {
+		return world;
+	}
+
+	/**
+	 * Gets the id of this location in its world.
+	 * 
+	 * @return The id, or World.NONE if the location is not part of a world.
+	 */
+	int getWorldId() {
+		return worldId;
+	}
+
 
 	/**
 	 * Returns a String representation for this object: Location[]. This is
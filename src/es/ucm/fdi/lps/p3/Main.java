@@ -7,10 +7,13 @@
  */
 package es.ucm.fdi.lps.p3;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
 import java.util.Properties;
 
 import es.ucm.fdi.lps.p3.exception.InvalidGameDefinitionException;
@@ -31,6 +34,18 @@ public class Main {
 	private static String inputFilePath;
 	private static String outputFilePath;
 	private static String gameDefinitionPath;
+	private static String journalFilePath;
+	private static String autosaveFilePath;
+
+	/**
+	 * The port of the game server (null if the game is played locally)
+	 */
+	private static Integer port;
+
+	/**
+	 * The name of the session of the game in the journal
+	 */
+	private static final String JOURNAL_SESSION = "main";
 
 	/**
 	 * File streams
@@ -43,18 +58,36 @@ public class Main {
 
 	/**
 	 * Main method. Usage: run [{-c,--config} configFilePath] gameFilePath
-	 * [{-i,--input} inputFilePath] [{-o,--output} outputFilePath]. <br>
+	 * [{-i,--input} inputFilePath] [{-o,--output} outputFilePath]
+	 * [{-j,--journal} journalFilePath] [{-a,--autosave} saveFilePath]
+	 * [{-p,--port} port]. <br>
 	 * (config, game, input and output file paths should include their file
-	 * extensions)
+	 * extensions; the game file can also be a game image compiled by gamec;
+	 * the changes to the config file are applied while the game is running;
+	 * the turns are recorded in the journal file, and a game that was not
+	 * finished is recovered from it when the application is launched again;
+	 * the game is saved after every turn in the save file, and restored from
+	 * it when the application is launched again (unless there is a journal
+	 * too, which has all the turns); with a port, the game is served to many
+	 * players through TCP connections on that port, instead of being played
+	 * with the input and output files, and without journal or save file)
 	 * 
 	 * @param args
 	 *            Execution arguments read from console.
 	 * @throws IllegalArgumentException
-	 *             The argument 'args' cannot be null.
+	 *             The argument 'args' cannot be null, and the input, output,
+	 *             journal and save files cannot be used with a port.
 	 */
 	public static void main(String[] args) {
-		if ((args.length < 1) || (args.length > 7) || !parseArgs(args))
+		if ((args.length < 1) || (args.length > 13) || !parseArgs(args))
 			throw new IllegalArgumentException("Error: Wrong arguments number");
+		// A served game has no single input, output, journal or save
+		if ((port != null)
+				&& ((inputFilePath != null) || (outputFilePath != null)
+						|| (journalFilePath != null)
+						|| (autosaveFilePath != null)))
+			throw new IllegalArgumentException(
+					"Error: -i, -o, -j and -a cannot be used with -p");
 
 		try {
 			assignFiles();
@@ -63,7 +96,30 @@ public class Main {
 		}
 
 		try {
-			Game game = new Game(gameDefinition);
+			Game game;
+			File gameDefinitionFile = new File(gameDefinitionPath);
+			if (GameImage.isImage(gameDefinitionFile))
+				game = GameImage.load(gameDefinitionFile);
+			else {
+				// The game definition is only opened when it is parsed (the
+				// stream is closed by the game)
+				gameDefinition = new FileInputStream(gameDefinitionFile);
+				game = new Game(gameDefinition);
+			}
+			if (port != null) {
+				serve(game);
+				return;
+			}
+			// The journal has every turn since the game was loaded, so the
+			// game is only recovered from the autosave without a journal
+			Autosave autosave = null;
+			if (autosaveFilePath != null)
+				autosave = new Autosave(new File(autosaveFilePath));
+			if (journalFilePath != null)
+				Journal.recover(new File(journalFilePath), JOURNAL_SESSION,
+						game);
+			else if (autosave != null)
+				autosave.restore(game);
 			Engine engine;
 
 			if ((configFilePath == null) && (inputFilePath == null)
@@ -84,16 +140,79 @@ public class Main {
 			else
 				engine = new Engine(game, properties, inputStream, outputStream);
 
-			engine.run();
+			JournalLog journalLog = null;
+			Journal journal = null;
+			if (journalFilePath != null) {
+				journalLog = new JournalLog(new File(journalFilePath));
+				journal = new Journal(journalLog, JOURNAL_SESSION, game);
+				engine.setJournal(journal);
+			}
+			engine.setAutosave(autosave);
+
+			try {
+				if (configFilePath == null)
+					engine.run();
+				else {
+					ConfigurationWatcher watcher = new ConfigurationWatcher(
+							new File(configFilePath));
+					watcher.addEngine(engine);
+					watcher.start();
+					try {
+						engine.run();
+					} finally {
+						watcher.stop();
+					}
+				}
+				if (journal != null)
+					journal.close();
+				if (autosave != null) {
+					// A finished game is not restored again
+					autosave.close();
+					new File(autosaveFilePath).delete();
+				}
+			} finally {
+				if (journalLog != null)
+					journalLog.close();
+				if (autosave != null)
+					autosave.close();
+			}
 
 		} catch (InvalidGameDefinitionException e1) {
 			e1.printStackTrace();
+		} catch (IOException e1) {
+			e1.printStackTrace();
+		} catch (InterruptedException e1) {
+			e1.printStackTrace();
 		} catch (NullPointerException e1) {
 			e1.printStackTrace();
 		}
 
 	}
 
+	/**
+	 * Serves a game to many players until the application is stopped. The
+	 * changes to the configuration file are applied to every session.
+	 */
+	private static void serve(Game game) throws IOException {
+		ByteArrayOutputStream image = new ByteArrayOutputStream();
+		GameImage.write(game, image);
+		Configuration configuration = null;
+		if (properties != null)
+			configuration = new Configuration(properties);
+		GameServer server = new GameServer(ByteBuffer.wrap(image
+				.toByteArray()), configuration);
+		ConfigurationWatcher watcher = null;
+		if (configFilePath != null) {
+			watcher = new ConfigurationWatcher(new File(configFilePath));
+			server.setConfigurationWatcher(watcher);
+		}
+		server.start(new InetSocketAddress(port));
+		if (watcher != null)
+			watcher.start();
+		System.out.println("Serving " + game.getTitle() + " on "
+				+ server.getAddress());
+	}
+
 	/**
 	 * To parse command line arguments
 	 * 
@@ -110,6 +229,11 @@ public class Main {
 				"input");
 		CmdLineParser.Option outputFilePathArg = parser.addStringOption('o',
 				"output");
+		CmdLineParser.Option journalFilePathArg = parser.addStringOption('j',
+				"journal");
+		CmdLineParser.Option autosaveFilePathArg = parser.addStringOption('a',
+				"autosave");
+		CmdLineParser.Option portArg = parser.addStringOption('p', "port");
 		String[] remainingArgs = parser.getRemainingArgs();
 
 		try {
@@ -123,6 +247,14 @@ public class Main {
 		configFilePath = (String) parser.getOptionValue(configFilePathArg);
 		inputFilePath = (String) parser.getOptionValue(inputFilePathArg);
 		outputFilePath = (String) parser.getOptionValue(outputFilePathArg);
+		journalFilePath = (String) parser.getOptionValue(journalFilePathArg);
+		autosaveFilePath = (String) parser.getOptionValue(autosaveFilePathArg);
+		String portValue = (String) parser.getOptionValue(portArg);
+		try {
+			port = (portValue == null) ? null : Integer.valueOf(portValue);
+		} catch (NumberFormatException e) {
+			return false;
+		}
 		remainingArgs = parser.getRemainingArgs();
 
 		if (remainingArgs.length > 0) {
@@ -133,15 +265,11 @@ public class Main {
 	}
 
 	/**
-	 * Method that creates Input, Output and Properties streams from files
+	 * Method that creates Input, Output and Properties streams from files (the
+	 * game file is opened when the game is loaded)
 	 */
 	private static void assignFiles() throws IOException {
 
-		if (gameDefinitionPath != null) {
-			File gameDefinitionFile = new File(gameDefinitionPath);
-			gameDefinition = new FileInputStream(gameDefinitionFile);
-		}
-
 		if (configFilePath != null) {
 			File configFile = new File(configFilePath);
 			config = new FileInputStream(configFile);
@@ -159,6 +287,11 @@ public class Main {
 		if (config != null) {
 			properties = new Properties();
 			properties.load(config);
+			// The keywords shared by several commands are reported once,
+			// instead of by every parser built with this configuration
+			for (String collision : new Parser(new Configuration(properties))
+					.getKeywordCollisions())
+				System.err.println("Warning: " + collision);
 		}
 	}
 }
\ No newline at end of file
@@ -1,16 +1,19 @@
 package es.ucm.fdi.lps.p3;
 
 import java.io.InputStream;
+import java.util.List;
 import java.util.Properties;
 import java.util.Scanner;
 import java.util.Vector;
 
 import es.ucm.fdi.lps.p3.command.Command;
+import es.ucm.fdi.lps.p3.command.CommandLine;
 import es.ucm.fdi.lps.p3.command.DropCommand;
 import es.ucm.fdi.lps.p3.command.ExamineCommand;
 import es.ucm.fdi.lps.p3.command.GoCommand;
 import es.ucm.fdi.lps.p3.command.HelpCommand;
 import es.ucm.fdi.lps.p3.command.LookCommand;
+import es.ucm.fdi.lps.p3.command.ParsedCommand;
 import es.ucm.fdi.lps.p3.command.QuitCommand;
 import es.ucm.fdi.lps.p3.command.TakeCommand;
 import es.ucm.fdi.lps.p3.command.UndoCommand;
@@ -18,7 +21,11 @@ import es.ucm.fdi.lps.p3.exception.NoNextCommandException;
 
 /**
  * Represents the parser of the game engine that analyzes the input stream and
- * identifies valid commands.
+ * identifies valid commands. Parsing a line does not change the command
+ * prototypes, so the lines of other games can also be parsed with the same
+ * parser (see parse(String)). The command prototypes are not bound to any
+ * game, so a parser without input nor game (see Parser(Configuration)) can be
+ * shared by the engines of many sessions (see Engine#setParser(Parser)).
  */
 public class Parser {
 
@@ -29,7 +36,8 @@ public class Parser {
 			.getProperty("line.separator");
 
 	/**
-	 * A reference to the game that created the Interpreter
+	 * A reference to the game that created the Interpreter (null if the
+	 * parser is not bound to a game)
 	 */
 	private Game game;
 
@@ -39,9 +47,51 @@ public class Parser {
 	 */
 	protected Vector<Command> commandPrototypes;
 
+	/**
+	 * The verbs of the command prototypes, with the prototypes that own them
+	 */
+	private volatile VerbLexicon lexicon;
+
+	/**
+	 * The last configuration set (null for the default one)
+	 */
+	private volatile Configuration configuration;
+
+	/**
+	 * The player input (null if the parser has no input)
+	 */
 	private Scanner reader;
 
-	private Properties config;
+	/**
+	 * The command line of every thread, reused for every line it parses
+	 */
+	private static final ThreadLocal<CommandLine> COMMAND_LINES = new ThreadLocal<CommandLine>() {
+		protected CommandLine initialValue() {
+			return new CommandLine();
+		}
+	};
+
+	/**
+	 * Constructs a parser without input nor game, which only parses lines
+	 * (see parse(String)), assuming the default configuration.
+	 */
+	public Parser() {
+		createPrototype();
+	}
+
+	/**
+	 * Constructs a parser without input nor game, which only parses lines
+	 * (see parse(String)), with a configuration.
+	 * 
+	 * @param config
+	 *            The compiled configuration.
+	 * @throws IllegalArgumentException
+	 *             The argument 'config' cannot be null.
+	 */
+	public Parser(Configuration config) {
+		createPrototype();
+		setConfiguration(config);
+	}
 
 	/**
 	 * Constructs a parser, specifying the input stream from which the game
@@ -86,10 +136,9 @@ public class Parser {
 					"Error: IllegalArgumentException");
 		}
 		this.game = game;
-		this.config = config;
 		setInput(in);
-		createConfigPrototype();
-		setConfig(this.config);
+		createPrototype();
+		setConfig(config);
 	}
 
 	/**
@@ -106,10 +155,68 @@ public class Parser {
 			throw new IllegalArgumentException(
 					"Error: IllegalArgumentException");
 		}
+		setConfiguration(new Configuration(config));
+	}
+
+	/**
+	 * Sets a new configuration. Properties that are not overriden maintain
+	 * their previous values.
+	 * 
+	 * @param config
+	 *            The compiled configuration (it can be shared with
+	 *            other parsers).
+	 * @throws IllegalArgumentException
+	 *             The argument 'config' should not be null.
+	 */
+	public void setConfiguration(Configuration config) {
+		if (config == null) {
+			throw new IllegalArgumentException(
+					"Error: IllegalArgumentException");
+		}
 
 		for (Command com : commandPrototypes) {
-			com.setConfig(config);
+			com.setConfiguration(config);
+		}
+		lexicon = new VerbLexicon(commandPrototypes);
+		configuration = config;
+	}
+
+	/**
+	 * Replaces the configuration: the properties that are not defined in the
+	 * new configuration take their default values again. New command
+	 * prototypes are configured apart and then swapped in at once, so the
+	 * lines parsed meanwhile (and the commands created from them) keep the
+	 * previous configuration.
+	 * 
+	 * @param config
+	 *            The compiled configuration (it can be shared with
+	 *            other parsers).
+	 * @throws IllegalArgumentException
+	 *             The argument 'config' should not be null.
+	 */
+	public void resetConfiguration(Configuration config) {
+		if (config == null) {
+			throw new IllegalArgumentException(
+					"Error: IllegalArgumentException");
 		}
+
+		Vector<Command> prototypes = newPrototypes();
+		for (Command com : prototypes) {
+			com.setConfiguration(config);
+		}
+		VerbLexicon newLexicon = new VerbLexicon(prototypes);
+		commandPrototypes = prototypes;
+		lexicon = newLexicon;
+		configuration = config;
+	}
+
+	/**
+	 * Gets the last configuration set.
+	 * 
+	 * @return The configuration, or null if it is the default one.
+	 */
+	public Configuration getConfiguration() {
+		return configuration;
 	}
 
 	/**
@@ -148,10 +255,23 @@ public class Parser {
 	 * @return true if there is text for another command; false otherwise.
 	 */
 	public boolean hasNextCommand() {
-		return (reader.hasNext());
+		return (reader != null) && reader.hasNext();
 
 	}
 
+	/**
+	 * Reads the next line of the player input, without parsing it.
+	 * 
+	 * @return The line.
+	 * @throws NoNextCommandException
+	 *             There is no next line to read.
+	 */
+	public String nextLine() {
+		if (!hasNextCommand())
+			throw new NoNextCommandException("Error: NoNextCommandException");
+		return reader.nextLine();
+	}
+
 	/**
 	 * Parses the player input, consuming its characters and returning the next
 	 * command that has been identified.
@@ -159,45 +279,73 @@ public class Parser {
 	 * @return The parsed command. It can be null, meaning an invalid command
 	 *         was parsed.
 	 * @throws NoNextCommandException
-	 *             There is no next command to parse.
+	 *             There is no next command to parse (or the parser has no
+	 *             input).
 	 */
 	public Command parseNextCommand() {
-		if (!hasNextCommand())
-			throw new NoNextCommandException("Error: NoNextCommandException");
+		ParsedCommand parsedCommand = parse(nextLine());
+		if (parsedCommand == null)
+			return null;
+		return parsedCommand.newCommand(game);
+	}
 
-		String line = reader.nextLine();
-		for (Command com : commandPrototypes) {
-			if (com.parse(line))
-				return (Command) com.clone();
+	/**
+	 * Parses a text line into an invocation to one of the commands, without
+	 * changing the command prototypes or the input of this parser. Several
+	 * threads can parse lines at the same time (for instance, for different
+	 * games, as the invocation can be turned into a command of any game).
+	 * 
+	 * @param line
+	 *            The text line.
+	 * @return The parsed invocation, or null if the line is not a valid
+	 *         command.
+	 * @throws IllegalArgumentException
+	 *             The argument 'line' cannot be null.
+	 */
+	public ParsedCommand parse(String line) {
+		if (line == null) {
+			throw new IllegalArgumentException(
+					"Error: IllegalArgumentException");
+		}
+		CommandLine commandLine = COMMAND_LINES.get();
+		commandLine.set(line);
+		for (Command com : lexicon.lookup(line)) {
+			ParsedCommand parsedCommand = com.read(commandLine);
+			if (parsedCommand != null)
+				return parsedCommand;
 		}
 		return null;
-
 	}
 
 	private void createPrototype() {
-		commandPrototypes = new Vector<Command>();
-
-		commandPrototypes.add(new HelpCommand(game, this));
-		commandPrototypes.add(new GoCommand(game));
-		commandPrototypes.add(new LookCommand(game));
-		commandPrototypes.add(new ExamineCommand(game));
-		commandPrototypes.add(new TakeCommand(game));
-		commandPrototypes.add(new DropCommand(game));
-		commandPrototypes.add(new UndoCommand(game));
-		commandPrototypes.add(new QuitCommand(game));
-	}
-
-	private void createConfigPrototype() {
-		commandPrototypes = new Vector<Command>();
-
-		commandPrototypes.add(new HelpCommand(game, this, config));
-		commandPrototypes.add(new GoCommand(game, config));
-		commandPrototypes.add(new LookCommand(game, config));
-		commandPrototypes.add(new ExamineCommand(game, config));
-		commandPrototypes.add(new TakeCommand(game, config));
-		commandPrototypes.add(new DropCommand(game, config));
-		commandPrototypes.add(new UndoCommand(game, config));
-		commandPrototypes.add(new QuitCommand(game, config));
+		commandPrototypes = newPrototypes();
+		lexicon = new VerbLexicon(commandPrototypes);
+	}
+
+	private Vector<Command> newPrototypes() {
+		Vector<Command> prototypes = new Vector<Command>();
+
+		prototypes.add(new HelpCommand(this));
+		prototypes.add(new GoCommand());
+		prototypes.add(new LookCommand());
+		prototypes.add(new ExamineCommand());
+		prototypes.add(new TakeCommand());
+		prototypes.add(new DropCommand());
+		prototypes.add(new UndoCommand());
+		prototypes.add(new QuitCommand());
+		return prototypes;
+	}
+
+	/**
+	 * Gets the keywords shared by several commands with the current
+	 * configuration (the first of them in prototype order keeps parsing those
+	 * lines first). They are not reported by the parser, which is built again
+	 * for every engine, but once where the configuration is loaded.
+	 * 
+	 * @return The descriptions of the shared keywords.
+	 */
+	public List<String> getKeywordCollisions() {
+		return lexicon.getCollisions();
 	}
 
 }
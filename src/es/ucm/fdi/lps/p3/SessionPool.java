@@ -0,0 +1,212 @@
+package es.ucm.fdi.lps.p3;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Represents a pool of ready game sessions of a template: engines with their
+ * game already built and configured, at the beginning of the game. The
+ * engines of the pool share a parser (see Engine#Engine(Game, Parser,
+ * InputStream, OutputStream)), so a session does not build command
+ * prototypes of its own. Acquiring a session takes it from the pool (or
+ * builds a new one if the pool is empty), and releasing it when its game ends
+ * puts it back to the beginning (see Engine#reset()) and keeps it for the
+ * next player, so a new player does not wait for the game, the engine and the
+ * command prototypes to be built again. The pool can be used from several
+ * threads, but a session can only be used by a thread at a time.
+ */
+public class SessionPool {
+
+	/**
+	 * Default maximum number of idle sessions kept by a pool
+	 */
+	public static final int DEFAULT_CAPACITY = 64;
+
+	/**
+	 * The output of the sessions while they are idle, which discards
+	 * everything
+	 */
+	private static final OutputStream NO_OUTPUT = new OutputStream() {
+		public void write(int b) {
+		}
+
+		public void write(byte[] b, int off, int len) {
+		}
+	};
+
+	private final GameTemplate template;
+	private volatile Parser parser;
+	private final BlockingQueue<Engine> idle;
+
+	/**
+	 * The watcher that reloads the configuration of the sessions (null if it
+	 * is not reloaded)
+	 */
+	private volatile ConfigurationWatcher watcher;
+
+	/**
+	 * Constructs an empty pool with the default capacity.
+	 * 
+	 * @param template
+	 *            The template of the games of the sessions.
+	 * @param configuration
+	 *            The configuration of the engines, or null for the default
+	 *            one.
+	 * @throws IllegalArgumentException
+	 *             The argument 'template' cannot be null.
+	 */
+	public SessionPool(GameTemplate template, Configuration configuration) {
+		this(template, configuration, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Constructs an empty pool.
+	 * 
+	 * @param template
+	 *            The template of the games of the sessions.
+	 * @param configuration
+	 *            The configuration of the engines, or null for the default
+	 *            one.
+	 * @param capacity
+	 *            The maximum number of idle sessions kept by the pool (the
+	 *            sessions released when it is full are discarded).
+	 * @throws IllegalArgumentException
+	 *             The argument 'template' cannot be null and 'capacity' must
+	 *             be positive.
+	 */
+	public SessionPool(GameTemplate template, Configuration configuration,
+			int capacity) {
+		if ((template == null) || (capacity <= 0))
+			throw new IllegalArgumentException();
+		this.template = template;
+		parser = (configuration == null) ? new Parser() : new Parser(
+				configuration);
+		idle = new ArrayBlockingQueue<Engine>(capacity);
+	}
+
+	/**
+	 * Builds idle sessions until the pool is full, so the first players do not
+	 * wait for them either.
+	 */
+	public void fill() {
+		while (idle.remainingCapacity() > 0) {
+			if (!idle.offer(newSession()))
+				break;
+		}
+	}
+
+	/**
+	 * Sets the watcher that reloads the configuration of the sessions: every
+	 * session built from now on, idle or acquired, is added to its engines,
+	 * and the sessions built after a reload share a parser with the reloaded
+	 * configuration. It should be set before building any session.
+	 * 
+	 * @param watcher
+	 *            The watcher, or null if the configuration is not reloaded.
+	 */
+	public void setConfigurationWatcher(ConfigurationWatcher watcher) {
+		this.watcher = watcher;
+	}
+
+	private Engine newSession() {
+		ConfigurationWatcher watcher = this.watcher;
+		Parser shared = currentParser(watcher);
+		Engine engine = new Engine(template.newGame(), shared,
+				new ByteArrayInputStream(new byte[0]), NO_OUTPUT);
+		if (watcher != null) {
+			watcher.addEngine(engine);
+			// A configuration reloaded while the session was built is not
+			// handed to it by the watcher
+			Configuration reloaded = watcher.getConfiguration();
+			if ((reloaded != null) && (reloaded != shared.getConfiguration()))
+				engine.reloadConfiguration(reloaded);
+		}
+		return engine;
+	}
+
+	/**
+	 * Gets the parser shared by the new sessions, building it again if the
+	 * watcher has reloaded the configuration.
+	 */
+	private Parser currentParser(ConfigurationWatcher watcher) {
+		Parser current = parser;
+		Configuration reloaded = (watcher == null) ? null : watcher
+				.getConfiguration();
+		if ((reloaded == null) || (reloaded == current.getConfiguration()))
+			return current;
+		synchronized (this) {
+			current = parser;
+			if (reloaded != current.getConfiguration())
+				parser = current = new Parser(reloaded);
+		}
+		return current;
+	}
+
+	/**
+	 * Acquires a session, at the beginning of its game. Its output is
+	 * discarded until it is set (see Engine#setOutput(OutputStream)), but it
+	 * does not matter if the session is played with Engine#start() and
+	 * Engine#step(String).
+	 * 
+	 * @return The engine of the session.
+	 */
+	public Engine acquire() {
+		Engine engine = idle.poll();
+		return (engine == null) ? newSession() : engine;
+	}
+
+	/**
+	 * Releases a session acquired from this pool, usually when its game has
+	 * ended: it is put back to the beginning of its game and kept for another
+	 * player if the pool is not full. The session cannot be used after
+	 * releasing it.
+	 * 
+	 * @param engine
+	 *            The engine of the session.
+	 * @throws IllegalArgumentException
+	 *             The argument 'engine' cannot be null.
+	 */
+	public void release(Engine engine) {
+		if (engine == null)
+			throw new IllegalArgumentException();
+		engine.reset();
+		engine.setOutput(NO_OUTPUT);
+		if (!idle.offer(engine)) {
+			ConfigurationWatcher watcher = this.watcher;
+			if (watcher != null)
+				watcher.removeEngine(engine);
+		}
+	}
+
+	/**
+	 * Gets the number of idle sessions kept by the pool.
+	 * 
+	 * @return The number of sessions.
+	 */
+	public int getNumberOfIdleSessions() {
+		return idle.size();
+	}
+
+	/**
+	 * Gets the maximum number of idle sessions kept by the pool.
+	 * 
+	 * @return The maximum number of sessions.
+	 */
+	public int getCapacity() {
+		return idle.size() + idle.remainingCapacity();
+	}
+
+	/**
+	 * Returns a String representation for this object:
+	 * SessionPool[template, idle/capacity]. This is useful for debugging
+	 * purposes.
+	 * 
+	 * @see Object#toString()
+	 */
+	public String toString() {
+		return this.getClass().getSimpleName() + "[" + template + ", "
+				+ idle.size() + "/" + getCapacity() + "]";
+	}
+}
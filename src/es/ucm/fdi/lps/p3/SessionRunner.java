@@ -0,0 +1,272 @@
+package es.ucm.fdi.lps.p3;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Represents a runner of game sessions with a thread per session: each engine
+ * plays its game line by line (see Engine#play(String)) in its own thread,
+ * blocking while it waits for the next line of its input (for instance, a pipe
+ * or a socket), so the engines and the commands are used as in Engine#run().
+ * <p>
+ * The threads are virtual threads when the Java platform has them, so a large
+ * number of blocked sessions costs little memory; otherwise they are daemon
+ * threads with a small stack. The number of sessions executing a turn at the
+ * same time can be limited, so that sessions with expensive turns cannot take
+ * all the processors: a session waits for a permit before executing a turn,
+ * but it does not hold it while it waits for its input.
+ */
+public class SessionRunner {
+
+	/**
+	 * Stack size of the threads when there are no virtual threads, in bytes
+	 */
+	public static final long STACK_SIZE = 256 * 1024;
+
+	/**
+	 * Size of the input buffer of a session, in bytes (small, because most
+	 * sessions are blocked waiting for a short line)
+	 */
+	private static final int INPUT_BUFFER_SIZE = 256;
+
+	/**
+	 * Maximum length of a line of a session, in bytes (a longer line ends the
+	 * session, as in GameServer)
+	 */
+	public static final int MAX_LINE_LENGTH = GameServer.MAX_LINE_LENGTH;
+
+	/**
+	 * The charset of the lines of the sessions (the same one of the output of
+	 * the engines)
+	 */
+	private static final Charset CHARSET = Charset.defaultCharset();
+
+	private final ThreadFactory threadFactory;
+
+	/**
+	 * The permits for executing turns (null if there is no limit)
+	 */
+	private final Semaphore permits;
+	private final int maxExecuting;
+
+	private final AtomicInteger sessions = new AtomicInteger();
+	private final AtomicInteger executing = new AtomicInteger();
+
+	/**
+	 * Constructs a runner without limit of sessions executing at the same
+	 * time.
+	 */
+	public SessionRunner() {
+		this(0);
+	}
+
+	/**
+	 * Constructs a runner.
+	 * 
+	 * @param maxExecuting
+	 *            The maximum number of sessions executing a turn at the same
+	 *            time (0 if there is no limit).
+	 * @throws IllegalArgumentException
+	 *             The argument 'maxExecuting' cannot be negative.
+	 */
+	public SessionRunner(int maxExecuting) {
+		this(maxExecuting, newThreadFactory());
+	}
+
+	/**
+	 * Constructs a runner with some threads.
+	 * 
+	 * @param maxExecuting
+	 *            The maximum number of sessions executing a turn at the same
+	 *            time (0 if there is no limit).
+	 * @param threadFactory
+	 *            The factory of the threads of the sessions.
+	 * @throws IllegalArgumentException
+	 *             The argument 'maxExecuting' cannot be negative and
+	 *             'threadFactory' cannot be null.
+	 */
+	public SessionRunner(int maxExecuting, ThreadFactory threadFactory) {
+		if ((maxExecuting < 0) || (threadFactory == null))
+			throw new IllegalArgumentException();
+		this.maxExecuting = maxExecuting;
+		this.threadFactory = threadFactory;
+		permits = (maxExecuting == 0) ? null : new Semaphore(maxExecuting,
+				true);
+	}
+
+	/**
+	 * Creates a factory of virtual threads if the Java platform has them, or
+	 * of daemon threads with a small stack otherwise.
+	 * 
+	 * @return The thread factory.
+	 */
+	public static ThreadFactory newThreadFactory() {
+		try {
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			return (ThreadFactory) Class.forName("java.lang.Thread$Builder")
+					.getMethod("factory").invoke(builder);
+		} catch (Exception e) {
+			return new ThreadFactory() {
+				private final AtomicInteger count = new AtomicInteger();
+
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(null, r, "Session "
+							+ count.incrementAndGet(), STACK_SIZE);
+					t.setDaemon(true);
+					return t;
+				}
+			};
+		}
+	}
+
+	/**
+	 * Starts a session in its own thread: the engine begins its game (see
+	 * Engine#begin()) and plays every line read from the input, until the
+	 * game ends or the input is closed.
+	 * 
+	 * @param engine
+	 *            The engine, with its output set.
+	 * @param input
+	 *            The input of the session; it is closed when the session ends.
+	 * @return The thread of the session.
+	 * @throws IllegalArgumentException
+	 *             The arguments cannot be null.
+	 */
+	public Thread start(final Engine engine, final InputStream input) {
+		if ((engine == null) || (input == null))
+			throw new IllegalArgumentException();
+		Thread thread = threadFactory.newThread(new Runnable() {
+			public void run() {
+				runSession(engine, input);
+			}
+		});
+		sessions.incrementAndGet();
+		try {
+			thread.start();
+		} catch (RuntimeException e) {
+			sessions.decrementAndGet();
+			throw e;
+		} catch (Error e) {
+			sessions.decrementAndGet();
+			throw e;
+		}
+		return thread;
+	}
+
+	private void runSession(Engine engine, InputStream input) {
+		InputStream reader = new BufferedInputStream(input, INPUT_BUFFER_SIZE);
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream(64);
+		try {
+			if (execute(engine, null)) {
+				String line;
+				while ((line = readLine(reader, buffer)) != null) {
+					if (!execute(engine, line))
+						break;
+				}
+			}
+		} catch (IOException e) {
+		} catch (InterruptedException e) {
+		} finally {
+			sessions.decrementAndGet();
+			try {
+				reader.close();
+			} catch (IOException e) {
+			}
+		}
+	}
+
+	/**
+	 * Reads a line from the input, without the line separator ("\n" or
+	 * "\r\n").
+	 * 
+	 * @return The line, or null if the input has ended.
+	 * @throws IOException
+	 *             The input cannot be read, or the line is longer than
+	 *             MAX_LINE_LENGTH.
+	 */
+	private static String readLine(InputStream input,
+			ByteArrayOutputStream buffer) throws IOException {
+		buffer.reset();
+		int b;
+		while (((b = input.read()) >= 0) && (b != '\n')) {
+			if (buffer.size() == MAX_LINE_LENGTH)
+				throw new IOException("Line too long");
+			buffer.write(b);
+		}
+		if ((b < 0) && (buffer.size() == 0))
+			return null;
+		byte[] bytes = buffer.toByteArray();
+		int length = bytes.length;
+		if ((length > 0) && (bytes[length - 1] == '\r'))
+			length--;
+		return new String(bytes, 0, length, CHARSET);
+	}
+
+	/**
+	 * Executes a turn (or begins the game if the line is null) holding a
+	 * permit.
+	 * 
+	 * @return true if the game goes on; false if it has ended.
+	 */
+	private boolean execute(Engine engine, String line)
+			throws InterruptedException {
+		if (permits != null)
+			permits.acquire();
+		executing.incrementAndGet();
+		try {
+			if (line != null)
+				return engine.play(line);
+			engine.begin();
+			return true;
+		} finally {
+			executing.decrementAndGet();
+			if (permits != null)
+				permits.release();
+		}
+	}
+
+	/**
+	 * Gets the maximum number of sessions executing a turn at the same time.
+	 * 
+	 * @return The maximum number, or 0 if there is no limit.
+	 */
+	public int getMaxExecuting() {
+		return maxExecuting;
+	}
+
+	/**
+	 * Gets the number of running sessions.
+	 * 
+	 * @return The number of sessions.
+	 */
+	public int getNumberOfSessions() {
+		return sessions.get();
+	}
+
+	/**
+	 * Gets the number of sessions executing a turn now.
+	 * 
+	 * @return The number of sessions.
+	 */
+	public int getNumberOfExecutingSessions() {
+		return executing.get();
+	}
+
+	/**
+	 * Returns a String representation for this object:
+	 * SessionRunner[executing/maximum, sessions]. This is useful for
+	 * debugging purposes.
+	 * 
+	 * @see Object#toString()
+	 */
+	public String toString() {
+		return this.getClass().getSimpleName() + "[" + executing.get() + "/"
+				+ maxExecuting + ", " + sessions.get() + "]";
+	}
+}
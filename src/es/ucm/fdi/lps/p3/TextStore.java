@@ -0,0 +1,225 @@
+package es.ucm.fdi.lps.p3;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Represents the string table of a game image. Strings stay encoded in the
+ * image (usually a memory-mapped file) and are decoded on demand; only a
+ * bounded number of the most recently used strings are kept decoded.
+ * Prefetching is only a hint: a string already decoded or being decoded is not
+ * prefetched again, and prefetches are dropped while the prefetcher is busy.
+ */
+class TextStore {
+
+	/**
+	 * Default number of decoded strings kept by a store
+	 */
+	static final int DEFAULT_CAPACITY = 1024;
+
+	/**
+	 * Maximum number of strings waiting to be prefetched by all the stores
+	 */
+	static final int PREFETCH_QUEUE_SIZE = 64;
+
+	/**
+	 * Thread that decodes the prefetched strings of every store
+	 */
+	private static final ExecutorService PREFETCHER = new ThreadPoolExecutor(
+			1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(
+					PREFETCH_QUEUE_SIZE), new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "TextStore prefetcher");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+
+	/**
+	 * The encoded strings
+	 */
+	private final ByteBuffer data;
+
+	/**
+	 * The offset of every string in the data (plus the end of the last one)
+	 */
+	private final int[] offsets;
+
+	/**
+	 * The charset of the encoded strings
+	 */
+	private final Charset charset;
+
+	/**
+	 * The decoded strings, from the least to the most recently used
+	 */
+	private final Map<Integer, String> cache;
+
+	/**
+	 * The indexes of the strings waiting to be prefetched or being prefetched
+	 * (guarded by the cache)
+	 */
+	private final Set<Integer> prefetching = new HashSet<Integer>();
+
+	/**
+	 * Constructs a store over the encoded strings of a buffer.
+	 * 
+	 * @param data
+	 *            The encoded strings.
+	 * @param offsets
+	 *            The offset of every string in the data, plus the end of the
+	 *            last one.
+	 * @param charset
+	 *            The charset of the strings.
+	 * @param capacity
+	 *            The maximum number of decoded strings kept by the store.
+	 */
+	TextStore(ByteBuffer data, int[] offsets, Charset charset,
+			final int capacity) {
+		if ((data == null) || (offsets == null) || (charset == null)
+				|| (offsets.length < 1) || (capacity < 0))
+			throw new IllegalArgumentException();
+		for (int i = 1; i < offsets.length; i++) {
+			if ((offsets[i - 1] < 0) || (offsets[i - 1] > offsets[i])
+					|| (offsets[i] > data.limit()))
+				throw new BufferUnderflowException();
+		}
+		this.data = data;
+		this.offsets = offsets;
+		this.charset = charset;
+		this.cache = new LinkedHashMap<Integer, String>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, String> e) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * Reads a string table (the number of strings, their offsets and their
+	 * bytes) from the current position of a buffer, leaving the buffer after
+	 * the table.
+	 * 
+	 * @param buf
+	 *            The buffer.
+	 * @param charset
+	 *            The charset of the strings.
+	 * @param capacity
+	 *            The maximum number of decoded strings kept by the store.
+	 * @return The store.
+	 */
+	static TextStore read(ByteBuffer buf, Charset charset, int capacity) {
+		int count = buf.getInt();
+		int[] offsets = GameImage.readInts(buf, count + 1);
+		if ((offsets[count] < 0) || (offsets[count] > buf.remaining()))
+			throw new BufferUnderflowException();
+		ByteBuffer data = buf.slice();
+		data.limit(offsets[count]);
+		buf.position(buf.position() + offsets[count]);
+		return new TextStore(data, offsets, charset, capacity);
+	}
+
+	/**
+	 * Gets the number of strings of the store.
+	 * 
+	 * @return The number of strings.
+	 */
+	int size() {
+		return offsets.length - 1;
+	}
+
+	/**
+	 * Gets a string, decoding it if it is not among the recently used ones.
+	 * 
+	 * @param index
+	 *            The index of the string.
+	 * @return The string.
+	 */
+	String get(int index) {
+		Integer key = index;
+		synchronized (cache) {
+			String s = cache.get(key);
+			if (s != null)
+				return s;
+		}
+		String s = decode(index);
+		synchronized (cache) {
+			cache.put(key, s);
+		}
+		return s;
+	}
+
+	/**
+	 * Decodes a string in the background, so that it is among the recently
+	 * used ones when it is needed.
+	 * 
+	 * @param index
+	 *            The index of the string.
+	 */
+	void prefetch(final int index) {
+		final Integer key = index;
+		synchronized (cache) {
+			if (cache.containsKey(key) || !prefetching.add(key))
+				return;
+		}
+		try {
+			PREFETCHER.execute(new Runnable() {
+				public void run() {
+					try {
+						get(index);
+					} finally {
+						done(key);
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			done(key);
+		}
+	}
+
+	private void done(Integer key) {
+		synchronized (cache) {
+			prefetching.remove(key);
+		}
+	}
+
+	/**
+	 * Decodes a string without keeping it in the store.
+	 * 
+	 * @param index
+	 *            The index of the string.
+	 * @return The string.
+	 */
+	String decode(int index) {
+		if ((index < 0) || (index >= size()))
+			throw new IndexOutOfBoundsException();
+		byte[] bytes = new byte[offsets[index + 1] - offsets[index]];
+		ByteBuffer slice = data.duplicate();
+		slice.position(offsets[index]);
+		slice.get(bytes);
+		return new String(bytes, charset);
+	}
+
+	/**
+	 * Returns a String representation for this object: TextStore[size]. This
+	 * is useful for debugging purposes.
+	 * 
+	 * @see Object#toString()
+	 */
+	public String toString() {
+		return this.getClass().getSimpleName() + "[" + size() + "]";
+	}
+}
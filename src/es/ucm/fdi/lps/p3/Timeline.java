@@ -0,0 +1,304 @@
+package es.ucm.fdi.lps.p3;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Represents the timeline of a game: the turns played so far, each of them
+ * holding only the changes that it made to the game (the items taken and
+ * dropped and the movements of the player). A turn refers to the previous
+ * one, so the turns form a tree whose branches share their common past: after
+ * undoing some turns, playing a new one starts a new branch, and the turns of
+ * the old branch can still be reached while someone keeps them. The game can
+ * go back and forth between any two turns by undoing and redoing the changes
+ * between them, whatever commands made them.
+ * <p>
+ * The turns without changes (for instance, looking around) are only counted,
+ * so they can be undone, and the turns older than the executed commands kept
+ * by the game are discarded (see trim(int)), so the timeline takes as much
+ * memory as the command history allows.
+ */
+public class Timeline {
+
+	/**
+	 * The changes of a turn without changes
+	 */
+	private static final Change[] NO_CHANGES = new Change[0];
+
+	/**
+	 * Represents a change made to a game: an item moved between a location
+	 * and the player inventory, or a movement of the player.
+	 */
+	static final class Change {
+
+		/**
+		 * The moved item (null for a movement of the player)
+		 */
+		final Item item;
+
+		/**
+		 * The location of the moved item, or the origin of the player
+		 */
+		final Location location;
+
+		/**
+		 * The destination of the player (null for a moved item)
+		 */
+		final Location destination;
+
+		/**
+		 * Whether the item was taken (true) or dropped (false)
+		 */
+		final boolean taken;
+
+		private Change(Item item, Location location, Location destination,
+				boolean taken) {
+			this.item = item;
+			this.location = location;
+			this.destination = destination;
+			this.taken = taken;
+		}
+	}
+
+	/**
+	 * Represents a turn of a game: the changes made to the game by a command,
+	 * on top of the previous turn. A turn can be kept for going back to it
+	 * later (see Game#goToTurn(Turn)).
+	 */
+	public static final class Turn {
+
+		private final Timeline timeline;
+		private final int number;
+		private final Change[] changes;
+
+		/**
+		 * The number of turns without changes played between the previous
+		 * turn and this one
+		 */
+		private final int emptyTurnsBefore;
+
+		/**
+		 * The previous turn (null if this is the first one kept)
+		 */
+		private Turn previous;
+
+		/**
+		 * The turn played (or undone) last after this one, for redoing it
+		 */
+		private Turn next;
+
+		private Turn(Timeline timeline, Turn previous, Change[] changes,
+				int emptyTurnsBefore) {
+			this.timeline = timeline;
+			this.previous = previous;
+			this.number = (previous == null) ? 0 : previous.number + 1;
+			this.changes = changes;
+			this.emptyTurnsBefore = emptyTurnsBefore;
+		}
+
+		/**
+		 * Gets the number of this turn (the number of turns with changes
+		 * before it; the beginning of the game is the turn 0).
+		 * 
+		 * @return The number.
+		 */
+		public int getNumber() {
+			return number;
+		}
+
+		/**
+		 * Gets the number of changes made to the game in this turn.
+		 * 
+		 * @return The number of changes.
+		 */
+		public int getNumberOfChanges() {
+			return changes.length;
+		}
+
+		/**
+		 * Returns a String representation for this object: Turn[number,
+		 * changes]. This is useful for debugging purposes.
+		 * 
+		 * @see Object#toString()
+		 */
+		public String toString() {
+			return this.getClass().getSimpleName() + "[" + number + ", "
+					+ changes.length + "]";
+		}
+	}
+
+	/**
+	 * The turn of the current state of the game
+	 */
+	private Turn current;
+
+	/**
+	 * The number of turns without changes played after the current turn
+	 */
+	private int emptyTurns;
+
+	/**
+	 * The changes made since the current turn, not part of a turn yet
+	 */
+	private final List<Change> pending = new ArrayList<Change>();
+
+	/**
+	 * Constructs a timeline at the beginning of a game.
+	 */
+	Timeline() {
+		current = new Turn(this, null, NO_CHANGES, 0);
+	}
+
+	/**
+	 * Records an item moved between a location and the player inventory.
+	 */
+	void recordItem(Item item, Location location, boolean taken) {
+		pending.add(new Change(item, location, null, taken));
+	}
+
+	/**
+	 * Records a movement of the player.
+	 */
+	void recordMovement(Location origin, Location destination) {
+		pending.add(new Change(null, origin, destination, false));
+	}
+
+	/**
+	 * Turns the pending changes into a new turn after the current one, or
+	 * counts a turn without changes if there are none. Either way, the turns
+	 * undone before cannot be redone any more.
+	 */
+	void commit() {
+		if (pending.isEmpty()) {
+			emptyTurns++;
+			current.next = null;
+			return;
+		}
+		Turn turn = new Turn(this, current, pending.toArray(new Change[pending
+				.size()]), emptyTurns);
+		pending.clear();
+		current.next = turn;
+		current = turn;
+		emptyTurns = 0;
+	}
+
+	/**
+	 * Undoes the last turn without changes, if it was played after the
+	 * current turn.
+	 * 
+	 * @return true if a turn without changes was undone; false otherwise.
+	 */
+	boolean undoEmptyTurn() {
+		if (emptyTurns == 0)
+			return false;
+		emptyTurns--;
+		return true;
+	}
+
+	/**
+	 * Discards the turns that are older than the last turns played, so they
+	 * cannot be undone and they can be garbage collected (unless someone
+	 * keeps them).
+	 * 
+	 * @param turns
+	 *            The number of turns (with changes or not) that can still be
+	 *            undone.
+	 */
+	void trim(int turns) {
+		Turn turn = current;
+		int remaining = turns - emptyTurns;
+		while ((remaining > 0) && (turn.previous != null)) {
+			remaining -= 1 + turn.emptyTurnsBefore;
+			turn = turn.previous;
+		}
+		turn.previous = null;
+	}
+
+	/**
+	 * Removes the pending changes, from the newest to the oldest.
+	 */
+	List<Change> takePendingChanges() {
+		List<Change> changes = new ArrayList<Change>(pending.size());
+		for (int i = pending.size() - 1; i >= 0; i--)
+			changes.add(pending.get(i));
+		pending.clear();
+		return changes;
+	}
+
+	boolean hasPendingChanges() {
+		return !pending.isEmpty();
+	}
+
+	/**
+	 * Gets the current turn.
+	 * 
+	 * @return The turn.
+	 */
+	public Turn getCurrentTurn() {
+		return current;
+	}
+
+	/**
+	 * Checks whether a turn belongs to this timeline and the game can still
+	 * go to it (the past that it shares with the current turn has not been
+	 * discarded).
+	 * 
+	 * @param turn
+	 *            The turn.
+	 * @return true if the turn belongs to this timeline; false otherwise.
+	 */
+	public boolean contains(Turn turn) {
+		if ((turn == null) || (turn.timeline != this))
+			return false;
+		Turn from = current;
+		while ((from != null) && (from.number > turn.number))
+			from = from.previous;
+		while ((from != null) && (turn != null)
+				&& (turn.number > from.number))
+			turn = turn.previous;
+		while ((from != null) && (from != turn)) {
+			from = from.previous;
+			turn = (turn == null) ? null : turn.previous;
+		}
+		return from != null;
+	}
+
+	static Turn getPrevious(Turn turn) {
+		return turn.previous;
+	}
+
+	static Turn getNext(Turn turn) {
+		return turn.next;
+	}
+
+	static Change[] getChanges(Turn turn) {
+		return turn.changes;
+	}
+
+	/**
+	 * Sets the current turn, remembering the way back to the old one for
+	 * redoing it. Going back to the previous turn brings back the turns
+	 * without changes played before the old one.
+	 */
+	void setCurrentTurn(Turn turn) {
+		int empty = 0;
+		if (turn.previous == current)
+			current.next = turn;
+		else if (current.previous == turn) {
+			turn.next = current;
+			empty = current.emptyTurnsBefore;
+		}
+		current = turn;
+		emptyTurns = empty;
+	}
+
+	/**
+	 * Returns a String representation for this object: Timeline[turn]. This
+	 * is useful for debugging purposes.
+	 * 
+	 * @see Object#toString()
+	 */
+	public String toString() {
+		return this.getClass().getSimpleName() + "[" + current.number + "]";
+	}
+}
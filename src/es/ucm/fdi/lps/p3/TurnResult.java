@@ -0,0 +1,85 @@
+package es.ucm.fdi.lps.p3;
+
+/**
+ * Represents the outcome of a turn played with Engine#step(String) (or of the
+ * beginning of a game, see Engine#start()): the text that the engine would
+ * show to the player, the parts of it about the command and the events, and
+ * whether the game has ended.
+ */
+public final class TurnResult {
+
+	private final String output;
+	private final String result;
+	private final String events;
+	private final boolean executed;
+	private final boolean gameOver;
+
+	TurnResult(String output, String result, String events, boolean executed,
+			boolean gameOver) {
+		this.output = output;
+		this.result = result;
+		this.events = events;
+		this.executed = executed;
+		this.gameOver = gameOver;
+	}
+
+	/**
+	 * Gets the whole text that the engine shows to the player for this turn,
+	 * as run() shows it: the result of the command, the events, the end of
+	 * the game and the next prompt (depending on the configuration).
+	 * 
+	 * @return The text.
+	 */
+	public String getOutput() {
+		return output;
+	}
+
+	/**
+	 * Gets the result of the command, or the message of an unknown command.
+	 * 
+	 * @return The result, or null if there is none (for instance, at the
+	 *         beginning of the game).
+	 */
+	public String getResult() {
+		return result;
+	}
+
+	/**
+	 * Gets the events that have occurred in the game after the command.
+	 * 
+	 * @return The events, or null if there are none.
+	 */
+	public String getEvents() {
+		return events;
+	}
+
+	/**
+	 * Checks whether the command was executed successfully (and recorded in
+	 * the command history).
+	 * 
+	 * @return true if the command was executed; false otherwise.
+	 */
+	public boolean isExecuted() {
+		return executed;
+	}
+
+	/**
+	 * Checks whether the game has ended.
+	 * 
+	 * @return true if the game has ended; false otherwise.
+	 */
+	public boolean isGameOver() {
+		return gameOver;
+	}
+
+	/**
+	 * Returns a String representation for this object: TurnResult[result,
+	 * executed, game over]. This is useful for debugging purposes.
+	 * 
+	 * @see Object#toString()
+	 */
+	public String toString() {
+		return this.getClass().getSimpleName() + "[" + result + ", "
+				+ executed + ", " + gameOver + "]";
+	}
+}
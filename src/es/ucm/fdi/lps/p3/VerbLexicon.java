@@ -0,0 +1,193 @@
+package es.ucm.fdi.lps.p3;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import es.ucm.fdi.lps.p3.command.Command;
+
+/**
+ * Maps the verbs of the commands (the first word of a player line) to the
+ * commands that own them, so the parser only asks those commands to parse a
+ * line. The verbs are kept in a trie, ignoring case the same way
+ * String.equalsIgnoreCase does. Commands that do not report their keywords are
+ * asked to parse every line.
+ */
+class VerbLexicon {
+
+	/**
+	 * A node of the trie
+	 */
+	private static class Node {
+		private char[] keys = new char[0];
+		private Node[] children = new Node[0];
+
+		/**
+		 * The commands that may parse a line starting with the verb that ends
+		 * at this node (null if no verb ends here), in prototype order
+		 */
+		private Command[] commands;
+
+		Node child(char key) {
+			for (int i = 0; i < keys.length; i++) {
+				if (keys[i] == key)
+					return children[i];
+			}
+			return null;
+		}
+
+		Node addChild(char key) {
+			Node node = child(key);
+			if (node == null) {
+				node = new Node();
+				keys = Arrays.copyOf(keys, keys.length + 1);
+				children = Arrays.copyOf(children, children.length + 1);
+				keys[keys.length - 1] = key;
+				children[children.length - 1] = node;
+			}
+			return node;
+		}
+	}
+
+	private final Node root;
+
+	/**
+	 * The commands that do not report their keywords, in prototype order
+	 */
+	private final Command[] keywordless;
+
+	/**
+	 * The verbs owned by more than one command
+	 */
+	private final List<String> collisions;
+
+	/**
+	 * Constructs the lexicon of some command prototypes, using their current
+	 * keywords.
+	 * 
+	 * @param prototypes
+	 *            The command prototypes, in the order in which they must try to
+	 *            parse a line.
+	 * @throws IllegalArgumentException
+	 *             The argument 'prototypes' cannot be null.
+	 */
+	VerbLexicon(List<Command> prototypes) {
+		if (prototypes == null)
+			throw new IllegalArgumentException();
+
+		root = new Node();
+		collisions = new ArrayList<String>();
+		List<Command> withoutKeywords = new ArrayList<Command>();
+		List<Node> verbs = new ArrayList<Node>();
+		List<List<Command>> owners = new ArrayList<List<Command>>();
+
+		for (Command command : prototypes) {
+			String[] keywords = command.getKeywords();
+			if (keywords.length == 0) {
+				withoutKeywords.add(command);
+				continue;
+			}
+			for (String keyword : keywords) {
+				String verb = (keyword == null) ? "" : firstWord(keyword);
+				if (verb.length() == 0)
+					continue;
+				Node node = root;
+				for (int i = 0; i < verb.length(); i++)
+					node = node.addChild(fold(verb.charAt(i)));
+
+				int index = verbs.indexOf(node);
+				if (index == -1) {
+					verbs.add(node);
+					owners.add(new ArrayList<Command>());
+					index = verbs.size() - 1;
+				}
+				List<Command> commands = owners.get(index);
+				if (commands.contains(command))
+					continue;
+				if (!commands.isEmpty())
+					collisions.add("Keyword \"" + verb + "\" of "
+							+ command + " is also a keyword of "
+							+ commands.get(0));
+				commands.add(command);
+			}
+		}
+
+		keywordless = withoutKeywords.toArray(new Command[withoutKeywords
+				.size()]);
+		for (int i = 0; i < verbs.size(); i++) {
+			// Keep the prototype order, as if every command were asked
+			List<Command> commands = new ArrayList<Command>();
+			for (Command command : prototypes) {
+				if (owners.get(i).contains(command)
+						|| withoutKeywords.contains(command))
+					commands.add(command);
+			}
+			verbs.get(i).commands = commands
+					.toArray(new Command[commands.size()]);
+		}
+	}
+
+	/**
+	 * Gets the first word of a keyword (the whole keyword unless it has
+	 * several words, as a command may compare the whole line with it).
+	 */
+	private static String firstWord(String keyword) {
+		int start = 0;
+		while ((start < keyword.length())
+				&& Character.isWhitespace(keyword.charAt(start)))
+			start++;
+		int end = start;
+		while ((end < keyword.length())
+				&& !Character.isWhitespace(keyword.charAt(end)))
+			end++;
+		return keyword.substring(start, end);
+	}
+
+	private static char fold(char c) {
+		return Character.toLowerCase(Character.toUpperCase(c));
+	}
+
+	/**
+	 * Gets the commands that may parse a player line, according to its first
+	 * word.
+	 * 
+	 * @param line
+	 *            The line.
+	 * @return The commands, in prototype order.
+	 */
+	Command[] lookup(String line) {
+		int start = 0;
+		while ((start < line.length())
+				&& Character.isWhitespace(line.charAt(start)))
+			start++;
+		Node node = (start < line.length()) ? root : null;
+		for (int i = start; (node != null) && (i < line.length())
+				&& !Character.isWhitespace(line.charAt(i)); i++)
+			node = node.child(fold(line.charAt(i)));
+
+		if ((node == null) || (node.commands == null))
+			return keywordless;
+		return node.commands;
+	}
+
+	/**
+	 * Gets the descriptions of the keywords owned by more than one command.
+	 * When that happens, the commands are asked in prototype order.
+	 * 
+	 * @return The descriptions of the collisions.
+	 */
+	List<String> getCollisions() {
+		return Collections.unmodifiableList(collisions);
+	}
+
+	/**
+	 * Returns a String representation for this object: VerbLexicon[]. This is
+	 * useful for debugging purposes.
+	 * 
+	 * @see Object#toString()
+	 */
+	public String toString() {
+		return this.getClass().getSimpleName() + "[]";
+	}
+}
@@ -0,0 +1,146 @@
+package es.ucm.fdi.lps.p3;
+
+import java.util.Arrays;
+
+import es.ucm.fdi.lps.p3.Game.Direction;
+
+/**
+ * Represents the map of a game: its locations, identified by dense int ids
+ * (from 0 to the number of locations - 1), and their connections, kept in a
+ * flat table with an entry for every location and direction. Moving from a
+ * location to a connected one is a single read of the table.
+ */
+class World {
+
+	/**
+	 * Id of no location (there is no connection in that direction)
+	 */
+	static final int NONE = -1;
+
+	private static final int DIRECTIONS = Direction.values().length;
+
+	/**
+	 * The locations, by id
+	 */
+	private final Location[] locations;
+
+	/**
+	 * The id of the connected location of every location in every direction
+	 * (NONE if there is none), by location id and direction ordinal
+	 */
+	private final int[] adjacency;
+
+	/**
+	 * Constructs a world with some locations, not connected yet. The locations
+	 * get their ids in the world.
+	 * 
+	 * @param locations
+	 *            The locations, by id.
+	 * @throws IllegalArgumentException
+	 *             The argument 'locations' cannot be null.
+	 */
+	World(Location[] locations) {
+		this(locations, newAdjacency(locations));
+	}
+
+	/**
+	 * Constructs a world with some locations and their connections. The
+	 * locations get their ids in the world.
+	 * 
+	 * @param locations
+	 *            The locations, by id.
+	 * @param adjacency
+	 *            The id of the connected location of every location in every
+	 *            direction (NONE if there is none), by location id and
+	 *            direction ordinal.
+	 * @throws IllegalArgumentException
+	 *             The arguments 'locations' and 'adjacency' cannot be null, the
+	 *             table must have an entry for every location and direction
+	 *             and the entries must be location ids or NONE.
+	 */
+	World(Location[] locations, int[] adjacency) {
+		if ((locations == null) || (adjacency == null)
+				|| (adjacency.length != locations.length * DIRECTIONS))
+			throw new IllegalArgumentException();
+		for (int connection : adjacency) {
+			if ((connection < NONE) || (connection >= locations.length))
+				throw new IllegalArgumentException();
+		}
+
+		this.locations = locations;
+		this.adjacency = adjacency;
+		for (int id = 0; id < locations.length; id++)
+			locations[id].setWorld(this, id);
+	}
+
+	private static int[] newAdjacency(Location[] locations) {
+		if (locations == null)
+			throw new IllegalArgumentException();
+		int[] adjacency = new int[locations.length * DIRECTIONS];
+		Arrays.fill(adjacency, NONE);
+		return adjacency;
+	}
+
+	/**
+	 * Gets the number of locations of the world.
+	 * 
+	 * @return The number of locations.
+	 */
+	int size() {
+		return locations.length;
+	}
+
+	/**
+	 * Gets a location of the world.
+	 * 
+	 * @param id
+	 *            The id of the location.
+	 * @return The location.
+	 */
+	Location getLocation(int id) {
+		return locations[id];
+	}
+
+	/**
+	 * Gets the id of the location connected to a location in a direction.
+	 * 
+	 * @param id
+	 *            The id of the location.
+	 * @param direction
+	 *            The direction.
+	 * @return The id of the connected location, or NONE if there is none.
+	 */
+	int getConnection(int id, Direction direction) {
+		return adjacency[id * DIRECTIONS + direction.ordinal()];
+	}
+
+	/**
+	 * Connects a location to another one in a direction, overriding a
+	 * possible connection already established in that direction.
+	 * 
+	 * @param id
+	 *            The id of the location.
+	 * @param direction
+	 *            The direction.
+	 * @param connection
+	 *            The id of the other location, or NONE to remove the
+	 *            connection.
+	 * @throws IndexOutOfBoundsException
+	 *             The other location is not in the world.
+	 */
+	void setConnection(int id, Direction direction, int connection) {
+		if ((connection < NONE) || (connection >= locations.length))
+			throw new IndexOutOfBoundsException();
+		adjacency[id * DIRECTIONS + direction.ordinal()] = connection;
+	}
+
+	/**
+	 * Returns a String representation for this object: World[size]. This is
+	 * useful for debugging purposes.
+	 * 
+	 * @see Object#toString()
+	 */
+	public String toString() {
+		return this.getClass().getSimpleName() + "[" + size() + "]";
+	}
+}
@@ -1,8 +1,8 @@
 package es.ucm.fdi.lps.p3.command;
 
-import java.util.Enumeration;
 import java.util.Properties;
 
+import es.ucm.fdi.lps.p3.Configuration;
 import es.ucm.fdi.lps.p3.Game;
 import es.ucm.fdi.lps.p3.exception.NoCommandResultException;
 import es.ucm.fdi.lps.p3.exception.UnexecutedCommandException;
@@ -25,6 +25,12 @@ public abstract class Command implements Cloneable {
 	private final String LINE_SEPARATOR = System
 			.getProperty("line.separator");
 
+	/**
+	 * Approximate numbers of bytes of a command and of an empty string
+	 */
+	private static final int COMMAND_SIZE = 64;
+	private static final int STRING_SIZE = 40;
+
 	/**
 	 * Message when a commands fails.
 	 * <ul>
@@ -48,7 +54,7 @@ public abstract class Command implements Cloneable {
 	/**
 	 * A reference to a game object. It will be useful for accessing the room
 	 * where the player stays, for manipulating the player inventory and for
-	 * printing messages.
+	 * printing messages. It is null for a command prototype.
 	 */
 	protected Game game;
 
@@ -61,6 +67,12 @@ public abstract class Command implements Cloneable {
 	protected boolean parsed;
 	protected boolean executed;
 
+	/**
+	 * The parsed invocation that configured this command (null if there is
+	 * none)
+	 */
+	private ParsedCommand invocation;
+
 	/**
 	 * Constructs a command that has access to a given game. Initially the
 	 * command is unparsed, unexecuted and its configuration has no properties.
@@ -79,6 +91,18 @@ public abstract class Command implements Cloneable {
 		setDefaultConfiguration();
 	}
 
+	/**
+	 * Constructs a command prototype, not bound to any game: it only parses
+	 * the player invocations, and the commands of a game are created from it
+	 * (see newCommand(ParsedCommand, Game)). Initially the command is
+	 * unparsed, unexecuted and its configuration has no properties.
+	 */
+	protected Command() {
+		parsed = false;
+		executed = false;
+		setDefaultConfiguration();
+	}
+
 	/**
 	 * Sets a new configuration. Properties that are not overriden maintain
 	 * their previous values.
@@ -92,16 +116,26 @@ public abstract class Command implements Cloneable {
 		if (config == null)
 			throw new IllegalArgumentException();
 		this.config = config;
-		setDefaultConfiguration();
+		setConfiguration(new Configuration(config));
+	}
 
-		for (Enumeration<Object> e = config.keys(); e.hasMoreElements();) {
-			Object obj = e.nextElement();
-			if (obj.toString().equalsIgnoreCase(MESSAGE_COMMAND_FAILURE))
-				msgCommandFailure = config.getProperty(obj.toString());
-			else if (obj.toString().equalsIgnoreCase(
-					MESSAGE_COMMAND_UNDOSUCCESS))
-				msgCommandUndoSuccess = config.getProperty(obj.toString());
-		}
+	/**
+	 * Sets a new configuration. Properties that are not overriden maintain
+	 * their previous values.
+	 * 
+	 * @param config
+	 *            The compiled configuration.
+	 * @throws IllegalArgumentException
+	 *             The argument 'config' should not be null.
+	 */
+	public void setConfiguration(Configuration config) {
+		if (config == null)
+			throw new IllegalArgumentException();
+		setDefaultConfiguration();
+		msgCommandFailure = config.getString(MESSAGE_COMMAND_FAILURE,
+				msgCommandFailure);
+		msgCommandUndoSuccess = config.getString(MESSAGE_COMMAND_UNDOSUCCESS,
+				msgCommandUndoSuccess);
 	}
 
 	private void setDefaultConfiguration() {
@@ -191,10 +225,24 @@ public abstract class Command implements Cloneable {
 			return msgCommandFailure + LINE_SEPARATOR;
 	}
 
+	/**
+	 * Gets the approximate number of bytes of memory retained by this command
+	 * while it is kept in the command history: the command itself and its
+	 * result (its other texts are shared with the command prototype).
+	 * 
+	 * @return The number of bytes.
+	 */
+	public int getRetainedSize() {
+		int size = COMMAND_SIZE;
+		if (result != null)
+			size += STRING_SIZE + 2 * result.length();
+		return size;
+	}
+
 	/**
 	 * Undoes the command execution. By default, the undo of the execution of a
-	 * command is successful (nothing is done but showing the undo success
-	 * message).
+	 * command is successful: the turn of the game of the command is undone
+	 * (see Game#undoTurn()) and the undo success message is shown.
 	 * 
 	 * @return true if the command has been correctly undone; false otherwise.
 	 * @throws UnparsedCommandException
@@ -209,6 +257,7 @@ public abstract class Command implements Cloneable {
 		if (!executed)
 			throw new UnexecutedCommandException(
 					"Error: UnexecutedCommandException");
+		game.undoTurn();
 		result = msgCommandUndoSuccess + this.toString() + LINE_SEPARATOR;
 		return true;
 	}
@@ -220,6 +269,18 @@ public abstract class Command implements Cloneable {
 	 */
 	public abstract String getHelp();
 
+	/**
+	 * Gets the keywords that may start a text line invoking this command (the
+	 * first word of the line). The parser only asks this command to parse the
+	 * lines starting with one of them. By default, a command has no known
+	 * keywords, so it is asked to parse every line.
+	 * 
+	 * @return The keywords, or an empty array if they are not known.
+	 */
+	public String[] getKeywords() {
+		return new String[0];
+	}
+
 	/**
 	 * Parses a text line trying to identify a player invocation to this
 	 * command.
@@ -231,6 +292,91 @@ public abstract class Command implements Cloneable {
 	 */
 	public abstract boolean parse(String line);
 
+	/**
+	 * Parses a command line (a text line already split into words) trying to
+	 * identify a player invocation to this command, configuring this command
+	 * with the arguments read (see read(CommandLine)).
+	 * 
+	 * @param line
+	 *            The command line.
+	 * @return true if the command line has been correctly parsed and the
+	 *         command correctly configured; false otherwise.
+	 */
+	public boolean parse(CommandLine line) {
+		ParsedCommand parsedCommand = read(line);
+		if (parsedCommand == null)
+			return false;
+		setArguments(parsedCommand);
+		invocation = parsedCommand;
+		parsed = true;
+		return true;
+	}
+
+	/**
+	 * Reads a command line trying to identify a player invocation to this
+	 * command, without changing this command, so a command prototype can read
+	 * the lines of several games at the same time. By default, the text line
+	 * is parsed by this command itself (see parse(String)), so the commands
+	 * that do not override this method cannot be shared that way.
+	 * 
+	 * @param line
+	 *            The command line.
+	 * @return The parsed command, or null if the line is not an invocation to
+	 *         this command.
+	 */
+	public ParsedCommand read(CommandLine line) {
+		if (parse(line.getLine()))
+			return new ParsedCommand(this);
+		return null;
+	}
+
+	/**
+	 * Creates a command of a game from a parsed invocation to this command: a
+	 * parsed copy of this command (following the Prototype pattern) with the
+	 * arguments of the invocation.
+	 * 
+	 * @param parsedCommand
+	 *            The parsed invocation.
+	 * @param game
+	 *            The game.
+	 * @return The command.
+	 * @throws IllegalArgumentException
+	 *             The arguments 'parsedCommand' and 'game' cannot be null and
+	 *             the invocation must have been read by this command.
+	 */
+	public Command newCommand(ParsedCommand parsedCommand, Game game) {
+		if ((parsedCommand == null) || (game == null)
+				|| (parsedCommand.getPrototype() != this))
+			throw new IllegalArgumentException();
+		Command command = (Command) clone();
+		command.game = game;
+		command.setArguments(parsedCommand);
+		command.invocation = parsedCommand;
+		command.parsed = true;
+		return command;
+	}
+
+	/**
+	 * Gets the parsed invocation that configured this command: its verb and
+	 * its arguments.
+	 * 
+	 * @return The parsed invocation, or null if this command has not been
+	 *         parsed from a command line.
+	 */
+	public ParsedCommand getInvocation() {
+		return invocation;
+	}
+
+	/**
+	 * Sets the arguments of this command from a parsed invocation. By default,
+	 * a command has no arguments.
+	 * 
+	 * @param parsedCommand
+	 *            The parsed invocation.
+	 */
+	protected void setArguments(ParsedCommand parsedCommand) {
+	}
+
 	/**
 	 * Returns a String representation for this object, depending on the type of
 	 * specific command. This is useful for debugging purposes.
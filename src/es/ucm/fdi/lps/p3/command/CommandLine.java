@@ -0,0 +1,178 @@
+package es.ucm.fdi.lps.p3.command;
+
+/**
+ * Represents a text line from the player split into words (the tokens are
+ * separated by whitespace, as with java.util.Scanner). The line is split once
+ * and the tokens are kept as positions in it, so a command line can be reused
+ * for every line of the player without allocating anything. Tokens are
+ * compared with keywords ignoring case, the same way String.equalsIgnoreCase
+ * does.
+ */
+public class CommandLine {
+
+	private String line;
+
+	/**
+	 * The start and end positions of the tokens in the line
+	 */
+	private int[] starts, ends;
+	private int tokenCount;
+
+	/**
+	 * Constructs an empty command line.
+	 */
+	public CommandLine() {
+		starts = new int[4];
+		ends = new int[4];
+		set("");
+	}
+
+	/**
+	 * Constructs a command line for a text line.
+	 * 
+	 * @param line
+	 *            The text line.
+	 * @throws IllegalArgumentException
+	 *             The argument 'line' cannot be null.
+	 */
+	public CommandLine(String line) {
+		this();
+		set(line);
+	}
+
+	/**
+	 * Sets the text line of this command line, splitting it into tokens.
+	 * 
+	 * @param line
+	 *            The text line.
+	 * @throws IllegalArgumentException
+	 *             The argument 'line' cannot be null.
+	 */
+	public void set(String line) {
+		if (line == null)
+			throw new IllegalArgumentException();
+		this.line = line;
+		tokenCount = 0;
+		int length = line.length();
+		int i = 0;
+		while (i < length) {
+			while ((i < length) && Character.isWhitespace(line.charAt(i)))
+				i++;
+			if (i == length)
+				break;
+			if (tokenCount == starts.length) {
+				int[] newStarts = new int[2 * starts.length];
+				int[] newEnds = new int[2 * ends.length];
+				System.arraycopy(starts, 0, newStarts, 0, tokenCount);
+				System.arraycopy(ends, 0, newEnds, 0, tokenCount);
+				starts = newStarts;
+				ends = newEnds;
+			}
+			starts[tokenCount] = i;
+			while ((i < length) && !Character.isWhitespace(line.charAt(i)))
+				i++;
+			ends[tokenCount] = i;
+			tokenCount++;
+		}
+	}
+
+	/**
+	 * Gets the whole text line.
+	 * 
+	 * @return The text line.
+	 */
+	public String getLine() {
+		return line;
+	}
+
+	/**
+	 * Gets the number of tokens of the line.
+	 * 
+	 * @return The number of tokens.
+	 */
+	public int getTokenCount() {
+		return tokenCount;
+	}
+
+	/**
+	 * Gets a token of the line as a new string.
+	 * 
+	 * @param index
+	 *            The index of the token.
+	 * @return The token.
+	 * @throws IndexOutOfBoundsException
+	 *             There is no token with that index.
+	 */
+	public String getToken(int index) {
+		checkIndex(index);
+		return line.substring(starts[index], ends[index]);
+	}
+
+	/**
+	 * Checks whether a token of the line is a keyword, ignoring case.
+	 * 
+	 * @param index
+	 *            The index of the token.
+	 * @param keyword
+	 *            The keyword.
+	 * @return true if the token is the keyword; false otherwise (or if the
+	 *         keyword is null).
+	 * @throws IndexOutOfBoundsException
+	 *             There is no token with that index.
+	 */
+	public boolean tokenEquals(int index, String keyword) {
+		checkIndex(index);
+		return regionEquals(starts[index], ends[index], keyword);
+	}
+
+	/**
+	 * Checks whether the whole line is a keyword, ignoring case.
+	 * 
+	 * @param keyword
+	 *            The keyword.
+	 * @return true if the line is the keyword; false otherwise (or if the
+	 *         keyword is null).
+	 */
+	public boolean lineEquals(String keyword) {
+		return regionEquals(0, line.length(), keyword);
+	}
+
+	private boolean regionEquals(int start, int end, String keyword) {
+		if ((keyword == null) || (keyword.length() != end - start))
+			return false;
+		for (int i = start, j = 0; i < end; i++, j++) {
+			char a = line.charAt(i);
+			char b = keyword.charAt(j);
+			if (a == b)
+				continue;
+			if ((a < 128) && (b < 128)) {
+				// ASCII: only letters differ in case
+				if ((a >= 'A') && (a <= 'Z'))
+					a += 'a' - 'A';
+				if ((b >= 'A') && (b <= 'Z'))
+					b += 'a' - 'A';
+				if (a != b)
+					return false;
+			} else if ((Character.toUpperCase(a) != Character.toUpperCase(b))
+					&& (Character.toLowerCase(Character.toUpperCase(a)) != Character
+							.toLowerCase(Character.toUpperCase(b))))
+				return false;
+		}
+		return true;
+	}
+
+	private void checkIndex(int index) {
+		if ((index < 0) || (index >= tokenCount))
+			throw new IndexOutOfBoundsException();
+	}
+
+	/**
+	 * Returns a String representation for this object: the text line. This is
+	 * useful for debugging purposes.
+	 * 
+	 * @see Object#toString()
+	 */
+	public String toString() {
+		return line;
+	}
+}
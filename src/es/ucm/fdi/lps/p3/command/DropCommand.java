@@ -1,11 +1,9 @@
 package es.ucm.fdi.lps.p3.command;
 
-import java.util.Enumeration;
-import java.util.LinkedHashSet;
 import java.util.Properties;
-import java.util.Scanner;
 import java.util.Set;
 
+import es.ucm.fdi.lps.p3.Configuration;
 import es.ucm.fdi.lps.p3.Game;
 import es.ucm.fdi.lps.p3.Item;
 import es.ucm.fdi.lps.p3.exception.UnexecutedCommandException;
@@ -215,6 +213,16 @@ public class DropCommand extends Command {
 		setDefaultConfiguration();
 	}
 
+	/**
+	 * Constructs a prototype of the Drop command, not bound to any game: it
+	 * only parses the player invocations, and the commands of a game are
+	 * created from it (see newCommand(ParsedCommand, Game)). Default
+	 * configuration is assumed at this moment.
+	 */
+	public DropCommand() {
+		setDefaultConfiguration();
+	}
+
 	/**
 	 * Constructs a Drop command (as an specific type of Command) that has
 	 * access to a given game. Initially the command is unparsed and unexecuted.
@@ -234,54 +242,48 @@ public class DropCommand extends Command {
 			throw new IllegalArgumentException();
 		}
 		this.config = config;
-		setConfiguration();
+		setConfiguration(new Configuration(config));
 	}
 
-	private void setConfiguration() {
-
-		for (Enumeration<Object> e = config.keys(); e.hasMoreElements();) {
-			Object obj = e.nextElement();
-			if (obj.toString().equalsIgnoreCase(KEYWORD_DROPCOMMAND))
-				keywordDropCommand = config.getProperty(obj.toString());
-			else if (obj.toString()
-					.equalsIgnoreCase(KEYWORD_DROPCOMMAND_ABBREV))
-				keywordDropCommandAbbrev = config.getProperty(obj.toString());
-			else if (obj.toString().equalsIgnoreCase(KEYWORD_DROPCOMMAND_ALT))
-				keywordDropCommandAlt = config.getProperty(obj.toString());
-			else if (obj.toString().equalsIgnoreCase(MESSAGE_DROPCOMMAND_HELP))
-				msgDropCommandHelp = config.getProperty(obj.toString());
-			else if (obj.toString().equalsIgnoreCase(
-					MESSAGE_DROPCOMMAND_ITEMNAMENOTININVENTORY))
-				msgDropCommandItemNameNotInInventory = config.getProperty(obj
-						.toString());
-			else if (obj.toString().equalsIgnoreCase(
-					MESSAGE_DROPCOMMAND_ITEMNAMEREPEATEDININVENTORY))
-				msgDropCommandItemNameRepeatedInInventory = config
-						.getProperty(obj.toString());
-			else if (obj.toString().equalsIgnoreCase(
-					MESSAGE_DROPCOMMAND_ITEMNAMEALREADYINLOCATION))
-				msgDropCommandItemNameAlreadyInLocation = config
-						.getProperty(obj.toString());
-			else if (obj.toString().equalsIgnoreCase(
-					MESSAGE_DROPCOMMAND_SUCCESS))
-				msgDropCommandSuccess = config.getProperty(obj.toString());
-			else if (obj.toString().equalsIgnoreCase(
-					MESSAGE_DROPCOMMAND_FAILURE))
-				msgDropCommandFailure = config.getProperty(obj.toString());
-			else if (obj.toString().equalsIgnoreCase(
-					MESSAGE_DROPCOMMAND_UNDOSUCCESS))
-				msgDropCommandUndoSuccess = config.getProperty(obj.toString());
-			else if (obj.toString().equalsIgnoreCase(
-					MESSAGE_DROPCOMMAND_UNDOFAILURE))
-				msgDropCommandUndoFailure = config.getProperty(obj.toString());
-			else if (obj.toString().equalsIgnoreCase(FLAG_DROPCOMMAND_FIFO))
-				flagDropCommandFIFO = Boolean.parseBoolean(config
-						.getProperty(obj.toString()));
-			else if (obj.toString().equalsIgnoreCase(
-					FLAG_DROPCOMMAND_REPETITIONS))
-				flagDropCommandRepetitions = Boolean.parseBoolean(config
-						.getProperty(obj.toString()));
-		}
+	/**
+	 * Sets a new configuration for this Drop command. Properties that are
+	 * not overridden maintain their previous values.
+	 * 
+	 * @see Command#setConfiguration(Configuration)
+	 */
+	@Override
+	public void setConfiguration(Configuration config) {
+		super.setConfiguration(config);
+
+		keywordDropCommand = config.getString(KEYWORD_DROPCOMMAND,
+				keywordDropCommand);
+		keywordDropCommandAbbrev = config.getString(KEYWORD_DROPCOMMAND_ABBREV,
+				keywordDropCommandAbbrev);
+		keywordDropCommandAlt = config.getString(KEYWORD_DROPCOMMAND_ALT,
+				keywordDropCommandAlt);
+		msgDropCommandHelp = config.getString(MESSAGE_DROPCOMMAND_HELP,
+				msgDropCommandHelp);
+		msgDropCommandItemNameNotInInventory = config.getString(
+				MESSAGE_DROPCOMMAND_ITEMNAMENOTININVENTORY,
+				msgDropCommandItemNameNotInInventory);
+		msgDropCommandItemNameRepeatedInInventory = config.getString(
+				MESSAGE_DROPCOMMAND_ITEMNAMEREPEATEDININVENTORY,
+				msgDropCommandItemNameRepeatedInInventory);
+		msgDropCommandItemNameAlreadyInLocation = config.getString(
+				MESSAGE_DROPCOMMAND_ITEMNAMEALREADYINLOCATION,
+				msgDropCommandItemNameAlreadyInLocation);
+		msgDropCommandSuccess = config.getString(MESSAGE_DROPCOMMAND_SUCCESS,
+				msgDropCommandSuccess);
+		msgDropCommandFailure = config.getString(MESSAGE_DROPCOMMAND_FAILURE,
+				msgDropCommandFailure);
+		msgDropCommandUndoSuccess = config.getString(
+				MESSAGE_DROPCOMMAND_UNDOSUCCESS, msgDropCommandUndoSuccess);
+		msgDropCommandUndoFailure = config.getString(
+				MESSAGE_DROPCOMMAND_UNDOFAILURE, msgDropCommandUndoFailure);
+		flagDropCommandFIFO = config.getBoolean(FLAG_DROPCOMMAND_FIFO,
+				flagDropCommandFIFO);
+		flagDropCommandRepetitions = config.getBoolean(
+				FLAG_DROPCOMMAND_REPETITIONS, flagDropCommandRepetitions);
 	}
 
 	private void setDefaultConfiguration() {
@@ -319,8 +321,8 @@ public class DropCommand extends Command {
 					"Error: UnparsedCommandException");
 		}
 		executed = true;
-		Set<Item> itemsFoundedinInventory = new LinkedHashSet<Item>();
-		Set<Item> itemsFoundedinLocation = new LinkedHashSet<Item>();
+		Set<Item> itemsFoundedinInventory;
+		Set<Item> itemsFoundedinLocation;
 
 		// False = Si no hay ningn Item en el inventario
 		if (game.reportAllInventoryItems().isEmpty()) {
@@ -344,7 +346,7 @@ public class DropCommand extends Command {
 		}
 
 		// Como al menos tengo un elemento con ese nombre cojo el primero
-		firstItem = (Item) itemsFoundedinInventory.toArray()[0];
+		firstItem = itemsFoundedinInventory.iterator().next();
 
 		itemsFoundedinLocation = game.getItemsFromLocation(itemName);
 
@@ -361,6 +363,18 @@ public class DropCommand extends Command {
 		return true;
 	}
 
+	/**
+	 * Gets the keywords of this Drop command: its keyword, its abbreviation
+	 * and its alternative.
+	 * 
+	 * @see Command#getKeywords()
+	 */
+	@Override
+	public String[] getKeywords() {
+		return new String[] { keywordDropCommand, keywordDropCommandAbbrev,
+				keywordDropCommandAlt };
+	}
+
 	/**
 	 * Gets the help information about this Drop command: drop .
 	 * 
@@ -379,24 +393,40 @@ public class DropCommand extends Command {
 	 */
 	@Override
 	public boolean parse(String line) {
-		Scanner reader = new Scanner(line);
-		if (reader.hasNext()) {
-			String firstCommand = reader.next();
-			if ((firstCommand.equalsIgnoreCase(keywordDropCommand)
-					|| firstCommand.equalsIgnoreCase(keywordDropCommandAbbrev) || firstCommand
-					.equalsIgnoreCase(keywordDropCommandAlt))
-					&& reader.hasNext()) {
-				itemName = reader.next();
-				parsed = true;
-				return true;
-			}
+		return parse(new CommandLine(line));
+	}
+
+	/**
+	 * Reads a command line trying to identify a player invocation to this
+	 * Drop command (e.g. "drop sword").
+	 * 
+	 * @see Command#read(CommandLine)
+	 */
+	@Override
+	public ParsedCommand read(CommandLine line) {
+		if ((line.getTokenCount() > 1)
+				&& (line.tokenEquals(0, keywordDropCommand)
+						|| line.tokenEquals(0, keywordDropCommandAbbrev)
+						|| line.tokenEquals(0, keywordDropCommandAlt))) {
+			return new ParsedCommand(this, line.getToken(1));
 		}
-		return false;
+		return null;
+	}
+
+	/**
+	 * Sets the arguments of this Drop command: its item name.
+	 * 
+	 * @see Command#setArguments(ParsedCommand)
+	 */
+	@Override
+	protected void setArguments(ParsedCommand parsedCommand) {
+		itemName = parsedCommand.getItemName();
 	}
 
 	/**
-	 * Undoes the Drop command execution, moving the item back from the player
-	 * location to the player inventory, if it is possible.
+	 * Undoes the Drop command execution, moving the item back from the
+	 * location where it was dropped to the player inventory (undoing the turn
+	 * of the game).
 	 * 
 	 * @see Command#undo()
 	 */
@@ -408,7 +438,7 @@ public class DropCommand extends Command {
 			throw new UnexecutedCommandException(
 					"Error: UnexecutedCommandException");
 
-		if (game.moveItemFromLocationToInventory(firstItem)) {
+		if (game.undoTurn()) {
 			result = msgDropCommandUndoSuccess + LINE_SEPARATOR;
 			return true;
 		} else {
@@ -1,11 +1,10 @@
 package es.ucm.fdi.lps.p3.command;
 
-import java.util.Enumeration;
 import java.util.LinkedHashSet;
 import java.util.Properties;
-import java.util.Scanner;
 import java.util.Set;
 
+import es.ucm.fdi.lps.p3.Configuration;
 import es.ucm.fdi.lps.p3.Game;
 import es.ucm.fdi.lps.p3.Item;
 import es.ucm.fdi.lps.p3.exception.UnparsedCommandException;
@@ -174,6 +173,16 @@ public class ExamineCommand extends Command {
 		setDefaultConfiguration();
 	}
 
+	/**
+	 * Constructs a prototype of the Examine command, not bound to any game: it
+	 * only parses the player invocations, and the commands of a game are
+	 * created from it (see newCommand(ParsedCommand, Game)). Default
+	 * configuration is assumed at this moment.
+	 */
+	public ExamineCommand() {
+		setDefaultConfiguration();
+	}
+
 	/**
 	 * Constructs an Examine command (as an specific type of Command) that has
 	 * access to a given game. Initially the command is unparsed and unexecuted.
@@ -193,7 +202,7 @@ public class ExamineCommand extends Command {
 			throw new IllegalArgumentException();
 		}
 		this.config = config;
-		setConfiguration();
+		setConfiguration(new Configuration(config));
 	}
 
 	private void setDefaultConfiguration() {
@@ -210,41 +219,37 @@ public class ExamineCommand extends Command {
 		flagShowItemValues = true;
 	}
 
-	private void setConfiguration() {
-		for (Enumeration<Object> e = config.keys(); e.hasMoreElements();) {
-			Object obj = e.nextElement();
-			if (obj.toString().equalsIgnoreCase(KEYWORD_EXAMINECOMMAND))
-				keywordExamineCommand = config.getProperty(obj.toString());
-			else if (obj.toString().equalsIgnoreCase(
-					KEYWORD_EXAMINECOMMAND_ABBREV))
-				keywordExamineCommandAbbrev = config
-						.getProperty(obj.toString());
-			else if (obj.toString()
-					.equalsIgnoreCase(KEYWORD_EXAMINECOMMAND_ALT))
-				keywordExamineCommandAlt = config.getProperty(obj.toString());
-			else if (obj.toString().equalsIgnoreCase(
-					MESSAGE_EXAMINECOMMAND_HELP))
-				msgExamineCommandHelp = config.getProperty(obj.toString());
-			else if (obj.toString().equalsIgnoreCase(
-					MESSAGE_EXAMINECOMMAND_ITEMNAMENOTININVENTORY))
-				msgExamineCommandItemNameNotInInventory = config
-						.getProperty(obj.toString());
-			else if (obj.toString().equalsIgnoreCase(
-					MESSAGE_EXAMINECOMMAND_ITEMNAMEREPEATEDININVENTORY))
-				msgExamineCommandItemNameRepeatedInInventory = config
-						.getProperty(obj.toString());
-			else if (obj.toString().equalsIgnoreCase(
-					MESSAGE_EXAMINECOMMAND_INVENTORYWITHITEMS))
-				msgExamineCommandInventoryWithItems = config.getProperty(obj
-						.toString());
-			else if (obj.toString().equalsIgnoreCase(
-					MESSAGE_EXAMINECOMMAND_INVENTORYWITHOUTITEMS))
-				msgExamineCommandInventoryWithoutItems = config.getProperty(obj
-						.toString());
-			else if (obj.toString().equalsIgnoreCase(FLAG_SHOWITEMVALUES))
-				flagShowItemValues = Boolean.parseBoolean(config
-						.getProperty(obj.toString()));
-		}
+	/**
+	 * Sets a new configuration for this Examine command. Properties that are
+	 * not overridden maintain their previous values.
+	 * 
+	 * @see Command#setConfiguration(Configuration)
+	 */
+	@Override
+	public void setConfiguration(Configuration config) {
+		super.setConfiguration(config);
+		keywordExamineCommand = config.getString(KEYWORD_EXAMINECOMMAND,
+				keywordExamineCommand);
+		keywordExamineCommandAbbrev = config.getString(
+				KEYWORD_EXAMINECOMMAND_ABBREV, keywordExamineCommandAbbrev);
+		keywordExamineCommandAlt = config.getString(KEYWORD_EXAMINECOMMAND_ALT,
+				keywordExamineCommandAlt);
+		msgExamineCommandHelp = config.getString(MESSAGE_EXAMINECOMMAND_HELP,
+				msgExamineCommandHelp);
+		msgExamineCommandItemNameNotInInventory = config.getString(
+				MESSAGE_EXAMINECOMMAND_ITEMNAMENOTININVENTORY,
+				msgExamineCommandItemNameNotInInventory);
+		msgExamineCommandItemNameRepeatedInInventory = config.getString(
+				MESSAGE_EXAMINECOMMAND_ITEMNAMEREPEATEDININVENTORY,
+				msgExamineCommandItemNameRepeatedInInventory);
+		msgExamineCommandInventoryWithItems = config.getString(
+				MESSAGE_EXAMINECOMMAND_INVENTORYWITHITEMS,
+				msgExamineCommandInventoryWithItems);
+		msgExamineCommandInventoryWithoutItems = config.getString(
+				MESSAGE_EXAMINECOMMAND_INVENTORYWITHOUTITEMS,
+				msgExamineCommandInventoryWithoutItems);
+		flagShowItemValues = config.getBoolean(FLAG_SHOWITEMVALUES,
+				flagShowItemValues);
 	}
 
 	/**
@@ -284,7 +289,7 @@ public class ExamineCommand extends Command {
 			}
 
 			if (itemList.size() == 1) {
-				it = (Item) itemList.toArray()[0];
+				it = itemList.iterator().next();
 				if (game.isItemInInventory(it)) {
 					itemList = game.getItemsFromInventory(itemName);
 					result = it.getDescription() + LINE_SEPARATOR;
@@ -299,6 +304,18 @@ public class ExamineCommand extends Command {
 		return false;
 	}
 
+	/**
+	 * Gets the keywords of this Examine command: its keyword, its abbreviation
+	 * and its alternative.
+	 * 
+	 * @see Command#getKeywords()
+	 */
+	@Override
+	public String[] getKeywords() {
+		return new String[] { keywordExamineCommand, keywordExamineCommandAbbrev,
+				keywordExamineCommandAlt };
+	}
+
 	/**
 	 * Gets the help information about this Examine command.
 	 * 
@@ -317,24 +334,37 @@ public class ExamineCommand extends Command {
 	 */
 	@Override
 	public boolean parse(String line) {
-		Scanner reader = new Scanner(line);
-		if (reader.hasNext()) {
-			String firstCommand = reader.next();
-			if (firstCommand.equalsIgnoreCase(keywordExamineCommand)
-					|| firstCommand
-							.equalsIgnoreCase(keywordExamineCommandAbbrev)
-					|| firstCommand.equalsIgnoreCase(keywordExamineCommandAlt)) {
-				parsed = true;
-				examineAllInventory = true;
-				if (reader.hasNext()) {
-					examineAllInventory = false;
-					itemName = reader.next();
-				}
-			} else
-				return false;
-		} else
-			return false;
-		return true;
+		return parse(new CommandLine(line));
+	}
+
+	/**
+	 * Reads a command line trying to identify a player invocation to this
+	 * Examine command (e.g. "examine").
+	 * 
+	 * @see Command#read(CommandLine)
+	 */
+	@Override
+	public ParsedCommand read(CommandLine line) {
+		if ((line.getTokenCount() > 0)
+				&& (line.tokenEquals(0, keywordExamineCommand)
+						|| line.tokenEquals(0, keywordExamineCommandAbbrev)
+						|| line.tokenEquals(0, keywordExamineCommandAlt))) {
+			if (line.getTokenCount() > 1)
+				return new ParsedCommand(this, line.getToken(1));
+			return new ParsedCommand(this);
+		}
+		return null;
+	}
+
+	/**
+	 * Sets the arguments of this Examine command: its item name (if there is none, the whole inventory is examined).
+	 * 
+	 * @see Command#setArguments(ParsedCommand)
+	 */
+	@Override
+	protected void setArguments(ParsedCommand parsedCommand) {
+		itemName = parsedCommand.getItemName();
+		examineAllInventory = (itemName == null);
 	}
 
 	/**
@@ -1,9 +1,8 @@
 package es.ucm.fdi.lps.p3.command;
 
-import java.util.Enumeration;
 import java.util.Properties;
-import java.util.Scanner;
 
+import es.ucm.fdi.lps.p3.Configuration;
 import es.ucm.fdi.lps.p3.Game;
 import es.ucm.fdi.lps.p3.Game.Direction;
 import es.ucm.fdi.lps.p3.exception.UnexecutedCommandException;
@@ -432,6 +431,16 @@ public class GoCommand extends Command {
 		setDefaultConfiguration();
 	}
 
+	/**
+	 * Constructs a prototype of the Go command, not bound to any game: it
+	 * only parses the player invocations, and the commands of a game are
+	 * created from it (see newCommand(ParsedCommand, Game)). Default
+	 * configuration is assumed at this moment.
+	 */
+	public GoCommand() {
+		setDefaultConfiguration();
+	}
+
 	/**
 	 * Constructs a Go command (as an specific type of Command) that has access
 	 * to a given game. Initially the command is unparsed and unexecuted. The
@@ -451,7 +460,7 @@ public class GoCommand extends Command {
 			throw new IllegalArgumentException();
 		}
 		this.config = config;
-		setConfiguration();
+		setConfiguration(new Configuration(config));
 
 	}
 
@@ -496,110 +505,90 @@ public class GoCommand extends Command {
 
 	}
 
-	private void setConfiguration() {
-		for (Enumeration<Object> e = config.keys(); e.hasMoreElements();) {
-			Object obj = e.nextElement();
-			if (obj.toString().equalsIgnoreCase(KEYWORD_GOCOMMAND))
-				keywordGoCommand = config.getProperty(obj.toString());
-			else if (obj.toString().equalsIgnoreCase(KEYWORD_GOCOMMAND_ABBREV))
-				keywordGoCommandAbbrev = config.getProperty(obj.toString());
-			else if (obj.toString().equalsIgnoreCase(KEYWORD_GOCOMMAND_ALT))
-				keywordGoCommandAlt = config.getProperty(obj.toString());
-			else if (obj.toString().equalsIgnoreCase(KEYWORD_GOCOMMAND_NORTH))
-				keywordGoCommandNorth = config.getProperty(obj.toString());
-			else if (obj.toString().equalsIgnoreCase(
-					KEYWORD_GOCOMMAND_NORTH_ABBREV))
-				keywordGoCommandNorthAbbrev = config
-						.getProperty(obj.toString());
-			else if (obj.toString().equalsIgnoreCase(
-					KEYWORD_GOCOMMAND_NORTHEAST))
-				keywordGoCommandNorthEast = config.getProperty(obj.toString());
-			else if (obj.toString().equalsIgnoreCase(
-					KEYWORD_GOCOMMAND_NORTHEAST_ABBREV))
-				keywordGoCommandNorthEastAbbrev = config.getProperty(obj
-						.toString());
-			else if (obj.toString().equalsIgnoreCase(KEYWORD_GOCOMMAND_EAST))
-				keywordGoCommandEast = config.getProperty(obj.toString());
-			else if (obj.toString().equalsIgnoreCase(
-					KEYWORD_GOCOMMAND_EAST_ABBREV))
-				keywordGoCommandNorthEastAbbrev = config.getProperty(obj
-						.toString());
-			else if (obj.toString().equalsIgnoreCase(
-					KEYWORD_GOCOMMAND_SOUTHEAST))
-				keywordGoCommandSouthEast = config.getProperty(obj.toString());
-			else if (obj.toString().equalsIgnoreCase(
-					KEYWORD_GOCOMMAND_SOUTHEAST_ABBREV))
-				keywordGoCommandSouthEastAbbrev = config.getProperty(obj
-						.toString());
-			else if (obj.toString().equalsIgnoreCase(KEYWORD_GOCOMMAND_SOUTH))
-				keywordGoCommandSouth = config.getProperty(obj.toString());
-			else if (obj.toString().equalsIgnoreCase(
-					KEYWORD_GOCOMMAND_SOUTH_ABBREV))
-				keywordGoCommandSouthAbbrev = config
-						.getProperty(obj.toString());
-			else if (obj.toString().equalsIgnoreCase(
-					KEYWORD_GOCOMMAND_SOUTHWEST))
-				keywordGoCommandSouthWest = config.getProperty(obj.toString());
-			else if (obj.toString().equalsIgnoreCase(
-					KEYWORD_GOCOMMAND_SOUTHWEST_ABBREV))
-				keywordGoCommandSouthWestAbbrev = config.getProperty(obj
-						.toString());
-			else if (obj.toString().equalsIgnoreCase(KEYWORD_GOCOMMAND_WEST))
-				keywordGoCommandWest = config.getProperty(obj.toString());
-			else if (obj.toString().equalsIgnoreCase(
-					KEYWORD_GOCOMMAND_WEST_ABBREV))
-				keywordGoCommandWestAbbrev = config.getProperty(obj.toString());
-			else if (obj.toString().equalsIgnoreCase(
-					KEYWORD_GOCOMMAND_NORTHWEST))
-				keywordGoCommandNorthWest = config.getProperty(obj.toString());
-			else if (obj.toString().equalsIgnoreCase(
-					KEYWORD_GOCOMMAND_NORTHWEST_ABBREV))
-				keywordGoCommandNorthWestAbbrev = config.getProperty(obj
-						.toString());
-			else if (obj.toString().equalsIgnoreCase(KEYWORD_GOCOMMAND_UP))
-				keywordGoCommandUp = config.getProperty(obj.toString());
-			else if (obj.toString().equalsIgnoreCase(
-					KEYWORD_GOCOMMAND_UP_ABBREV))
-				keywordGoCommandUpAbbrev = config.getProperty(obj.toString());
-			else if (obj.toString().equalsIgnoreCase(KEYWORD_GOCOMMAND_DOWN))
-				keywordGoCommandDown = config.getProperty(obj.toString());
-			else if (obj.toString().equalsIgnoreCase(
-					KEYWORD_GOCOMMAND_DOWN_ABBREV))
-				keywordGoCommandDownAbbrev = config.getProperty(obj.toString());
-			else if (obj.toString().equalsIgnoreCase(KEYWORD_GOCOMMAND_IN))
-				keywordGoCommandIn = config.getProperty(obj.toString());
-			else if (obj.toString().equalsIgnoreCase(
-					KEYWORD_GOCOMMAND_IN_ABBREV))
-				keywordGoCommandInAbbrev = config.getProperty(obj.toString());
-			else if (obj.toString().equalsIgnoreCase(KEYWORD_GOCOMMAND_OUT))
-				keywordGoCommandOut = config.getProperty(obj.toString());
-			else if (obj.toString().equalsIgnoreCase(
-					KEYWORD_GOCOMMAND_OUT_ABBREV))
-				keywordGoCommandOutAbbrev = config.getProperty(obj.toString());
-			else if (obj.toString().equalsIgnoreCase(MESSAGE_GOCOMMAND_HELP))
-				msgGoCommandHelp = config.getProperty(obj.toString());
-			else if (obj.toString().equalsIgnoreCase(MESSAGE_GOCOMMAND_FAILURE))
-				msgGoCommandFailure = config.getProperty(obj.toString());
-			else if (obj.toString().equalsIgnoreCase(
-					MESSAGE_GOCOMMAND_UNDOFAILURE))
-				msgGoCommandUndoFailure = config.getProperty(obj.toString());
-
-			else if (obj.toString().equalsIgnoreCase(
-					MESSAGE_GOCOMMAND_LOCATIONWITHITEMS))
-				msgGoCommandLocationWithItems = config.getProperty(obj
-						.toString());
-			else if (obj.toString().equalsIgnoreCase(
-					MESSAGE_GOCOMMAND_LOCATIONWITHOUTITEMS))
-				msgGoCommandLocationWithoutItems = config.getProperty(obj
-						.toString());
-			else if (obj.toString().equalsIgnoreCase(
-					FLAG_GOCOMMAND_SHOWLOCATIONITEMS))
-				flagGoCommandShowLocationItems = Boolean.parseBoolean(config
-						.getProperty(obj.toString()));
-			else if (obj.toString().equalsIgnoreCase(FLAG_SHOWITEMVALUES))
-				flagShowItemValues = Boolean.parseBoolean(config
-						.getProperty(obj.toString()));
-		}
+	/**
+	 * Sets a new configuration for this Go command. Properties that are
+	 * not overridden maintain their previous values.
+	 * 
+	 * @see Command#setConfiguration(Configuration)
+	 */
+	@Override
+	public void setConfiguration(Configuration config) {
+		super.setConfiguration(config);
+		keywordGoCommand = config.getString(KEYWORD_GOCOMMAND,
+				keywordGoCommand);
+		keywordGoCommandAbbrev = config.getString(KEYWORD_GOCOMMAND_ABBREV,
+				keywordGoCommandAbbrev);
+		keywordGoCommandAlt = config.getString(KEYWORD_GOCOMMAND_ALT,
+				keywordGoCommandAlt);
+		keywordGoCommandNorth = config.getString(KEYWORD_GOCOMMAND_NORTH,
+				keywordGoCommandNorth);
+		keywordGoCommandNorthAbbrev = config.getString(
+				KEYWORD_GOCOMMAND_NORTH_ABBREV, keywordGoCommandNorthAbbrev);
+		keywordGoCommandNorthEast = config.getString(
+				KEYWORD_GOCOMMAND_NORTHEAST, keywordGoCommandNorthEast);
+		keywordGoCommandNorthEastAbbrev = config.getString(
+				KEYWORD_GOCOMMAND_NORTHEAST_ABBREV,
+				keywordGoCommandNorthEastAbbrev);
+		keywordGoCommandEast = config.getString(KEYWORD_GOCOMMAND_EAST,
+				keywordGoCommandEast);
+		keywordGoCommandNorthEastAbbrev = config.getString(
+				KEYWORD_GOCOMMAND_EAST_ABBREV, keywordGoCommandNorthEastAbbrev);
+		keywordGoCommandSouthEast = config.getString(
+				KEYWORD_GOCOMMAND_SOUTHEAST, keywordGoCommandSouthEast);
+		keywordGoCommandSouthEastAbbrev = config.getString(
+				KEYWORD_GOCOMMAND_SOUTHEAST_ABBREV,
+				keywordGoCommandSouthEastAbbrev);
+		keywordGoCommandSouth = config.getString(KEYWORD_GOCOMMAND_SOUTH,
+				keywordGoCommandSouth);
+		keywordGoCommandSouthAbbrev = config.getString(
+				KEYWORD_GOCOMMAND_SOUTH_ABBREV, keywordGoCommandSouthAbbrev);
+		keywordGoCommandSouthWest = config.getString(
+				KEYWORD_GOCOMMAND_SOUTHWEST, keywordGoCommandSouthWest);
+		keywordGoCommandSouthWestAbbrev = config.getString(
+				KEYWORD_GOCOMMAND_SOUTHWEST_ABBREV,
+				keywordGoCommandSouthWestAbbrev);
+		keywordGoCommandWest = config.getString(KEYWORD_GOCOMMAND_WEST,
+				keywordGoCommandWest);
+		keywordGoCommandWestAbbrev = config.getString(
+				KEYWORD_GOCOMMAND_WEST_ABBREV, keywordGoCommandWestAbbrev);
+		keywordGoCommandNorthWest = config.getString(
+				KEYWORD_GOCOMMAND_NORTHWEST, keywordGoCommandNorthWest);
+		keywordGoCommandNorthWestAbbrev = config.getString(
+				KEYWORD_GOCOMMAND_NORTHWEST_ABBREV,
+				keywordGoCommandNorthWestAbbrev);
+		keywordGoCommandUp = config.getString(KEYWORD_GOCOMMAND_UP,
+				keywordGoCommandUp);
+		keywordGoCommandUpAbbrev = config.getString(KEYWORD_GOCOMMAND_UP_ABBREV,
+				keywordGoCommandUpAbbrev);
+		keywordGoCommandDown = config.getString(KEYWORD_GOCOMMAND_DOWN,
+				keywordGoCommandDown);
+		keywordGoCommandDownAbbrev = config.getString(
+				KEYWORD_GOCOMMAND_DOWN_ABBREV, keywordGoCommandDownAbbrev);
+		keywordGoCommandIn = config.getString(KEYWORD_GOCOMMAND_IN,
+				keywordGoCommandIn);
+		keywordGoCommandInAbbrev = config.getString(KEYWORD_GOCOMMAND_IN_ABBREV,
+				keywordGoCommandInAbbrev);
+		keywordGoCommandOut = config.getString(KEYWORD_GOCOMMAND_OUT,
+				keywordGoCommandOut);
+		keywordGoCommandOutAbbrev = config.getString(
+				KEYWORD_GOCOMMAND_OUT_ABBREV, keywordGoCommandOutAbbrev);
+		msgGoCommandHelp = config.getString(MESSAGE_GOCOMMAND_HELP,
+				msgGoCommandHelp);
+		msgGoCommandFailure = config.getString(MESSAGE_GOCOMMAND_FAILURE,
+				msgGoCommandFailure);
+		msgGoCommandUndoFailure = config.getString(
+				MESSAGE_GOCOMMAND_UNDOFAILURE, msgGoCommandUndoFailure);
+		msgGoCommandLocationWithItems = config.getString(
+				MESSAGE_GOCOMMAND_LOCATIONWITHITEMS,
+				msgGoCommandLocationWithItems);
+		msgGoCommandLocationWithoutItems = config.getString(
+				MESSAGE_GOCOMMAND_LOCATIONWITHOUTITEMS,
+				msgGoCommandLocationWithoutItems);
+		flagGoCommandShowLocationItems = config.getBoolean(
+				FLAG_GOCOMMAND_SHOWLOCATIONITEMS,
+				flagGoCommandShowLocationItems);
+		flagShowItemValues = config.getBoolean(FLAG_SHOWITEMVALUES,
+				flagShowItemValues);
 	}
 
 	/**
@@ -627,6 +616,18 @@ public class GoCommand extends Command {
 		}
 	}
 
+	/**
+	 * Gets the keywords of this Go command: its keyword, its abbreviation
+	 * and its alternative.
+	 * 
+	 * @see Command#getKeywords()
+	 */
+	@Override
+	public String[] getKeywords() {
+		return new String[] { keywordGoCommand, keywordGoCommandAbbrev,
+				keywordGoCommandAlt };
+	}
+
 	/**
 	 * Gets the help information about this Go command.
 	 * 
@@ -645,107 +646,87 @@ public class GoCommand extends Command {
 	 */
 	@Override
 	public boolean parse(String line) {
-		Scanner reader = new Scanner(line);
-		if (reader.hasNext()) {
-			String firstCommand = reader.next();
-			if ((firstCommand.equalsIgnoreCase(keywordGoCommand)
-					|| firstCommand.equalsIgnoreCase(keywordGoCommandAbbrev) || firstCommand
-					.equalsIgnoreCase(keywordGoCommandAlt))
-					&& (reader.hasNext())) {
-				String secondCommand = reader.next();
-				if (secondCommand.equalsIgnoreCase(keywordGoCommandNorth)
-						|| secondCommand
-								.equalsIgnoreCase(keywordGoCommandNorthAbbrev)) {
-					dir = Direction.NORTH;
-					parsed = true;
-					return true;
-				}
-				if (secondCommand.equalsIgnoreCase(keywordGoCommandNorthEast)
-						|| secondCommand
-								.equalsIgnoreCase(keywordGoCommandNorthEastAbbrev)) {
-					dir = Direction.NORTHEAST;
-					parsed = true;
-					return true;
-				}
-				if (secondCommand.equalsIgnoreCase(keywordGoCommandEast)
-						|| secondCommand
-								.equalsIgnoreCase(keywordGoCommandEastAbbrev)) {
-					dir = Direction.EAST;
-					parsed = true;
-					return true;
-				}
-				if (secondCommand.equalsIgnoreCase(keywordGoCommandSouthEast)
-						|| secondCommand
-								.equalsIgnoreCase(keywordGoCommandSouthEastAbbrev)) {
-					dir = Direction.SOUTHEAST;
-					parsed = true;
-					return true;
-				}
-				if (secondCommand.equalsIgnoreCase(keywordGoCommandSouth)
-						|| secondCommand
-								.equalsIgnoreCase(keywordGoCommandSouthAbbrev)) {
-					dir = Direction.SOUTH;
-					parsed = true;
-					return true;
-				}
-				if (secondCommand.equalsIgnoreCase(keywordGoCommandSouthWest)
-						|| secondCommand
-								.equalsIgnoreCase(keywordGoCommandSouthWestAbbrev)) {
-					dir = Direction.SOUTHWEST;
-					parsed = true;
-					return true;
-				}
-				if (secondCommand.equalsIgnoreCase(keywordGoCommandWest)
-						|| secondCommand
-								.equalsIgnoreCase(keywordGoCommandWestAbbrev)) {
-					dir = Direction.WEST;
-					parsed = true;
-					return true;
-				}
-				if (secondCommand.equalsIgnoreCase(keywordGoCommandNorthWest)
-						|| secondCommand
-								.equalsIgnoreCase(keywordGoCommandNorthWestAbbrev)) {
-					dir = Direction.NORTHWEST;
-					parsed = true;
-					return true;
-				}
-				if (secondCommand.equalsIgnoreCase(keywordGoCommandUp)
-						|| secondCommand
-								.equalsIgnoreCase(keywordGoCommandUpAbbrev)) {
-					dir = Direction.UP;
-					parsed = true;
-					return true;
-				}
-				if (secondCommand.equalsIgnoreCase(keywordGoCommandDown)
-						|| secondCommand
-								.equalsIgnoreCase(keywordGoCommandDownAbbrev)) {
-					dir = Direction.DOWN;
-					parsed = true;
-					return true;
-				}
-				if (secondCommand.equalsIgnoreCase(keywordGoCommandIn)
-						|| secondCommand
-								.equalsIgnoreCase(keywordGoCommandInAbbrev)) {
-					dir = Direction.IN;
-					parsed = true;
-					return true;
-				}
-				if (secondCommand.equalsIgnoreCase(keywordGoCommandOut)
-						|| secondCommand
-								.equalsIgnoreCase(keywordGoCommandOutAbbrev)) {
-					dir = Direction.OUT;
-					parsed = true;
-					return true;
-				}
+		return parse(new CommandLine(line));
+	}
+
+	/**
+	 * Reads a command line trying to identify a player invocation to this
+	 * Go command (e.g. "go north").
+	 * 
+	 * @see Command#read(CommandLine)
+	 */
+	@Override
+	public ParsedCommand read(CommandLine line) {
+		if ((line.getTokenCount() > 1)
+				&& (line.tokenEquals(0, keywordGoCommand)
+						|| line.tokenEquals(0, keywordGoCommandAbbrev)
+						|| line.tokenEquals(0, keywordGoCommandAlt))) {
+			if (line.tokenEquals(1, keywordGoCommandNorth)
+					|| line.tokenEquals(1, keywordGoCommandNorthAbbrev)) {
+				return new ParsedCommand(this, Direction.NORTH);
+			}
+			if (line.tokenEquals(1, keywordGoCommandNorthEast)
+					|| line.tokenEquals(1, keywordGoCommandNorthEastAbbrev)) {
+				return new ParsedCommand(this, Direction.NORTHEAST);
+			}
+			if (line.tokenEquals(1, keywordGoCommandEast)
+					|| line.tokenEquals(1, keywordGoCommandEastAbbrev)) {
+				return new ParsedCommand(this, Direction.EAST);
+			}
+			if (line.tokenEquals(1, keywordGoCommandSouthEast)
+					|| line.tokenEquals(1, keywordGoCommandSouthEastAbbrev)) {
+				return new ParsedCommand(this, Direction.SOUTHEAST);
+			}
+			if (line.tokenEquals(1, keywordGoCommandSouth)
+					|| line.tokenEquals(1, keywordGoCommandSouthAbbrev)) {
+				return new ParsedCommand(this, Direction.SOUTH);
+			}
+			if (line.tokenEquals(1, keywordGoCommandSouthWest)
+					|| line.tokenEquals(1, keywordGoCommandSouthWestAbbrev)) {
+				return new ParsedCommand(this, Direction.SOUTHWEST);
+			}
+			if (line.tokenEquals(1, keywordGoCommandWest)
+					|| line.tokenEquals(1, keywordGoCommandWestAbbrev)) {
+				return new ParsedCommand(this, Direction.WEST);
+			}
+			if (line.tokenEquals(1, keywordGoCommandNorthWest)
+					|| line.tokenEquals(1, keywordGoCommandNorthWestAbbrev)) {
+				return new ParsedCommand(this, Direction.NORTHWEST);
+			}
+			if (line.tokenEquals(1, keywordGoCommandUp)
+					|| line.tokenEquals(1, keywordGoCommandUpAbbrev)) {
+				return new ParsedCommand(this, Direction.UP);
+			}
+			if (line.tokenEquals(1, keywordGoCommandDown)
+					|| line.tokenEquals(1, keywordGoCommandDownAbbrev)) {
+				return new ParsedCommand(this, Direction.DOWN);
+			}
+			if (line.tokenEquals(1, keywordGoCommandIn)
+					|| line.tokenEquals(1, keywordGoCommandInAbbrev)) {
+				return new ParsedCommand(this, Direction.IN);
+			}
+			if (line.tokenEquals(1, keywordGoCommandOut)
+					|| line.tokenEquals(1, keywordGoCommandOutAbbrev)) {
+				return new ParsedCommand(this, Direction.OUT);
 			}
 		}
-		return false;
+		return null;
+	}
+
+	/**
+	 * Sets the arguments of this Go command: its direction.
+	 * 
+	 * @see Command#setArguments(ParsedCommand)
+	 */
+	@Override
+	protected void setArguments(ParsedCommand parsedCommand) {
+		dir = parsedCommand.getDirection();
 	}
 
 	/**
 	 * Undoes the Go command execution, moving the player back to the previous
-	 * location. This command supposes that two locations are connected
-	 * symmetrically.
+	 * location (undoing the turn of the game, so the locations do not need to
+	 * be connected symmetrically).
 	 * 
 	 * @see Command#undo()
 	 */
@@ -757,14 +738,9 @@ public class GoCommand extends Command {
 			throw new UnexecutedCommandException(
 					"Error: UnexecutedCommandException");
 
-		if (game.hasConnectedLocation(dir.getOppositeDirection())) {
-			if (game.movePlayer(dir.getOppositeDirection())) {
-				result = movementOk();
-				return true;
-			} else {
-				result = msgGoCommandUndoFailure + LINE_SEPARATOR;
-				return false;
-			}
+		if (game.undoTurn()) {
+			result = movementOk();
+			return true;
 		} else {
 			result = msgGoCommandUndoFailure + LINE_SEPARATOR;
 			return false;
@@ -1,9 +1,8 @@
 package es.ucm.fdi.lps.p3.command;
 
-import java.util.Enumeration;
 import java.util.Properties;
-import java.util.Scanner;
 
+import es.ucm.fdi.lps.p3.Configuration;
 import es.ucm.fdi.lps.p3.Game;
 import es.ucm.fdi.lps.p3.Parser;
 import es.ucm.fdi.lps.p3.exception.UnparsedCommandException;
@@ -104,6 +103,26 @@ public class HelpCommand extends Command {
 		setDefaultConfiguration();
 	}
 
+	/**
+	 * Constructs a prototype of the Help command, not bound to any game, with
+	 * access to the parser that owns it: it only parses the player
+	 * invocations, and the commands of a game are created from it (see
+	 * newCommand(ParsedCommand, Game)). Default configuration is assumed at
+	 * this moment.
+	 * 
+	 * @param parser
+	 *            The parser.
+	 * @throws IllegalArgumentException
+	 *             The argument 'parser' cannot be null.
+	 */
+	public HelpCommand(Parser parser) {
+		if (parser == null) {
+			throw new IllegalArgumentException();
+		}
+		this.parser = parser;
+		setDefaultConfiguration();
+	}
+
 	/**
 	 * Constructs a Help command (as an specific type of Command) that has
 	 * access to a given game. Being a meta-command, it requires access to the
@@ -127,7 +146,7 @@ public class HelpCommand extends Command {
 			throw new IllegalArgumentException();
 		}
 		this.config = config;
-		setConfiguration();
+		setConfiguration(new Configuration(config));
 	}
 
 	private void setDefaultConfiguration() {
@@ -139,21 +158,24 @@ public class HelpCommand extends Command {
 		msgEngineHelp = "These are the available player commands:";
 	}
 
-	private void setConfiguration() {
-		for (Enumeration<Object> e = config.keys(); e.hasMoreElements();) {
-			Object obj = e.nextElement();
-			if (obj.toString().equalsIgnoreCase(KEYWORD_HELPCOMMAND))
-				keywordHelpCommand = config.getProperty(obj.toString());
-			else if (obj.toString()
-					.equalsIgnoreCase(KEYWORD_HELPCOMMAND_ABBREV))
-				keywordHelpCommandAbbrev = config.getProperty(obj.toString());
-			else if (obj.toString().equalsIgnoreCase(KEYWORD_HELPCOMMAND_ALT))
-				keywordHelpCommandAlt = config.getProperty(obj.toString());
-			else if (obj.toString().equalsIgnoreCase(MESSAGE_HELPCOMMAND_HELP))
-				msgHelpCommandHelp = config.getProperty(obj.toString());
-			else if (obj.toString().equalsIgnoreCase(MESSAGE_ENGINE_HELP))
-				msgEngineHelp = config.getProperty(obj.toString());
-		}
+	/**
+	 * Sets a new configuration for this Help command. Properties that are
+	 * not overridden maintain their previous values.
+	 * 
+	 * @see Command#setConfiguration(Configuration)
+	 */
+	@Override
+	public void setConfiguration(Configuration config) {
+		super.setConfiguration(config);
+		keywordHelpCommand = config.getString(KEYWORD_HELPCOMMAND,
+				keywordHelpCommand);
+		keywordHelpCommandAbbrev = config.getString(KEYWORD_HELPCOMMAND_ABBREV,
+				keywordHelpCommandAbbrev);
+		keywordHelpCommandAlt = config.getString(KEYWORD_HELPCOMMAND_ALT,
+				keywordHelpCommandAlt);
+		msgHelpCommandHelp = config.getString(MESSAGE_HELPCOMMAND_HELP,
+				msgHelpCommandHelp);
+		msgEngineHelp = config.getString(MESSAGE_ENGINE_HELP, msgEngineHelp);
 	}
 
 	/**
@@ -175,6 +197,18 @@ public class HelpCommand extends Command {
 		}
 	}
 
+	/**
+	 * Gets the keywords of this Help command: its keyword, its abbreviation
+	 * and its alternative.
+	 * 
+	 * @see Command#getKeywords()
+	 */
+	@Override
+	public String[] getKeywords() {
+		return new String[] { keywordHelpCommand, keywordHelpCommandAbbrev,
+				keywordHelpCommandAlt };
+	}
+
 	/**
 	 * Gets the help information about this Help command.
 	 * 
@@ -193,17 +227,24 @@ public class HelpCommand extends Command {
 	 */
 	@Override
 	public boolean parse(String line) {
-		Scanner reader = new Scanner(line);
-		if (reader.hasNext()) {
-			String firstCommand = reader.next();
-			if (firstCommand.equalsIgnoreCase(keywordHelpCommand)
-					|| firstCommand.equalsIgnoreCase(keywordHelpCommandAbbrev)
-					|| firstCommand.equalsIgnoreCase(keywordHelpCommandAlt)) {
-				parsed = true;
-				return true;
-			}
+		return parse(new CommandLine(line));
+	}
+
+	/**
+	 * Reads a command line trying to identify a player invocation to this
+	 * Help command (e.g. "help").
+	 * 
+	 * @see Command#read(CommandLine)
+	 */
+	@Override
+	public ParsedCommand read(CommandLine line) {
+		if ((line.getTokenCount() > 0)
+				&& (line.tokenEquals(0, keywordHelpCommand)
+						|| line.tokenEquals(0, keywordHelpCommandAbbrev)
+						|| line.tokenEquals(0, keywordHelpCommandAlt))) {
+			return new ParsedCommand(this);
 		}
-		return false;
+		return null;
 	}
 
 	/**
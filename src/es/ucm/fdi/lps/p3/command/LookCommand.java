@@ -1,9 +1,8 @@
 package es.ucm.fdi.lps.p3.command;
 
-import java.util.Enumeration;
 import java.util.Properties;
-import java.util.Scanner;
 
+import es.ucm.fdi.lps.p3.Configuration;
 import es.ucm.fdi.lps.p3.Game;
 import es.ucm.fdi.lps.p3.exception.UnparsedCommandException;
 
@@ -130,6 +129,16 @@ public class LookCommand extends Command {
 		setDefaultConfiguration();
 	}
 
+	/**
+	 * Constructs a prototype of the Look command, not bound to any game: it
+	 * only parses the player invocations, and the commands of a game are
+	 * created from it (see newCommand(ParsedCommand, Game)). Default
+	 * configuration is assumed at this moment.
+	 */
+	public LookCommand() {
+		setDefaultConfiguration();
+	}
+
 	/**
 	 * Constructs a Look command (as an specific type of Command) that has
 	 * access to a given game. Initially the command is unparsed and unexecuted.
@@ -149,7 +158,7 @@ public class LookCommand extends Command {
 			throw new IllegalArgumentException();
 		}
 		this.config = config;
-		setConfiguration();
+		setConfiguration(new Configuration(config));
 	}
 
 	private void setDefaultConfiguration() {
@@ -165,35 +174,34 @@ public class LookCommand extends Command {
 		flagShowItemValues = true;
 	}
 
-	private void setConfiguration() {
-		for (Enumeration<Object> e = config.keys(); e.hasMoreElements();) {
-			Object obj = e.nextElement();
-			if (obj.toString().equalsIgnoreCase(KEYWORD_LOOKCOMMAND))
-				keywordLookCommand = config.getProperty(obj.toString());
-			else if (obj.toString()
-					.equalsIgnoreCase(KEYWORD_LOOKCOMMAND_ABBREV))
-				keywordLookCommandAbbrev = config.getProperty(obj.toString());
-			else if (obj.toString().equalsIgnoreCase(KEYWORD_LOOKCOMMAND_ALT))
-				keywordLookCommandAlt = config.getProperty(obj.toString());
-			else if (obj.toString().equalsIgnoreCase(MESSAGE_LOOKCOMMAND_HELP))
-				msgLookCommandHelp = config.getProperty(obj.toString());
-
-			else if (obj.toString().equalsIgnoreCase(
-					MESSAGE_TAKECOMMAND_LOCATIONWITHITEMS))
-				msgLookCommandLocationWithItems = config.getProperty(obj
-						.toString());
-			else if (obj.toString().equalsIgnoreCase(
-					MESSAGE_TAKECOMMAND_LOCATIONWITHOUTITEMS))
-				msgLookCommandLocationWithoutItems = config.getProperty(obj
-						.toString());
-			else if (obj.toString().equalsIgnoreCase(
-					FLAG_TAKECOMMAND_SHOWLOCATIONITEMS))
-				flagLookCommandShowLocationItems = Boolean.parseBoolean(config
-						.getProperty(obj.toString()));
-			else if (obj.toString().equalsIgnoreCase(FLAG_SHOWITEMVALUES))
-				flagShowItemValues = Boolean.parseBoolean(config
-						.getProperty(obj.toString()));
-		}
+	/**
+	 * Sets a new configuration for this Look command. Properties that are
+	 * not overridden maintain their previous values.
+	 * 
+	 * @see Command#setConfiguration(Configuration)
+	 */
+	@Override
+	public void setConfiguration(Configuration config) {
+		super.setConfiguration(config);
+		keywordLookCommand = config.getString(KEYWORD_LOOKCOMMAND,
+				keywordLookCommand);
+		keywordLookCommandAbbrev = config.getString(KEYWORD_LOOKCOMMAND_ABBREV,
+				keywordLookCommandAbbrev);
+		keywordLookCommandAlt = config.getString(KEYWORD_LOOKCOMMAND_ALT,
+				keywordLookCommandAlt);
+		msgLookCommandHelp = config.getString(MESSAGE_LOOKCOMMAND_HELP,
+				msgLookCommandHelp);
+		msgLookCommandLocationWithItems = config.getString(
+				MESSAGE_TAKECOMMAND_LOCATIONWITHITEMS,
+				msgLookCommandLocationWithItems);
+		msgLookCommandLocationWithoutItems = config.getString(
+				MESSAGE_TAKECOMMAND_LOCATIONWITHOUTITEMS,
+				msgLookCommandLocationWithoutItems);
+		flagLookCommandShowLocationItems = config.getBoolean(
+				FLAG_TAKECOMMAND_SHOWLOCATIONITEMS,
+				flagLookCommandShowLocationItems);
+		flagShowItemValues = config.getBoolean(FLAG_SHOWITEMVALUES,
+				flagShowItemValues);
 	}
 
 	/**
@@ -218,6 +226,18 @@ public class LookCommand extends Command {
 
 	}
 
+	/**
+	 * Gets the keywords of this Look command: its keyword, its abbreviation
+	 * and its alternative.
+	 * 
+	 * @see Command#getKeywords()
+	 */
+	@Override
+	public String[] getKeywords() {
+		return new String[] { keywordLookCommand, keywordLookCommandAbbrev,
+				keywordLookCommandAlt };
+	}
+
 	/**
 	 * Gets the help information about this Look command.
 	 * 
@@ -236,17 +256,24 @@ public class LookCommand extends Command {
 	 */
 	@Override
 	public boolean parse(String line) {
-		Scanner reader = new Scanner(line);
-		if (reader.hasNext()) {
-			String firstCommand = reader.next();
-			if (firstCommand.equalsIgnoreCase(keywordLookCommand)
-					|| firstCommand.equalsIgnoreCase(keywordLookCommandAbbrev)
-					|| firstCommand.equalsIgnoreCase(keywordLookCommandAlt)) {
-				parsed = true;
-				return true;
-			}
+		return parse(new CommandLine(line));
+	}
+
+	/**
+	 * Reads a command line trying to identify a player invocation to this
+	 * Look command (e.g. "look").
+	 * 
+	 * @see Command#read(CommandLine)
+	 */
+	@Override
+	public ParsedCommand read(CommandLine line) {
+		if ((line.getTokenCount() > 0)
+				&& (line.tokenEquals(0, keywordLookCommand)
+						|| line.tokenEquals(0, keywordLookCommandAbbrev)
+						|| line.tokenEquals(0, keywordLookCommandAlt))) {
+			return new ParsedCommand(this);
 		}
-		return false;
+		return null;
 	}
 
 	/**
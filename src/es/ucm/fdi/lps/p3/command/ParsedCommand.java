@@ -0,0 +1,130 @@
+package es.ucm.fdi.lps.p3.command;
+
+import es.ucm.fdi.lps.p3.Game;
+import es.ucm.fdi.lps.p3.Game.Direction;
+
+/**
+ * Represents the result of parsing a player invocation to a command: the
+ * command prototype that identified it (the verb) and its arguments (a
+ * direction or an item name). Parsed commands are immutable and parsing them
+ * does not change the prototypes, so the same prototypes can parse the lines
+ * of many games at the same time. A parsed command is turned into a command of
+ * a specific game for executing it.
+ */
+public class ParsedCommand {
+
+	private final Command prototype;
+	private final Direction direction;
+	private final String itemName;
+
+	/**
+	 * Constructs a parsed command without arguments.
+	 * 
+	 * @param prototype
+	 *            The command prototype.
+	 * @throws IllegalArgumentException
+	 *             The argument 'prototype' cannot be null.
+	 */
+	public ParsedCommand(Command prototype) {
+		this(prototype, null, null);
+	}
+
+	/**
+	 * Constructs a parsed command with a direction.
+	 * 
+	 * @param prototype
+	 *            The command prototype.
+	 * @param direction
+	 *            The direction.
+	 * @throws IllegalArgumentException
+	 *             The arguments 'prototype' and 'direction' cannot be null.
+	 */
+	public ParsedCommand(Command prototype, Direction direction) {
+		this(prototype, direction, null);
+		if (direction == null)
+			throw new IllegalArgumentException();
+	}
+
+	/**
+	 * Constructs a parsed command with an item name.
+	 * 
+	 * @param prototype
+	 *            The command prototype.
+	 * @param itemName
+	 *            The item name.
+	 * @throws IllegalArgumentException
+	 *             The arguments 'prototype' and 'itemName' cannot be null.
+	 */
+	public ParsedCommand(Command prototype, String itemName) {
+		this(prototype, null, itemName);
+		if (itemName == null)
+			throw new IllegalArgumentException();
+	}
+
+	private ParsedCommand(Command prototype, Direction direction,
+			String itemName) {
+		if (prototype == null)
+			throw new IllegalArgumentException();
+		this.prototype = prototype;
+		this.direction = direction;
+		this.itemName = itemName;
+	}
+
+	/**
+	 * Gets the command prototype that identified the invocation.
+	 * 
+	 * @return The command prototype.
+	 */
+	public Command getPrototype() {
+		return prototype;
+	}
+
+	/**
+	 * Gets the direction argument.
+	 * 
+	 * @return The direction, or null if there is no direction.
+	 */
+	public Direction getDirection() {
+		return direction;
+	}
+
+	/**
+	 * Gets the item name argument.
+	 * 
+	 * @return The item name, or null if there is no item name.
+	 */
+	public String getItemName() {
+		return itemName;
+	}
+
+	/**
+	 * Creates a parsed command of a game, ready to be executed, from this
+	 * invocation.
+	 * 
+	 * @param game
+	 *            The game.
+	 * @return The command.
+	 * @throws IllegalArgumentException
+	 *             The argument 'game' cannot be null.
+	 */
+	public Command newCommand(Game game) {
+		return prototype.newCommand(this, game);
+	}
+
+	/**
+	 * Returns a String representation for this object:
+	 * ParsedCommand[prototype, argument]. This is useful for debugging
+	 * purposes.
+	 * 
+	 * @see Object#toString()
+	 */
+	public String toString() {
+		String argument = "";
+		if (direction != null)
+			argument = ", " + direction;
+		else if (itemName != null)
+			argument = ", " + itemName;
+		return this.getClass().getSimpleName() + "[" + prototype + argument
+				+ "]";
+	}
+}
@@ -1,8 +1,8 @@
 package es.ucm.fdi.lps.p3.command;
 
-import java.util.Enumeration;
 import java.util.Properties;
 
+import es.ucm.fdi.lps.p3.Configuration;
 import es.ucm.fdi.lps.p3.Game;
 import es.ucm.fdi.lps.p3.exception.UnparsedCommandException;
 
@@ -106,6 +106,16 @@ public class QuitCommand extends Command {
 		setDefaultConfiguration();
 	}
 
+	/**
+	 * Constructs a prototype of the Quit command, not bound to any game: it
+	 * only parses the player invocations, and the commands of a game are
+	 * created from it (see newCommand(ParsedCommand, Game)). Default
+	 * configuration is assumed at this moment.
+	 */
+	public QuitCommand() {
+		setDefaultConfiguration();
+	}
+
 	/**
 	 * Constructs a Quit command (as an specific type of Command) that has
 	 * access to a given game. Initially the command is unparsed and unexecuted.
@@ -125,7 +135,7 @@ public class QuitCommand extends Command {
 			throw new IllegalArgumentException();
 		}
 		this.config = config;
-		setConfiguration();
+		setConfiguration(new Configuration(config));
 	}
 
 	private void setDefaultConfiguration() {
@@ -139,23 +149,25 @@ public class QuitCommand extends Command {
 		msgGameOver = "GAME OVER";
 	}
 
-	private void setConfiguration() {
-		for (Enumeration<Object> e = config.keys(); e.hasMoreElements();) {
-			Object obj = e.nextElement();
-			if (obj.toString().equalsIgnoreCase(KEYWORD_QUITCOMMAND))
-				keywordQuitCommand = config.getProperty(obj.toString());
-			else if (obj.toString()
-					.equalsIgnoreCase(KEYWORD_QUITCOMMAND_ABBREV))
-				keywordQuitCommandAbbrev = config.getProperty(obj.toString());
-			else if (obj.toString().equalsIgnoreCase(KEYWORD_QUITCOMMAND_ALT))
-				keywordQuitCommandAlt = config.getProperty(obj.toString());
-			else if (obj.toString().equalsIgnoreCase(MESSAGE_QUITCOMMAND_HELP))
-				msgQuitCommandHelp = config.getProperty(obj.toString());
-			else if (obj.toString().equalsIgnoreCase(MESSAGE_PLAYERSCORE))
-				msgPlayerScore = config.getProperty(obj.toString());
-			else if (obj.toString().equalsIgnoreCase(MESSAGE_GAMEOVER))
-				msgGameOver = config.getProperty(obj.toString());
-		}
+	/**
+	 * Sets a new configuration for this Quit command. Properties that are
+	 * not overridden maintain their previous values.
+	 * 
+	 * @see Command#setConfiguration(Configuration)
+	 */
+	@Override
+	public void setConfiguration(Configuration config) {
+		super.setConfiguration(config);
+		keywordQuitCommand = config.getString(KEYWORD_QUITCOMMAND,
+				keywordQuitCommand);
+		keywordQuitCommandAbbrev = config.getString(KEYWORD_QUITCOMMAND_ABBREV,
+				keywordQuitCommandAbbrev);
+		keywordQuitCommandAlt = config.getString(KEYWORD_QUITCOMMAND_ALT,
+				keywordQuitCommandAlt);
+		msgQuitCommandHelp = config.getString(MESSAGE_QUITCOMMAND_HELP,
+				msgQuitCommandHelp);
+		msgPlayerScore = config.getString(MESSAGE_PLAYERSCORE, msgPlayerScore);
+		msgGameOver = config.getString(MESSAGE_GAMEOVER, msgGameOver);
 	}
 
 	/**
@@ -174,6 +186,18 @@ public class QuitCommand extends Command {
 		return true;
 	}
 
+	/**
+	 * Gets the keywords of this Quit command: its keyword, its abbreviation
+	 * and its alternative.
+	 * 
+	 * @see Command#getKeywords()
+	 */
+	@Override
+	public String[] getKeywords() {
+		return new String[] { keywordQuitCommand, keywordQuitCommandAbbrev,
+				keywordQuitCommandAlt };
+	}
+
 	/**
 	 * Gets the help information about this Quit command.
 	 * 
@@ -192,13 +216,23 @@ public class QuitCommand extends Command {
 	 */
 	@Override
 	public boolean parse(String line) {
-		if (line.equalsIgnoreCase(keywordQuitCommand)
-				|| line.equalsIgnoreCase(keywordQuitCommandAbbrev)
-				|| line.equalsIgnoreCase(keywordQuitCommandAlt)) {
-			parsed = true;
-			return true;
+		return parse(new CommandLine(line));
+	}
+
+	/**
+	 * Reads a command line trying to identify a player invocation to this
+	 * Quit command (e.g. "quit").
+	 * 
+	 * @see Command#read(CommandLine)
+	 */
+	@Override
+	public ParsedCommand read(CommandLine line) {
+		if (line.lineEquals(keywordQuitCommand)
+				|| line.lineEquals(keywordQuitCommandAbbrev)
+				|| line.lineEquals(keywordQuitCommandAlt)) {
+			return new ParsedCommand(this);
 		} else
-			return false;
+			return null;
 	}
 
 	/**
@@ -1,11 +1,9 @@
 package es.ucm.fdi.lps.p3.command;
 
-import java.util.Enumeration;
-import java.util.LinkedHashSet;
 import java.util.Properties;
-import java.util.Scanner;
 import java.util.Set;
 
+import es.ucm.fdi.lps.p3.Configuration;
 import es.ucm.fdi.lps.p3.Game;
 import es.ucm.fdi.lps.p3.Item;
 import es.ucm.fdi.lps.p3.exception.UnexecutedCommandException;
@@ -221,6 +219,16 @@ public class TakeCommand extends Command {
 		setDefaultConfiguration();
 	}
 
+	/**
+	 * Constructs a prototype of the Take command, not bound to any game: it
+	 * only parses the player invocations, and the commands of a game are
+	 * created from it (see newCommand(ParsedCommand, Game)). Default
+	 * configuration is assumed at this moment.
+	 */
+	public TakeCommand() {
+		setDefaultConfiguration();
+	}
+
 	/**
 	 * Constructs a Take command (as an specific type of Command) that has
 	 * access to a given game. Initially the command is unparsed and unexecuted.
@@ -240,53 +248,47 @@ public class TakeCommand extends Command {
 			throw new IllegalArgumentException();
 		}
 		this.config = config;
-		setConfiguration();
+		setConfiguration(new Configuration(config));
 	}
 
-	private void setConfiguration() {
-		for (Enumeration<Object> e = config.keys(); e.hasMoreElements();) {
-			Object obj = e.nextElement();
-			if (obj.toString().equalsIgnoreCase(KEYWORD_TAKECOMMAND))
-				keywordTakeCommand = config.getProperty(obj.toString());
-			else if (obj.toString()
-					.equalsIgnoreCase(KEYWORD_TAKECOMMAND_ABBREV))
-				keywordTakeCommandAbbrev = config.getProperty(obj.toString());
-			else if (obj.toString().equalsIgnoreCase(KEYWORD_TAKECOMMAND_ALT))
-				keywordTakeCommandAlt = config.getProperty(obj.toString());
-			else if (obj.toString().equalsIgnoreCase(MESSAGE_TAKECOMMAND_HELP))
-				msgTakeCommandHelp = config.getProperty(obj.toString());
-			else if (obj.toString().equalsIgnoreCase(
-					MESSAGE_TAKECOMMAND_ITEMNAMENOTINLOCATION))
-				msgTakeCommandItemNameNotInLocation = config.getProperty(obj
-						.toString());
-			else if (obj.toString().equalsIgnoreCase(
-					MESSAGE_TAKECOMMAND_ITEMNAMEREPEATEDINLOCATION))
-				msgTakeCommandItemNameRepeatedInLocation = config
-						.getProperty(obj.toString());
-			else if (obj.toString().equalsIgnoreCase(
-					MESSAGE_TAKECOMMAND_ITEMNAMEALREADYININVENTORY))
-				msgTakeCommandItemNameAlreadyInInventory = config
-						.getProperty(obj.toString());
-			else if (obj.toString().equalsIgnoreCase(
-					MESSAGE_TAKECOMMAND_SUCCESS))
-				msgTakeCommandSuccess = config.getProperty(obj.toString());
-			else if (obj.toString().equalsIgnoreCase(
-					MESSAGE_TAKECOMMAND_FAILURE))
-				msgTakeCommandFailure = config.getProperty(obj.toString());
-			else if (obj.toString().equalsIgnoreCase(
-					MESSAGE_TAKECOMMAND_UNDOSUCCESS))
-				msgTakeCommandUndoSuccess = config.getProperty(obj.toString());
-			else if (obj.toString().equalsIgnoreCase(
-					MESSAGE_TAKECOMMAND_UNDOFAILURE))
-				msgTakeCommandUndoFailure = config.getProperty(obj.toString());
-			else if (obj.toString().equalsIgnoreCase(FLAG_TAKECOMMAND_FIFO))
-				flagTakeCommandFIFO = Boolean.parseBoolean(config
-						.getProperty(obj.toString()));
-			else if (obj.toString().equalsIgnoreCase(
-					FLAG_TAKECOMMAND_REPETITIONS))
-				flagTakeCommandRepetitions = Boolean.parseBoolean(config
-						.getProperty(obj.toString()));
-		}
+	/**
+	 * Sets a new configuration for this Take command. Properties that are
+	 * not overridden maintain their previous values.
+	 * 
+	 * @see Command#setConfiguration(Configuration)
+	 */
+	@Override
+	public void setConfiguration(Configuration config) {
+		super.setConfiguration(config);
+		keywordTakeCommand = config.getString(KEYWORD_TAKECOMMAND,
+				keywordTakeCommand);
+		keywordTakeCommandAbbrev = config.getString(KEYWORD_TAKECOMMAND_ABBREV,
+				keywordTakeCommandAbbrev);
+		keywordTakeCommandAlt = config.getString(KEYWORD_TAKECOMMAND_ALT,
+				keywordTakeCommandAlt);
+		msgTakeCommandHelp = config.getString(MESSAGE_TAKECOMMAND_HELP,
+				msgTakeCommandHelp);
+		msgTakeCommandItemNameNotInLocation = config.getString(
+				MESSAGE_TAKECOMMAND_ITEMNAMENOTINLOCATION,
+				msgTakeCommandItemNameNotInLocation);
+		msgTakeCommandItemNameRepeatedInLocation = config.getString(
+				MESSAGE_TAKECOMMAND_ITEMNAMEREPEATEDINLOCATION,
+				msgTakeCommandItemNameRepeatedInLocation);
+		msgTakeCommandItemNameAlreadyInInventory = config.getString(
+				MESSAGE_TAKECOMMAND_ITEMNAMEALREADYININVENTORY,
+				msgTakeCommandItemNameAlreadyInInventory);
+		msgTakeCommandSuccess = config.getString(MESSAGE_TAKECOMMAND_SUCCESS,
+				msgTakeCommandSuccess);
+		msgTakeCommandFailure = config.getString(MESSAGE_TAKECOMMAND_FAILURE,
+				msgTakeCommandFailure);
+		msgTakeCommandUndoSuccess = config.getString(
+				MESSAGE_TAKECOMMAND_UNDOSUCCESS, msgTakeCommandUndoSuccess);
+		msgTakeCommandUndoFailure = config.getString(
+				MESSAGE_TAKECOMMAND_UNDOFAILURE, msgTakeCommandUndoFailure);
+		flagTakeCommandFIFO = config.getBoolean(FLAG_TAKECOMMAND_FIFO,
+				flagTakeCommandFIFO);
+		flagTakeCommandRepetitions = config.getBoolean(
+				FLAG_TAKECOMMAND_REPETITIONS, flagTakeCommandRepetitions);
 	}
 
 	private void setDefaultConfiguration() {
@@ -325,8 +327,8 @@ public class TakeCommand extends Command {
 		}
 		executed = true;
 
-		Set<Item> itemsFoundedinInventory = new LinkedHashSet<Item>();
-		Set<Item> itemsFoundedinLocation = new LinkedHashSet<Item>();
+		Set<Item> itemsFoundedinInventory;
+		Set<Item> itemsFoundedinLocation;
 
 		// False = Si no hay ningn Item en la localizacin
 		if (game.reportAllLocationItems().isEmpty()) {
@@ -350,7 +352,7 @@ public class TakeCommand extends Command {
 
 		// Como al menos tengo un elemento con ese nombre en la localizacion
 		// cojo el primero
-		firstItem = (Item) itemsFoundedinLocation.toArray()[0];
+		firstItem = itemsFoundedinLocation.iterator().next();
 
 		itemsFoundedinInventory = game.getItemsFromInventory(itemName);
 
@@ -367,6 +369,18 @@ public class TakeCommand extends Command {
 		return true;
 	}
 
+	/**
+	 * Gets the keywords of this Take command: its keyword, its abbreviation
+	 * and its alternative.
+	 * 
+	 * @see Command#getKeywords()
+	 */
+	@Override
+	public String[] getKeywords() {
+		return new String[] { keywordTakeCommand, keywordTakeCommandAbbrev,
+				keywordTakeCommandAlt };
+	}
+
 	/**
 	 * Gets the help information about this Help command.
 	 * 
@@ -385,24 +399,40 @@ public class TakeCommand extends Command {
 	 */
 	@Override
 	public boolean parse(String line) {
-		Scanner reader = new Scanner(line);
-		if (reader.hasNext()) {
-			String firstCommand = reader.next();
-			if ((firstCommand.equalsIgnoreCase(keywordTakeCommand)
-					|| firstCommand.equalsIgnoreCase(keywordTakeCommandAbbrev) || firstCommand
-					.equalsIgnoreCase(keywordTakeCommandAlt))
-					&& reader.hasNext()) {
-				parsed = true;
-				itemName = reader.next();
-				return true;
-			}
+		return parse(new CommandLine(line));
+	}
+
+	/**
+	 * Reads a command line trying to identify a player invocation to this
+	 * Take command (e.g. "take sword").
+	 * 
+	 * @see Command#read(CommandLine)
+	 */
+	@Override
+	public ParsedCommand read(CommandLine line) {
+		if ((line.getTokenCount() > 1)
+				&& (line.tokenEquals(0, keywordTakeCommand)
+						|| line.tokenEquals(0, keywordTakeCommandAbbrev)
+						|| line.tokenEquals(0, keywordTakeCommandAlt))) {
+			return new ParsedCommand(this, line.getToken(1));
 		}
-		return false;
+		return null;
+	}
+
+	/**
+	 * Sets the arguments of this Take command: its item name.
+	 * 
+	 * @see Command#setArguments(ParsedCommand)
+	 */
+	@Override
+	protected void setArguments(ParsedCommand parsedCommand) {
+		itemName = parsedCommand.getItemName();
 	}
 
 	/**
 	 * Undoes the Take command execution, moving the item back from the player
-	 * inventory to the player location, if it is possible.
+	 * inventory to the location where it was taken (undoing the turn of the
+	 * game).
 	 * 
 	 * @see Command#undo()
 	 */
@@ -414,7 +444,7 @@ public class TakeCommand extends Command {
 			throw new UnexecutedCommandException(
 					"Error: UnexecutedCommandException");
 
-		if (game.moveItemFromInventoryToLocation(firstItem)) {
+		if (game.undoTurn()) {
 			result = msgTakeCommandUndoSuccess + LINE_SEPARATOR;
 			return true;
 		} else {
@@ -1,8 +1,8 @@
 package es.ucm.fdi.lps.p3.command;
 
-import java.util.Enumeration;
 import java.util.Properties;
 
+import es.ucm.fdi.lps.p3.Configuration;
 import es.ucm.fdi.lps.p3.Game;
 import es.ucm.fdi.lps.p3.exception.UnparsedCommandException;
 
@@ -100,6 +100,16 @@ public class UndoCommand extends Command {
 		setDefaultConfiguration();
 	}
 
+	/**
+	 * Constructs a prototype of the Undo command, not bound to any game: it
+	 * only parses the player invocations, and the commands of a game are
+	 * created from it (see newCommand(ParsedCommand, Game)). Default
+	 * configuration is assumed at this moment.
+	 */
+	public UndoCommand() {
+		setDefaultConfiguration();
+	}
+
 	/**
 	 * Constructs an Undo command (as an specific type of Command) that has
 	 * access to a given game. Initially the command is unparsed and unexecuted.
@@ -119,7 +129,7 @@ public class UndoCommand extends Command {
 			throw new IllegalArgumentException();
 		}
 		this.config = config;
-		setConfiguration();
+		setConfiguration(new Configuration(config));
 	}
 
 	private void setDefaultConfiguration() {
@@ -131,23 +141,26 @@ public class UndoCommand extends Command {
 		msgUndoCommandNoExecutedCommands = "There is no command that can be undone.";
 	}
 
-	private void setConfiguration() {
-		for (Enumeration<Object> e = config.keys(); e.hasMoreElements();) {
-			Object obj = e.nextElement();
-			if (obj.toString().equalsIgnoreCase(KEYWORD_UNDOCOMMAND))
-				keywordUndoCommand = config.getProperty(obj.toString());
-			else if (obj.toString()
-					.equalsIgnoreCase(KEYWORD_UNDOCOMMAND_ABBREV))
-				keywordUndoCommandAbbrev = config.getProperty(obj.toString());
-			else if (obj.toString().equalsIgnoreCase(KEYWORD_UNDOCOMMAND_ALT))
-				keywordUndoCommandAlt = config.getProperty(obj.toString());
-			else if (obj.toString().equalsIgnoreCase(MESSAGE_UNDOCOMMAND_HELP))
-				msgUndoCommandHelp = config.getProperty(obj.toString());
-			else if (obj.toString().equalsIgnoreCase(
-					MESSAGE_UNDOCOMMAND_NOEXECUTEDCOMMANDS))
-				msgUndoCommandNoExecutedCommands = config.getProperty(obj
-						.toString());
-		}
+	/**
+	 * Sets a new configuration for this Undo command. Properties that are
+	 * not overridden maintain their previous values.
+	 * 
+	 * @see Command#setConfiguration(Configuration)
+	 */
+	@Override
+	public void setConfiguration(Configuration config) {
+		super.setConfiguration(config);
+		keywordUndoCommand = config.getString(KEYWORD_UNDOCOMMAND,
+				keywordUndoCommand);
+		keywordUndoCommandAbbrev = config.getString(KEYWORD_UNDOCOMMAND_ABBREV,
+				keywordUndoCommandAbbrev);
+		keywordUndoCommandAlt = config.getString(KEYWORD_UNDOCOMMAND_ALT,
+				keywordUndoCommandAlt);
+		msgUndoCommandHelp = config.getString(MESSAGE_UNDOCOMMAND_HELP,
+				msgUndoCommandHelp);
+		msgUndoCommandNoExecutedCommands = config.getString(
+				MESSAGE_UNDOCOMMAND_NOEXECUTEDCOMMANDS,
+				msgUndoCommandNoExecutedCommands);
 	}
 
 	/**
@@ -177,6 +190,18 @@ public class UndoCommand extends Command {
 		return false;
 	}
 
+	/**
+	 * Gets the keywords of this Undo command: its keyword, its abbreviation
+	 * and its alternative.
+	 * 
+	 * @see Command#getKeywords()
+	 */
+	@Override
+	public String[] getKeywords() {
+		return new String[] { keywordUndoCommand, keywordUndoCommandAbbrev,
+				keywordUndoCommandAlt };
+	}
+
 	/**
 	 * Gets the help information about this Help command: undo.
 	 * 
@@ -195,13 +220,23 @@ public class UndoCommand extends Command {
 	 */
 	@Override
 	public boolean parse(String line) {
-		if (line.equalsIgnoreCase(keywordUndoCommand)
-				|| line.equalsIgnoreCase(keywordUndoCommandAbbrev)
-				|| line.equalsIgnoreCase(keywordUndoCommandAlt)) {
-			parsed = true;
-			return true;
+		return parse(new CommandLine(line));
+	}
+
+	/**
+	 * Reads a command line trying to identify a player invocation to this
+	 * Undo command (e.g. "undo").
+	 * 
+	 * @see Command#read(CommandLine)
+	 */
+	@Override
+	public ParsedCommand read(CommandLine line) {
+		if (line.lineEquals(keywordUndoCommand)
+				|| line.lineEquals(keywordUndoCommandAbbrev)
+				|| line.lineEquals(keywordUndoCommandAlt)) {
+			return new ParsedCommand(this);
 		} else
-			return false;
+			return null;
 	}
 
 	/**
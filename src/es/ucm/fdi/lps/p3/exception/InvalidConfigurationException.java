@@ -0,0 +1,21 @@
+package es.ucm.fdi.lps.p3.exception;
+
+/**
+ * Represents an exception that occurs when a configuration has a property
+ * with an invalid value (for instance, a limit that is not a number) and
+ * someone tries to use it.
+ */
+@SuppressWarnings("serial")
+public class InvalidConfigurationException extends Exception {
+
+	/**
+	 * Constructs the exception with an explanatory message.
+	 * 
+	 * @param message
+	 *            The error message.
+	 */
+	public InvalidConfigurationException(String message) {
+		super(message);
+	}
+
+}
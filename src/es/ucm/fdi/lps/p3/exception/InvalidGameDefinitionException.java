@@ -7,6 +7,12 @@ package es.ucm.fdi.lps.p3.exception;
 @SuppressWarnings("serial")
 public class InvalidGameDefinitionException extends Exception {
 
+	/**
+	 * The line and column of the definition where the error was found (0 if
+	 * unknown)
+	 */
+	private int line, column;
+
 	/**
 	 * Constructs the exception with an explanatory message.
 	 * 
@@ -17,4 +23,39 @@ public class InvalidGameDefinitionException extends Exception {
 		System.out.println(message);
 	}
 
+	/**
+	 * Constructs the exception with an explanatory message and the position of
+	 * the definition where the error was found.
+	 * 
+	 * @param message
+	 *            The error message.
+	 * @param line
+	 *            The line of the error.
+	 * @param column
+	 *            The column of the error.
+	 */
+	public InvalidGameDefinitionException(String message, int line, int column) {
+		this(message);
+		this.line = line;
+		this.column = column;
+	}
+
+	/**
+	 * Gets the line of the definition where the error was found.
+	 * 
+	 * @return The line, or 0 if it is unknown.
+	 */
+	public int getLine() {
+		return line;
+	}
+
+	/**
+	 * Gets the column of the definition where the error was found.
+	 * 
+	 * @return The column, or 0 if it is unknown.
+	 */
+	public int getColumn() {
+		return column;
+	}
+
 }
@@ -6,10 +6,11 @@ import junit.framework.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 
+import es.ucm.fdi.lps.p3.test.command.CommandLineTest;
 import es.ucm.fdi.lps.p3.test.command.DropCommandTest;
 
 @RunWith(Suite.class)
-@Suite.SuiteClasses({ ItemTest.class, ItemRepositoryTest.class, LocationTest.class, ParserTest.class, EngineTest.class, GameTest.class, DropCommandTest.class })
+@Suite.SuiteClasses({ ItemTest.class, ItemRepositoryTest.class, LocationTest.class, ParserTest.class, EngineTest.class, GameTest.class, CommandHistoryTest.class, JournalTest.class, GameImageTest.class, GameSaveTest.class, GameTemplateTest.class, SessionPoolTest.class, AutosaveTest.class, GameServerTest.class, SessionRunnerTest.class, CommandPipelineTest.class, GameValidatorTest.class, ConfigurationTest.class, ConfigurationWatcherTest.class, DropCommandTest.class, CommandLineTest.class })
 
 public class AllTests {
 	/**
@@ -0,0 +1,148 @@
+package es.ucm.fdi.lps.p3.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import es.ucm.fdi.lps.p3.Autosave;
+import es.ucm.fdi.lps.p3.Game;
+import es.ucm.fdi.lps.p3.Game.Direction;
+import es.ucm.fdi.lps.p3.GameSave;
+import es.ucm.fdi.lps.p3.GameSnapshot;
+import es.ucm.fdi.lps.p3.exception.InvalidGameDefinitionException;
+import es.ucm.fdi.lps.p3.test.mock.InputStreamMock;
+
+public class AutosaveTest {
+
+	private File file;
+	private Game game;
+
+	/**
+	 * An executor that runs the tasks when the test asks for it
+	 */
+	private static class ExecutorMock implements Executor {
+		private List<Runnable> tasks = new ArrayList<Runnable>();
+
+		public void execute(Runnable task) {
+			tasks.add(task);
+		}
+
+		int runAll() {
+			List<Runnable> run = tasks;
+			tasks = new ArrayList<Runnable>();
+			for (Runnable task : run)
+				task.run();
+			return run.size();
+		}
+	}
+
+	@Before
+	public void setUp() throws IOException, InvalidGameDefinitionException {
+		file = File.createTempFile("autosave", ".sav");
+		file.delete();
+		game = newGame();
+	}
+
+	@After
+	public void tearDown() {
+		file.delete();
+	}
+
+	private static Game newGame() throws InvalidGameDefinitionException {
+		return new Game(new InputStreamMock("game Title \"A\" \"D\"\n"
+				+ "location hall \"HALL\" \"The hall\"\n"
+				+ "item \"bone\" \"A bone\" 5\n" + "n garden\n"
+				+ "location garden \"GARDEN\" \"The garden\"\n"));
+	}
+
+	private void takeBone() {
+		game.moveItemFromLocationToInventory(game.reportAllLocationItems()
+				.iterator().next());
+	}
+
+	// Constructor
+	@Test(expected = IllegalArgumentException.class)
+	public void testNullFile() {
+		new Autosave(null);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNullExecutor() {
+		new Autosave(file, null);
+	}
+
+	// Snapshot
+	@Test
+	public void testSnapshotIsNotChanged() throws Exception {
+		GameSnapshot snapshot = GameSave.snapshot(game);
+		takeBone();
+		game.movePlayer(Direction.NORTH);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		snapshot.write(out);
+		Game restored = newGame();
+		GameSave.restore(restored, new ByteArrayInputStream(out
+				.toByteArray()));
+		assertEquals("HALL", restored.reportLocationName());
+		assertEquals(0, restored.reportInventoryValue());
+		assertEquals(1, restored.reportAllLocationItems().size());
+	}
+
+	// Save
+	@Test
+	public void testSaveAndRestore() throws Exception {
+		Autosave autosave = new Autosave(file);
+		takeBone();
+		autosave.save(game);
+		game.movePlayer(Direction.NORTH);
+		autosave.save(game);
+		autosave.close();
+		assertTrue(file.exists());
+
+		Game restored = newGame();
+		assertTrue(new Autosave(file).restore(restored));
+		assertEquals("GARDEN", restored.reportLocationName());
+		assertEquals(5, restored.reportInventoryValue());
+	}
+
+	@Test
+	public void testRestoreWithoutFile() throws Exception {
+		assertFalse(new Autosave(file).restore(game));
+		assertEquals("HALL", game.reportLocationName());
+	}
+
+	@Test
+	public void testSavesAreCoalesced() throws Exception {
+		ExecutorMock executor = new ExecutorMock();
+		Autosave autosave = new Autosave(file, executor);
+		autosave.save(game);
+		takeBone();
+		autosave.save(game);
+		game.movePlayer(Direction.NORTH);
+		autosave.save(game);
+		assertFalse(file.exists());
+
+		// Only the newest snapshot is written
+		assertEquals(1, executor.runAll());
+		autosave.flush();
+		Game restored = newGame();
+		assertTrue(autosave.restore(restored));
+		assertEquals("GARDEN", restored.reportLocationName());
+		assertEquals(5, restored.reportInventoryValue());
+
+		autosave.save(game);
+		assertEquals(1, executor.runAll());
+	}
+}
@@ -0,0 +1,142 @@
+package es.ucm.fdi.lps.p3.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import es.ucm.fdi.lps.p3.CommandHistory;
+import es.ucm.fdi.lps.p3.command.Command;
+import es.ucm.fdi.lps.p3.exception.NoExecutedCommandsException;
+import es.ucm.fdi.lps.p3.test.mock.CommandMock;
+
+public class CommandHistoryTest {
+
+	private static Command command(final String text) {
+		return new CommandMock() {
+			{
+				result = text;
+			}
+		};
+	}
+
+	// Constructor
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativeCapacity() {
+		new CommandHistory(-1, 0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativeBudget() {
+		new CommandHistory(1, -1);
+	}
+
+	// Add
+	@Test(expected = IllegalArgumentException.class)
+	public void testAddNull() {
+		new CommandHistory().add(null);
+	}
+
+	@Test
+	public void testAddUnlimited() {
+		CommandHistory history = new CommandHistory();
+		Command[] commands = new Command[100];
+		for (int i = 0; i < commands.length; i++) {
+			commands[i] = command("result " + i);
+			history.add(commands[i]);
+		}
+		assertEquals(100, history.size());
+		for (int i = 0; i < commands.length; i++)
+			assertSame(commands[i], history.removeOldest());
+		assertTrue(history.isEmpty());
+		assertEquals(0, history.getRetainedSize());
+	}
+
+	@Test
+	public void testAddEvictsOldest() {
+		CommandHistory history = new CommandHistory(3, 0);
+		Command[] commands = new Command[10];
+		for (int i = 0; i < commands.length; i++) {
+			commands[i] = command("result " + i);
+			history.add(commands[i]);
+			assertEquals(Math.min(i + 1, 3), history.size());
+		}
+		assertSame(commands[9], history.removeNewest());
+		assertSame(commands[7], history.removeOldest());
+		assertSame(commands[8], history.removeNewest());
+		assertTrue(history.isEmpty());
+	}
+
+	@Test
+	public void testAddZeroCapacity() {
+		CommandHistory history = new CommandHistory(0, 0);
+		history.add(command("result"));
+		assertTrue(history.isEmpty());
+	}
+
+	@Test
+	public void testAddWithinBudget() {
+		Command small = command("");
+		int size = small.getRetainedSize();
+		CommandHistory history = new CommandHistory(10, 2 * size);
+		history.add(command(""));
+		history.add(small);
+		assertEquals(2, history.size());
+		assertEquals(2 * size, history.getRetainedSize());
+
+		history.add(command(""));
+		assertEquals(2, history.size());
+		assertSame(small, history.removeOldest());
+
+		// The newest command is kept even if it exceeds the budget
+		Command large = command(new String(new char[10 * size]));
+		history.add(large);
+		assertEquals(1, history.size());
+		assertSame(large, history.removeNewest());
+	}
+
+	// SetLimits
+	@Test
+	public void testSetLimits() {
+		CommandHistory history = new CommandHistory();
+		Command[] commands = new Command[5];
+		for (int i = 0; i < commands.length; i++) {
+			commands[i] = command("result " + i);
+			history.add(commands[i]);
+		}
+		history.setLimits(2, 0);
+		assertEquals(2, history.getCapacity());
+		assertEquals(2, history.size());
+		assertSame(commands[3], history.removeOldest());
+
+		history.setLimits(4, 0);
+		history.add(commands[0]);
+		history.add(commands[1]);
+		assertEquals(3, history.size());
+		assertSame(commands[4], history.removeOldest());
+	}
+
+	// Remove
+	@Test(expected = NoExecutedCommandsException.class)
+	public void testRemoveNewestEmpty() {
+		new CommandHistory().removeNewest();
+	}
+
+	@Test(expected = NoExecutedCommandsException.class)
+	public void testRemoveOldestEmpty() {
+		new CommandHistory().removeOldest();
+	}
+
+	// Clear
+	@Test
+	public void testClear() {
+		CommandHistory history = new CommandHistory(2, 0);
+		history.add(command("a"));
+		history.add(command("b"));
+		history.add(command("c"));
+		history.clear();
+		assertTrue(history.isEmpty());
+		assertEquals(0, history.getRetainedSize());
+	}
+}
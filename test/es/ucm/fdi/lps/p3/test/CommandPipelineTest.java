@@ -0,0 +1,263 @@
+package es.ucm.fdi.lps.p3.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import es.ucm.fdi.lps.p3.CommandPipeline;
+import es.ucm.fdi.lps.p3.Engine;
+import es.ucm.fdi.lps.p3.Game;
+import es.ucm.fdi.lps.p3.GameTemplate;
+import es.ucm.fdi.lps.p3.test.mock.GameMock;
+import es.ucm.fdi.lps.p3.test.mock.InputStreamMock;
+import es.ucm.fdi.lps.p3.test.mock.OutputStreamMock;
+
+public class CommandPipelineTest {
+
+	private static final String DEFINITION = "game \"Title\" \"Author\" \"Description\"\n"
+			+ "location hall \"HALL\" \"The hall\"\n"
+			+ "item \"coin\" \"A coin\" 10\n"
+			+ "n garden\n"
+			+ "location garden \"GARDEN\" \"The garden\"\n"
+			+ "s hall\n";
+
+	private static final String[] LINES = { "take coin", "dance", "go n",
+			"go s", "quit" };
+
+	private GameTemplate template;
+	private CommandPipeline pipeline;
+
+	/**
+	 * Collects the output of a session.
+	 */
+	private static final class Collector implements CommandPipeline.Output {
+		final ByteArrayOutputStream output = new ByteArrayOutputStream();
+		final List<Boolean> gameOver = new ArrayList<Boolean>();
+		final List<RuntimeException> failures = new ArrayList<RuntimeException>();
+		final CountDownLatch closed = new CountDownLatch(1);
+
+		public synchronized void write(byte[] output, boolean gameOver) {
+			this.output.write(output, 0, output.length);
+			this.gameOver.add(gameOver);
+		}
+
+		public synchronized void failed(RuntimeException failure) {
+			failures.add(failure);
+		}
+
+		public void closed() {
+			closed.countDown();
+		}
+
+		synchronized String getOutput() {
+			return output.toString();
+		}
+
+		void await() throws InterruptedException {
+			assertTrue(closed.await(5, TimeUnit.SECONDS));
+		}
+	}
+
+	/**
+	 * Holds the tasks given to it until they are run.
+	 */
+	private static final class ManualExecutor implements Executor {
+		final Queue<Runnable> tasks = new LinkedList<Runnable>();
+
+		public void execute(Runnable task) {
+			tasks.add(task);
+		}
+
+		void runAll() {
+			Runnable task;
+			while ((task = tasks.poll()) != null)
+				task.run();
+		}
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		template = GameTemplate.load(new InputStreamMock(DEFINITION));
+		pipeline = new CommandPipeline();
+	}
+
+	@After
+	public void tearDown() {
+		pipeline.shutdown();
+	}
+
+	private Engine newEngine() {
+		return new Engine(template.newGame(), new OutputStreamMock());
+	}
+
+	/**
+	 * Plays the lines with Engine#step(String), in the default charset.
+	 */
+	private String play(String... lines) {
+		Engine engine = newEngine();
+		StringBuilder output = new StringBuilder(engine.start().getOutput());
+		for (String line : lines)
+			output.append(engine.step(line).getOutput());
+		return new String(output.toString().getBytes());
+	}
+
+	// Constructor
+	@Test(expected = IllegalArgumentException.class)
+	public void testNullExecutor() {
+		ManualExecutor executor = new ManualExecutor();
+		new CommandPipeline(executor, null, executor, 1);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testZeroMaxPending() {
+		ManualExecutor executor = new ManualExecutor();
+		new CommandPipeline(executor, executor, executor, 0);
+	}
+
+	// Open
+	@Test(expected = IllegalArgumentException.class)
+	public void testOpenNullEngine() {
+		pipeline.open(null, new Collector());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testOpenNullOutput() {
+		pipeline.open(newEngine(), null);
+	}
+
+	// Submit
+	@Test(expected = IllegalArgumentException.class)
+	public void testSubmitNull() {
+		ManualExecutor executor = new ManualExecutor();
+		new CommandPipeline(executor, executor, executor, 1).open(
+				newEngine(), new Collector()).submit(null);
+	}
+
+	@Test
+	public void testTurnsInOrder() throws Exception {
+		Collector collector = new Collector();
+		CommandPipeline.Session session = pipeline.open(newEngine(),
+				collector);
+		for (String line : LINES)
+			assertTrue(session.submit(line.getBytes()));
+		session.close();
+		collector.await();
+		assertEquals(play(LINES), collector.getOutput());
+		assertEquals(LINES.length + 1, collector.gameOver.size());
+		assertTrue(collector.gameOver.get(LINES.length));
+		assertEquals(0, session.getNumberOfPendingTurns());
+	}
+
+	@Test
+	public void testTurnsAfterGameOver() throws Exception {
+		Collector collector = new Collector();
+		CommandPipeline.Session session = pipeline.open(newEngine(),
+				collector);
+		session.submit("quit".getBytes());
+		session.submit("go n".getBytes());
+		session.close();
+		collector.await();
+		assertEquals(play("quit"), collector.getOutput());
+		assertEquals(2, collector.gameOver.size());
+		assertFalse(collector.gameOver.get(0));
+		assertTrue(collector.gameOver.get(1));
+	}
+
+	@Test
+	public void testSubmitAfterClose() throws Exception {
+		Collector collector = new Collector();
+		CommandPipeline.Session session = pipeline.open(newEngine(),
+				collector);
+		session.close();
+		collector.await();
+		assertFalse(session.submit("go n".getBytes()));
+		assertEquals(play(), collector.getOutput());
+	}
+
+	@Test
+	public void testMaxPending() {
+		ManualExecutor executor = new ManualExecutor();
+		CommandPipeline bounded = new CommandPipeline(executor, executor,
+				executor, 2);
+		Collector collector = new Collector();
+		CommandPipeline.Session session = bounded.open(newEngine(),
+				collector);
+		// The beginning of the game is already in the pipeline
+		assertTrue(session.submit("take coin".getBytes()));
+		assertFalse(session.submit("go n".getBytes()));
+		assertEquals(2, session.getNumberOfPendingTurns());
+
+		executor.runAll();
+		assertEquals(0, session.getNumberOfPendingTurns());
+		assertEquals(play("take coin"), collector.getOutput());
+		assertTrue(session.submit("go n".getBytes()));
+		executor.runAll();
+		assertEquals(play("take coin", "go n"), collector.getOutput());
+	}
+
+	@Test
+	public void testFailedTurn() throws Exception {
+		Game game = new GameMock() {
+			private boolean failed;
+
+			@Override
+			public boolean hasEvents() {
+				if (!failed) {
+					failed = true;
+					throw new IllegalStateException();
+				}
+				return super.hasEvents();
+			}
+		};
+		Engine engine = new Engine(game, new OutputStreamMock());
+		Collector collector = new Collector();
+		CommandPipeline.Session session = pipeline.open(engine, collector);
+		assertTrue(session.submit("go n".getBytes()));
+		assertTrue(session.submit("quit".getBytes()));
+		session.close();
+		collector.await();
+		assertTrue(collector.getOutput().contains(engine.msgTurnFailed));
+		assertEquals(3, collector.gameOver.size());
+		assertTrue(collector.gameOver.get(2));
+		assertEquals(1, collector.failures.size());
+		assertTrue(collector.failures.get(0) instanceof IllegalStateException);
+		assertEquals(1, pipeline.getNumberOfFailedTurns());
+		assertEquals(0, session.getNumberOfPendingTurns());
+	}
+
+	@Test
+	public void testManySessions() throws Exception {
+		List<CommandPipeline.Session> sessions = new ArrayList<CommandPipeline.Session>();
+		List<Collector> collectors = new ArrayList<Collector>();
+		for (int i = 0; i < 100; i++) {
+			Collector collector = new Collector();
+			collectors.add(collector);
+			sessions.add(pipeline.open(newEngine(), collector));
+		}
+		for (String line : LINES) {
+			for (CommandPipeline.Session session : sessions)
+				assertTrue(session.submit(line.getBytes()));
+		}
+		for (CommandPipeline.Session session : sessions)
+			session.close();
+
+		String expected = play(LINES);
+		for (Collector collector : collectors) {
+			collector.await();
+			assertEquals(expected, collector.getOutput());
+		}
+	}
+}
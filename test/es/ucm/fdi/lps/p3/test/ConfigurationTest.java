@@ -0,0 +1,189 @@
+package es.ucm.fdi.lps.p3.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Properties;
+
+import org.junit.Test;
+
+import es.ucm.fdi.lps.p3.Configuration;
+import es.ucm.fdi.lps.p3.Parser;
+import es.ucm.fdi.lps.p3.command.TakeCommand;
+import es.ucm.fdi.lps.p3.exception.InvalidConfigurationException;
+import es.ucm.fdi.lps.p3.test.mock.GameMock;
+import es.ucm.fdi.lps.p3.test.mock.InputStreamMock;
+
+public class ConfigurationTest {
+	// Constructor
+	@Test(expected = IllegalArgumentException.class)
+	public void testNullConfiguration() {
+		new Configuration(null);
+	}
+
+	@Test
+	public void testConfiguration() {
+		Properties properties = new Properties();
+		properties.setProperty("Message.Prompt", ">>");
+		properties.setProperty("flag.showGameInfo", "TRUE");
+		properties.setProperty("limit.commandHistorySize", "5");
+		Configuration config = new Configuration(properties);
+		properties.setProperty("message.gameOver", "Bye");
+
+		assertEquals(3, config.size());
+		assertTrue(config.contains("message.prompt"));
+		assertFalse(config.contains("message.gameOver"));
+		assertEquals(">>", config.getString("MESSAGE.PROMPT", "> "));
+		assertEquals("Bye", config.getString("message.gameOver", "Bye"));
+		assertNull(config.getString("message.gameOver", null));
+		assertTrue(config.getBoolean("flag.showGameInfo", false));
+		assertFalse(config.getBoolean("flag.showEngineInfo", false));
+		assertEquals(5, config.getInt("limit.commandHistorySize", 1));
+		assertEquals(1, config.getInt("limit.other", 1));
+	}
+
+	@Test(expected = NumberFormatException.class)
+	public void testGetInvalidInt() {
+		Properties properties = new Properties();
+		properties.setProperty("limit.commandHistorySize", "many");
+		new Configuration(properties).getInt("limit.commandHistorySize", 1);
+	}
+
+	// Layered configuration
+	@Test(expected = IllegalArgumentException.class)
+	public void testNullBaseConfiguration() {
+		new Configuration(null, new Properties());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNullOverridesConfiguration() {
+		new Configuration(new Configuration(new Properties()), null);
+	}
+
+	@Test
+	public void testLayeredConfiguration() {
+		Properties properties = new Properties();
+		properties.setProperty("message.prompt", ">>");
+		properties.setProperty("message.gameOver", "GAME OVER");
+		Configuration base = new Configuration(properties);
+
+		Properties overrides = new Properties();
+		overrides.setProperty("Message.GameOver", "Bye");
+		overrides.setProperty("flag.showGameInfo", "false");
+		Configuration session = new Configuration(base, overrides);
+
+		assertEquals(base, session.getBase());
+		assertNull(base.getBase());
+		assertEquals(3, session.size());
+		assertEquals(">>", session.getString("message.prompt", "> "));
+		assertEquals("Bye", session.getString("message.gameOver", null));
+		assertEquals("GAME OVER", base.getString("message.gameOver", null));
+		assertFalse(session.getBoolean("flag.showGameInfo", true));
+		assertFalse(base.contains("flag.showGameInfo"));
+
+		Configuration empty = new Configuration(session, new Properties());
+		assertEquals(3, empty.size());
+		assertEquals("Bye", empty.getString("message.gameOver", null));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testRebaseOnNull() {
+		new Configuration(new Properties()).rebase(null);
+	}
+
+	@Test
+	public void testRebase() {
+		Properties properties = new Properties();
+		properties.setProperty("message.prompt", ">>");
+		properties.setProperty("message.gameOver", "GAME OVER");
+		Properties overrides = new Properties();
+		overrides.setProperty("message.gameOver", "Bye");
+		Configuration session = new Configuration(new Configuration(
+				properties), overrides);
+
+		Properties reloaded = new Properties();
+		reloaded.setProperty("message.gameOver", "THE END");
+		reloaded.setProperty("message.playerScore", "Score: ");
+		Configuration base = new Configuration(reloaded);
+		Configuration rebased = session.rebase(base);
+
+		assertEquals(base, rebased.getBase());
+		assertEquals(2, rebased.size());
+		assertEquals("Bye", rebased.getString("message.gameOver", null));
+		assertEquals("Score: ", rebased.getString("message.playerScore",
+				null));
+		assertFalse(rebased.contains("message.prompt"));
+		assertEquals(">>", session.getString("message.prompt", "> "));
+	}
+
+	// Load
+	@Test
+	public void testLoad() throws IOException {
+		Configuration config = Configuration.load(new ByteArrayInputStream(
+				"# Take Command\nkeyword.takeCommand = grab\n".getBytes()));
+		assertEquals("grab", config.getString("keyword.takeCommand", "take"));
+	}
+
+	// Validate
+	@Test
+	public void testValidate() throws InvalidConfigurationException {
+		Properties properties = new Properties();
+		properties.setProperty("flag.showGameInfo", "FALSE");
+		properties.setProperty("limit.commandHistorySize", "5");
+		properties.setProperty("keyword.goCommand", "walk");
+		properties.setProperty("message.prompt", "");
+		new Configuration(properties).validate();
+	}
+
+	@Test(expected = InvalidConfigurationException.class)
+	public void testValidateInvalidFlag() throws InvalidConfigurationException {
+		Properties properties = new Properties();
+		properties.setProperty("Flag.ShowGameInfo", "yes");
+		new Configuration(properties).validate();
+	}
+
+	@Test(expected = InvalidConfigurationException.class)
+	public void testValidateInvalidLimit()
+			throws InvalidConfigurationException {
+		Properties properties = new Properties();
+		properties.setProperty("limit.commandHistorySize", "many");
+		new Configuration(properties).validate();
+	}
+
+	@Test(expected = InvalidConfigurationException.class)
+	public void testValidateBlankKeyword()
+			throws InvalidConfigurationException {
+		Properties properties = new Properties();
+		properties.setProperty("keyword.goCommand", " ");
+		new Configuration(properties).validate();
+	}
+
+	@Test
+	public void testValidateLayered() throws InvalidConfigurationException {
+		Properties properties = new Properties();
+		properties.setProperty("limit.commandHistorySize", "many");
+		Properties overrides = new Properties();
+		overrides.setProperty("limit.commandHistorySize", "5");
+		new Configuration(new Configuration(properties), overrides).validate();
+	}
+
+	// Shared by several parsers
+	@Test
+	public void testSharedConfiguration() {
+		Properties properties = new Properties();
+		properties.setProperty("keyword.takeCommand", "grab");
+		Configuration config = new Configuration(properties);
+
+		for (int i = 0; i < 2; i++) {
+			Parser parser = new Parser(new InputStreamMock(), new GameMock());
+			parser.setConfiguration(config);
+			assertTrue(parser.parse("grab key").getPrototype()
+					instanceof TakeCommand);
+			assertNull(parser.parse("take key"));
+		}
+	}
+}
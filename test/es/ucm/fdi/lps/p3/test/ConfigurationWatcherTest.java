@@ -0,0 +1,140 @@
+package es.ucm.fdi.lps.p3.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import es.ucm.fdi.lps.p3.ConfigurationWatcher;
+import es.ucm.fdi.lps.p3.Engine;
+import es.ucm.fdi.lps.p3.test.mock.GameMock;
+
+public class ConfigurationWatcherTest {
+
+	private File file;
+
+	@Before
+	public void setUp() throws IOException {
+		file = File.createTempFile("watcher", ".cfg");
+		write("message.prompt = >>\n");
+	}
+
+	@After
+	public void tearDown() {
+		file.delete();
+	}
+
+	private void write(String text) throws IOException {
+		OutputStream out = new FileOutputStream(file);
+		try {
+			out.write(text.getBytes("ISO-8859-1"));
+		} finally {
+			out.close();
+		}
+	}
+
+	// Constructor
+	@Test(expected = IllegalArgumentException.class)
+	public void testNullFile() {
+		new ConfigurationWatcher(null);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testAddNullEngine() {
+		new ConfigurationWatcher(file).addEngine(null);
+	}
+
+	// Reload
+	@Test
+	public void testReload() throws IOException {
+		ConfigurationWatcher watcher = new ConfigurationWatcher(file);
+		watcher.addEngine(new Engine(new GameMock()));
+		assertNull(watcher.getConfiguration());
+
+		write("message.prompt = ?\nlimit.commandHistorySize = 3\n");
+		assertTrue(watcher.reload());
+		assertEquals("?", watcher.getConfiguration().getString(
+				"message.prompt", null));
+		assertEquals(3, watcher.getConfiguration().getInt(
+				"limit.commandHistorySize", 1));
+	}
+
+	@Test
+	public void testReloadInvalid() throws IOException {
+		ConfigurationWatcher watcher = new ConfigurationWatcher(file);
+		assertTrue(watcher.reload());
+
+		write("limit.commandHistorySize = many\n");
+		assertFalse(watcher.reload());
+		assertEquals(">>", watcher.getConfiguration().getString(
+				"message.prompt", null));
+	}
+
+	@Test
+	public void testReloadReportsCollisionsOnce() throws IOException {
+		ConfigurationWatcher watcher = new ConfigurationWatcher(file);
+		Engine first = new Engine(new GameMock());
+		Engine second = new Engine(new GameMock());
+		watcher.addEngine(first);
+		watcher.addEngine(second);
+		first.start();
+		second.start();
+
+		ByteArrayOutputStream err = new ByteArrayOutputStream();
+		PrintStream previous = System.err;
+		System.setErr(new PrintStream(err, true));
+		try {
+			write("keyword.dropCommand.abbrev = G\n");
+			assertTrue(watcher.reload());
+			// The engines build their parsers with the new configuration
+			first.step("look");
+			second.step("look");
+		} finally {
+			System.setErr(previous);
+		}
+		String warnings = err.toString();
+		assertEquals(1, warnings.split("Warning").length - 1);
+	}
+
+	@Test
+	public void testReloadMissingFile() {
+		file.delete();
+		assertFalse(new ConfigurationWatcher(file).reload());
+	}
+
+	@Test
+	public void testReloadIfChanged() throws IOException {
+		ConfigurationWatcher watcher = new ConfigurationWatcher(file);
+		assertFalse(watcher.reloadIfChanged());
+
+		write("message.prompt = >>>\n");
+		assertTrue(watcher.reloadIfChanged());
+		assertFalse(watcher.reloadIfChanged());
+	}
+
+	// Start and stop
+	@Test(expected = IllegalArgumentException.class)
+	public void testStartInvalidPeriod() {
+		new ConfigurationWatcher(file).start(0);
+	}
+
+	@Test
+	public void testStartStop() {
+		ConfigurationWatcher watcher = new ConfigurationWatcher(file);
+		watcher.start(10);
+		watcher.start(10);
+		watcher.stop();
+		watcher.stop();
+	}
+}
@@ -1,17 +1,29 @@
 package es.ucm.fdi.lps.p3.test;
 
+import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.Properties;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
 import org.junit.Test;
 
+import es.ucm.fdi.lps.p3.Configuration;
 import es.ucm.fdi.lps.p3.Engine;
+import es.ucm.fdi.lps.p3.Game;
 import es.ucm.fdi.lps.p3.Game.Direction;
 import es.ucm.fdi.lps.p3.Location;
+import es.ucm.fdi.lps.p3.Parser;
+import es.ucm.fdi.lps.p3.TurnResult;
 import es.ucm.fdi.lps.p3.test.mock.EngineMock;
 import es.ucm.fdi.lps.p3.test.mock.GameMock;
 import es.ucm.fdi.lps.p3.test.mock.InputStreamMock;
+import es.ucm.fdi.lps.p3.exception.InvalidGameDefinitionException;
 import es.ucm.fdi.lps.p3.test.mock.OutputStreamMock;
 
 public class EngineTest {
@@ -197,6 +209,102 @@ public class EngineTest {
 		engine.setConfig(new Properties());
 	}
 
+	// ReloadConfiguration
+	@Test(expected = java.lang.IllegalArgumentException.class)
+	public void testReloadNullConfiguration() {
+		Engine engine = new Engine(new GameMock(), new Properties());
+		engine.reloadConfiguration(null);
+	}
+
+	@Test
+	public void testReloadConfiguration() {
+		Location a = new Location("testA", "testDescA", 0, "testExitA");
+		Location b = new Location("testB", "testB");
+		b.setConnection(Direction.SOUTH, a);
+
+		Properties properties = new Properties();
+		properties.setProperty("message.prompt", "old>");
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		Engine engine = new Engine(new GameMock(b), properties,
+				new InputStreamMock("walk south"), output);
+
+		Properties reloaded = new Properties();
+		reloaded.setProperty("keyword.goCommand", "walk");
+		engine.reloadConfiguration(new Configuration(reloaded));
+		engine.run();
+
+		// The reloaded keyword is parsed and the prompt is the default again
+		assertTrue(output.toString().contains("> "));
+		assertFalse(output.toString().contains("old>"));
+	}
+
+	@Test
+	public void testReloadLayeredConfiguration() {
+		Location a = new Location("testA", "testDescA");
+		Location b = new Location("testB", "testB");
+		b.setConnection(Direction.SOUTH, a);
+
+		Properties properties = new Properties();
+		properties.setProperty("message.prompt", "old>");
+		Properties overrides = new Properties();
+		overrides.setProperty("message.unknownCommand", "What?");
+		Engine engine = new Engine(new GameMock(b), new OutputStreamMock());
+		engine.setConfiguration(new Configuration(new Configuration(
+				properties), overrides));
+
+		Properties reloaded = new Properties();
+		reloaded.setProperty("keyword.goCommand", "walk");
+		engine.reloadConfiguration(new Configuration(reloaded));
+		engine.start();
+		TurnResult walk = engine.step("walk south");
+		TurnResult dance = engine.step("dance");
+
+		// The base is replaced, but the overrides of the session are kept
+		assertTrue(walk.getOutput().contains("testDescA"));
+		assertFalse(walk.getOutput().contains("old>"));
+		assertEquals("What?", dance.getResult());
+	}
+
+	// Shared parser
+	@Test(expected = java.lang.IllegalArgumentException.class)
+	public void testEngineNullParser() {
+		new Engine(new GameMock(), (Parser) null, new InputStreamMock(),
+				new OutputStreamMock());
+	}
+
+	@Test
+	public void testSharedParser() {
+		Location a = new Location("testA", "testDescA");
+		Location b = new Location("testB", "testB");
+		b.setConnection(Direction.SOUTH, a);
+		Location c = new Location("testC", "testC");
+		Location d = new Location("testD", "testDescD");
+		c.setConnection(Direction.SOUTH, d);
+		d.setConnection(Direction.NORTH, c);
+
+		Properties properties = new Properties();
+		properties.setProperty("keyword.goCommand", "walk");
+		Configuration configuration = new Configuration(properties);
+		Parser parser = new Parser(configuration);
+		Engine first = new Engine(new GameMock(b), parser,
+				new InputStreamMock(), new OutputStreamMock());
+		Engine second = new Engine(new GameMock(c), parser,
+				new InputStreamMock(), new OutputStreamMock());
+		first.start();
+		second.start();
+
+		// Each engine plays its own game with the commands of the parser
+		assertTrue(first.step("walk south").getOutput().contains("testDescA"));
+		assertTrue(second.step("walk south").getOutput()
+				.contains("testDescD"));
+
+		// Another configuration does not change the shared parser
+		second.setConfiguration(new Configuration(new Properties()));
+		assertSame(configuration, parser.getConfiguration());
+		assertTrue(second.step("go north").getOutput().contains("testC"));
+		assertEquals("Pardon?", first.step("go north").getResult());
+	}
+
 	// SetInput
 	@Test(expected = java.lang.IllegalArgumentException.class)
 	public void testSetNullInput() {
@@ -222,4 +330,63 @@ public class EngineTest {
 		Engine engine = new Engine(new GameMock(), new OutputStreamMock());
 		engine.setOutput(new OutputStreamMock());
 	}
+
+	// Step
+	private static Game newGame() throws InvalidGameDefinitionException {
+		return new Game(new InputStreamMock("game Title \"A\" \"D\"\n"
+				+ "location hall \"HALL\" \"The hall\"\n"
+				+ "item \"coin\" \"A coin\" 10\n" + "n garden\n"
+				+ "location garden \"GARDEN\" \"The garden\"\n"));
+	}
+
+	@Test(expected = java.lang.IllegalArgumentException.class)
+	public void testStepNullLine() throws InvalidGameDefinitionException {
+		Engine engine = new Engine(newGame(), new OutputStreamMock());
+		engine.start();
+		engine.step(null);
+	}
+
+	@Test
+	public void testStep() throws InvalidGameDefinitionException {
+		Game game = newGame();
+		Engine engine = new Engine(game, new OutputStreamMock());
+		TurnResult result = engine.start();
+		assertTrue(result.getOutput().contains("HALL"));
+		assertTrue(result.getOutput().endsWith("> "
+				+ System.getProperty("line.separator")));
+		assertNull(result.getResult());
+		assertFalse(result.isGameOver());
+
+		result = engine.step("take coin");
+		assertTrue(result.isExecuted());
+		assertTrue(result.getResult().startsWith("It has been taken."));
+		assertEquals(1, game.getNumberOfExecutedCommands());
+
+		result = engine.step("dance");
+		assertFalse(result.isExecuted());
+		assertEquals("Pardon?", result.getResult());
+		assertEquals(1, game.getNumberOfExecutedCommands());
+
+		result = engine.step("quit");
+		assertTrue(result.isGameOver());
+		assertTrue(result.getOutput().contains("GAME OVER"));
+		assertFalse(result.getOutput().contains("> "));
+		assertTrue(engine.step("go n").isGameOver());
+	}
+
+	@Test
+	public void testStepLikeRun() throws InvalidGameDefinitionException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		new Engine(newGame(), new InputStreamMock("take coin\ngo n\nquit"),
+				output).run();
+
+		Engine engine = new Engine(newGame(), new OutputStreamMock());
+		StringBuilder steps = new StringBuilder(engine.start().getOutput());
+		steps.append(engine.step("take coin").getOutput());
+		steps.append(engine.step("go n").getOutput());
+		steps.append(engine.step("quit").getOutput());
+		// Compared as run() prints them, in the default charset
+		assertEquals(output.toString(), new String(steps.toString()
+				.getBytes()));
+	}
 }
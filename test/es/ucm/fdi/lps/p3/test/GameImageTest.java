@@ -0,0 +1,169 @@
+package es.ucm.fdi.lps.p3.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import es.ucm.fdi.lps.p3.Game;
+import es.ucm.fdi.lps.p3.Game.Direction;
+import es.ucm.fdi.lps.p3.GameImage;
+import es.ucm.fdi.lps.p3.exception.InvalidGameDefinitionException;
+import es.ucm.fdi.lps.p3.test.mock.InputStreamMock;
+
+public class GameImageTest {
+
+	private static final String DEFINITION = "game \"Title\" \"Author\" \"Description\"\n"
+			+ "location hall \"HALL\" \"The hall\"\n"
+			+ "item \"coin\" \"A coin\" 10\n"
+			+ "item \"bone\" \"A bone\" -5\n"
+			+ "n exit\n"
+			+ "location exit \"EXIT\" \"The exit\" 10 \"Bye\"\n"
+			+ "s hall\n";
+
+	private Game game;
+
+	@Before
+	public void setUp() throws Exception {
+		game = new Game(new InputStreamMock(DEFINITION));
+	}
+
+	private Game compileAndLoad(Game game) throws Exception {
+		return GameImage.load(ByteBuffer.wrap(compile(game)));
+	}
+
+	private static byte[] compile(Game game) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		GameImage.write(game, out);
+		return out.toByteArray();
+	}
+
+	/**
+	 * Overwrites a string of an image with another one of the same length.
+	 */
+	private static void replace(byte[] image, String s, String replacement) {
+		byte[] bytes = s.getBytes();
+		for (int i = 0; i <= image.length - bytes.length; i++) {
+			int j = 0;
+			while ((j < bytes.length) && (image[i + j] == bytes[j]))
+				j++;
+			if (j == bytes.length) {
+				System.arraycopy(replacement.getBytes(), 0, image, i,
+						bytes.length);
+				return;
+			}
+		}
+		fail();
+	}
+
+	// Write
+	@Test(expected = java.lang.IllegalArgumentException.class)
+	public void testWriteNullGame() throws Exception {
+		GameImage.write(null, new ByteArrayOutputStream());
+	}
+
+	// Load
+	@Test(expected = java.lang.IllegalArgumentException.class)
+	public void testLoadNullImage() throws Exception {
+		GameImage.load((ByteBuffer) null);
+	}
+
+	@Test(expected = InvalidGameDefinitionException.class)
+	public void testLoadInvalidImage() throws Exception {
+		GameImage.load(ByteBuffer.wrap(new byte[] { 1, 2, 3, 4, 5 }));
+	}
+
+	@Test
+	public void testLoad() throws Exception {
+		Game loaded = compileAndLoad(game);
+		assertEquals(game.reportInformation(), loaded.reportInformation());
+		assertEquals("HALL", loaded.reportLocationName());
+		assertEquals("The hall", loaded.reportLocationDescription());
+		assertEquals(2, loaded.reportAllLocationItems().size());
+		assertEquals(-5, loaded.getItemsFromLocation("bone").iterator()
+				.next().getValue());
+	}
+
+	@Test
+	public void testLoadConnections() throws Exception {
+		Game loaded = compileAndLoad(game);
+		assertTrue(loaded.hasConnectedLocation(Direction.NORTH));
+		assertFalse(loaded.hasConnectedLocation(Direction.SOUTH));
+		loaded.moveItemFromLocationToInventory(loaded
+				.getItemsFromLocation("coin").iterator().next());
+		loaded.movePlayer(Direction.NORTH);
+		assertEquals("EXIT", loaded.reportLocationName());
+		assertTrue(loaded.isEnded());
+		assertEquals("Bye", loaded.reportEvents());
+	}
+
+	@Test
+	public void testLoadDecodesLazily() throws Exception {
+		byte[] image = compile(game);
+		Game loaded = GameImage.load(ByteBuffer.wrap(image));
+		// The texts are decoded from the image when they are needed
+		replace(image, "A coin", "A COIN");
+		replace(image, "bone", "BONE");
+		replace(image, "Bye", "BYE");
+		assertEquals("A COIN", loaded.getItemsFromLocation("coin").iterator()
+				.next().getDescription());
+		assertEquals(-5, loaded.getItemsFromLocation("BONE").iterator()
+				.next().getValue());
+		loaded.moveItemFromLocationToInventory(loaded
+				.getItemsFromLocation("coin").iterator().next());
+		loaded.movePlayer(Direction.NORTH);
+		assertEquals("BYE", loaded.reportEvents());
+	}
+
+	@Test
+	public void testLoadKeepsCachedStrings() throws Exception {
+		byte[] image = compile(game);
+		Game loaded = GameImage.load(ByteBuffer.wrap(image), 1);
+		assertEquals("HALL", loaded.reportLocationName());
+		replace(image, "HALL", "HOLL");
+		// The name is still decoded
+		assertEquals("HALL", loaded.reportLocationName());
+		// Only the last string used is kept decoded
+		assertEquals("The hall", loaded.reportLocationDescription());
+		assertEquals("HOLL", loaded.reportLocationName());
+	}
+
+	@Test(expected = java.lang.IllegalArgumentException.class)
+	public void testLoadBufferNegativeCachedStrings() throws Exception {
+		GameImage.load(ByteBuffer.wrap(compile(game)), -1);
+	}
+
+	@Test(expected = java.lang.IllegalArgumentException.class)
+	public void testLoadNegativeCachedStrings() throws Exception {
+		GameImage.load(new File("game.gamec"), -1);
+	}
+
+	@Test
+	public void testLoadFileWithoutCachedStrings() throws Exception {
+		File file = File.createTempFile("game", GameImage.FILE_EXTENSION);
+		file.deleteOnExit();
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			GameImage.write(game, out);
+		} finally {
+			out.close();
+		}
+
+		Game loaded = GameImage.load(file, 0);
+		assertEquals("HALL", loaded.reportLocationName());
+		loaded.movePlayer(Direction.NORTH);
+		assertEquals("EXIT", loaded.reportLocationName());
+		assertEquals("The exit", loaded.reportLocationDescription());
+		loaded.movePlayer(Direction.SOUTH);
+		assertEquals("HALL", loaded.reportLocationName());
+		assertEquals("The hall", loaded.reportLocationDescription());
+	}
+}
@@ -0,0 +1,222 @@
+package es.ucm.fdi.lps.p3.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import es.ucm.fdi.lps.p3.Game;
+import es.ucm.fdi.lps.p3.Game.Direction;
+import es.ucm.fdi.lps.p3.GameImage;
+import es.ucm.fdi.lps.p3.GameSave;
+import es.ucm.fdi.lps.p3.GameSnapshot;
+import es.ucm.fdi.lps.p3.Item;
+import es.ucm.fdi.lps.p3.Location;
+import es.ucm.fdi.lps.p3.test.mock.CommandMock;
+import es.ucm.fdi.lps.p3.test.mock.GameMock;
+import es.ucm.fdi.lps.p3.test.mock.InputStreamMock;
+
+public class GameSaveTest {
+
+	private static final String DEFINITION = "game \"Title\" \"Author\" \"Description\"\n"
+			+ "location hall \"HALL\" \"The hall\"\n"
+			+ "item \"coin\" \"A coin\" 10\n"
+			+ "item \"bone\" \"A bone\" 5\n"
+			+ "n garden\n"
+			+ "location garden \"GARDEN\" \"The garden\"\n"
+			+ "item \"rose\" \"A rose\" 1\n"
+			+ "s hall\n";
+
+	private Game game;
+
+	@Before
+	public void setUp() throws Exception {
+		game = new Game(new InputStreamMock(DEFINITION));
+	}
+
+	private static Item getItem(Game game, String name) {
+		for (Item item : game.reportAllLocationItems()) {
+			if (item.getName().equals(name))
+				return item;
+		}
+		return game.getItemsFromInventory(name).iterator().next();
+	}
+
+	private static byte[] save(Game game) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		GameSave.save(game, out);
+		return out.toByteArray();
+	}
+
+	private static void restore(Game game, byte[] save) throws IOException {
+		GameSave.restore(game, new ByteArrayInputStream(save));
+	}
+
+	/**
+	 * Takes the coin and the bone, goes to the garden and drops the bone.
+	 */
+	private void play() {
+		game.moveItemFromLocationToInventory(getItem(game, "coin"));
+		game.moveItemFromLocationToInventory(getItem(game, "bone"));
+		game.movePlayer(Direction.NORTH);
+		game.moveItemFromInventoryToLocation(getItem(game, "bone"));
+	}
+
+	private static void assertPlayed(Game game) {
+		assertEquals("GARDEN", game.reportLocationName());
+		assertEquals(10, game.reportInventoryValue());
+		assertEquals(2, game.reportAllLocationItems().size());
+		assertEquals("rose", game.reportAllLocationItems().iterator().next()
+				.getName());
+		game.movePlayer(Direction.SOUTH);
+		assertTrue(game.reportAllLocationItems().isEmpty());
+	}
+
+	// Save
+	@Test(expected = java.lang.IllegalArgumentException.class)
+	public void testSaveNullGame() throws Exception {
+		GameSave.save(null, new ByteArrayOutputStream());
+	}
+
+	@Test(expected = java.lang.IllegalArgumentException.class)
+	public void testSaveGameWithoutWorld() throws Exception {
+		GameSave.save(new GameMock(new Location("HALL", "The hall")),
+				new ByteArrayOutputStream());
+	}
+
+	@Test
+	public void testSaveSize() throws Exception {
+		// Header, location, empty inventory and no moved items
+		assertEquals(28, save(game).length);
+		play();
+		// Plus an item in the inventory and a moved item
+		assertEquals(40, save(game).length);
+	}
+
+	// Snapshot
+	@Test
+	public void testSnapshotIsNotChanged() throws Exception {
+		GameSnapshot snapshot = GameSave.snapshot(game);
+		byte[] save = save(game);
+		play();
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		snapshot.write(out);
+		Game restored = new Game(new InputStreamMock(DEFINITION));
+		restore(restored, out.toByteArray());
+		assertEquals("HALL", restored.reportLocationName());
+		assertEquals(2, restored.reportAllLocationItems().size());
+		assertEquals(save.length, out.size());
+	}
+
+	@Test(timeout = 10000)
+	public void testSnapshotEveryTurn() throws Exception {
+		// Taking a snapshot every turn does not make the next move copy the
+		// places of all the items of the world, or of all the items moved
+		int items = 50000;
+		StringBuilder definition = new StringBuilder(
+				"game \"Title\" \"Author\" \"Description\"\n"
+						+ "location hall \"HALL\" \"The hall\"\n"
+						+ "item \"coin\" \"A coin\" 10\n");
+		for (int i = 0; i < items; i++)
+			definition.append("item \"pebble" + i + "\" \"A pebble\" 0\n");
+		Game game = new Game(new InputStreamMock(definition.toString()));
+		for (Item pebble : new ArrayList<Item>(game.reportAllLocationItems())) {
+			if (pebble.getName().startsWith("pebble"))
+				game.moveItemFromLocationToInventory(pebble);
+		}
+
+		Item coin = getItem(game, "coin");
+		GameSnapshot snapshot = null;
+		for (int i = 0; i < items; i++) {
+			game.moveItemFromLocationToInventory(coin);
+			snapshot = GameSave.snapshot(game);
+			game.moveItemFromInventoryToLocation(coin);
+			GameSave.snapshot(game);
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		snapshot.write(out);
+		restore(game, out.toByteArray());
+		assertEquals(10, game.reportInventoryValue());
+		assertEquals(items + 1, game.reportAllInventoryItems().size());
+		assertTrue(game.reportAllLocationItems().isEmpty());
+	}
+
+	// Restore
+	@Test
+	public void testRestore() throws Exception {
+		play();
+		byte[] save = save(game);
+
+		Game restored = new Game(new InputStreamMock(DEFINITION));
+		restore(restored, save);
+		assertPlayed(restored);
+	}
+
+	@Test
+	public void testRestoreImage() throws Exception {
+		ByteArrayOutputStream image = new ByteArrayOutputStream();
+		GameImage.write(game, image);
+		play();
+		byte[] save = save(game);
+
+		Game restored = GameImage.load(ByteBuffer.wrap(image.toByteArray()));
+		restore(restored, save);
+		assertPlayed(restored);
+	}
+
+	@Test
+	public void testRestorePlayedGame() throws Exception {
+		byte[] save = save(game);
+		play();
+		game.addExecutedCommand(new CommandMock());
+
+		restore(game, save);
+		assertEquals("HALL", game.reportLocationName());
+		assertEquals(0, game.reportInventoryValue());
+		assertEquals(2, game.reportAllLocationItems().size());
+		assertEquals(0, game.getNumberOfExecutedCommands());
+		assertFalse(game.undoTurn());
+	}
+
+	@Test
+	public void testRestoreInvalidSave() throws Exception {
+		play();
+		try {
+			restore(game, new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 });
+			fail();
+		} catch (IOException e) {
+		}
+		assertEquals("GARDEN", game.reportLocationName());
+	}
+
+	@Test(expected = IOException.class)
+	public void testRestoreAnotherGame() throws Exception {
+		Game other = new Game(new InputStreamMock(
+				"game \"Title\" \"Author\" \"Description\"\n"
+						+ "location hall \"HALL\" \"The hall\"\n"));
+		restore(game, save(other));
+	}
+
+	@Test
+	public void testRestoreWrongId() throws Exception {
+		byte[] save = save(game);
+		// The location of the player
+		save[19] = 2;
+		try {
+			restore(game, save);
+			fail();
+		} catch (IOException e) {
+		}
+		assertEquals("HALL", game.reportLocationName());
+	}
+}
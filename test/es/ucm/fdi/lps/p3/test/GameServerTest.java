@@ -0,0 +1,261 @@
+package es.ucm.fdi.lps.p3.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import es.ucm.fdi.lps.p3.CommandPipeline;
+import es.ucm.fdi.lps.p3.Game;
+import es.ucm.fdi.lps.p3.GameImage;
+import es.ucm.fdi.lps.p3.GameServer;
+import es.ucm.fdi.lps.p3.test.mock.InputStreamMock;
+
+public class GameServerTest {
+
+	private static final String DEFINITION = "game \"Title\" \"Author\" \"Description\"\n"
+			+ "location hall \"HALL\" \"The hall\"\n"
+			+ "item \"coin\" \"A coin\" 10\n"
+			+ "n garden\n"
+			+ "location garden \"GARDEN\" \"The garden\"\n"
+			+ "s hall\n";
+
+	private ByteBuffer image;
+	private GameServer server;
+
+	@Before
+	public void setUp() throws Exception {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		GameImage.write(new Game(new InputStreamMock(DEFINITION)), output);
+		image = ByteBuffer.wrap(output.toByteArray());
+		server = new GameServer(image, null);
+		server.start(new InetSocketAddress(InetAddress.getByName(null), 0),
+				2);
+	}
+
+	@After
+	public void tearDown() throws InterruptedException {
+		server.stop();
+	}
+
+	private Socket connect() throws IOException {
+		Socket socket = new Socket();
+		socket.connect(server.getAddress());
+		socket.setSoTimeout(5000);
+		return socket;
+	}
+
+	/**
+	 * Reads the output of a session until the prompt, or until the connection
+	 * is closed.
+	 */
+	private static String readUntilPrompt(Socket socket) throws IOException {
+		InputStream in = socket.getInputStream();
+		ByteArrayOutputStream text = new ByteArrayOutputStream();
+		int b;
+		while ((b = in.read()) >= 0) {
+			text.write(b);
+			if (text.toString().endsWith("> " + System.getProperty(
+					"line.separator")))
+				break;
+		}
+		return text.toString();
+	}
+
+	private static void send(Socket socket, String line) throws IOException {
+		OutputStream out = socket.getOutputStream();
+		out.write((line + "\r\n").getBytes());
+		out.flush();
+	}
+
+	private void waitForSessions(int sessions) throws InterruptedException {
+		for (int i = 0; (i < 500)
+				&& (server.getNumberOfSessions() != sessions); i++)
+			Thread.sleep(10);
+		assertEquals(sessions, server.getNumberOfSessions());
+	}
+
+	// Constructor
+	@Test(expected = IllegalArgumentException.class)
+	public void testNullImage() {
+		new GameServer(null, null);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testStartTwice() throws IOException {
+		server.start(new InetSocketAddress(0));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testSetPipelineWhenStarted() {
+		server.setPipeline(null);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testSetConfigurationWatcherWhenStarted() {
+		server.setConfigurationWatcher(null);
+	}
+
+	// Sessions
+	@Test
+	public void testPlay() throws Exception {
+		Socket socket = connect();
+		try {
+			assertTrue(readUntilPrompt(socket).contains("HALL"));
+			send(socket, "go n");
+			assertTrue(readUntilPrompt(socket).contains("GARDEN"));
+			send(socket, "dance");
+			assertTrue(readUntilPrompt(socket).contains("Pardon?"));
+		} finally {
+			socket.close();
+		}
+	}
+
+	@Test
+	public void testSessionsAreIndependent() throws Exception {
+		Socket first = connect();
+		Socket second = connect();
+		try {
+			readUntilPrompt(first);
+			readUntilPrompt(second);
+			waitForSessions(2);
+			send(first, "take coin");
+			assertTrue(readUntilPrompt(first)
+					.contains("It has been taken."));
+			send(second, "take coin");
+			assertTrue(readUntilPrompt(second)
+					.contains("It has been taken."));
+		} finally {
+			first.close();
+			second.close();
+		}
+		waitForSessions(0);
+	}
+
+	@Test
+	public void testQuitClosesSession() throws Exception {
+		Socket socket = connect();
+		try {
+			readUntilPrompt(socket);
+			send(socket, "quit");
+			assertTrue(readUntilPrompt(socket).contains("GAME OVER"));
+			assertEquals(-1, socket.getInputStream().read());
+		} finally {
+			socket.close();
+		}
+		waitForSessions(0);
+	}
+
+	@Test
+	public void testManySessions() throws Exception {
+		List<Socket> sockets = new ArrayList<Socket>();
+		try {
+			for (int i = 0; i < 200; i++)
+				sockets.add(connect());
+			for (Socket socket : sockets)
+				readUntilPrompt(socket);
+			waitForSessions(200);
+			for (Socket socket : sockets)
+				send(socket, "go n");
+			for (Socket socket : sockets)
+				assertTrue(readUntilPrompt(socket).contains("GARDEN"));
+		} finally {
+			for (Socket socket : sockets)
+				socket.close();
+		}
+		waitForSessions(0);
+	}
+
+	@Test
+	public void testPipeline() throws Exception {
+		server.stop();
+		CommandPipeline pipeline = new CommandPipeline();
+		server = new GameServer(image, null);
+		server.setPipeline(pipeline);
+		server.start(new InetSocketAddress(InetAddress.getByName(null), 0),
+				2);
+		List<Socket> sockets = new ArrayList<Socket>();
+		try {
+			for (int i = 0; i < 50; i++)
+				sockets.add(connect());
+			for (Socket socket : sockets)
+				assertTrue(readUntilPrompt(socket).contains("HALL"));
+			for (Socket socket : sockets) {
+				// Several lines at once, played in order
+				send(socket, "take coin\r\ngo n");
+			}
+			for (Socket socket : sockets) {
+				assertTrue(readUntilPrompt(socket).contains(
+						"It has been taken."));
+				assertTrue(readUntilPrompt(socket).contains("GARDEN"));
+				send(socket, "quit");
+				assertTrue(readUntilPrompt(socket).contains("GAME OVER"));
+				assertEquals(-1, socket.getInputStream().read());
+			}
+		} finally {
+			for (Socket socket : sockets)
+				socket.close();
+		}
+		waitForSessions(0);
+		pipeline.shutdown();
+	}
+
+	@Test
+	public void testPipelineBackpressure() throws Exception {
+		server.stop();
+		CommandPipeline pipeline = new CommandPipeline();
+		server = new GameServer(image, null);
+		server.setPipeline(pipeline);
+		server.start(new InetSocketAddress(InetAddress.getByName(null), 0),
+				2);
+		Socket socket = connect();
+		try {
+			readUntilPrompt(socket);
+			// More lines at once than turns allowed in the pipeline
+			StringBuilder lines = new StringBuilder();
+			for (int i = 0; i < CommandPipeline.DEFAULT_MAX_PENDING; i++)
+				lines.append("go n\r\ngo s\r\n");
+			send(socket, lines.append("quit").toString());
+			InputStream in = socket.getInputStream();
+			ByteArrayOutputStream output = new ByteArrayOutputStream();
+			int b;
+			while ((b = in.read()) >= 0)
+				output.write(b);
+			String text = output.toString();
+			assertEquals(CommandPipeline.DEFAULT_MAX_PENDING, text
+					.split("GARDEN", -1).length - 1);
+			assertTrue(text.contains("GAME OVER"));
+		} finally {
+			socket.close();
+		}
+		waitForSessions(0);
+		pipeline.shutdown();
+	}
+
+	@Test
+	public void testStop() throws Exception {
+		Socket socket = connect();
+		try {
+			readUntilPrompt(socket);
+			server.stop();
+			assertNull(server.getAddress());
+			assertEquals(-1, socket.getInputStream().read());
+		} finally {
+			socket.close();
+		}
+	}
+}
@@ -0,0 +1,281 @@
+package es.ucm.fdi.lps.p3.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import es.ucm.fdi.lps.p3.Game;
+import es.ucm.fdi.lps.p3.Game.Direction;
+import es.ucm.fdi.lps.p3.GameImage;
+import es.ucm.fdi.lps.p3.GameSave;
+import es.ucm.fdi.lps.p3.GameTemplate;
+import es.ucm.fdi.lps.p3.Item;
+import es.ucm.fdi.lps.p3.Location;
+import es.ucm.fdi.lps.p3.test.mock.CommandMock;
+import es.ucm.fdi.lps.p3.test.mock.GameMock;
+import es.ucm.fdi.lps.p3.test.mock.InputStreamMock;
+
+public class GameTemplateTest {
+
+	private static final String DEFINITION = "game \"Title\" \"Author\" \"Description\"\n"
+			+ "location hall \"HALL\" \"The hall\"\n"
+			+ "item \"coin\" \"A coin\" 10\n"
+			+ "item \"bone\" \"A bone\" 5\n"
+			+ "n garden\n"
+			+ "location garden \"GARDEN\" \"The garden\"\n"
+			+ "item \"rose\" \"A rose\" 1\n"
+			+ "s hall\n";
+
+	private GameTemplate template;
+
+	@Before
+	public void setUp() throws Exception {
+		template = GameTemplate.load(new InputStreamMock(DEFINITION));
+	}
+
+	private static Item getItem(Game game, String name) {
+		return game.getItemsFromLocation(name).iterator().next();
+	}
+
+	private static String names(Set<Item> items) {
+		StringBuilder names = new StringBuilder();
+		for (Iterator<Item> it = items.iterator(); it.hasNext();) {
+			names.append(it.next().getName());
+			if (it.hasNext())
+				names.append(" ");
+		}
+		return names.toString();
+	}
+
+	// Constructor
+	@Test(expected = IllegalArgumentException.class)
+	public void testNullGame() {
+		new GameTemplate((Game) null);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testGameWithoutWorld() {
+		new GameTemplate(new GameMock());
+	}
+
+	@Test
+	public void testLoadImage() throws Exception {
+		ByteArrayOutputStream image = new ByteArrayOutputStream();
+		GameImage.write(new Game(new InputStreamMock(DEFINITION)), image);
+		Game game = GameTemplate.load(ByteBuffer.wrap(image.toByteArray()))
+				.newGame();
+		assertEquals("HALL", game.reportLocationName());
+		assertEquals("coin bone", names(game.reportAllLocationItems()));
+	}
+
+	// Games
+	@Test
+	public void testGamesAreIndependent() {
+		Game first = template.newGame();
+		Game second = template.newGame();
+		Item coin = getItem(first, "coin");
+
+		first.moveItemFromLocationToInventory(coin);
+		first.movePlayer(Direction.NORTH);
+		assertTrue(first.isItemInInventory(coin));
+		assertEquals("GARDEN", first.reportLocationName());
+
+		assertEquals("HALL", second.reportLocationName());
+		assertFalse(second.isItemInInventory(coin));
+		assertTrue(second.isItemInLocation(coin));
+		assertEquals("coin bone", names(second.reportAllLocationItems()));
+		assertEquals("coin bone", names(template.newGame()
+				.reportAllLocationItems()));
+	}
+
+	@Test
+	public void testDroppedItemsGoLast() {
+		Game game = template.newGame();
+		Item coin = getItem(game, "coin");
+		game.moveItemFromLocationToInventory(coin);
+		assertEquals("bone", names(game.reportAllLocationItems()));
+		assertTrue(game.getItemsFromLocation("coin").isEmpty());
+
+		game.moveItemFromInventoryToLocation(coin);
+		assertEquals("bone coin", names(game.reportAllLocationItems()));
+		assertEquals(1, game.getItemsFromLocation("coin").size());
+
+		// The same order of a game with its own locations
+		Location hall = new Location("HALL", "The hall");
+		Item bone = new Item("bone", "A bone", 5);
+		Item ownCoin = new Item("coin", "A coin", 10);
+		hall.addItem(ownCoin);
+		hall.addItem(bone);
+		Game own = new GameMock(hall);
+		own.moveItemFromLocationToInventory(ownCoin);
+		own.moveItemFromInventoryToLocation(ownCoin);
+		assertEquals(names(own.reportAllLocationItems()), names(game
+				.reportAllLocationItems()));
+	}
+
+	@Test
+	public void testMovedToAnotherLocation() {
+		Game game = template.newGame();
+		Item bone = getItem(game, "bone");
+		game.moveItemFromLocationToInventory(bone);
+		game.movePlayer(Direction.NORTH);
+		game.moveItemFromInventoryToLocation(bone);
+		assertEquals("rose bone", names(game.reportAllLocationItems()));
+		assertTrue(game.isItemInLocation(bone));
+
+		game.movePlayer(Direction.SOUTH);
+		assertEquals("coin", names(game.reportAllLocationItems()));
+		assertFalse(game.isItemInLocation(bone));
+	}
+
+	@Test
+	public void testUndo() {
+		Game game = template.newGame();
+		Item coin = getItem(game, "coin");
+		game.moveItemFromLocationToInventory(coin);
+		game.addExecutedCommand(new CommandMock());
+		assertTrue(game.undoTurn());
+		assertTrue(game.isItemInLocation(coin));
+		assertFalse(game.isItemInInventory(coin));
+		assertEquals(0, game.reportInventoryValue());
+	}
+
+	@Test
+	public void testSaveAndRestore() throws Exception {
+		Game game = template.newGame();
+		game.moveItemFromLocationToInventory(getItem(game, "coin"));
+		Item bone = getItem(game, "bone");
+		game.moveItemFromLocationToInventory(bone);
+		game.movePlayer(Direction.NORTH);
+		game.moveItemFromInventoryToLocation(bone);
+		ByteArrayOutputStream save = new ByteArrayOutputStream();
+		GameSave.save(game, save);
+
+		Game restored = template.newGame();
+		GameSave.restore(restored, new ByteArrayInputStream(save
+				.toByteArray()));
+		assertEquals("GARDEN", restored.reportLocationName());
+		assertEquals("rose bone", names(restored.reportAllLocationItems()));
+		assertEquals(10, restored.reportInventoryValue());
+		restored.movePlayer(Direction.SOUTH);
+		assertTrue(restored.reportAllLocationItems().isEmpty());
+	}
+
+	// Reset
+	@Test(expected = IllegalStateException.class)
+	public void testResetWithoutWorld() {
+		new GameMock().reset();
+	}
+
+	@Test
+	public void testReset() {
+		Game game = template.newGame();
+		Item coin = getItem(game, "coin");
+		game.moveItemFromLocationToInventory(coin);
+		game.addExecutedCommand(new CommandMock());
+		game.movePlayer(Direction.NORTH);
+		game.moveItemFromInventoryToLocation(coin);
+		game.addExecutedCommand(new CommandMock());
+		game.end();
+
+		game.reset();
+		assertFalse(game.isEnded());
+		assertEquals("HALL", game.reportLocationName());
+		assertEquals("coin bone", names(game.reportAllLocationItems()));
+		assertTrue(game.reportAllInventoryItems().isEmpty());
+		assertEquals(0, game.reportInventoryValue());
+		assertEquals(0, game.getNumberOfExecutedCommands());
+		assertFalse(game.undoTurn());
+		game.movePlayer(Direction.NORTH);
+		assertEquals("rose", names(game.reportAllLocationItems()));
+	}
+
+	@Test
+	public void testResetLoadedGame() throws Exception {
+		Game game = new Game(new InputStreamMock(DEFINITION));
+		game.moveItemFromLocationToInventory(getItem(game, "bone"));
+		game.movePlayer(Direction.NORTH);
+		game.reset();
+		assertEquals("HALL", game.reportLocationName());
+		assertEquals("coin bone", names(game.reportAllLocationItems()));
+	}
+
+	@Test
+	public void testConcurrentGames() throws Exception {
+		final List<Throwable> errors = new ArrayList<Throwable>();
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < 8; i++) {
+			threads.add(new Thread() {
+				public void run() {
+					try {
+						Game game = template.newGame();
+						Item coin = getItem(game, "coin");
+						for (int j = 0; j < 1000; j++) {
+							game.moveItemFromLocationToInventory(coin);
+							game.moveItemFromInventoryToLocation(coin);
+						}
+						if (!game.isItemInLocation(coin))
+							throw new AssertionError();
+					} catch (Throwable e) {
+						synchronized (errors) {
+							errors.add(e);
+						}
+					}
+				}
+			});
+		}
+		for (Thread thread : threads)
+			thread.start();
+		for (Thread thread : threads)
+			thread.join();
+		assertTrue(errors.toString(), errors.isEmpty());
+		assertEquals("coin bone", names(template.newGame()
+				.reportAllLocationItems()));
+	}
+
+	// Moved items
+	@Test(timeout = 10000)
+	public void testManyMovedItems() throws Exception {
+		// Looking up the items of a location does not walk all the items
+		// moved in the world, so it does not slow down as they grow
+		int moved = 50000;
+		StringBuilder definition = new StringBuilder(
+				"game \"Title\" \"Author\" \"Description\"\n"
+						+ "location hall \"HALL\" \"The hall\"\n"
+						+ "item \"coin\" \"A coin\" 10\n" + "n garden\n"
+						+ "location garden \"GARDEN\" \"The garden\"\n");
+		for (int i = 0; i < moved; i++)
+			definition.append("item \"pebble" + i + "\" \"A pebble\" 0\n");
+		definition.append("s hall\n");
+		Game game = GameTemplate.load(
+				new InputStreamMock(definition.toString())).newGame();
+
+		game.movePlayer(Direction.NORTH);
+		for (Item pebble : new ArrayList<Item>(game.reportAllLocationItems()))
+			game.moveItemFromLocationToInventory(pebble);
+		game.moveItemFromInventoryToLocation(game.getItemsFromInventory(
+				"pebble0").iterator().next());
+		game.movePlayer(Direction.SOUTH);
+
+		for (int i = 0; i < moved; i++) {
+			Item coin = getItem(game, "coin");
+			game.moveItemFromLocationToInventory(coin);
+			game.moveItemFromInventoryToLocation(coin);
+		}
+		assertEquals("coin", names(game.reportAllLocationItems()));
+		assertEquals(moved - 1, game.reportAllInventoryItems().size());
+		game.movePlayer(Direction.NORTH);
+		assertEquals("pebble0", names(game.reportAllLocationItems()));
+	}
+}
@@ -4,6 +4,10 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.Charset;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -12,6 +16,7 @@ import es.ucm.fdi.lps.p3.Game;
 import es.ucm.fdi.lps.p3.Game.Direction;
 import es.ucm.fdi.lps.p3.Item;
 import es.ucm.fdi.lps.p3.Location;
+import es.ucm.fdi.lps.p3.Timeline;
 import es.ucm.fdi.lps.p3.command.Command;
 import es.ucm.fdi.lps.p3.exception.InvalidGameDefinitionException;
 import es.ucm.fdi.lps.p3.exception.ItemAlreadyInRepositoryException;
@@ -44,6 +49,123 @@ public class GameTest {
 		new Game("Title", "Author", "Description", new LocationMock());
 	}
 
+	@Test
+	public void testGameDefinition() throws InvalidGameDefinitionException {
+		Game testGame = new Game(new InputStreamMock("# A comment\n"
+				+ "game Title \"The author\" \"The \\\"description\\\"\"\n"
+				+ "location hall \"HALL\" \"The hall\" # Another comment\n"
+				+ "item \"bone\" \"A bone\" -5\n"
+				+ "ne exit\n"
+				+ "location exit \"EXIT\" \"The exit\" 0 \"Bye\"\n"));
+		assertEquals("HALL", testGame.reportLocationName());
+		assertEquals(-5, testGame.reportAllLocationItems().iterator().next()
+				.getValue());
+		testGame.movePlayer(Direction.NORTHEAST);
+		assertEquals("EXIT", testGame.reportLocationName());
+		assertTrue(testGame.isEnded());
+	}
+
+	@Test
+	public void testGameDefinitionCharset()
+			throws InvalidGameDefinitionException {
+		Charset utf16 = Charset.forName("UTF-16");
+		Game testGame = new Game(new ByteArrayInputStream(
+				"game \"T\" \"A\" \"D\"\nlocation hall \"SAL\u00d3N\" \"Hall\"\n"
+						.getBytes(utf16)), utf16);
+		assertEquals("SAL\u00d3N", testGame.reportLocationName());
+	}
+
+	@Test
+	public void testGameDefinitionErrorPosition() {
+		try {
+			new Game(new InputStreamMock("game \"T\" \"A\" \"D\"\n"
+					+ "location hall \"HALL\" \"The hall\"\n"
+					+ "item \"coin\" \"A coin\" \"ten\"\n"));
+			fail();
+		} catch (InvalidGameDefinitionException e) {
+			assertEquals(3, e.getLine());
+			assertEquals(22, e.getColumn());
+		}
+	}
+
+	private static String bigGameDefinition(int locations) {
+		StringBuilder sb = new StringBuilder("game \"T\" \"A\" \"D\"\n");
+		for (int i = 0; i < locations; i++) {
+			sb.append("location l" + i + " \"NAME " + i + "\" \"");
+			for (int j = 0; j < 20; j++)
+				sb.append("Location " + i + ". ");
+			sb.append("\"\nitem \"coin\" \"A coin\" " + i + "\n");
+			sb.append("n l" + ((i + 1) % locations) + "\n");
+			sb.append("s l" + ((i + locations - 1) % locations) + "\n");
+		}
+		return sb.toString();
+	}
+
+	@Test
+	public void testGameDefinitionInParallel()
+			throws InvalidGameDefinitionException {
+		String definition = bigGameDefinition(5000);
+		Charset charset = Charset.forName("UTF-8");
+		Game sequential = new Game(new ByteArrayInputStream(definition
+				.getBytes(charset)), charset, false);
+		Game parallel = new Game(new ByteArrayInputStream(definition
+				.getBytes(charset)), charset, true);
+
+		assertEquals(sequential.reportLocationName(), parallel
+				.reportLocationName());
+		assertEquals("NAME 0", parallel.reportLocationName());
+		for (int i = 0; i < 5000; i++) {
+			parallel.movePlayer(Direction.NORTH);
+			sequential.movePlayer(Direction.NORTH);
+			assertEquals(sequential.reportLocationDescription(), parallel
+					.reportLocationDescription());
+		}
+		parallel.movePlayer(Direction.SOUTH);
+		assertEquals("NAME 4999", parallel.reportLocationName());
+		assertEquals(4999, parallel.reportAllLocationItems().iterator()
+				.next().getValue());
+	}
+
+	@Test(expected = es.ucm.fdi.lps.p3.exception.InvalidGameDefinitionException.class)
+	public void testGameDefinitionInParallelError()
+			throws InvalidGameDefinitionException {
+		Charset charset = Charset.forName("UTF-8");
+		new Game(new ByteArrayInputStream((bigGameDefinition(5000) + "x")
+				.getBytes(charset)), charset, true);
+	}
+
+	@Test(expected = NoConnectedLocationException.class)
+	public void testGameDefinitionNoConnection()
+			throws InvalidGameDefinitionException {
+		Game testGame = new Game(new InputStreamMock("game \"T\" \"A\" \"D\"\n"
+				+ "location hall \"HALL\" \"The hall\"\n" + "n exit\n"
+				+ "location exit \"EXIT\" \"The exit\"\n" + "s hall\n"));
+		assertFalse(testGame.hasConnectedLocation(Direction.SOUTH));
+		testGame.movePlayer(Direction.NORTH);
+		testGame.movePlayer(Direction.SOUTH);
+		assertEquals("HALL", testGame.reportLocationName());
+		testGame.movePlayer(Direction.SOUTH);
+	}
+
+	@Test
+	public void testGameDefinitionRedefinedInitialLocation()
+			throws InvalidGameDefinitionException {
+		Game testGame = new Game(new InputStreamMock("game \"T\" \"A\" \"D\"\n"
+				+ "location hall \"HALL\" \"The hall\"\n" + "n exit\n"
+				+ "location exit \"EXIT\" \"The exit\"\n" + "s hall\n"
+				+ "location hall \"HALL 2\" \"The new hall\"\n" + "n exit\n"));
+		// The initial location is the first one, which is no longer linked
+		assertEquals("HALL", testGame.reportLocationName());
+		assertFalse(testGame.hasConnectedLocation(Direction.NORTH));
+	}
+
+	@Test(expected = es.ucm.fdi.lps.p3.exception.InvalidGameDefinitionException.class)
+	public void testGameDefinitionUnknownDirection()
+			throws InvalidGameDefinitionException {
+		new Game(new InputStreamMock("game \"T\" \"A\" \"D\"\n"
+				+ "location hall \"HALL\" \"The hall\"\n" + "north hall\n"));
+	}
+
 	// AddExecutedCommand
 	@Test(expected = java.lang.IllegalArgumentException.class)
 	public void testAddNullExecutedCommand() {
@@ -198,6 +320,203 @@ public class GameTest {
 		game.movePlayer(Direction.SOUTH);
 	}
 
+	@Test
+	public void testMovePlayerToExitLocation() {
+		Location location = new LocationMock();
+		Location exit = new LocationMock(10);
+		location.setConnection(Direction.NORTH, exit);
+		exit.setConnection(Direction.SOUTH, location);
+		location.addItem(new Item("coin", "A coin", 10));
+		location.addItem(new Item("bone", "A bone", -10));
+		Game testGame = new GameMock(location);
+
+		testGame.moveItemFromLocationToInventory((Item) location.getItems(
+				"coin").toArray()[0]);
+		testGame.moveItemFromLocationToInventory((Item) location.getItems(
+				"bone").toArray()[0]);
+		testGame.movePlayer(Direction.NORTH);
+		assertFalse(testGame.isEnded());
+
+		testGame.movePlayer(Direction.SOUTH);
+		testGame.moveItemFromInventoryToLocation((Item) testGame
+				.getItemsFromInventory("bone").toArray()[0]);
+		testGame.movePlayer(Direction.NORTH);
+		assertTrue(testGame.isEnded());
+		assertTrue(testGame.hasEvents());
+	}
+
+	// UndoTurn and RedoTurn
+	@Test
+	public void testUndoRedoTurn() {
+		Location hall = new Location("HALL", "The hall");
+		Location garden = new Location("GARDEN", "The garden");
+		hall.setConnection(Direction.NORTH, garden);
+		Item coin = new Item("coin", "A coin", 10);
+		hall.addItem(coin);
+		Game testGame = new GameMock(hall);
+		assertFalse(testGame.undoTurn());
+
+		testGame.moveItemFromLocationToInventory(coin);
+		testGame.addExecutedCommand(new CommandMock());
+		testGame.movePlayer(Direction.NORTH);
+		testGame.addExecutedCommand(new CommandMock());
+		assertEquals(2, testGame.getCurrentTurn().getNumber());
+
+		// The way back does not need to be connected
+		assertTrue(testGame.undoTurn());
+		assertEquals("HALL", testGame.reportLocationName());
+		assertTrue(testGame.undoTurn());
+		assertTrue(testGame.isItemInLocation(coin));
+		assertEquals(0, testGame.reportInventoryValue());
+		assertFalse(testGame.undoTurn());
+
+		assertTrue(testGame.redoTurn());
+		assertTrue(testGame.isItemInInventory(coin));
+		assertTrue(testGame.redoTurn());
+		assertEquals("GARDEN", testGame.reportLocationName());
+		assertFalse(testGame.redoTurn());
+	}
+
+	@Test
+	public void testUndoPendingChanges() {
+		Location hall = new Location("HALL", "The hall");
+		Item coin = new Item("coin", "A coin", 10);
+		hall.addItem(coin);
+		Game testGame = new GameMock(hall);
+
+		testGame.moveItemFromLocationToInventory(coin);
+		assertTrue(testGame.undoTurn());
+		assertTrue(testGame.isItemInLocation(coin));
+		assertEquals(0, testGame.getCurrentTurn().getNumber());
+	}
+
+	@Test
+	public void testUndoTurnInWorld() throws InvalidGameDefinitionException {
+		Game testGame = new Game(new InputStreamMock("game Title \"A\" \"D\"\n"
+				+ "location hall \"HALL\" \"The hall\"\n"
+				+ "item \"bone\" \"A bone\" 5\n" + "n garden\n"
+				+ "location garden \"GARDEN\" \"The garden\"\n"));
+		testGame.movePlayer(Direction.NORTH);
+		testGame.addExecutedCommand(new CommandMock());
+		assertFalse(testGame.hasConnectedLocation(Direction.NORTH));
+
+		assertTrue(testGame.undoTurn());
+		assertEquals("HALL", testGame.reportLocationName());
+		assertTrue(testGame.hasConnectedLocation(Direction.NORTH));
+	}
+
+	@Test
+	public void testEmptyTurnsAreNotKept() {
+		Location hall = new Location("HALL", "The hall");
+		Item coin = new Item("coin", "A coin", 10);
+		hall.addItem(coin);
+		Game testGame = new GameMock(hall);
+
+		testGame.moveItemFromLocationToInventory(coin);
+		testGame.addExecutedCommand(new CommandMock());
+		Timeline.Turn taken = testGame.getCurrentTurn();
+		for (int i = 0; i < 3; i++)
+			testGame.addExecutedCommand(new CommandMock());
+		assertSame(taken, testGame.getCurrentTurn());
+
+		// Undoing a turn without changes does not undo the turn before it
+		for (int i = 0; i < 3; i++) {
+			assertTrue(testGame.undoTurn());
+			assertTrue(testGame.isItemInInventory(coin));
+		}
+		assertTrue(testGame.undoTurn());
+		assertTrue(testGame.isItemInLocation(coin));
+		assertFalse(testGame.undoTurn());
+	}
+
+	@Test
+	public void testTimelineIsBounded() {
+		Location hall = new Location("HALL", "The hall");
+		Location garden = new Location("GARDEN", "The garden");
+		hall.setConnection(Direction.NORTH, garden);
+		garden.setConnection(Direction.SOUTH, hall);
+		Game testGame = new GameMock(hall);
+		testGame.setCommandHistoryLimits(3, 0);
+
+		for (int i = 0; i < 10; i++) {
+			testGame.movePlayer(Direction.NORTH);
+			testGame.addExecutedCommand(new CommandMock());
+			testGame.addExecutedCommand(new CommandMock());
+			testGame.movePlayer(Direction.SOUTH);
+			testGame.addExecutedCommand(new CommandMock());
+		}
+		assertEquals(20, testGame.getCurrentTurn().getNumber());
+
+		// Only the turns of the commands in the history can be undone
+		assertTrue(testGame.undoTurn());
+		assertEquals("GARDEN", testGame.reportLocationName());
+		assertTrue(testGame.undoTurn());
+		assertTrue(testGame.undoTurn());
+		assertEquals("HALL", testGame.reportLocationName());
+		assertFalse(testGame.undoTurn());
+	}
+
+	@Test(expected = java.lang.IllegalArgumentException.class)
+	public void testGoToDiscardedTurn() {
+		Location hall = new Location("HALL", "The hall");
+		Location garden = new Location("GARDEN", "The garden");
+		hall.setConnection(Direction.NORTH, garden);
+		Game testGame = new GameMock(hall);
+		Timeline.Turn start = testGame.getCurrentTurn();
+		testGame.setCommandHistoryLimits(1, 0);
+		testGame.movePlayer(Direction.NORTH);
+		testGame.addExecutedCommand(new CommandMock());
+		testGame.addExecutedCommand(new CommandMock());
+		testGame.goToTurn(start);
+	}
+
+	// GoToTurn
+	@Test
+	public void testGoToTurn() {
+		Location hall = new Location("HALL", "The hall");
+		Location garden = new Location("GARDEN", "The garden");
+		hall.setConnection(Direction.NORTH, garden);
+		Item coin = new Item("coin", "A coin", 10);
+		hall.addItem(coin);
+		Game testGame = new GameMock(hall);
+		Timeline.Turn start = testGame.getCurrentTurn();
+
+		testGame.moveItemFromLocationToInventory(coin);
+		testGame.addExecutedCommand(new CommandMock());
+		Timeline.Turn taken = testGame.getCurrentTurn();
+
+		// A new branch after undoing the first turn
+		testGame.undoTurn();
+		testGame.movePlayer(Direction.NORTH);
+		testGame.addExecutedCommand(new CommandMock());
+		Timeline.Turn moved = testGame.getCurrentTurn();
+		assertEquals(1, moved.getNumber());
+
+		testGame.goToTurn(taken);
+		assertEquals("HALL", testGame.reportLocationName());
+		assertTrue(testGame.isItemInInventory(coin));
+
+		testGame.goToTurn(moved);
+		assertEquals("GARDEN", testGame.reportLocationName());
+		assertTrue(hall.hasItem(coin));
+
+		testGame.goToTurn(start);
+		assertEquals("HALL", testGame.reportLocationName());
+		assertTrue(hall.hasItem(coin));
+		assertTrue(testGame.redoTurn());
+		assertEquals("GARDEN", testGame.reportLocationName());
+	}
+
+	@Test(expected = java.lang.IllegalArgumentException.class)
+	public void testGoToNullTurn() {
+		new GameMock().goToTurn(null);
+	}
+
+	@Test(expected = java.lang.IllegalArgumentException.class)
+	public void testGoToTurnOfAnotherGame() {
+		new GameMock().goToTurn(new GameMock().getCurrentTurn());
+	}
+
 	// RemoveNewestExecutedCommand
 	@Test
 	public void testRemoveNewestExecutedCommand() {
@@ -0,0 +1,111 @@
+package es.ucm.fdi.lps.p3.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringWriter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import es.ucm.fdi.lps.p3.Game;
+import es.ucm.fdi.lps.p3.Game.Direction;
+import es.ucm.fdi.lps.p3.GameValidator;
+import es.ucm.fdi.lps.p3.GameValidator.Report;
+import es.ucm.fdi.lps.p3.test.mock.InputStreamMock;
+
+public class GameValidatorTest {
+
+	private static final String DEFINITION = "game \"Title\" \"Author\" \"Description\"\n"
+			+ "location hall \"HALL\" \"The hall\"\n"
+			+ "item \"coin\" \"A coin\" 10\n"
+			+ "item \"bone\" \"A bone\" -5\n"
+			+ "n kitchen\n"
+			+ "e garden\n"
+			+ "location kitchen \"KITCHEN\" \"The kitchen\"\n"
+			+ "s hall\n"
+			+ "w cellar\n"
+			+ "location kitchen \"KITCHEN\" \"The kitchen\"\n"
+			+ "s hall\n"
+			+ "u attic\n"
+			+ "location garden \"GARDEN\" \"The garden\" 11 \"Bye\"\n"
+			+ "location attic \"ATTIC\" \"The attic\" 5 \"Bye\"\n";
+
+	private Report report;
+
+	@Before
+	public void setUp() throws Exception {
+		report = GameValidator.validate(new Game(new InputStreamMock(
+				DEFINITION)));
+	}
+
+	@Test(expected = java.lang.IllegalArgumentException.class)
+	public void testValidateNullGame() {
+		GameValidator.validate(null);
+	}
+
+	@Test
+	public void testDuplicateIds() {
+		assertEquals(1, report.getDuplicateIds().size());
+		assertEquals("kitchen", report.getDuplicateIds().get(0));
+	}
+
+	@Test
+	public void testDanglingLinks() {
+		assertEquals(0, report.getDanglingLinks().size());
+	}
+
+	@Test
+	public void testAsymmetricExits() {
+		assertEquals(2, report.getAsymmetricExits().size());
+		assertEquals("garden", report.getAsymmetricExits().get(0).getTo());
+		assertEquals(Direction.UP, report.getAsymmetricExits().get(1)
+				.getDirection());
+	}
+
+	@Test
+	public void testUnreachable() {
+		assertTrue(report.getUnreachable().isEmpty());
+	}
+
+	@Test
+	public void testComponents() {
+		assertEquals(3, report.getComponents().size());
+		assertEquals(2, report.getComponents().get(2).size());
+	}
+
+	@Test
+	public void testExits() {
+		assertEquals(2, report.getExits().size());
+		assertEquals(10, report.getExits().get(0).getMaxValue());
+		assertFalse(report.getExits().get(0).isSatisfiable());
+		assertTrue(report.getExits().get(1).isSatisfiable());
+		assertFalse(report.isValid());
+	}
+
+	@Test
+	public void testWrite() throws Exception {
+		StringWriter out = new StringWriter();
+		report.write(out);
+		assertTrue(out.toString().contains("\"duplicateIds\": [\"kitchen\"]"));
+		assertTrue(out.toString().contains("\"valid\": false"));
+	}
+
+	@Test
+	public void testBigWorld() throws Exception {
+		StringBuilder sb = new StringBuilder("game \"T\" \"A\" \"D\"\n");
+		for (int i = 0; i < 20000; i++) {
+			sb.append("location l" + i + " \"L\" \"L\"\n");
+			sb.append("n l" + ((i + 1) % 20000) + "\n");
+			sb.append("s l" + ((i + 19999) % 20000) + "\n");
+		}
+		sb.append("location lost \"L\" \"L\"\ne nowhere\n");
+		Report big = GameValidator.validate(new Game(new InputStreamMock(sb
+				.toString())));
+		assertEquals(2, big.getComponents().size());
+		assertEquals(1, big.getUnreachable().size());
+		assertEquals("nowhere", big.getDanglingLinks().get(0).getTo());
+		assertTrue(big.getAsymmetricExits().isEmpty());
+	}
+}
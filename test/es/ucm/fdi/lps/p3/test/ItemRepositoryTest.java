@@ -1,6 +1,8 @@
 package es.ucm.fdi.lps.p3.test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import org.junit.Before;
@@ -60,6 +62,39 @@ public class ItemRepositoryTest {
 		assertEquals("Wrong item returned", item1.getName(), temp.getName());
 	}
 
+	@Test
+	public void testGetItemsKeepsInsertionOrder() {
+		ItemRepository testRepository = new ItemRepository();
+		Item first = new Item("Item", "First item", 1);
+		Item second = new Item("Item", "Second item", 2);
+		testRepository.addItem(first);
+		testRepository.addItem(item1);
+		testRepository.addItem(second);
+		Object[] temp = testRepository.getItems("Item").toArray();
+		assertEquals("Wrong item number", 2, temp.length);
+		assertSame("Wrong item order", first, temp[0]);
+		assertSame("Wrong item order", second, temp[1]);
+	}
+
+	@Test
+	public void testGetItemsAfterRemoveItem() {
+		ItemRepository testRepository = new ItemRepository();
+		testRepository.addItem(item1);
+		testRepository.removeItem(item1);
+		assertTrue("Removed item still found", testRepository.getItems(
+				item1.getName()).isEmpty());
+		testRepository.addItem(item1);
+		assertEquals("Wrong item number", 1,
+				testRepository.getItems(item1.getName()).size());
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testGetItemsIsReadOnly() {
+		ItemRepository testRepository = new ItemRepository();
+		testRepository.addItem(item1);
+		testRepository.getItems(item1.getName()).clear();
+	}
+
 	// GetAllItems
 	@Test
 	public void testGetAllItems() {
@@ -81,6 +116,19 @@ public class ItemRepositoryTest {
 				testRepository.getTotalValue());
 	}
 
+	@Test
+	public void testGetTotalValueAfterRemoveItem() {
+		ItemRepository testRepository = new ItemRepository();
+		Item bone = new Item("bone", "Negative item", -10);
+		testRepository.addItem(item1);
+		testRepository.addItem(bone);
+		assertEquals("Wrong Repository value", 0,
+				testRepository.getTotalValue());
+		testRepository.removeItem(item1);
+		assertEquals("Wrong Repository value", -10,
+				testRepository.getTotalValue());
+	}
+
 	// RemoveItem
 	@Test(expected = java.lang.IllegalArgumentException.class)
 	public void testRemoveNullItem() {
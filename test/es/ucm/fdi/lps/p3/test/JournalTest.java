@@ -0,0 +1,263 @@
+package es.ucm.fdi.lps.p3.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import es.ucm.fdi.lps.p3.Engine;
+import es.ucm.fdi.lps.p3.Game;
+import es.ucm.fdi.lps.p3.Game.Direction;
+import es.ucm.fdi.lps.p3.Item;
+import es.ucm.fdi.lps.p3.Journal;
+import es.ucm.fdi.lps.p3.JournalLog;
+import es.ucm.fdi.lps.p3.Location;
+import es.ucm.fdi.lps.p3.exception.InvalidGameDefinitionException;
+import es.ucm.fdi.lps.p3.test.mock.CommandMock;
+import es.ucm.fdi.lps.p3.test.mock.GameMock;
+import es.ucm.fdi.lps.p3.test.mock.InputStreamMock;
+import es.ucm.fdi.lps.p3.test.mock.OutputStreamMock;
+
+public class JournalTest {
+
+	private File file;
+
+	@Before
+	public void setUp() throws IOException {
+		file = File.createTempFile("journal", ".log");
+	}
+
+	@After
+	public void tearDown() {
+		file.delete();
+	}
+
+	private static Game newGame() throws InvalidGameDefinitionException {
+		return new Game(new InputStreamMock("game Title \"A\" \"D\"\n"
+				+ "location hall \"HALL\" \"The hall\"\n"
+				+ "item \"bone\" \"A bone\" 5\n" + "n garden\n"
+				+ "location garden \"GARDEN\" \"The garden\"\n"
+				+ "item \"coin\" \"A coin\" 10\n" + "s hall\n"));
+	}
+
+	private static Item getLocationItem(Game game) {
+		return game.reportAllLocationItems().iterator().next();
+	}
+
+	/**
+	 * Plays two turns: taking the bone and going to the garden.
+	 */
+	private static void play(Game game, Journal journal) throws IOException {
+		game.moveItemFromLocationToInventory(getLocationItem(game));
+		journal.commitTurn(new CommandMock());
+		game.movePlayer(Direction.NORTH);
+		journal.commitTurn(new CommandMock());
+	}
+
+	private static void assertPlayed(Game game) {
+		assertEquals("GARDEN", game.reportLocationName());
+		assertEquals(5, game.reportInventoryValue());
+		assertEquals("coin", getLocationItem(game).getName());
+	}
+
+	// Constructor
+	@Test(expected = IllegalArgumentException.class)
+	public void testNullLog() throws InvalidGameDefinitionException {
+		new Journal(null, "main", newGame());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testGameWithoutWorld() throws IOException {
+		JournalLog log = new JournalLog(file);
+		try {
+			new Journal(log, "main", new GameMock(new Location("HALL",
+					"The hall")));
+		} finally {
+			log.close();
+		}
+	}
+
+	// Reset
+	@Test
+	public void testResetEngine() throws IOException,
+			InvalidGameDefinitionException {
+		JournalLog log = new JournalLog(file);
+		Game game = newGame();
+		Journal journal = new Journal(log, "main", game);
+		Engine engine = new Engine(game, new OutputStreamMock());
+		engine.setJournal(journal);
+		engine.start();
+		engine.step("go n");
+		engine.reset();
+
+		// The next player is not recorded in the journal of the previous one
+		engine.start();
+		engine.step("take bone");
+		engine.step("go n");
+		journal.commitTurn(new CommandMock());
+		log.sync();
+
+		Game recovered = newGame();
+		assertEquals(2, Journal.recover(file, "main", recovered));
+		assertEquals("GARDEN", recovered.reportLocationName());
+		assertEquals(0, recovered.reportInventoryValue());
+		assertEquals("coin", getLocationItem(recovered).getName());
+		log.close();
+	}
+
+	// Recover
+	@Test
+	public void testRecover() throws IOException,
+			InvalidGameDefinitionException {
+		JournalLog log = new JournalLog(file);
+		Game game = newGame();
+		play(game, new Journal(log, "main", game));
+		log.sync();
+
+		Game recovered = newGame();
+		assertEquals(2, Journal.recover(file, "main", recovered));
+		assertPlayed(recovered);
+		log.close();
+	}
+
+	@Test
+	public void testRecoverOtherSession() throws IOException,
+			InvalidGameDefinitionException {
+		JournalLog log = new JournalLog(file);
+		Game game = newGame();
+		play(game, new Journal(log, "main", game));
+		log.close();
+
+		Game other = newGame();
+		assertEquals(0, Journal.recover(file, "other", other));
+		assertEquals("HALL", other.reportLocationName());
+	}
+
+	@Test
+	public void testRecoverFromSnapshot() throws IOException,
+			InvalidGameDefinitionException {
+		JournalLog log = new JournalLog(file);
+		Game game = newGame();
+		Journal journal = new Journal(log, "main", game, 2);
+		play(game, journal);
+		game.moveItemFromInventoryToLocation(game.reportAllInventoryItems()
+				.iterator().next());
+		journal.commitTurn(new CommandMock());
+		log.close();
+
+		Game recovered = newGame();
+		assertEquals(1, Journal.recover(file, "main", recovered));
+		assertEquals("GARDEN", recovered.reportLocationName());
+		assertEquals(0, recovered.reportInventoryValue());
+		assertEquals(2, recovered.reportAllLocationItems().size());
+	}
+
+	@Test
+	public void testRecoverClosedSession() throws IOException,
+			InvalidGameDefinitionException {
+		JournalLog log = new JournalLog(file);
+		Game game = newGame();
+		Journal journal = new Journal(log, "main", game);
+		play(game, journal);
+		journal.close();
+		log.close();
+
+		Game recovered = newGame();
+		assertEquals(0, Journal.recover(file, "main", recovered));
+		assertEquals("HALL", recovered.reportLocationName());
+	}
+
+	@Test
+	public void testRecoverUndoneTurn() throws IOException,
+			InvalidGameDefinitionException {
+		JournalLog log = new JournalLog(file);
+		Game game = newGame();
+		Journal journal = new Journal(log, "main", game);
+		play(game, journal);
+		assertTrue(game.undoTurn());
+		journal.commitTurn(new CommandMock());
+		log.close();
+
+		Game recovered = newGame();
+		assertEquals(3, Journal.recover(file, "main", recovered));
+		assertEquals("HALL", recovered.reportLocationName());
+		assertEquals(0, recovered.reportInventoryValue());
+	}
+
+	@Test
+	public void testTornRecord() throws IOException,
+			InvalidGameDefinitionException {
+		JournalLog log = new JournalLog(file);
+		Game game = newGame();
+		play(game, new Journal(log, "main", game));
+		log.close();
+		long length = file.length();
+
+		OutputStream out = new FileOutputStream(file, true);
+		try {
+			out.write(new byte[] { 0, 0, 0, 20, 1, 2, 3 });
+		} finally {
+			out.close();
+		}
+		Game recovered = newGame();
+		assertEquals(2, Journal.recover(file, "main", recovered));
+		assertPlayed(recovered);
+
+		// The torn record is discarded when the log is opened again
+		new JournalLog(file).close();
+		assertEquals(length, file.length());
+	}
+
+	// Compaction
+	@Test
+	public void testCompaction() throws IOException,
+			InvalidGameDefinitionException {
+		JournalLog log = new JournalLog(file, 1);
+		Game closed = newGame();
+		Journal closedJournal = new Journal(log, "closed", closed);
+		play(closed, closedJournal);
+		closedJournal.close();
+
+		Game game = newGame();
+		Journal journal = new Journal(log, "main", game, 2);
+		play(game, journal);
+		game.movePlayer(Direction.SOUTH);
+		journal.commitTurn(new CommandMock());
+		log.close();
+
+		Game recovered = newGame();
+		assertEquals(1, Journal.recover(file, "main", recovered));
+		assertEquals("HALL", recovered.reportLocationName());
+		assertEquals(5, recovered.reportInventoryValue());
+		assertTrue(recovered.reportAllLocationItems().isEmpty());
+		assertEquals(0, Journal.recover(file, "closed", newGame()));
+		assertFalse(new File(file.getPath() + ".tmp").exists());
+	}
+
+	@Test
+	public void testCompactionHysteresis() throws IOException,
+			InvalidGameDefinitionException {
+		JournalLog log = new JournalLog(file, 1);
+		Game game = newGame();
+		Journal journal = new Journal(log, "main", game);
+		for (int i = 0; i < 4; i++) {
+			// A batch each, all of them needed for recovering the session
+			journal.commitTurn(new CommandMock());
+			log.sync();
+		}
+		log.close();
+
+		// The first batch compacts the log, but the second one does not
+		// double its size; the third one does, and the fourth one does not
+		assertEquals(2, log.getNumberOfCompactions());
+		assertEquals(4, Journal.recover(file, "main", newGame()));
+	}
+}
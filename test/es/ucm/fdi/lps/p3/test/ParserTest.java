@@ -1,7 +1,12 @@
 package es.ucm.fdi.lps.p3.test;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.util.Properties;
 
@@ -10,7 +15,15 @@ import org.junit.Test;
 
 import es.ucm.fdi.lps.p3.Game;
 import es.ucm.fdi.lps.p3.Parser;
+import es.ucm.fdi.lps.p3.command.Command;
+import es.ucm.fdi.lps.p3.command.DropCommand;
+import es.ucm.fdi.lps.p3.command.GoCommand;
+import es.ucm.fdi.lps.p3.command.ParsedCommand;
+import es.ucm.fdi.lps.p3.command.QuitCommand;
+import es.ucm.fdi.lps.p3.command.TakeCommand;
+import es.ucm.fdi.lps.p3.Game.Direction;
 import es.ucm.fdi.lps.p3.exception.NoNextCommandException;
+import es.ucm.fdi.lps.p3.exception.UnparsedCommandException;
 import es.ucm.fdi.lps.p3.test.mock.GameMock;
 import es.ucm.fdi.lps.p3.test.mock.InputStreamMock;
 
@@ -108,4 +121,84 @@ public class ParserTest {
 				new Properties());
 		testParser.parseNextCommand();
 	}
+
+	@Test
+	public void testParseNextCommandVerbs() {
+		Parser testParser = new Parser(new ByteArrayInputStream(
+				"TAKE key\n  go north\nexit\n quit\nxyzzy\n".getBytes()),
+				mockGame);
+		assertTrue(testParser.parseNextCommand() instanceof TakeCommand);
+		assertTrue(testParser.parseNextCommand() instanceof GoCommand);
+		assertTrue(testParser.parseNextCommand() instanceof QuitCommand);
+		// The Quit command compares the whole line
+		assertNull(testParser.parseNextCommand());
+		assertNull(testParser.parseNextCommand());
+	}
+
+	@Test
+	public void testKeywordCollisions() {
+		assertTrue(new Parser(mockInputStream, mockGame, new Properties())
+				.getKeywordCollisions().isEmpty());
+
+		Properties config = new Properties();
+		config.setProperty("keyword.dropCommand.abbrev", "G");
+		Parser testParser = new Parser(new ByteArrayInputStream(
+				"g north\ng key\n".getBytes()), mockGame, config);
+		assertEquals(1, testParser.getKeywordCollisions().size());
+		// The commands sharing a keyword are asked in prototype order
+		assertTrue(testParser.parseNextCommand() instanceof GoCommand);
+		assertTrue(testParser.parseNextCommand() instanceof DropCommand);
+	}
+
+	// Parse
+	@Test(expected = IllegalArgumentException.class)
+	public void testParseNull() {
+		new Parser(mockInputStream, mockGame).parse(null);
+	}
+
+	@Test
+	public void testParse() {
+		Parser testParser = new Parser(mockInputStream, mockGame);
+		ParsedCommand parsedCommand = testParser.parse("go N");
+		assertTrue(parsedCommand.getPrototype() instanceof GoCommand);
+		assertEquals(Direction.NORTH, parsedCommand.getDirection());
+		assertNull(parsedCommand.getItemName());
+		assertEquals("key", testParser.parse("take key").getItemName());
+		assertNull(testParser.parse("go nowhere"));
+	}
+
+	@Test(expected = UnparsedCommandException.class)
+	public void testParseKeepsPrototypes() {
+		Parser testParser = new Parser(mockInputStream, mockGame);
+		ParsedCommand parsedCommand = testParser.parse("drop key");
+		Command command = parsedCommand.newCommand(new GameMock());
+		assertNotSame(parsedCommand.getPrototype(), command);
+		assertNotSame(command, parsedCommand.newCommand(new GameMock()));
+		parsedCommand.getPrototype().execute();
+	}
+
+	@Test
+	public void testParseInThreads() throws InterruptedException {
+		final Parser testParser = new Parser(mockInputStream, mockGame);
+		final boolean[] ok = new boolean[4];
+		Thread[] threads = new Thread[ok.length];
+		for (int i = 0; i < threads.length; i++) {
+			final int n = i;
+			threads[i] = new Thread() {
+				public void run() {
+					ok[n] = true;
+					for (int j = 0; j < 1000; j++) {
+						String item = "item" + n + "_" + j;
+						ParsedCommand parsedCommand = testParser.parse("take "
+								+ item);
+						ok[n] &= item.equals(parsedCommand.getItemName());
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread thread : threads)
+			thread.join();
+		assertTrue(ok[0] && ok[1] && ok[2] && ok[3]);
+	}
 }
@@ -0,0 +1,134 @@
+package es.ucm.fdi.lps.p3.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import es.ucm.fdi.lps.p3.ConfigurationWatcher;
+import es.ucm.fdi.lps.p3.Engine;
+import es.ucm.fdi.lps.p3.GameTemplate;
+import es.ucm.fdi.lps.p3.SessionPool;
+import es.ucm.fdi.lps.p3.TurnResult;
+import es.ucm.fdi.lps.p3.test.mock.InputStreamMock;
+
+public class SessionPoolTest {
+
+	private static final String DEFINITION = "game \"Title\" \"Author\" \"Description\"\n"
+			+ "location hall \"HALL\" \"The hall\"\n"
+			+ "item \"coin\" \"A coin\" 10\n"
+			+ "n garden\n"
+			+ "location garden \"GARDEN\" \"The garden\"\n"
+			+ "s hall\n";
+
+	private GameTemplate template;
+
+	@Before
+	public void setUp() throws Exception {
+		template = GameTemplate.load(new InputStreamMock(DEFINITION));
+	}
+
+	// Constructor
+	@Test(expected = IllegalArgumentException.class)
+	public void testNullTemplate() {
+		new SessionPool(null, null);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testZeroCapacity() {
+		new SessionPool(template, null, 0);
+	}
+
+	// Fill
+	@Test
+	public void testFill() {
+		SessionPool pool = new SessionPool(template, null, 4);
+		assertEquals(0, pool.getNumberOfIdleSessions());
+		pool.fill();
+		assertEquals(4, pool.getNumberOfIdleSessions());
+		assertEquals(4, pool.getCapacity());
+		pool.acquire();
+		assertEquals(3, pool.getNumberOfIdleSessions());
+	}
+
+	// Acquire and release
+	@Test(expected = IllegalArgumentException.class)
+	public void testReleaseNull() {
+		new SessionPool(template, null).release(null);
+	}
+
+	@Test
+	public void testReuse() {
+		SessionPool pool = new SessionPool(template, null, 1);
+		Engine engine = pool.acquire();
+		engine.start();
+		engine.step("take coin");
+		engine.step("go n");
+		assertTrue(engine.step("quit").isGameOver());
+		pool.release(engine);
+		assertEquals(1, pool.getNumberOfIdleSessions());
+
+		Engine reused = pool.acquire();
+		assertSame(engine, reused);
+		TurnResult result = reused.start();
+		assertFalse(result.isGameOver());
+		assertTrue(result.getOutput().contains("HALL"));
+		assertTrue(reused.getGame().reportAllInventoryItems().isEmpty());
+		assertTrue(reused.step("take coin").isExecuted());
+	}
+
+	@Test
+	public void testFullPool() {
+		SessionPool pool = new SessionPool(template, null, 1);
+		Engine first = pool.acquire();
+		Engine second = pool.acquire();
+		assertNotSame(first, second);
+		pool.release(first);
+		pool.release(second);
+		assertEquals(1, pool.getNumberOfIdleSessions());
+		assertSame(first, pool.acquire());
+	}
+
+	// Configuration watcher
+	@Test
+	public void testConfigurationWatcher() throws IOException {
+		File file = File.createTempFile("pool", ".cfg");
+		try {
+			ConfigurationWatcher watcher = new ConfigurationWatcher(file);
+			SessionPool pool = new SessionPool(template, null, 2);
+			pool.setConfigurationWatcher(watcher);
+			Engine playing = pool.acquire();
+			playing.start();
+			pool.fill();
+
+			OutputStream out = new FileOutputStream(file);
+			try {
+				out.write("message.prompt = >>\n".getBytes("ISO-8859-1"));
+			} finally {
+				out.close();
+			}
+			assertTrue(watcher.reload());
+
+			// The sessions being played, the idle ones and the new ones
+			// get the reloaded configuration
+			assertTrue(playing.step("look").getOutput().contains(">>"));
+			Engine idle = pool.acquire();
+			assertTrue(idle.start().getOutput().contains(">>"));
+			pool.acquire();
+			Engine built = pool.acquire();
+			assertEquals(0, pool.getNumberOfIdleSessions());
+			assertTrue(built.start().getOutput().contains(">>"));
+		} finally {
+			file.delete();
+		}
+	}
+}
@@ -0,0 +1,162 @@
+package es.ucm.fdi.lps.p3.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+import es.ucm.fdi.lps.p3.Engine;
+import es.ucm.fdi.lps.p3.Game;
+import es.ucm.fdi.lps.p3.SessionRunner;
+import es.ucm.fdi.lps.p3.exception.InvalidGameDefinitionException;
+import es.ucm.fdi.lps.p3.test.mock.InputStreamMock;
+
+public class SessionRunnerTest {
+
+	/**
+	 * An output stream that blocks its first write until it is released
+	 */
+	private static class BlockingOutputStream extends OutputStream {
+		final CountDownLatch released = new CountDownLatch(1);
+
+		public void write(int b) throws IOException {
+			try {
+				released.await();
+			} catch (InterruptedException e) {
+				throw new IOException(e.toString());
+			}
+		}
+	}
+
+	private static Game newGame() throws InvalidGameDefinitionException {
+		return new Game(new InputStreamMock("game Title \"A\" \"D\"\n"
+				+ "location hall \"HALL\" \"The hall\"\n" + "n garden\n"
+				+ "location garden \"GARDEN\" \"The garden\"\n"));
+	}
+
+	private static Engine newEngine(OutputStream output)
+			throws InvalidGameDefinitionException {
+		return new Engine(newGame(), new ByteArrayInputStream(new byte[0]),
+				output);
+	}
+
+	// Constructor
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativeMaxExecuting() {
+		new SessionRunner(-1);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNullThreadFactory() {
+		new SessionRunner(0, null);
+	}
+
+	// Start
+	@Test(expected = IllegalArgumentException.class)
+	public void testStartNullEngine() {
+		new SessionRunner().start(null, new ByteArrayInputStream(new byte[0]));
+	}
+
+	@Test
+	public void testSessionsWithPipes() throws Exception {
+		SessionRunner runner = new SessionRunner(4);
+		List<PipedOutputStream> inputs = new ArrayList<PipedOutputStream>();
+		List<ByteArrayOutputStream> outputs = new ArrayList<ByteArrayOutputStream>();
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int i = 0; i < 100; i++) {
+			PipedOutputStream input = new PipedOutputStream();
+			ByteArrayOutputStream output = new ByteArrayOutputStream();
+			threads.add(runner.start(newEngine(output), new PipedInputStream(
+					input)));
+			inputs.add(input);
+			outputs.add(output);
+		}
+		for (PipedOutputStream input : inputs)
+			input.write("go n\nquit\n".getBytes());
+		for (Thread thread : threads)
+			thread.join(5000);
+
+		assertEquals(0, runner.getNumberOfSessions());
+		for (ByteArrayOutputStream output : outputs) {
+			assertTrue(output.toString().contains("GARDEN"));
+			assertTrue(output.toString().contains("GAME OVER"));
+		}
+	}
+
+	@Test
+	public void testClosedInputEndsSession() throws Exception {
+		SessionRunner runner = new SessionRunner();
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		Thread thread = runner.start(newEngine(output),
+				new ByteArrayInputStream("go n\n".getBytes()));
+		thread.join(5000);
+		assertFalse(thread.isAlive());
+		assertTrue(output.toString().contains("GARDEN"));
+		assertFalse(output.toString().contains("GAME OVER"));
+	}
+
+	@Test
+	public void testLineSeparators() throws Exception {
+		SessionRunner runner = new SessionRunner();
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		Thread thread = runner.start(newEngine(output),
+				new ByteArrayInputStream("go n\r\nquit".getBytes()));
+		thread.join(5000);
+		assertFalse(thread.isAlive());
+		assertTrue(output.toString().contains("GARDEN"));
+		assertTrue(output.toString().contains("GAME OVER"));
+	}
+
+	@Test
+	public void testLongLineEndsSession() throws Exception {
+		SessionRunner runner = new SessionRunner();
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		// An input that never ends its line
+		Thread thread = runner.start(newEngine(output), new InputStream() {
+			public int read() {
+				return 'x';
+			}
+		});
+		thread.join(5000);
+		assertFalse(thread.isAlive());
+		assertEquals(0, runner.getNumberOfSessions());
+		assertFalse(output.toString().contains("Pardon?"));
+	}
+
+	@Test
+	public void testMaxExecuting() throws Exception {
+		SessionRunner runner = new SessionRunner(1);
+		BlockingOutputStream blocked = new BlockingOutputStream();
+		PipedOutputStream blockedInput = new PipedOutputStream();
+		runner.start(newEngine(blocked), new PipedInputStream(blockedInput));
+		while (runner.getNumberOfExecutingSessions() == 0)
+			Thread.sleep(10);
+
+		// The second session cannot begin while the first one is executing
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		PipedOutputStream input = new PipedOutputStream();
+		runner.start(newEngine(output), new PipedInputStream(input));
+		Thread.sleep(200);
+		assertEquals(0, output.size());
+		assertEquals(1, runner.getNumberOfExecutingSessions());
+
+		blocked.released.countDown();
+		for (int i = 0; (i < 500) && (output.size() == 0); i++)
+			Thread.sleep(10);
+		assertTrue(output.toString().contains("HALL"));
+		blockedInput.close();
+		input.close();
+	}
+}
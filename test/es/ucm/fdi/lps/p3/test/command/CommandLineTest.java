@@ -0,0 +1,78 @@
+package es.ucm.fdi.lps.p3.test.command;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import es.ucm.fdi.lps.p3.command.Command;
+import es.ucm.fdi.lps.p3.command.CommandLine;
+import es.ucm.fdi.lps.p3.command.DropCommand;
+import es.ucm.fdi.lps.p3.command.QuitCommand;
+import es.ucm.fdi.lps.p3.test.mock.GameMock;
+
+public class CommandLineTest {
+	// Constructor
+	@Test(expected = java.lang.IllegalArgumentException.class)
+	public void testNullCommandLine() {
+		new CommandLine(null);
+	}
+
+	@Test
+	public void testEmptyCommandLine() {
+		assertEquals(0, new CommandLine().getTokenCount());
+		assertEquals(0, new CommandLine(" \t ").getTokenCount());
+	}
+
+	// Set
+	@Test
+	public void testSet() {
+		CommandLine line = new CommandLine("  take\tRusty  sword  ");
+		assertEquals(3, line.getTokenCount());
+		assertEquals("take", line.getToken(0));
+		assertEquals("Rusty", line.getToken(1));
+		assertEquals("sword", line.getToken(2));
+
+		line.set("a b c d e f g h i j");
+		assertEquals(10, line.getTokenCount());
+		assertEquals("j", line.getToken(9));
+
+		line.set("look");
+		assertEquals(1, line.getTokenCount());
+		assertEquals("look", line.getLine());
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testGetMissingToken() {
+		new CommandLine("look").getToken(1);
+	}
+
+	// TokenEquals and LineEquals
+	@Test
+	public void testTokenEquals() {
+		CommandLine line = new CommandLine("TaKe sword");
+		assertTrue(line.tokenEquals(0, "take"));
+		assertFalse(line.tokenEquals(0, "tak"));
+		assertFalse(line.tokenEquals(0, "takes"));
+		assertFalse(line.tokenEquals(0, null));
+		assertTrue(line.tokenEquals(1, "SWORD"));
+		assertTrue(new CommandLine("\u00c1rbol").tokenEquals(0, "\u00e1RBOL"));
+		assertFalse(new CommandLine("[").tokenEquals(0, "{"));
+	}
+
+	@Test
+	public void testLineEquals() {
+		assertTrue(new CommandLine("QUIT").lineEquals("quit"));
+		assertFalse(new CommandLine(" quit").lineEquals("quit"));
+	}
+
+	// Parse
+	@Test
+	public void testParseCommandLine() {
+		Command command = new DropCommand(new GameMock());
+		assertFalse(command.parse(new CommandLine("drop")));
+		assertTrue(command.parse(new CommandLine("DROP key")));
+		assertTrue(new QuitCommand(new GameMock()).parse(new CommandLine("q")));
+	}
+}